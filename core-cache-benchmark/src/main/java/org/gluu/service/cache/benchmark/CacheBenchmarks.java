@@ -0,0 +1,39 @@
+package org.gluu.service.cache.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Benchmarks jar entry point. Accepts the same arguments as JMH and by default writes results in JSON to
+ * benchmarks-&lt;version&gt;.json, so runs of different releases can be compared with each other.
+ */
+public final class CacheBenchmarks {
+
+    private CacheBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+
+            if (!arguments.contains("-rff")) {
+                arguments.add("-rff");
+                arguments.add("benchmarks-" + getVersion() + ".json");
+            }
+        }
+
+        Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+
+    private static String getVersion() {
+        String version = CacheBenchmarks.class.getPackage().getImplementationVersion();
+
+        return version == null ? "dev" : version;
+    }
+
+}
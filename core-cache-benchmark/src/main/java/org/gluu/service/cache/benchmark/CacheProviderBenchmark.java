@@ -0,0 +1,139 @@
+package org.gluu.service.cache.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.service.cache.AbstractCacheProvider;
+import org.gluu.service.cache.CacheProviderType;
+import org.gluu.service.cache.CacheSerializerType;
+import org.gluu.service.cache.benchmark.support.BenchmarkSession;
+import org.gluu.service.cache.benchmark.support.StandInCacheProvider;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures get and put of session-shaped payloads for each cache provider. Remote providers run against
+ * in-process stand-ins, so results include client encoding, pooling and loopback network but not real server.
+ *
+ * get reads from preloaded keys, (1 - hitRatio) of requests go to absent keys. Hits and misses are reported as
+ * secondary results to check that expected ratio was observed.
+ *
+ * Run: mvn -Pbenchmarks package && java -jar core-cache-benchmark/target/benchmarks.jar CacheProviderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CacheProviderBenchmark {
+
+    private static final int SAMPLES_COUNT = 1 << 16;
+
+    private static final int EXPIRATION_IN_SECONDS = 300;
+
+    @Param({ "IN_MEMORY", "REDIS", "MEMCACHED", "NATIVE_PERSISTENCE" })
+    private CacheProviderType providerType;
+
+    @Param({ "JAVA", "KRYO" })
+    private CacheSerializerType serializerType;
+
+    @Param({ "0.9" })
+    private double hitRatio;
+
+    @Param({ "10000" })
+    private int keysCount;
+
+    private StandInCacheProvider standInCacheProvider;
+
+    private AbstractCacheProvider<?> cacheProvider;
+
+    private String[] keys;
+
+    private BenchmarkSession[] sessions;
+
+    private String[] samples;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next() {
+            position = (position + 1) & (SAMPLES_COUNT - 1);
+            return position;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HitCounters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        standInCacheProvider = StandInCacheProvider.create(providerType, serializerType);
+        cacheProvider = standInCacheProvider.getCacheProvider();
+
+        Random random = new Random(42);
+        keys = new String[keysCount];
+        sessions = new BenchmarkSession[keysCount];
+        for (int i = 0; i < keysCount; i++) {
+            keys[i] = UUID.randomUUID().toString();
+            sessions[i] = BenchmarkSession.create(keys[i], random);
+            cacheProvider.put(EXPIRATION_IN_SECONDS, keys[i], sessions[i]);
+        }
+
+        samples = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = random.nextDouble() < hitRatio ? keys[random.nextInt(keysCount)] : UUID.randomUUID().toString();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        standInCacheProvider.close();
+    }
+
+    @Benchmark
+    public Object get(Cursor cursor, HitCounters counters) {
+        Object value = cacheProvider.get(samples[cursor.next()]);
+        if (value == null) {
+            counters.misses++;
+        } else {
+            counters.hits++;
+        }
+
+        return value;
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        int index = cursor.next() % keysCount;
+        cacheProvider.put(EXPIRATION_IN_SECONDS, keys[index], sessions[index]);
+    }
+
+}
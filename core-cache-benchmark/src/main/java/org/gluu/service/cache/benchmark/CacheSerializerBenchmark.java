@@ -0,0 +1,86 @@
+package org.gluu.service.cache.benchmark;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.service.cache.CacheSerializerConfiguration;
+import org.gluu.service.cache.CacheSerializerType;
+import org.gluu.service.cache.VersionedCacheSerializer;
+import org.gluu.service.cache.benchmark.support.BenchmarkSession;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures serialization of session-shaped payload with versioned cache serializer. Serialized bytes are reported
+ * as secondary result, payload size is bytes / ops.
+ *
+ * Run: mvn -Pbenchmarks package && java -jar core-cache-benchmark/target/benchmarks.jar CacheSerializerBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    @Param({ "JAVA", "KRYO" })
+    private CacheSerializerType serializerType;
+
+    @Param({ "0", "512" })
+    private int compressionThreshold;
+
+    private VersionedCacheSerializer serializer;
+
+    private BenchmarkSession session;
+
+    private byte[] data;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadCounters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        CacheSerializerConfiguration serializerConfiguration = new CacheSerializerConfiguration();
+        serializerConfiguration.setSerializerType(serializerType);
+        serializerConfiguration.setCompressionThreshold(compressionThreshold);
+
+        serializer = VersionedCacheSerializer.create(serializerConfiguration);
+        session = BenchmarkSession.create(UUID.randomUUID().toString(), new Random(42));
+        data = serializer.serialize(session);
+    }
+
+    @Benchmark
+    public byte[] serialize(PayloadCounters counters) {
+        byte[] result = serializer.serialize(session);
+        counters.bytes += result.length;
+
+        return result;
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(data, 0, data.length);
+    }
+
+}
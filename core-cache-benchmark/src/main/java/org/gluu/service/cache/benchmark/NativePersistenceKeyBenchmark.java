@@ -0,0 +1,130 @@
+package org.gluu.service.cache.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.gluu.service.cache.NativePersistenceKeyCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares native persistence cache key to DN conversion: legacy DigestUtils + String.format,
+ * thread local digest with direct hex encoding, and bounded memo.
+ *
+ * Keys are session-like UUIDs selected with Zipf distribution, a few hot sessions take most requests.
+ *
+ * Run: mvn -Pbenchmarks package && java -jar core-cache-benchmark/target/benchmarks.jar NativePersistenceKeyBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class NativePersistenceKeyBenchmark {
+
+    private static final String BASE_DN = "ou=cache,o=gluu";
+
+    private static final int SAMPLES_COUNT = 1 << 16;
+
+    @Param({ "1000", "100000" })
+    private int keysCount;
+
+    @Param({ "1.0" })
+    private double zipfExponent;
+
+    private String[] samples;
+
+    private NativePersistenceKeyCache keyCache;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next() {
+            position = (position + 1) & (SAMPLES_COUNT - 1);
+            return position;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        String[] keys = new String[keysCount];
+        for (int i = 0; i < keysCount; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+
+        ZipfGenerator zipf = new ZipfGenerator(keysCount, zipfExponent, new Random(42));
+        samples = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = keys[zipf.next()];
+        }
+
+        keyCache = new NativePersistenceKeyCache(BASE_DN, 4096);
+    }
+
+    @Benchmark
+    public String legacy(Cursor cursor) {
+        String key = samples[cursor.next()];
+        return String.format("uuid=%s,%s", DigestUtils.sha256Hex(key), BASE_DN);
+    }
+
+    @Benchmark
+    public String threadLocalDigest(Cursor cursor) {
+        String key = samples[cursor.next()];
+        return NativePersistenceKeyCache.createDn(NativePersistenceKeyCache.hashKey(key), BASE_DN);
+    }
+
+    @Benchmark
+    public String memo(Cursor cursor) {
+        String key = samples[cursor.next()];
+        return keyCache.get(key).getDn();
+    }
+
+    /*
+     * Inverse CDF sampling over precomputed cumulative probabilities
+     */
+    private static class ZipfGenerator {
+
+        private final double[] cumulative;
+        private final Random random;
+
+        ZipfGenerator(int size, double exponent, Random random) {
+            this.random = random;
+            this.cumulative = new double[size];
+
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < size; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int next() {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            if (index < 0) {
+                index = -index - 1;
+            }
+
+            return Math.min(index, cumulative.length - 1);
+        }
+    }
+
+}
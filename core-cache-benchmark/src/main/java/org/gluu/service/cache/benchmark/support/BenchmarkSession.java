@@ -0,0 +1,137 @@
+package org.gluu.service.cache.benchmark.support;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Payload with the same shape as oxAuth session id (SampleSessionId in cache tests): identifiers, dates,
+ * state, JWT and maps of clients and session attributes.
+ */
+public class BenchmarkSession implements Serializable {
+
+    private static final long serialVersionUID = -2471640231568392054L;
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private String dn;
+    private String id;
+    private Date lastUsedAt;
+    private String userDn;
+    private Date authenticationTime;
+    private String state;
+    private String sessionState;
+    private Boolean permissionGranted;
+    private Boolean isJwt;
+    private String jwt;
+    private Map<String, Boolean> permissionGrantedMap;
+    private Map<String, Boolean> involvedClients;
+    private Map<String, String> sessionAttributes;
+
+    public BenchmarkSession() {
+    }
+
+    /*
+     * Creates authenticated session with ~2KB of Java serialized data
+     */
+    public static BenchmarkSession create(String id, Random random) {
+        BenchmarkSession session = new BenchmarkSession();
+        session.id = id;
+        session.dn = "oxAuthSessionId=" + id + ",ou=session,o=gluu";
+        session.userDn = "inum=" + UUID.randomUUID() + ",ou=people,o=gluu";
+        session.lastUsedAt = new Date();
+        session.authenticationTime = new Date();
+        session.state = "AUTHENTICATED";
+        session.sessionState = randomString(random, 64);
+        session.permissionGranted = Boolean.TRUE;
+        session.isJwt = Boolean.FALSE;
+        session.jwt = randomString(random, 600);
+
+        session.permissionGrantedMap = new HashMap<String, Boolean>();
+        session.involvedClients = new HashMap<String, Boolean>();
+        for (int i = 0; i < 2; i++) {
+            String clientId = UUID.randomUUID().toString();
+            session.permissionGrantedMap.put(clientId, Boolean.TRUE);
+            session.involvedClients.put(clientId, Boolean.TRUE);
+        }
+
+        session.sessionAttributes = new HashMap<String, String>();
+        session.sessionAttributes.put("auth_step", "1");
+        session.sessionAttributes.put("acr", "basic");
+        session.sessionAttributes.put("response_type", "code");
+        session.sessionAttributes.put("scope", "openid profile email");
+        session.sessionAttributes.put("client_id", session.involvedClients.keySet().iterator().next());
+        session.sessionAttributes.put("redirect_uri", "https://rp.example.org/callback");
+        session.sessionAttributes.put("state", randomString(random, 32));
+        session.sessionAttributes.put("nonce", randomString(random, 32));
+        session.sessionAttributes.put("remote_ip", "10.0.0." + random.nextInt(255));
+        session.sessionAttributes.put("opbs", UUID.randomUUID().toString());
+
+        return session;
+    }
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+
+        return new String(chars);
+    }
+
+    public String getDn() {
+        return dn;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Date getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public String getUserDn() {
+        return userDn;
+    }
+
+    public Date getAuthenticationTime() {
+        return authenticationTime;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getSessionState() {
+        return sessionState;
+    }
+
+    public Boolean getPermissionGranted() {
+        return permissionGranted;
+    }
+
+    public Boolean getIsJwt() {
+        return isJwt;
+    }
+
+    public String getJwt() {
+        return jwt;
+    }
+
+    public Map<String, Boolean> getPermissionGrantedMap() {
+        return permissionGrantedMap;
+    }
+
+    public Map<String, Boolean> getInvolvedClients() {
+        return involvedClients;
+    }
+
+    public Map<String, String> getSessionAttributes() {
+        return sessionAttributes;
+    }
+
+}
@@ -0,0 +1,251 @@
+package org.gluu.service.cache.benchmark.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process memcached stand-in which speaks text protocol. Supports commands used by spymemcached
+ * with default connection factory: get, gets, set, add, replace, delete, touch, flush_all, version, quit.
+ *
+ * Expiration is in seconds relative to now, values expire lazily on read.
+ */
+public class FakeMemcachedServer implements Closeable {
+
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "END\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STORED = "STORED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_STORED = "NOT_STORED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DELETED = "DELETED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_FOUND = "NOT_FOUND\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TOUCHED = "TOUCHED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OK = "OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR = "ERROR\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, Item> data = new ConcurrentHashMap<String, Item>();
+
+    private final ServerSocket serverSocket;
+
+    private volatile boolean stopped;
+
+    public FakeMemcachedServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "fake-memcached-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getServers() {
+        return "localhost:" + getPort();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                Thread handler = new Thread(() -> handle(socket), "fake-memcached-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException ex) {
+                if (!stopped) {
+                    throw new IllegalStateException("Failed to accept connection", ex);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            while (!stopped) {
+                String line = readLine(in);
+                if (line == null) {
+                    return;
+                }
+
+                boolean quit = execute(line.split(" "), in, out);
+                // spymemcached pipelines operations, flush when all received commands are processed
+                if (quit || (in.available() == 0)) {
+                    out.flush();
+                }
+                if (quit) {
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            // Connection closed by client
+        }
+    }
+
+    private boolean execute(String[] command, InputStream in, OutputStream out) throws IOException {
+        switch (command[0]) {
+        case "get":
+        case "gets":
+            for (int i = 1; i < command.length; i++) {
+                Item item = get(command[i]);
+                if (item != null) {
+                    out.write(("VALUE " + command[i] + " " + item.flags + " " + item.bytes.length).getBytes(StandardCharsets.US_ASCII));
+                    if ("gets".equals(command[0])) {
+                        out.write((" " + item.cas).getBytes(StandardCharsets.US_ASCII));
+                    }
+                    out.write(CRLF);
+                    out.write(item.bytes);
+                    out.write(CRLF);
+                }
+            }
+            out.write(END);
+            break;
+        case "set":
+        case "add":
+        case "replace":
+            store(command, in, out);
+            break;
+        case "delete":
+            reply(out, command, 2, data.remove(command[1]) != null ? DELETED : NOT_FOUND);
+            break;
+        case "touch":
+            Item item = get(command[1]);
+            if (item != null) {
+                data.put(command[1], new Item(item.flags, item.bytes, expireAt(Long.parseLong(command[2]))));
+            }
+            reply(out, command, 3, item != null ? TOUCHED : NOT_FOUND);
+            break;
+        case "flush_all":
+            data.clear();
+            reply(out, command, command.length - 1, OK);
+            break;
+        case "version":
+            out.write("VERSION 1.6.0\r\n".getBytes(StandardCharsets.US_ASCII));
+            break;
+        case "quit":
+            return true;
+        default:
+            out.write(ERROR);
+        }
+
+        return false;
+    }
+
+    private void store(String[] command, InputStream in, OutputStream out) throws IOException {
+        String key = command[1];
+        int flags = Integer.parseInt(command[2]);
+        long expireAt = expireAt(Long.parseLong(command[3]));
+        byte[] bytes = new byte[Integer.parseInt(command[4])];
+        readFully(in, bytes);
+        in.read(); // \r
+        in.read(); // \n
+
+        Item item = new Item(flags, bytes, expireAt);
+        boolean stored;
+        if ("add".equals(command[0])) {
+            stored = (get(key) == null) && (data.putIfAbsent(key, item) == null);
+        } else if ("replace".equals(command[0])) {
+            stored = (get(key) != null) && (data.replace(key, item) != null);
+        } else {
+            data.put(key, item);
+            stored = true;
+        }
+
+        reply(out, command, 5, stored ? STORED : NOT_STORED);
+    }
+
+    private Item get(String key) {
+        Item item = data.get(key);
+        if (item == null) {
+            return null;
+        }
+        if ((item.expireAt > 0) && (item.expireAt <= System.currentTimeMillis())) {
+            data.remove(key, item);
+            return null;
+        }
+
+        return item;
+    }
+
+    private static void reply(OutputStream out, String[] command, int noReplyPosition, byte[] response) throws IOException {
+        if ((command.length > noReplyPosition) && "noreply".equals(command[noReplyPosition])) {
+            return;
+        }
+
+        out.write(response);
+    }
+
+    private static long expireAt(long seconds) {
+        return seconds <= 0 ? 0 : System.currentTimeMillis() + seconds * 1000;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII.name());
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        return line.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int position = 0;
+        while (position < bytes.length) {
+            int read = in.read(bytes, position, bytes.length - position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        serverSocket.close();
+        data.clear();
+    }
+
+    private static final class Item {
+
+        private static final AtomicLong CAS_COUNTER = new AtomicLong();
+
+        private final int flags;
+        private final byte[] bytes;
+        private final long expireAt;
+        private final long cas;
+
+        Item(int flags, byte[] bytes, long expireAt) {
+            this.flags = flags;
+            this.bytes = bytes;
+            this.expireAt = expireAt;
+            this.cas = CAS_COUNTER.incrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,341 @@
+package org.gluu.service.cache.benchmark.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process Redis stand-in which speaks RESP2. Supports commands used by cache providers:
+ * PING, ECHO, AUTH, SELECT, GET, SET [EX|PX|NX|XX], SETEX, PSETEX, EXISTS, DEL, MGET, FLUSHDB, FLUSHALL, QUIT.
+ *
+ * Values expire lazily on read. Network stack is real, so client side encoding, pooling and pipelining are measured.
+ */
+public class FakeRedisServer implements Closeable {
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<Key, Value> data = new ConcurrentHashMap<Key, Value>();
+
+    private final ServerSocket serverSocket;
+
+    private volatile boolean stopped;
+
+    public FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "fake-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getServers() {
+        return "localhost:" + getPort();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                Thread handler = new Thread(() -> handle(socket), "fake-redis-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException ex) {
+                if (!stopped) {
+                    throw new IllegalStateException("Failed to accept connection", ex);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            while (!stopped) {
+                byte[][] command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+
+                boolean quit = execute(command, out);
+                // Flush when pipelined commands are processed
+                if (quit || (in.available() == 0)) {
+                    out.flush();
+                }
+                if (quit) {
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            // Connection closed by client
+        }
+    }
+
+    private boolean execute(byte[][] command, OutputStream out) throws IOException {
+        String name = new String(command[0], StandardCharsets.US_ASCII).toUpperCase();
+        switch (name) {
+        case "PING":
+            out.write(PONG);
+            break;
+        case "ECHO":
+            writeBulk(out, command[1]);
+            break;
+        case "AUTH":
+        case "SELECT":
+            out.write(OK);
+            break;
+        case "GET":
+            writeBulk(out, get(command[1]));
+            break;
+        case "MGET":
+            writeArrayHeader(out, command.length - 1);
+            for (int i = 1; i < command.length; i++) {
+                writeBulk(out, get(command[i]));
+            }
+            break;
+        case "SET":
+            set(command, out);
+            break;
+        case "SETEX":
+            data.put(new Key(command[1]), new Value(command[3], expireAt(parseLong(command[2]) * 1000)));
+            out.write(OK);
+            break;
+        case "PSETEX":
+            data.put(new Key(command[1]), new Value(command[3], expireAt(parseLong(command[2]))));
+            out.write(OK);
+            break;
+        case "EXISTS":
+            int exists = 0;
+            for (int i = 1; i < command.length; i++) {
+                if (get(command[i]) != null) {
+                    exists++;
+                }
+            }
+            writeInteger(out, exists);
+            break;
+        case "DEL":
+            int removed = 0;
+            for (int i = 1; i < command.length; i++) {
+                if (data.remove(new Key(command[i])) != null) {
+                    removed++;
+                }
+            }
+            writeInteger(out, removed);
+            break;
+        case "FLUSHDB":
+        case "FLUSHALL":
+            data.clear();
+            out.write(OK);
+            break;
+        case "QUIT":
+            out.write(OK);
+            return true;
+        default:
+            writeError(out, "ERR unknown command '" + name + "'");
+        }
+
+        return false;
+    }
+
+    private void set(byte[][] command, OutputStream out) throws IOException {
+        long expireAt = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < command.length; i++) {
+            String option = new String(command[i], StandardCharsets.US_ASCII).toUpperCase();
+            if ("EX".equals(option)) {
+                expireAt = expireAt(parseLong(command[++i]) * 1000);
+            } else if ("PX".equals(option)) {
+                expireAt = expireAt(parseLong(command[++i]));
+            } else if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            }
+        }
+
+        Key key = new Key(command[1]);
+        Value value = new Value(command[2], expireAt);
+        boolean exists = get(command[1]) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            out.write(NULL_BULK);
+            return;
+        }
+
+        data.put(key, value);
+        out.write(OK);
+    }
+
+    private byte[] get(byte[] key) {
+        Key dataKey = new Key(key);
+        Value value = data.get(dataKey);
+        if (value == null) {
+            return null;
+        }
+        if ((value.expireAt > 0) && (value.expireAt <= System.currentTimeMillis())) {
+            data.remove(dataKey, value);
+            return null;
+        }
+
+        return value.bytes;
+    }
+
+    private static long expireAt(long millis) {
+        return System.currentTimeMillis() + millis;
+    }
+
+    private static byte[][] readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Inline commands are not supported");
+        }
+
+        int count = (int) readLong(in);
+        byte[][] command = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Bulk string expected");
+            }
+            int length = (int) readLong(in);
+            byte[] bytes = new byte[length];
+            readFully(in, bytes);
+            in.read(); // \r
+            in.read(); // \n
+            command[i] = bytes;
+        }
+
+        return command;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long result = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                result = result * 10 + (b - '0');
+            }
+        }
+        in.read(); // \n
+
+        return negative ? -result : result;
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int position = 0;
+        while (position < bytes.length) {
+            int read = in.read(bytes, position, bytes.length - position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static long parseLong(byte[] bytes) {
+        return Long.parseLong(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private static void writeBulk(OutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.write(NULL_BULK);
+            return;
+        }
+
+        out.write('$');
+        out.write(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(bytes);
+        out.write(CRLF);
+    }
+
+    private static void writeArrayHeader(OutputStream out, int count) throws IOException {
+        out.write('*');
+        out.write(Integer.toString(count).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write(':');
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write('-');
+        out.write(message.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        serverSocket.close();
+        data.clear();
+    }
+
+    private static final class Key {
+
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Key) && Arrays.equals(bytes, ((Key) obj).bytes);
+        }
+    }
+
+    private static final class Value {
+
+        private final byte[] bytes;
+        private final long expireAt;
+
+        Value(byte[] bytes, long expireAt) {
+            this.bytes = bytes;
+            this.expireAt = expireAt;
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.gluu.service.cache.benchmark.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.service.cache.NativePersistenceCacheEntity;
+
+/**
+ * In-memory {@link PersistenceEntryManager} stand-in for NATIVE_PERSISTENCE cache benchmarks. It stores
+ * cache entities by DN and implements only operations used by cache provider for single entries.
+ *
+ * Filter based search and removal throw {@link UnsupportedOperationException}, so provider uses its one by one
+ * fallback. Proxy is used to avoid dependency on the whole entry manager interface.
+ */
+public final class InMemoryEntryManager implements InvocationHandler {
+
+    private final Map<String, NativePersistenceCacheEntity> entries = new ConcurrentHashMap<String, NativePersistenceCacheEntity>();
+
+    private final String persistenceType;
+
+    private InMemoryEntryManager(String persistenceType) {
+        this.persistenceType = persistenceType;
+    }
+
+    /**
+     * @param persistenceType - "sql" makes provider to merge entries, "couchbase" to persist without remove,
+     *        other values to remove and persist
+     */
+    public static PersistenceEntryManager create(String persistenceType) {
+        return (PersistenceEntryManager) Proxy.newProxyInstance(InMemoryEntryManager.class.getClassLoader(),
+                new Class<?>[] { PersistenceEntryManager.class }, new InMemoryEntryManager(persistenceType));
+    }
+
+    public static int size(PersistenceEntryManager entryManager) {
+        return ((InMemoryEntryManager) Proxy.getInvocationHandler(entryManager)).entries.size();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        int argsCount = args == null ? 0 : args.length;
+        switch (method.getName()) {
+        case "hasBranchesSupport":
+            return false;
+        case "hasExpirationSupport":
+            return true;
+        case "getPersistenceType":
+            return persistenceType;
+        case "encodeTime":
+            return encodeTime((Date) args[1]);
+        case "contains":
+            if (argsCount == 2) {
+                return entries.containsKey(String.valueOf(args[0]));
+            }
+            break;
+        case "find":
+            if ((argsCount == 2) && (args[0] instanceof Class)) {
+                return entries.get(String.valueOf(args[1]));
+            }
+            break;
+        case "persist":
+        case "merge":
+            NativePersistenceCacheEntity entity = (NativePersistenceCacheEntity) args[0];
+            entries.put(entity.getDn(), entity);
+            return "merge".equals(method.getName()) ? entity : null;
+        case "remove":
+            if ((argsCount == 2) && (args[0] instanceof String)) {
+                entries.remove(args[0]);
+                return null;
+            }
+            if ((argsCount == 1) && (args[0] instanceof NativePersistenceCacheEntity)) {
+                entries.remove(((NativePersistenceCacheEntity) args[0]).getDn());
+                return null;
+            }
+            break;
+        case "destroy":
+            entries.clear();
+            return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+        case "toString":
+            return "InMemoryEntryManager[" + persistenceType + "]";
+        case "hashCode":
+            return System.identityHashCode(proxy);
+        case "equals":
+            return proxy == args[0];
+        default:
+            break;
+        }
+
+        throw new UnsupportedOperationException("Operation is not supported by in-memory entry manager: " + method);
+    }
+
+    private static String encodeTime(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        return format.format(date);
+    }
+
+}
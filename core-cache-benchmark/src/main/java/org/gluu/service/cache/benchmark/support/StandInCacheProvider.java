@@ -0,0 +1,105 @@
+package org.gluu.service.cache.benchmark.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.service.cache.AbstractCacheProvider;
+import org.gluu.service.cache.CacheConfiguration;
+import org.gluu.service.cache.CacheProviderType;
+import org.gluu.service.cache.CacheSerializerType;
+import org.gluu.service.cache.InMemoryCacheProvider;
+import org.gluu.service.cache.MemcachedConfiguration;
+import org.gluu.service.cache.MemcachedProvider;
+import org.gluu.service.cache.NativePersistenceCacheProvider;
+import org.gluu.service.cache.NativePersistenceConfiguration;
+import org.gluu.service.cache.RedisConfiguration;
+import org.gluu.service.cache.RedisProvider;
+
+/**
+ * Cache provider created against in-process stand-in of its storage: fake Redis server for REDIS (standalone),
+ * fake memcached server for MEMCACHED and in-memory entry manager for NATIVE_PERSISTENCE
+ */
+public final class StandInCacheProvider implements Closeable {
+
+    private final AbstractCacheProvider<?> cacheProvider;
+
+    private final Closeable standIn;
+
+    private StandInCacheProvider(AbstractCacheProvider<?> cacheProvider, Closeable standIn) {
+        this.cacheProvider = cacheProvider;
+        this.standIn = standIn;
+    }
+
+    public static StandInCacheProvider create(CacheProviderType cacheProviderType, CacheSerializerType serializerType) throws IOException {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setCacheProviderType(cacheProviderType);
+        cacheConfiguration.getSerializerConfiguration().setSerializerType(serializerType);
+
+        switch (cacheProviderType) {
+        case IN_MEMORY:
+            InMemoryCacheProvider inMemoryCacheProvider = new InMemoryCacheProvider();
+            inMemoryCacheProvider.configure(cacheConfiguration);
+            inMemoryCacheProvider.init();
+            inMemoryCacheProvider.create();
+
+            return new StandInCacheProvider(inMemoryCacheProvider, null);
+        case REDIS:
+            FakeRedisServer redisServer = new FakeRedisServer();
+
+            RedisConfiguration redisConfiguration = new RedisConfiguration();
+            redisConfiguration.setServers(redisServer.getServers());
+            cacheConfiguration.setRedisConfiguration(redisConfiguration);
+
+            RedisProvider redisProvider = new RedisProvider();
+            redisProvider.configure(cacheConfiguration, null);
+            redisProvider.init();
+            redisProvider.create();
+
+            return new StandInCacheProvider(redisProvider, redisServer);
+        case MEMCACHED:
+            FakeMemcachedServer memcachedServer = new FakeMemcachedServer();
+
+            MemcachedConfiguration memcachedConfiguration = new MemcachedConfiguration();
+            memcachedConfiguration.setServers(memcachedServer.getServers());
+            cacheConfiguration.setMemcachedConfiguration(memcachedConfiguration);
+
+            MemcachedProvider memcachedProvider = new MemcachedProvider();
+            memcachedProvider.configure(cacheConfiguration);
+            memcachedProvider.init();
+            memcachedProvider.create();
+
+            return new StandInCacheProvider(memcachedProvider, memcachedServer);
+        case NATIVE_PERSISTENCE:
+            NativePersistenceConfiguration nativePersistenceConfiguration = new NativePersistenceConfiguration();
+            nativePersistenceConfiguration.setBaseDn("o=gluu");
+            cacheConfiguration.setNativePersistenceConfiguration(nativePersistenceConfiguration);
+
+            PersistenceEntryManager entryManager = InMemoryEntryManager.create("sql");
+
+            NativePersistenceCacheProvider nativePersistenceCacheProvider = new NativePersistenceCacheProvider();
+            nativePersistenceCacheProvider.configure(cacheConfiguration, entryManager);
+            nativePersistenceCacheProvider.create();
+
+            return new StandInCacheProvider(nativePersistenceCacheProvider, null);
+        default:
+            throw new IllegalArgumentException("Unsupported cache provider type: " + cacheProviderType);
+        }
+    }
+
+    public AbstractCacheProvider<?> getCacheProvider() {
+        return cacheProvider;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            cacheProvider.destroy();
+        } finally {
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+    }
+
+}
@@ -6,12 +6,23 @@
 package org.gluu.service;
 
 import org.gluu.service.cache.CacheInterface;
+import org.gluu.service.cache.CacheLoadConfiguration;
 import org.gluu.service.cache.CacheProvider;
 import org.gluu.service.cache.CacheProviderType;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 
 /**
@@ -24,9 +35,23 @@ public abstract class BaseCacheService implements CacheInterface {
 	
 	public static int DEFAULT_EXPIRATION = 60;
 
+	private static final String LOCK_KEY_PREFIX = "lock_";
+
+	private static final long LOCK_POLL_INTERVAL = 50;
+
+	private static final int MAX_LOAD_STATISTICS_SIZE = 10000;
+
+	private static final int LOAD_STATISTICS_EVICTION_SAMPLES = 8;
+
+	private static final CacheLoadConfiguration DEFAULT_LOAD_CONFIGURATION = new CacheLoadConfiguration();
+
 	@Inject
     private Logger log;
 
+	private final ConcurrentMap<String, CompletableFuture<Object>> runningLoads = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+	private final ConcurrentMap<String, LoadStatistics> loadStatistics = new ConcurrentHashMap<String, LoadStatistics>();
+
     public Object get(String key) {
     	CacheProvider cacheProvider = getCacheProvider();
         if (cacheProvider == null) {
@@ -41,6 +66,14 @@ public abstract class BaseCacheService implements CacheInterface {
     	return value;
     }
 
+    /**
+     * Returns value from cache or loads it with load function and puts into cache.
+     *
+     * Only one load function per key runs in this process at a time, concurrent callers wait for its result.
+     * If early refresh is enabled, hot keys loaded by this node are reloaded shortly before expiration with
+     * probability which grows closer to expiration (XFetch). Optionally load is coordinated between nodes with
+     * distributed lock.
+     */
     public <T> T getWithPut(String key, Supplier<T> loadFunction, int expirationInSeconds) {
         if (loadFunction == null) {
             return (T) get(key);
@@ -56,24 +89,188 @@ public abstract class BaseCacheService implements CacheInterface {
         final Object value = get(key);
         if (value != null) {
             log.trace("Loaded from cache, key: '{}'", key);
+            if (isEarlyRefreshNeeded(key)) {
+                log.trace("Refreshing value before expiration, key: '{}'", key);
+                try {
+                    T loaded = (T) loadSingleFlight(key, loadFunction, expirationInSeconds, value);
+                    if (loaded != null) {
+                        return loaded;
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to refresh value, key: '{}'", key, e); // cached value is still valid
+                }
+            }
             return (T) value;
         } else {
             log.trace("Key not in cache. Searching value via load function, key: '{}'", key);
-            final T loaded = loadFunction.get();
+            final T loaded = (T) loadSingleFlight(key, loadFunction, expirationInSeconds, null);
             if (loaded == null) {
                 log.trace("Key not in cache. There is no value, key: '{}'", key);
                 return null;
             }
 
+            return loaded;
+        }
+    }
+
+    /*
+     * Runs only one load function per key. Other threads without cached value wait for result of the running one
+     */
+    private Object loadSingleFlight(String key, Supplier<?> loadFunction, int expirationInSeconds, Object cachedValue) {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        CompletableFuture<Object> runningLoad = runningLoads.putIfAbsent(key, future);
+        if (runningLoad != null) {
+            if (cachedValue != null) {
+                // Other thread refreshes value already
+                return cachedValue;
+            }
+
+            log.trace("Waiting for value loaded by other thread, key: '{}'", key);
             try {
-                put(expirationInSeconds, key, loaded);
-            } catch (Exception e) {
-                log.error("Failed to put object into cache, key: '{}'", key, e); // we don't want prevent returning loaded value due to failure with put
+                return runningLoad.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
             }
+        }
+
+        try {
+            Object loaded = loadWithLock(key, loadFunction, expirationInSeconds, cachedValue);
+            future.complete(loaded);
+
             return loaded;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            runningLoads.remove(key, future);
         }
     }
 
+    private Object loadWithLock(String key, Supplier<?> loadFunction, int expirationInSeconds, Object cachedValue) {
+        CacheLoadConfiguration loadConfiguration = getLoadConfiguration();
+        if (!loadConfiguration.isDistributedLockEnabled()) {
+            return loadAndPut(key, loadFunction, expirationInSeconds);
+        }
+
+        CacheProvider cacheProvider = getCacheProvider();
+        String lockKey = LOCK_KEY_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+        if (cacheProvider.tryLock(lockKey, token, loadConfiguration.getLockExpiration())) {
+            try {
+                return loadAndPut(key, loadFunction, expirationInSeconds);
+            } finally {
+                cacheProvider.unlock(lockKey, token);
+            }
+        }
+
+        if (cachedValue != null) {
+            // Other node refreshes value already
+            return cachedValue;
+        }
+
+        log.trace("Waiting for value loaded by other node, key: '{}'", key);
+        long waitUntil = System.currentTimeMillis() + loadConfiguration.getLockWaitTimeout();
+        try {
+            while (System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(LOCK_POLL_INTERVAL);
+
+                Object value = get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("Value wasn't loaded by other node in time, loading it without lock, key: '{}'", key);
+        return loadAndPut(key, loadFunction, expirationInSeconds);
+    }
+
+    private Object loadAndPut(String key, Supplier<?> loadFunction, int expirationInSeconds) {
+        long startTime = System.currentTimeMillis();
+        Object loaded = loadFunction.get();
+        if (loaded == null) {
+            return null;
+        }
+
+        long loadTime = System.currentTimeMillis() - startTime;
+        try {
+            put(expirationInSeconds, key, loaded);
+            if (expirationInSeconds > 0) {
+                putLoadStatistics(key, new LoadStatistics(startTime + expirationInSeconds * 1000L, loadTime));
+            }
+        } catch (Exception e) {
+            log.error("Failed to put object into cache, key: '{}'", key, e); // we don't want prevent returning loaded value due to failure with put
+        }
+
+        return loaded;
+    }
+
+    /*
+     * XFetch: refresh if now - loadTime * beta * ln(random) >= expiration time
+     */
+    private boolean isEarlyRefreshNeeded(String key) {
+        double beta = getLoadConfiguration().getEarlyRefreshBeta();
+        if (beta <= 0) {
+            return false;
+        }
+
+        LoadStatistics statistics = loadStatistics.get(key);
+        if (statistics == null) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= statistics.expirationTime) {
+            loadStatistics.remove(key, statistics);
+            return false;
+        }
+
+        double random = 1.0d - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        return now - statistics.loadTime * beta * Math.log(random) >= statistics.expirationTime;
+    }
+
+    private void putLoadStatistics(String key, LoadStatistics statistics) {
+        if (!loadStatistics.containsKey(key)) {
+            while (loadStatistics.size() >= MAX_LOAD_STATISTICS_SIZE) {
+                evictLoadStatistics();
+            }
+        }
+
+        loadStatistics.put(key, statistics);
+    }
+
+    /*
+     * Removes one entry which expires first among few sampled entries
+     */
+    private void evictLoadStatistics() {
+        Map.Entry<String, LoadStatistics> candidate = null;
+        int samples = 0;
+        for (Map.Entry<String, LoadStatistics> entry : loadStatistics.entrySet()) {
+            if ((candidate == null) || (entry.getValue().expirationTime < candidate.getValue().expirationTime)) {
+                candidate = entry;
+            }
+            if (++samples >= LOAD_STATISTICS_EVICTION_SAMPLES) {
+                break;
+            }
+        }
+
+        if (candidate != null) {
+            loadStatistics.remove(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /*
+     * Override to provide load configuration. Default configuration disables distributed lock
+     */
+    protected CacheLoadConfiguration getLoadConfiguration() {
+        return DEFAULT_LOAD_CONFIGURATION;
+    }
+
 	public void put(int expirationInSeconds, String key, Object object) {
     	CacheProvider cacheProvider = getCacheProvider();
     	if (cacheProvider == null) {
@@ -96,6 +293,90 @@ public abstract class BaseCacheService implements CacheInterface {
 		cacheProvider.remove(key);
 	}
 
+    public Map<String, Object> getAll(Collection<String> keys) {
+    	CacheProvider cacheProvider = getCacheProvider();
+        if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+            return Collections.emptyMap();
+        }
+
+    	log.trace("Request data, keys '{}'", keys);
+    	Map<String, Object> values = cacheProvider.getAll(keys);
+    	log.trace("Loaded data, keys '{}': '{}'", keys, values);
+
+    	return values;
+    }
+
+	public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+    	CacheProvider cacheProvider = getCacheProvider();
+    	if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+			return;
+		}
+
+    	log.trace("Put data, entries '{}'", entries);
+		cacheProvider.putAll(expirationInSeconds, entries);
+	}
+
+	public void removeAll(Collection<String> keys) {
+    	CacheProvider cacheProvider = getCacheProvider();
+    	if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+			return;
+		}
+
+    	log.trace("Remove data, keys '{}'", keys);
+		cacheProvider.removeAll(keys);
+	}
+
+    public CompletionStage<Object> getAsync(String key) {
+    	CacheProvider cacheProvider = getCacheProvider();
+        if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+            return CompletableFuture.completedFuture(null);
+        }
+
+    	log.trace("Request data asynchronously, key '{}'", key);
+    	return cacheProvider.getAsync(key);
+    }
+
+    /*
+     * Put without waiting for provider. Failures are logged
+     */
+	public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+    	CacheProvider cacheProvider = getCacheProvider();
+    	if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+			return CompletableFuture.completedFuture(null);
+		}
+
+    	log.trace("Put data asynchronously, key '{}': '{}'", key, object);
+		CompletionStage<Void> result = cacheProvider.putAsync(expirationInSeconds, key, object);
+		result.exceptionally(ex -> {
+			log.error("Failed to put object into cache, key: '{}'", key, ex);
+			return null;
+		});
+
+		return result;
+	}
+
+	public CompletionStage<Void> removeAsync(String key) {
+    	CacheProvider cacheProvider = getCacheProvider();
+    	if (cacheProvider == null) {
+        	log.error("Cache provider is invalid!");
+			return CompletableFuture.completedFuture(null);
+		}
+
+    	log.trace("Remove data asynchronously, key '{}'", key);
+		CompletionStage<Void> result = cacheProvider.removeAsync(key);
+		result.exceptionally(ex -> {
+			log.error("Failed to remove object from cache, key: '{}'", key, ex);
+			return null;
+		});
+
+		return result;
+	}
+
 	public void clear() {
     	CacheProvider cacheProvider = getCacheProvider();
     	if (cacheProvider == null) {
@@ -148,4 +429,18 @@ public abstract class BaseCacheService implements CacheInterface {
 
     protected abstract CacheProvider getCacheProvider();
 
+    /*
+     * Expiration time and load duration of value loaded by this node
+     */
+    private static final class LoadStatistics {
+
+        private final long expirationTime;
+        private final long loadTime;
+
+        private LoadStatistics(long expirationTime, long loadTime) {
+            this.expirationTime = expirationTime;
+            this.loadTime = loadTime;
+        }
+    }
+
 }
@@ -9,6 +9,8 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.gluu.service.cache.CacheConfiguration;
+import org.gluu.service.cache.CacheLoadConfiguration;
 import org.gluu.service.cache.CacheProvider;
 
 /**
@@ -24,9 +26,22 @@ public class CacheService extends BaseCacheService {
     @Inject
     private CacheProvider cacheProvider;
 
+    @Inject
+    private CacheConfiguration cacheConfiguration;
+
 	@Override
 	protected CacheProvider getCacheProvider() {
 		return cacheProvider;
 	}
 
+	@Override
+	protected CacheLoadConfiguration getLoadConfiguration() {
+		CacheLoadConfiguration loadConfiguration = cacheConfiguration.getLoadConfiguration();
+		if (loadConfiguration == null) {
+			return super.getLoadConfiguration();
+		}
+
+		return loadConfiguration;
+	}
+
 }
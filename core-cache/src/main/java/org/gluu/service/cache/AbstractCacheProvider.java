@@ -7,6 +7,8 @@ import java.util.Date;
  */
 public abstract class AbstractCacheProvider<T> extends CacheProvider<T> {
 
+    private CacheProviderMetrics metrics;
+
     public abstract void create();
 
     public abstract void destroy();
@@ -18,4 +20,22 @@ public abstract class AbstractCacheProvider<T> extends CacheProvider<T> {
      */
     public void cleanup(final Date now) {}
 
+    /*
+     * Called by {@link InstrumentedCacheProvider} after create. Providers override it to record
+     * payload sizes and connection pool state
+     */
+    public void setMetrics(CacheProviderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CacheProviderMetrics getMetrics() {
+        return metrics;
+    }
+
+    protected void markError() {
+        if (metrics != null) {
+            metrics.markError();
+        }
+    }
+
 }
@@ -1,15 +1,92 @@
 package org.gluu.service.cache;
 
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
 
 /**
  * @author yuriyz
  */
 public abstract class AbstractRedisProvider {
 
+	private static final Logger LOG = LoggerFactory.getLogger(AbstractRedisProvider.class);
+
+	private static final int MAX_PENDING_INVALIDATIONS = 8192;
+
+	private static final long INVALIDATION_RESUBSCRIBE_DELAY = 1000;
+
+	private static final int MAX_PENDING_WRITES = 10000;
+
+	private static final int MAX_WRITE_BATCH_SIZE = 256;
+
+	protected static final String MASTER_NODE = "master";
+
+	protected static final String UNLOCK_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
 	protected RedisConfiguration redisConfiguration;
 
+	protected CacheSerializer serializer = new VersionedCacheSerializer(new JavaCacheSerializer(), 0);
+
+	private final long nodeId = new SecureRandom().nextLong();
+
+	private final List<CacheInvalidationListener> invalidationListeners = new CopyOnWriteArrayList<CacheInvalidationListener>();
+
+	private final Object invalidationLock = new Object();
+
+	private long[] pendingInvalidations = new long[64];
+
+	private int pendingInvalidationsCount;
+
+	private boolean pendingInvalidateAll;
+
+	private byte[] invalidationChannel;
+
+	private volatile boolean invalidationChannelActive;
+
+	private ScheduledExecutorService invalidationPublisher;
+
+	private Thread invalidationSubscriber;
+
+	private volatile BinaryJedisPubSub invalidationPubSub;
+
+	private volatile RedisClientTracking clientTracking;
+
+	private volatile CacheProviderMetrics metrics;
+
+	private final Object asyncWriterLock = new Object();
+
+	private volatile BlockingQueue<RedisWriteOperation> pendingWrites;
+
+	private Thread asyncWriter;
+
+	private boolean asyncWriterStopped;
+
 	public AbstractRedisProvider(RedisConfiguration redisConfiguration) {
 		this.redisConfiguration = redisConfiguration;
         HostAndPort.setLocalhost("127.0.0.1");
@@ -17,16 +94,81 @@ public abstract class AbstractRedisProvider {
 
 	public JedisPoolConfig createPoolConfig() {
         JedisPoolConfig poolConfig = new JedisPoolConfig();
+        configurePool(poolConfig);
+        return poolConfig;
+    }
+
+	/*
+	 * Apply pool settings from configuration
+	 */
+	public void configurePool(GenericObjectPoolConfig<?> poolConfig) {
         poolConfig.setMaxTotal(redisConfiguration.getMaxTotalConnections());
         poolConfig.setMaxIdle(redisConfiguration.getMaxIdleConnections());
-        poolConfig.setMinIdle(2);
-        return poolConfig;
+        poolConfig.setMinIdle(redisConfiguration.getMinIdleConnections());
+        poolConfig.setMaxWaitMillis(redisConfiguration.getMaxWaitMillis());
+        poolConfig.setTestOnBorrow(redisConfiguration.isTestOnBorrow());
+        // Evictor settings which aren't specified keep defaults of pool config
+        if (redisConfiguration.getTestWhileIdle() != null) {
+            poolConfig.setTestWhileIdle(redisConfiguration.getTestWhileIdle());
+        }
+        if (redisConfiguration.getTimeBetweenEvictionRunsMillis() != null) {
+            poolConfig.setTimeBetweenEvictionRunsMillis(redisConfiguration.getTimeBetweenEvictionRunsMillis());
+        }
+        if (redisConfiguration.getMinEvictableIdleTimeMillis() != null) {
+            poolConfig.setMinEvictableIdleTimeMillis(redisConfiguration.getMinEvictableIdleTimeMillis());
+        }
+        poolConfig.setJmxEnabled(redisConfiguration.isJmxEnabled());
+        if (StringUtils.isNotBlank(redisConfiguration.getJmxNamePrefix())) {
+            poolConfig.setJmxNamePrefix(redisConfiguration.getJmxNamePrefix());
+        }
     }
 
+	public CacheProviderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * Metrics to report connection borrow time. Null disables reporting
+	 */
+	public void setMetrics(CacheProviderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/*
+	 * Borrow connection from pool and report wait time. Caller should close connection
+	 */
+	protected <T> T getResource(Pool<T> pool) {
+		CacheProviderMetrics currentMetrics = metrics;
+		if (currentMetrics == null) {
+			return pool.getResource();
+		}
+
+		long start = System.nanoTime();
+		try {
+			return pool.getResource();
+		} catch (JedisExhaustedPoolException ex) {
+			currentMetrics.markPoolExhausted();
+			throw ex;
+		} finally {
+			currentMetrics.updatePoolBorrow(System.nanoTime() - start);
+		}
+	}
+
 	public RedisConfiguration getRedisConfiguration() {
 		return redisConfiguration;
 	}
 
+	public CacheSerializer getSerializer() {
+		return serializer;
+	}
+
+	/*
+	 * Should be specified before create
+	 */
+	public void setSerializer(CacheSerializer serializer) {
+		this.serializer = serializer;
+	}
+
 	public void testConnection() {
 		put(2, "testKey", "testValue");
 		if (!"testValue".equals(get("testKey"))) {
@@ -47,10 +189,32 @@ public abstract class AbstractRedisProvider {
 	public abstract void destroy();
 
 	public abstract Object getDelegate();
+
+	/*
+	 * Connection pools used by provider. Used to report pool state and borrow wait time
+	 */
+	public Collection<? extends Pool<?>> getPools() {
+		return Collections.emptyList();
+	}
 	
 	public abstract boolean hasKey(String key);
 
-	public abstract Object get(String key);
+	/*
+	 * Local copy is returned if client tracking is enabled and key is tracked
+	 */
+	public Object get(String key) {
+		RedisClientTracking tracking = clientTracking;
+		if (tracking == null) {
+			return loadValue(key);
+		}
+
+		return tracking.get(key, this::loadValue);
+	}
+
+	/*
+	 * Read and deserialize value from server
+	 */
+	protected abstract Object loadValue(String key);
 
 	public abstract void remove(String key);
 
@@ -60,4 +224,452 @@ public abstract class AbstractRedisProvider {
 
 	public abstract void put(String key, Object object);
 
+	/*
+	 * Default implementation requests keys one by one. Implementations should override it to load keys in one round trip
+	 */
+	public Map<String, Object> getAll(Collection<String> keys) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		for (String key : keys) {
+			Object value = get(key);
+			if (value != null) {
+				result.put(key, value);
+			}
+		}
+
+		return result;
+	}
+
+	public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+		for (Map.Entry<String, ?> entry : entries.entrySet()) {
+			put(expirationInSeconds, entry.getKey(), entry.getValue());
+		}
+	}
+
+	public void removeAll(Collection<String> keys) {
+		for (String key : keys) {
+			remove(key);
+		}
+	}
+
+	public CompletionStage<Object> getAsync(String key) {
+		return CompletableFuture.supplyAsync(() -> get(key), CacheAsyncExecutor.getExecutor());
+	}
+
+	/*
+	 * Object is serialized in caller thread. Write is sent to server by async writer with other pending writes
+	 */
+	public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+		return enqueueWrite(new RedisWriteOperation(key, expirationInSeconds, serializer.serialize(object)));
+	}
+
+	public CompletionStage<Void> removeAsync(String key) {
+		return enqueueWrite(new RedisWriteOperation(key, 0, null));
+	}
+
+	private CompletionStage<Void> enqueueWrite(RedisWriteOperation operation) {
+		BlockingQueue<RedisWriteOperation> queue = getPendingWrites();
+		if ((queue == null) || !queue.offer(operation)) {
+			// Writer is stopped or queue is full, write in caller thread
+			writeOperations(Collections.singletonList(operation));
+		}
+
+		return operation.getFuture();
+	}
+
+	private BlockingQueue<RedisWriteOperation> getPendingWrites() {
+		BlockingQueue<RedisWriteOperation> queue = pendingWrites;
+		if (queue != null) {
+			return queue;
+		}
+
+		synchronized (asyncWriterLock) {
+			if ((pendingWrites == null) && !asyncWriterStopped) {
+				final BlockingQueue<RedisWriteOperation> newQueue = new LinkedBlockingQueue<RedisWriteOperation>(MAX_PENDING_WRITES);
+
+				asyncWriter = new Thread(() -> runAsyncWriter(newQueue), "redis-cache-async-writer");
+				asyncWriter.setDaemon(true);
+				asyncWriter.start();
+
+				pendingWrites = newQueue;
+			}
+
+			return pendingWrites;
+		}
+	}
+
+	private void runAsyncWriter(BlockingQueue<RedisWriteOperation> queue) {
+		List<RedisWriteOperation> batch = new ArrayList<RedisWriteOperation>(MAX_WRITE_BATCH_SIZE);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException ex) {
+				break;
+			}
+			queue.drainTo(batch, MAX_WRITE_BATCH_SIZE - 1);
+
+			writeOperations(batch);
+			batch.clear();
+		}
+
+		// Write operations added before stop
+		queue.drainTo(batch);
+		if (!batch.isEmpty()) {
+			writeOperations(batch);
+		}
+	}
+
+	private void writeOperations(List<RedisWriteOperation> operations) {
+		try {
+			writeBatch(operations);
+		} catch (Exception ex) {
+			LOG.error("Failed to write {} operations to redis", operations.size(), ex);
+			for (RedisWriteOperation operation : operations) {
+				operation.getFuture().completeExceptionally(ex);
+			}
+			return;
+		}
+
+		for (RedisWriteOperation operation : operations) {
+			invalidate(operation.getKey());
+			operation.getFuture().complete(null);
+		}
+	}
+
+	/*
+	 * Should be called by implementations before pool close. Pending writes are sent before return
+	 */
+	protected void stopAsyncWriter() {
+		Thread writer;
+		synchronized (asyncWriterLock) {
+			asyncWriterStopped = true;
+			writer = asyncWriter;
+			pendingWrites = null;
+		}
+
+		if (writer == null) {
+			return;
+		}
+
+		writer.interrupt();
+		try {
+			writer.join(1000);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected static void addToPipeline(Pipeline pipeline, List<RedisWriteOperation> operations) {
+		for (RedisWriteOperation operation : operations) {
+			if (operation.isRemove()) {
+				pipeline.del(operation.getKey().getBytes());
+			} else {
+				pipeline.setex(operation.getKey().getBytes(), operation.getExpirationInSeconds(), operation.getValue());
+			}
+		}
+	}
+
+	/*
+	 * Set lock key with SET NX EX. Implementations without lock support always return true
+	 */
+	public boolean tryLock(String key, String token, int expirationInSeconds) {
+		return true;
+	}
+
+	/*
+	 * Remove lock key only if it still has the same token
+	 */
+	public void unlock(String key, String token) {
+	}
+
+	protected static byte[][] toKeysBytes(Collection<String> keys) {
+		byte[][] keysBytes = new byte[keys.size()][];
+
+		int i = 0;
+		for (String key : keys) {
+			keysBytes[i++] = key.getBytes();
+		}
+
+		return keysBytes;
+	}
+
+	/*
+	 * Add deserialized values to result. Values list should have the same order as keys
+	 */
+	protected void addValues(Map<String, Object> result, Collection<String> keys, List<byte[]> values) {
+		int i = 0;
+		for (String key : keys) {
+			byte[] value = values.get(i++);
+			if (value != null && value.length > 0) {
+				result.put(key, serializer.deserialize(value));
+			}
+		}
+	}
+
+	/*
+	 * Write operations from async queue. Implementations should send them to server in one round trip if possible
+	 */
+	protected abstract void writeBatch(List<RedisWriteOperation> operations);
+
+	/*
+	 * Publish message to channel
+	 */
+	protected abstract void publish(byte[] channel, byte[] message);
+
+	/*
+	 * Subscribe to channel. This method should block till unsubscribe or connection failure
+	 */
+	protected abstract void subscribe(BinaryJedisPubSub pubSub, byte[] channel);
+
+	public void addInvalidationListener(CacheInvalidationListener listener) {
+		invalidationListeners.add(listener);
+	}
+
+	public void removeInvalidationListener(CacheInvalidationListener listener) {
+		invalidationListeners.remove(listener);
+	}
+
+	public boolean isInvalidationChannelActive() {
+		return invalidationChannelActive;
+	}
+
+	/*
+	 * Should be called by implementations after successful create
+	 */
+	protected void startInvalidationChannel() {
+		if (!redisConfiguration.isInvalidationChannelEnabled() || StringUtils.isBlank(redisConfiguration.getInvalidationChannel())) {
+			return;
+		}
+
+		LOG.debug("Starting cache invalidation channel '{}'", redisConfiguration.getInvalidationChannel());
+
+		invalidationChannel = SafeEncoder.encode(redisConfiguration.getInvalidationChannel());
+		invalidationChannelActive = true;
+
+		long batchInterval = Math.max(1, redisConfiguration.getInvalidationBatchInterval());
+		invalidationPublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "redis-cache-invalidation-publisher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		invalidationPublisher.scheduleWithFixedDelay(this::flushInvalidations, batchInterval, batchInterval, TimeUnit.MILLISECONDS);
+
+		invalidationSubscriber = new Thread(this::runInvalidationSubscriber, "redis-cache-invalidation-subscriber");
+		invalidationSubscriber.setDaemon(true);
+		invalidationSubscriber.start();
+	}
+
+	/*
+	 * Should be called by implementations before connections close
+	 */
+	protected void stopInvalidationChannel() {
+		if (!invalidationChannelActive) {
+			return;
+		}
+
+		LOG.debug("Stopping cache invalidation channel");
+		invalidationChannelActive = false;
+
+		invalidationPublisher.shutdown();
+		try {
+			invalidationPublisher.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		flushInvalidations();
+
+		BinaryJedisPubSub pubSub = invalidationPubSub;
+		if ((pubSub != null) && pubSub.isSubscribed()) {
+			try {
+				pubSub.unsubscribe();
+			} catch (Exception ex) {
+				LOG.debug("Failed to unsubscribe from cache invalidation channel", ex);
+			}
+		}
+		invalidationSubscriber.interrupt();
+	}
+
+	public RedisClientTracking getClientTracking() {
+		return clientTracking;
+	}
+
+	/*
+	 * Pools of nodes which should send invalidation messages for client tracking. Providers without client tracking
+	 * support return empty map
+	 */
+	protected Map<String, ? extends Pool<Jedis>> getTrackingPools() {
+		return Collections.emptyMap();
+	}
+
+	/*
+	 * Should be called by implementations after successful create
+	 */
+	protected void startClientTracking() {
+		if (!redisConfiguration.isClientTrackingEnabled()) {
+			return;
+		}
+
+		if (getTrackingPools().isEmpty()) {
+			LOG.warn("Client tracking isn't supported by {}", getClass().getSimpleName());
+			return;
+		}
+
+		RedisClientTracking tracking = new RedisClientTracking(redisConfiguration, () -> getTrackingPools().keySet(), this::subscribeTracking);
+		tracking.start();
+		clientTracking = tracking;
+	}
+
+	/*
+	 * Should be called by implementations before pool close
+	 */
+	protected void stopClientTracking() {
+		RedisClientTracking tracking = clientTracking;
+		if (tracking == null) {
+			return;
+		}
+
+		clientTracking = null;
+		tracking.stop();
+	}
+
+	private void subscribeTracking(String node, RedisClientTracking tracking) {
+		Pool<Jedis> pool = getTrackingPools().get(node);
+		if (pool != null) {
+			tracking.subscribe(node, pool);
+		}
+	}
+
+	/*
+	 * Remove local copy of entry and notify other nodes that entry was changed or removed. Messages are batched and sent in background
+	 */
+	protected void invalidate(String key) {
+		RedisClientTracking tracking = clientTracking;
+		if (tracking != null) {
+			tracking.invalidate(key);
+		}
+
+		if (!invalidationChannelActive) {
+			return;
+		}
+
+		long keyHash = CacheInvalidationMessage.hashKey(key);
+		synchronized (invalidationLock) {
+			if (pendingInvalidateAll) {
+				return;
+			}
+
+			if (pendingInvalidationsCount == pendingInvalidations.length) {
+				if (pendingInvalidationsCount >= MAX_PENDING_INVALIDATIONS) {
+					// Too many changes in one batch. Ask other nodes to drop all entries
+					pendingInvalidateAll = true;
+					pendingInvalidationsCount = 0;
+					return;
+				}
+
+				long[] newPendingInvalidations = new long[pendingInvalidations.length * 2];
+				System.arraycopy(pendingInvalidations, 0, newPendingInvalidations, 0, pendingInvalidationsCount);
+				pendingInvalidations = newPendingInvalidations;
+			}
+
+			pendingInvalidations[pendingInvalidationsCount++] = keyHash;
+		}
+	}
+
+	/*
+	 * Remove local copies and notify other nodes that all entries were removed
+	 */
+	protected void invalidateAll() {
+		RedisClientTracking tracking = clientTracking;
+		if (tracking != null) {
+			tracking.invalidateAll();
+		}
+
+		if (!invalidationChannelActive) {
+			return;
+		}
+
+		synchronized (invalidationLock) {
+			pendingInvalidateAll = true;
+			pendingInvalidationsCount = 0;
+		}
+	}
+
+	private void flushInvalidations() {
+		CacheInvalidationMessage message;
+		synchronized (invalidationLock) {
+			if (!pendingInvalidateAll && (pendingInvalidationsCount == 0)) {
+				return;
+			}
+
+			message = new CacheInvalidationMessage(nodeId, pendingInvalidateAll, pendingInvalidations, pendingInvalidationsCount);
+			pendingInvalidations = new long[pendingInvalidations.length];
+			pendingInvalidationsCount = 0;
+			pendingInvalidateAll = false;
+		}
+
+		try {
+			publish(invalidationChannel, message.encode());
+		} catch (Exception ex) {
+			LOG.error("Failed to publish cache invalidation message", ex);
+		}
+	}
+
+	private void runInvalidationSubscriber() {
+		while (invalidationChannelActive) {
+			BinaryJedisPubSub pubSub = new BinaryJedisPubSub() {
+				@Override
+				public void onMessage(byte[] channel, byte[] message) {
+					processInvalidationMessage(message);
+				}
+			};
+			invalidationPubSub = pubSub;
+
+			try {
+				subscribe(pubSub, invalidationChannel);
+			} catch (Exception ex) {
+				if (invalidationChannelActive) {
+					LOG.warn("Cache invalidation channel subscription failed, resubscribing", ex);
+				}
+			}
+
+			if (!invalidationChannelActive) {
+				break;
+			}
+
+			// Messages might be lost while there was no subscription
+			notifyInvalidateAll();
+
+			try {
+				Thread.sleep(INVALIDATION_RESUBSCRIBE_DELAY);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	private void processInvalidationMessage(byte[] data) {
+		CacheInvalidationMessage message = CacheInvalidationMessage.decode(data);
+		if ((message == null) || (message.getNodeId() == nodeId)) {
+			return;
+		}
+
+		if (message.isInvalidateAll()) {
+			notifyInvalidateAll();
+			return;
+		}
+
+		long[] keyHashes = message.getKeyHashes();
+		for (CacheInvalidationListener listener : invalidationListeners) {
+			for (int i = 0; i < message.getCount(); i++) {
+				listener.onInvalidate(keyHashes[i]);
+			}
+		}
+	}
+
+	private void notifyInvalidateAll() {
+		for (CacheInvalidationListener listener : invalidationListeners) {
+			listener.onInvalidateAll();
+		}
+	}
+
 }
@@ -0,0 +1,50 @@
+package org.gluu.service.cache;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor used by cache providers without native asynchronous API.
+ * When queue is full task runs in caller thread, this limits number of pending operations.
+ */
+public final class CacheAsyncExecutor {
+
+    private static final int QUEUE_SIZE = 10000;
+
+    private CacheAsyncExecutor() {
+    }
+
+    public static ExecutorService getExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    private static final class Holder {
+
+        private static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            int threadsCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threadsCount, threadsCount, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+
+                        private final AtomicInteger threadNumber = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "cache-async-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+
+            return executor;
+        }
+    }
+
+}
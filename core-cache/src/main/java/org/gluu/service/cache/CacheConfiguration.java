@@ -26,6 +26,14 @@ public class CacheConfiguration implements Serializable {
 
     private NativePersistenceConfiguration nativePersistenceConfiguration;
 
+    private TwoTierConfiguration twoTierConfiguration = new TwoTierConfiguration();
+
+    private CacheSerializerConfiguration serializerConfiguration = new CacheSerializerConfiguration();
+
+    private CacheLoadConfiguration loadConfiguration = new CacheLoadConfiguration();
+
+    private boolean metricsEnabled = false;
+
     public NativePersistenceConfiguration getNativePersistenceConfiguration() {
         return nativePersistenceConfiguration;
     }
@@ -34,6 +42,38 @@ public class CacheConfiguration implements Serializable {
         this.nativePersistenceConfiguration = nativePersistenceConfiguration;
     }
 
+    public TwoTierConfiguration getTwoTierConfiguration() {
+        return twoTierConfiguration;
+    }
+
+    public void setTwoTierConfiguration(TwoTierConfiguration twoTierConfiguration) {
+        this.twoTierConfiguration = twoTierConfiguration;
+    }
+
+    public CacheSerializerConfiguration getSerializerConfiguration() {
+        return serializerConfiguration;
+    }
+
+    public void setSerializerConfiguration(CacheSerializerConfiguration serializerConfiguration) {
+        this.serializerConfiguration = serializerConfiguration;
+    }
+
+    public CacheLoadConfiguration getLoadConfiguration() {
+        return loadConfiguration;
+    }
+
+    public void setLoadConfiguration(CacheLoadConfiguration loadConfiguration) {
+        this.loadConfiguration = loadConfiguration;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
     public RedisConfiguration getRedisConfiguration() {
         return redisConfiguration;
     }
@@ -74,6 +114,10 @@ public class CacheConfiguration implements Serializable {
                 ", redisConfiguration=" + redisConfiguration +
                 ", inMemoryConfiguration=" + inMemoryConfiguration +
                 ", nativePersistenceConfiguration=" + nativePersistenceConfiguration +
+                ", twoTierConfiguration=" + twoTierConfiguration +
+                ", serializerConfiguration=" + serializerConfiguration +
+                ", loadConfiguration=" + loadConfiguration +
+                ", metricsEnabled=" + metricsEnabled +
                 '}';
     }
 }
@@ -0,0 +1,236 @@
+package org.gluu.service.cache;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * Reservoir with fixed log-linear buckets. Each power of two range is split into 4 buckets, so value
+ * error is below 25%. Update only increments bucket counter and it has no locks and no allocations.
+ *
+ * Counters are cumulative, so snapshot contains all recorded values and any count of reporters can read it. Reporter
+ * which needs values of its report period takes snapshots from own {@link Interval}.
+ */
+public class CacheHistogramReservoir implements Reservoir {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_COUNT);
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            size += buckets.get(i);
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public void update(long value) {
+        buckets.incrementAndGet(bucketIndex(Math.max(0, value)));
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS_COUNT];
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+
+        return new BucketSnapshot(counts);
+    }
+
+    /*
+     * Create tracker of values recorded between its snapshots. Each reporter should use own interval
+     */
+    public Interval newInterval() {
+        return new Interval();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS_COUNT - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS_COUNT) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS_COUNT;
+
+        return (long) (SUB_BUCKETS_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKETS_COUNT) {
+            return index;
+        }
+
+        long lowerBound = bucketLowerBound(index);
+        long width = 1L << (index / SUB_BUCKETS_COUNT - 1);
+
+        return lowerBound + (width - 1) / 2;
+    }
+
+    /**
+     * Keeps counters of previous snapshot and returns difference with current counters
+     */
+    public final class Interval {
+
+        private final long[] previousCounts = new long[BUCKETS_COUNT];
+
+        private Interval() {
+        }
+
+        /*
+         * Snapshot of values recorded since previous snapshot of this interval
+         */
+        public synchronized Snapshot getSnapshot() {
+            long[] counts = new long[BUCKETS_COUNT];
+            for (int i = 0; i < BUCKETS_COUNT; i++) {
+                long count = buckets.get(i);
+                counts[i] = count - previousCounts[i];
+                previousCounts[i] = count;
+            }
+
+            return new BucketSnapshot(counts);
+        }
+    }
+
+    private static class BucketSnapshot extends Snapshot {
+
+        private final long[] counts;
+        private final long count;
+
+        BucketSnapshot(long[] counts) {
+            this.counts = counts;
+
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if ((quantile < 0.0) || (quantile > 1.0) || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (count == 0) {
+                return 0.0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketValue(i);
+                }
+            }
+
+            return getMax();
+        }
+
+        @Override
+        public long[] getValues() {
+            long[] values = new long[(int) Math.min(Integer.MAX_VALUE, count)];
+            int position = 0;
+            for (int i = 0; (i < counts.length) && (position < values.length); i++) {
+                long value = bucketValue(i);
+                for (long j = 0; (j < counts[i]) && (position < values.length); j++) {
+                    values[position++] = value;
+                }
+            }
+
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, count);
+        }
+
+        @Override
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return bucketValue(i);
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getMean() {
+            if (count == 0) {
+                return 0.0;
+            }
+
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) bucketValue(i) * counts[i];
+            }
+
+            return sum / count;
+        }
+
+        @Override
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return bucketValue(i);
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (count <= 1) {
+                return 0.0;
+            }
+
+            double mean = getMean();
+            double variance = 0;
+            for (int i = 0; i < counts.length; i++) {
+                double diff = bucketValue(i) - mean;
+                variance += diff * diff * counts[i];
+            }
+
+            return Math.sqrt(variance / (count - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    out.printf("%d %d%n", bucketValue(i), counts[i]);
+                }
+            }
+            out.flush();
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package org.gluu.service.cache;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * @author Yuriy Zabrovarnyy
@@ -13,6 +15,12 @@ public interface CacheInterface {
 
    void remove(String key);
 
+    Map<String, Object> getAll(Collection<String> keys);
+
+    void putAll(int expirationInSeconds, Map<String, ?> entries);
+
+    void removeAll(Collection<String> keys);
+
    void clear();
 
     void cleanup(final Date now);
@@ -0,0 +1,18 @@
+package org.gluu.service.cache;
+
+/**
+ * Receives invalidation messages sent by other nodes via cache invalidation channel
+ */
+public interface CacheInvalidationListener {
+
+    /*
+     * Entry with specified key hash was changed or removed on another node
+     */
+    void onInvalidate(long keyHash);
+
+    /*
+     * All entries should be dropped, e.g. cache was cleared on another node or messages might be lost
+     */
+    void onInvalidateAll();
+
+}
@@ -0,0 +1,105 @@
+package org.gluu.service.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary invalidation message: version, flags, sender node id and list of 64 bit key hashes
+ */
+public final class CacheInvalidationMessage {
+
+    private static final byte VERSION = 1;
+
+    private static final byte FLAG_INVALIDATE_ALL = 1;
+
+    private static final int HEADER_SIZE = 1 + 1 + 8 + 4;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long nodeId;
+    private final boolean invalidateAll;
+    private final long[] keyHashes;
+    private final int count;
+
+    public CacheInvalidationMessage(long nodeId, boolean invalidateAll, long[] keyHashes, int count) {
+        this.nodeId = nodeId;
+        this.invalidateAll = invalidateAll;
+        this.keyHashes = keyHashes;
+        this.count = count;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isInvalidateAll() {
+        return invalidateAll;
+    }
+
+    public long[] getKeyHashes() {
+        return keyHashes;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public byte[] encode() {
+        int hashesCount = invalidateAll ? 0 : count;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 * hashesCount);
+        buffer.put(VERSION);
+        buffer.put(invalidateAll ? FLAG_INVALIDATE_ALL : 0);
+        buffer.putLong(nodeId);
+        buffer.putInt(hashesCount);
+        for (int i = 0; i < hashesCount; i++) {
+            buffer.putLong(keyHashes[i]);
+        }
+
+        return buffer.array();
+    }
+
+    /*
+     * Returns null if message has unsupported format
+     */
+    public static CacheInvalidationMessage decode(byte[] data) {
+        if ((data == null) || (data.length < HEADER_SIZE) || (data[0] != VERSION)) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get();
+        boolean invalidateAll = (buffer.get() & FLAG_INVALIDATE_ALL) != 0;
+        long nodeId = buffer.getLong();
+        int count = buffer.getInt();
+        if ((count < 0) || (buffer.remaining() < 8L * count)) {
+            return null;
+        }
+
+        long[] keyHashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyHashes[i] = buffer.getLong();
+        }
+
+        return new CacheInvalidationMessage(nodeId, invalidateAll, keyHashes, count);
+    }
+
+    /*
+     * Stable across JVMs 64 bit key hash: FNV-1a with final avalanche mix
+     */
+    public static long hashKey(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.gluu.service.cache;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Configuration of value loading in CacheService.getWithPut
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CacheLoadConfiguration implements Serializable {
+
+    private static final long serialVersionUID = -6038410235571634628L;
+
+    /**
+     * Allow only one node to load missing value. Supported by REDIS, MEMCACHED and TWO_TIER providers
+     */
+    @XmlElement(name = "distributedLockEnabled")
+    private boolean distributedLockEnabled = false;
+
+    @XmlElement(name = "lockExpiration")
+    private int lockExpiration = 10; // in seconds
+
+    /**
+     * Time to wait for value loaded by other node before loading it without lock
+     */
+    @XmlElement(name = "lockWaitTimeout")
+    private int lockWaitTimeout = 3000; // in milliseconds
+
+    /**
+     * Probabilistic early refresh (XFetch) factor. Bigger values refresh earlier, 1.0 is recommended value.
+     * Zero or negative value disables early refresh, it's disabled by default
+     */
+    @XmlElement(name = "earlyRefreshBeta")
+    private double earlyRefreshBeta = 0;
+
+    public boolean isDistributedLockEnabled() {
+        return distributedLockEnabled;
+    }
+
+    public void setDistributedLockEnabled(boolean distributedLockEnabled) {
+        this.distributedLockEnabled = distributedLockEnabled;
+    }
+
+    public int getLockExpiration() {
+        return lockExpiration;
+    }
+
+    public void setLockExpiration(int lockExpiration) {
+        this.lockExpiration = lockExpiration;
+    }
+
+    public int getLockWaitTimeout() {
+        return lockWaitTimeout;
+    }
+
+    public void setLockWaitTimeout(int lockWaitTimeout) {
+        this.lockWaitTimeout = lockWaitTimeout;
+    }
+
+    public double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheLoadConfiguration{" + "distributedLockEnabled=" + distributedLockEnabled + ", lockExpiration=" + lockExpiration
+                + ", lockWaitTimeout=" + lockWaitTimeout + ", earlyRefreshBeta=" + earlyRefreshBeta + '}';
+    }
+}
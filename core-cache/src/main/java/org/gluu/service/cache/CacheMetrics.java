@@ -0,0 +1,67 @@
+package org.gluu.service.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+
+/**
+ * Holds metrics of all cache providers. Metrics names have format cache.[provider].[metric]
+ *
+ * Application binds it to own metric registry. Metrics which are added after binding are registered
+ * in bound registry too.
+ */
+@ApplicationScoped
+public class CacheMetrics implements MetricSet {
+
+    public static final String PREFIX = "cache";
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    private final Map<String, CacheProviderMetrics> providerMetrics = new ConcurrentHashMap<String, CacheProviderMetrics>();
+
+    private MetricRegistry registry;
+
+    public CacheProviderMetrics getProviderMetrics(CacheProviderType cacheProviderType) {
+        return getProviderMetrics(cacheProviderType.name().toLowerCase());
+    }
+
+    /*
+     * Provider metrics are created once per name and reused when provider is recreated
+     */
+    public CacheProviderMetrics getProviderMetrics(String name) {
+        return providerMetrics.computeIfAbsent(name, key -> new CacheProviderMetrics(this, key));
+    }
+
+    public synchronized void bindTo(MetricRegistry registry) {
+        this.registry = registry;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            registerInRegistry(entry.getKey(), entry.getValue());
+        }
+    }
+
+    synchronized void register(String name, Metric metric) {
+        String fullName = MetricRegistry.name(PREFIX, name);
+        metrics.put(fullName, metric);
+        if (registry != null) {
+            registerInRegistry(fullName, metric);
+        }
+    }
+
+    private void registerInRegistry(String name, Metric metric) {
+        // Replace metric registered by previous provider instance
+        registry.remove(name);
+        registry.register(name, metric);
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+}
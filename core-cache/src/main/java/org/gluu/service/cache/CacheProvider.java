@@ -1,6 +1,11 @@
 package org.gluu.service.cache;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public abstract class CacheProvider<T> implements CacheInterface {
 
@@ -33,6 +38,101 @@ public abstract class CacheProvider<T> implements CacheInterface {
      */
     public abstract void remove(String key);
 
+    /**
+     * Fetches objects for the given keys from the cache. Result contains only found objects.
+     * Default implementation requests keys one by one. Providers should override it if
+     * they can load multiple keys in one request.
+     *
+     * @param keys - keys to identify the objects.
+     * @return - map of found objects
+     */
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys == null) {
+            return result;
+        }
+
+        for (String key : keys) {
+            Object value = get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Puts all objects into cache with the same expiration
+     */
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries == null) {
+            return;
+        }
+
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            put(expirationInSeconds, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes objects with the given keys from the cache
+     */
+    public void removeAll(Collection<String> keys) {
+        if (keys == null) {
+            return;
+        }
+
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Fetches an object for the given key without blocking caller thread.
+     * Default implementation runs {@link #get(String)} in bounded executor.
+     *
+     * @param key - a key to identify the object.
+     * @return - stage which completes with the object or null if not found
+     */
+    public CompletionStage<Object> getAsync(String key) {
+        return CompletableFuture.supplyAsync(() -> get(key), CacheAsyncExecutor.getExecutor());
+    }
+
+    /**
+     * Puts object into cache without blocking caller thread. Object shouldn't be modified
+     * till returned stage completes.
+     */
+    public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+        return CompletableFuture.runAsync(() -> put(expirationInSeconds, key, object), CacheAsyncExecutor.getExecutor());
+    }
+
+    /**
+     * Removes object from cache without blocking caller thread
+     */
+    public CompletionStage<Void> removeAsync(String key) {
+        return CompletableFuture.runAsync(() -> remove(key), CacheAsyncExecutor.getExecutor());
+    }
+
+    /**
+     * Acquires short-lived lock shared between nodes. Lock is released automatically after expiration.
+     * Default implementation has no shared storage and always returns true, in-process coordination
+     * is enough for such providers.
+     *
+     * @param key - lock key
+     * @param token - unique value which identifies lock owner
+     * @return - true if lock is acquired
+     */
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        return true;
+    }
+
+    /**
+     * Releases lock if it's still owned by the given token
+     */
+    public void unlock(String key, String token) {
+    }
+
     /**
      * Removes all objects from cache
      */
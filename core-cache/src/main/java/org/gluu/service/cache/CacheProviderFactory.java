@@ -16,6 +16,8 @@ import org.slf4j.Logger;
 @Named
 public class CacheProviderFactory {
 
+    public static final String LOCAL_CACHE_METRICS_NAME = "local";
+
     @Inject
     private Logger log;
 
@@ -26,6 +28,9 @@ public class CacheProviderFactory {
     @Any
     private Instance<CacheProvider> instance;
 
+    @Inject
+    private CacheMetrics cacheMetrics;
+
     @Produces
     @ApplicationScoped
     public CacheProvider getCacheProvider() {
@@ -44,6 +49,53 @@ public class CacheProviderFactory {
         }
 
         // Create proxied bean
+        AbstractCacheProvider<?> cacheProvider = null;
+        if (CacheProviderType.TWO_TIER == cacheProviderType) {
+            TwoTierCacheProvider twoTierCacheProvider = instance.select(TwoTierCacheProvider.class).get();
+            twoTierCacheProvider.setRemoteCacheProvider(getRemoteCacheProvider(cacheConfiguration));
+
+            cacheProvider = twoTierCacheProvider;
+        } else {
+            cacheProvider = selectCacheProvider(cacheProviderType);
+        }
+
+        if (cacheProvider == null) {
+            throw new RuntimeException("Failed to initialize cacheProvider, cacheProviderType is unsupported: " + cacheProviderType);
+        }
+
+        cacheProvider.create();
+
+        if (cacheConfiguration.isMetricsEnabled()) {
+            return instrument(cacheProvider, cacheMetrics.getProviderMetrics(cacheProviderType));
+        }
+
+        return cacheProvider;
+	}
+
+    private static <T> InstrumentedCacheProvider<T> instrument(AbstractCacheProvider<T> cacheProvider, CacheProviderMetrics metrics) {
+        return new InstrumentedCacheProvider<T>(cacheProvider, metrics);
+    }
+
+    private AbstractCacheProvider<?> getRemoteCacheProvider(CacheConfiguration cacheConfiguration) {
+        TwoTierConfiguration twoTierConfiguration = cacheConfiguration.getTwoTierConfiguration();
+        CacheProviderType remoteCacheProviderType = twoTierConfiguration == null ? null : twoTierConfiguration.getRemoteCacheProviderType();
+        if ((remoteCacheProviderType == null) || (CacheProviderType.TWO_TIER == remoteCacheProviderType)) {
+            throw new RuntimeException("Failed to initialize TWO_TIER cacheProvider, remoteCacheProviderType is invalid: " + remoteCacheProviderType);
+        }
+
+        log.debug("Started to create remote cache provider for TWO_TIER cache provider, type: {}", remoteCacheProviderType);
+
+        AbstractCacheProvider<?> remoteCacheProvider = selectCacheProvider(remoteCacheProviderType);
+        if (remoteCacheProvider == null) {
+            throw new RuntimeException("Failed to initialize TWO_TIER cacheProvider, remoteCacheProviderType is unsupported: " + remoteCacheProviderType);
+        }
+
+        remoteCacheProvider.create();
+
+        return remoteCacheProvider;
+    }
+
+    private AbstractCacheProvider<?> selectCacheProvider(CacheProviderType cacheProviderType) {
         AbstractCacheProvider<?> cacheProvider = null;
         switch (cacheProviderType) {
             case IN_MEMORY:
@@ -58,16 +110,12 @@ public class CacheProviderFactory {
             case NATIVE_PERSISTENCE:
                 cacheProvider = instance.select(NativePersistenceCacheProvider.class).get();
                 break;
+            default:
+                break;
         }
 
-        if (cacheProvider == null) {
-            throw new RuntimeException("Failed to initialize cacheProvider, cacheProviderType is unsupported: " + cacheProviderType);
-        }
-
-        cacheProvider.create();
-
         return cacheProvider;
-	}
+    }
 
     @Produces
     @ApplicationScoped
@@ -84,6 +132,11 @@ public class CacheProviderFactory {
 
         cacheProvider.create();
 
+        if (cacheConfiguration.isMetricsEnabled()) {
+            // Separate name, so metrics of local cache aren't mixed with IN_MEMORY main cache
+            return instrument(cacheProvider, cacheMetrics.getProviderMetrics(LOCAL_CACHE_METRICS_NAME));
+        }
+
         return cacheProvider;
     }
 
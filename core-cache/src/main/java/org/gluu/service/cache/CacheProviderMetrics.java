@@ -0,0 +1,194 @@
+package org.gluu.service.cache;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+import redis.clients.jedis.util.Pool;
+
+/**
+ * Metrics of one cache provider: latency of operations in nanoseconds, hits and misses, serialized payload sizes
+ * in bytes, errors and connection pool state. All update methods are allocation free.
+ */
+public class CacheProviderMetrics {
+
+    private final CacheMetrics cacheMetrics;
+    private final String name;
+
+    private final Timer getTimer;
+    private final Timer putTimer;
+    private final Timer removeTimer;
+    private final Timer hasKeyTimer;
+    private final Timer getAllTimer;
+    private final Timer putAllTimer;
+    private final Timer removeAllTimer;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter errors;
+
+    private final Histogram writePayloadSize;
+    private final Histogram readPayloadSize;
+
+    private volatile Timer poolBorrowTimer;
+    private volatile Counter poolExhausted;
+
+    CacheProviderMetrics(CacheMetrics cacheMetrics, String name) {
+        this.cacheMetrics = cacheMetrics;
+        this.name = name;
+
+        this.getTimer = register("get", new Timer(new CacheHistogramReservoir()));
+        this.putTimer = register("put", new Timer(new CacheHistogramReservoir()));
+        this.removeTimer = register("remove", new Timer(new CacheHistogramReservoir()));
+        this.hasKeyTimer = register("hasKey", new Timer(new CacheHistogramReservoir()));
+        this.getAllTimer = register("getAll", new Timer(new CacheHistogramReservoir()));
+        this.putAllTimer = register("putAll", new Timer(new CacheHistogramReservoir()));
+        this.removeAllTimer = register("removeAll", new Timer(new CacheHistogramReservoir()));
+
+        this.hits = register("hits", new Counter());
+        this.misses = register("misses", new Counter());
+        this.errors = register("errors", new Counter());
+
+        register("hitRatio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hitsCount = hits.getCount();
+                return Ratio.of(hitsCount, hitsCount + misses.getCount());
+            }
+        });
+
+        this.writePayloadSize = register("payload.write", new Histogram(new CacheHistogramReservoir()));
+        this.readPayloadSize = register("payload.read", new Histogram(new CacheHistogramReservoir()));
+    }
+
+    private <M extends Metric> M register(String metricName, M metric) {
+        cacheMetrics.register(MetricRegistry.name(name, metricName), metric);
+        return metric;
+    }
+
+    public <T> void registerGauge(String metricName, Gauge<T> gauge) {
+        register(metricName, gauge);
+    }
+
+    /*
+     * Pools are resolved on each report, so gauges follow pools recreated by provider
+     */
+    public void registerPoolGauges(final Supplier<Collection<? extends Pool<?>>> pools) {
+        register("pool.active", poolGauge(pools, Pool::getNumActive, false));
+        register("pool.idle", poolGauge(pools, Pool::getNumIdle, false));
+        register("pool.waiters", poolGauge(pools, Pool::getNumWaiters, false));
+        register("pool.meanBorrowWait", poolGauge(pools, Pool::getMeanBorrowWaitTimeMillis, true));
+        register("pool.maxBorrowWait", poolGauge(pools, Pool::getMaxBorrowWaitTimeMillis, true));
+
+        if (poolBorrowTimer == null) {
+            poolBorrowTimer = register("pool.borrow", new Timer(new CacheHistogramReservoir()));
+            poolExhausted = register("pool.exhausted", new Counter());
+        }
+    }
+
+    private static Gauge<Long> poolGauge(final Supplier<Collection<? extends Pool<?>>> pools, final ToLongFunction<Pool<?>> value,
+            final boolean max) {
+        return () -> {
+            long result = 0;
+            Collection<? extends Pool<?>> currentPools = pools.get();
+            if (currentPools != null) {
+                for (Pool<?> pool : currentPools) {
+                    long poolValue = value.applyAsLong(pool);
+                    result = max ? Math.max(result, poolValue) : result + poolValue;
+                }
+            }
+
+            return result;
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void updateGet(long nanos, boolean hit) {
+        getTimer.update(nanos, TimeUnit.NANOSECONDS);
+        if (hit) {
+            hits.inc();
+        } else {
+            misses.inc();
+        }
+    }
+
+    public void updatePut(long nanos) {
+        putTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateRemove(long nanos) {
+        removeTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateHasKey(long nanos) {
+        hasKeyTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateGetAll(long nanos, int hitsCount, int missesCount) {
+        getAllTimer.update(nanos, TimeUnit.NANOSECONDS);
+        hits.inc(hitsCount);
+        misses.inc(missesCount);
+    }
+
+    public void updatePutAll(long nanos) {
+        putAllTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateRemoveAll(long nanos) {
+        removeAllTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void updateWritePayloadSize(int size) {
+        writePayloadSize.update(size);
+    }
+
+    public void updateReadPayloadSize(int size) {
+        readPayloadSize.update(size);
+    }
+
+    /*
+     * Time spent to borrow connection from pool. It's reported only after pool gauges registration
+     */
+    public void updatePoolBorrow(long nanos) {
+        Timer timer = poolBorrowTimer;
+        if (timer != null) {
+            timer.update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void markPoolExhausted() {
+        Counter counter = poolExhausted;
+        if (counter != null) {
+            counter.inc();
+        }
+    }
+
+    public void markError() {
+        errors.inc();
+    }
+
+    public long getHits() {
+        return hits.getCount();
+    }
+
+    public long getMisses() {
+        return misses.getCount();
+    }
+
+    public long getErrors() {
+        return errors.getCount();
+    }
+
+}
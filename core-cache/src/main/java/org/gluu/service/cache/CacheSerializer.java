@@ -0,0 +1,28 @@
+package org.gluu.service.cache;
+
+/**
+ * Serializer SPI used by cache providers to convert values to bytes and back
+ *
+ * Serializer id is stored in header byte written by {@link VersionedCacheSerializer}.
+ * It should be unique and stable to allow different formats to coexist in cache.
+ */
+public interface CacheSerializer {
+
+    /*
+     * Unique serializer id in range [0, 15]
+     */
+    int getId();
+
+    byte[] serialize(Object object);
+
+    Object deserialize(byte[] data, int offset, int length);
+
+    default Object deserialize(byte[] data) {
+        if ((data == null) || (data.length == 0)) {
+            return null;
+        }
+
+        return deserialize(data, 0, data.length);
+    }
+
+}
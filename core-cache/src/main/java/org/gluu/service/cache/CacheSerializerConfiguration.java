@@ -0,0 +1,63 @@
+package org.gluu.service.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Configuration of cache values serialization
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CacheSerializerConfiguration implements Serializable {
+
+    private static final long serialVersionUID = 3853915383390573912L;
+
+    @XmlElement(name = "serializerType")
+    private CacheSerializerType serializerType = CacheSerializerType.JAVA;
+
+    /**
+     * Serialized values bigger than threshold are compressed with LZ4. Zero or negative value disables compression
+     */
+    @XmlElement(name = "compressionThreshold")
+    private int compressionThreshold = 0; // in bytes
+
+    /**
+     * Classes registered in KRYO serializer. Order should be the same on all nodes
+     */
+    @XmlElement(name = "registeredClasses")
+    private List<String> registeredClasses = new ArrayList<String>();
+
+    public CacheSerializerType getSerializerType() {
+        return serializerType;
+    }
+
+    public void setSerializerType(CacheSerializerType serializerType) {
+        this.serializerType = serializerType;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public List<String> getRegisteredClasses() {
+        return registeredClasses;
+    }
+
+    public void setRegisteredClasses(List<String> registeredClasses) {
+        this.registeredClasses = registeredClasses;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheSerializerConfiguration{" + "serializerType=" + serializerType + ", compressionThreshold=" + compressionThreshold
+                + ", registeredClasses=" + registeredClasses + '}';
+    }
+}
@@ -0,0 +1,46 @@
+package org.gluu.service.cache;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * Memcached transcoder which uses cache serializer. Values written by other transcoder are decoded by fallback one
+ */
+public class CacheSerializerTranscoder implements Transcoder<Object> {
+
+    public static final int SERIALIZER_FLAG = 0x4000;
+
+    private final CacheSerializer serializer;
+
+    private final Transcoder<Object> fallbackTranscoder;
+
+    public CacheSerializerTranscoder(CacheSerializer serializer, Transcoder<Object> fallbackTranscoder) {
+        this.serializer = serializer;
+        this.fallbackTranscoder = fallbackTranscoder;
+    }
+
+    @Override
+    public boolean asyncDecode(CachedData data) {
+        return false;
+    }
+
+    @Override
+    public CachedData encode(Object object) {
+        return new CachedData(SERIALIZER_FLAG, serializer.serialize(object), getMaxSize());
+    }
+
+    @Override
+    public Object decode(CachedData data) {
+        if ((data.getFlags() & SERIALIZER_FLAG) == 0) {
+            return fallbackTranscoder.decode(data);
+        }
+
+        return serializer.deserialize(data.getData());
+    }
+
+    @Override
+    public int getMaxSize() {
+        return CachedData.MAX_SIZE;
+    }
+
+}
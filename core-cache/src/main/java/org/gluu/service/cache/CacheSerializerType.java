@@ -0,0 +1,11 @@
+package org.gluu.service.cache;
+
+import javax.xml.bind.annotation.XmlEnum;
+
+/**
+ * Supported cache value serializers
+ */
+@XmlEnum(String.class)
+public enum CacheSerializerType {
+    JAVA, KRYO
+}
@@ -0,0 +1,276 @@
+package org.gluu.service.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes cache entries by partitions of hashed key space. Partition is hex prefix of hashed key,
+ * e.g. 16 partitions "0".."f" or 256 partitions "00".."ff".
+ *
+ * Partitions are swept in parallel with concurrency limit. Each partition is removed by chunks
+ * till remover returns less entries than requested. Removals are throttled to configured rate and
+ * sweep ends when it removed configured count of entries.
+ *
+ * Completed partitions are kept in checkpoint only if sweep was cut short by removals limit, stop or
+ * interruption, so next sweep continues with not completed partitions. Sweep which attempted all
+ * pending partitions resets checkpoint, so next sweep starts with all partitions again. Failed
+ * partition doesn't prevent other partitions from being swept on next sweep.
+ */
+public class CacheSweeper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheSweeper.class);
+
+    private static final int MAX_PREFIX_LENGTH = 3;
+
+    private final String name;
+    private final int concurrency;
+    private final RateLimiter rateLimiter;
+    private final List<String> partitions;
+
+    private final Set<String> completedPartitions = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopped;
+
+    @FunctionalInterface
+    public interface PartitionRemover {
+
+        /**
+         * Removes up to count entries which hashed key starts with prefix
+         *
+         * @return count of removed entries
+         */
+        int remove(String prefix, int count) throws Exception;
+    }
+
+    public CacheSweeper(String name, int partitionsCount, int concurrency, int deletesPerSecond) {
+        this.name = name;
+        this.concurrency = Math.max(1, concurrency);
+        this.rateLimiter = deletesPerSecond > 0 ? new RateLimiter(deletesPerSecond) : null;
+        this.partitions = createPartitions(partitionsCount);
+    }
+
+    /**
+     * Sweeps all not completed partitions without limit of removed entries
+     *
+     * @return count of removed entries
+     */
+    public long sweep(int batchSize, PartitionRemover remover) {
+        return sweep(batchSize, 0, remover);
+    }
+
+    /**
+     * Sweeps not completed partitions till maxRemovedCount entries are removed. There is no limit if
+     * maxRemovedCount is 0
+     *
+     * @return count of removed entries
+     */
+    public long sweep(int batchSize, long maxRemovedCount, PartitionRemover remover) {
+        final int chunkSize = rateLimiter == null ? Math.max(1, batchSize) : Math.max(1, Math.min(batchSize, rateLimiter.getRate()));
+        final AtomicLong removedCount = new AtomicLong();
+        final AtomicLong budget = new AtomicLong(maxRemovedCount > 0 ? maxRemovedCount : Long.MAX_VALUE);
+
+        if (stopped) {
+            return 0;
+        }
+
+        List<String> pendingPartitions = getPendingPartitions();
+        if (pendingPartitions.isEmpty()) {
+            completedPartitions.clear();
+            pendingPartitions = getPendingPartitions();
+        } else if (pendingPartitions.size() < partitions.size()) {
+            LOG.debug("Resume {} sweep from checkpoint, pending partitions: {}", name, pendingPartitions.size());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, pendingPartitions.size()), new SweeperThreadFactory(name));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(pendingPartitions.size());
+            for (final String prefix : pendingPartitions) {
+                futures.add(executor.submit(() -> sweepPartition(prefix, chunkSize, remover, removedCount, budget)));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            LOG.error("Failed to perform " + name + " sweep", ex);
+        } finally {
+            executor.shutdown();
+        }
+
+        boolean cutShort = (budget.get() <= 0) || isInterrupted();
+        if (!cutShort) {
+            completedPartitions.clear();
+        } else if (budget.get() <= 0) {
+            LOG.debug("Reached {} sweep limit of removed entries {}, pending partitions: {}", name, maxRemovedCount, getPendingPartitions().size());
+        }
+
+        return removedCount.get();
+    }
+
+    private void sweepPartition(String prefix, int chunkSize, PartitionRemover remover, AtomicLong removedCount, AtomicLong budget) {
+        try {
+            while (!isInterrupted()) {
+                int requested = reserve(budget, chunkSize);
+                if (requested == 0) {
+                    return;
+                }
+
+                int removed = remover.remove(prefix, requested);
+                removedCount.addAndGet(removed);
+                if (removed < requested) {
+                    budget.addAndGet(requested - removed);
+                }
+
+                if (rateLimiter != null) {
+                    rateLimiter.acquire(removed);
+                }
+
+                if (removed < requested) {
+                    completedPartitions.add(prefix);
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            LOG.warn("Failed to sweep partition '{}' of {}, it will be retried on next sweep. Message: {}", prefix, name, ex.getMessage());
+        }
+    }
+
+    /*
+     * Takes up to chunkSize removals from budget. Returns 0 if budget is exhausted
+     */
+    private static int reserve(AtomicLong budget, int chunkSize) {
+        while (true) {
+            long available = budget.get();
+            if (available <= 0) {
+                return 0;
+            }
+
+            int requested = (int) Math.min(chunkSize, available);
+            if (budget.compareAndSet(available, available - requested)) {
+                return requested;
+            }
+        }
+    }
+
+    private boolean isInterrupted() {
+        return stopped || Thread.currentThread().isInterrupted();
+    }
+
+    /*
+     * Stops running sweep after current chunks. Checkpoint is kept
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean hasCheckpoint() {
+        return !completedPartitions.isEmpty();
+    }
+
+    public List<String> getPendingPartitions() {
+        List<String> result = new ArrayList<String>(partitions.size());
+        for (String prefix : partitions) {
+            if (!completedPartitions.contains(prefix)) {
+                result.add(prefix);
+            }
+        }
+
+        return result;
+    }
+
+    public List<String> getPartitions() {
+        return partitions;
+    }
+
+    /*
+     * Rounds partitions count up to power of 16
+     */
+    private static List<String> createPartitions(int partitionsCount) {
+        int prefixLength = 1;
+        int count = 16;
+        while ((count < partitionsCount) && (prefixLength < MAX_PREFIX_LENGTH)) {
+            prefixLength++;
+            count *= 16;
+        }
+
+        List<String> result = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder prefix = new StringBuilder(Integer.toHexString(i));
+            while (prefix.length() < prefixLength) {
+                prefix.insert(0, '0');
+            }
+            result.add(prefix.toString());
+        }
+
+        return result;
+    }
+
+    /*
+     * Shared between partitions. Removals are paid after they are done, so average rate does not exceed limit.
+     * One second of removals is allowed as burst
+     */
+    private static class RateLimiter {
+
+        private final int rate;
+        private final long intervalNanos;
+
+        private long nextFreeTime = System.nanoTime();
+
+        RateLimiter(int rate) {
+            this.rate = rate;
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        }
+
+        int getRate() {
+            return rate;
+        }
+
+        void acquire(int permits) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeTime = Math.max(now, nextFreeTime) + permits * intervalNanos;
+                waitNanos = nextFreeTime - now - TimeUnit.SECONDS.toNanos(1);
+            }
+
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    private static class SweeperThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        SweeperThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-sweeper-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
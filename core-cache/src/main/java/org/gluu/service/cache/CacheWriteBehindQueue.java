@@ -0,0 +1,281 @@
+package org.gluu.service.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalescing queue of pending cache writes. Only last write per key is kept.
+ *
+ * Writes are passed to writer by batches when queue reaches batch size or on flush interval.
+ * Write stays visible with {@link #get(String)} till writer finishes it. Batch which writer fails
+ * stays in queue and is retried with exponential backoff till write reaches max attempts. If queue reaches max size caller of new
+ * key waits up to flush interval while flush thread frees space.
+ */
+public class CacheWriteBehindQueue<V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheWriteBehindQueue.class);
+
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int MAX_WRITE_ATTEMPTS = 10;
+
+    private final String name;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxSize;
+    private final Consumer<List<PendingWrite<V>>> writer;
+
+    private final Map<String, PendingWrite<V>> pendingWrites = new ConcurrentHashMap<String, PendingWrite<V>>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Object capacityMonitor = new Object();
+
+    private ScheduledExecutorService flushExecutor;
+
+    // Guarded by flushLock
+    private int failedFlushCount;
+    private long retryTime;
+
+    public CacheWriteBehindQueue(String name, int batchSize, long flushInterval, int maxSize, Consumer<List<PendingWrite<V>>> writer) {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.maxSize = Math.max(this.batchSize, maxSize);
+        this.writer = writer;
+    }
+
+    public void start() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(() -> flush(false), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Stops flush thread and writes all pending writes
+     */
+    public void stop() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+
+        int size = pendingWrites.size();
+        if (size > 0) {
+            LOG.error("Failed to write {} pending cache entries on stop", size);
+        }
+    }
+
+    public void put(String key, V value) {
+        enqueue(new PendingWrite<V>(key, value));
+    }
+
+    public void remove(String key) {
+        enqueue(new PendingWrite<V>(key, null));
+    }
+
+    /*
+     * Returns not yet written operation for key or null if there is no such operation
+     */
+    public PendingWrite<V> get(String key) {
+        return pendingWrites.get(key);
+    }
+
+    public int size() {
+        return pendingWrites.size();
+    }
+
+    /*
+     * Drops all pending writes
+     */
+    public void clear() {
+        pendingWrites.clear();
+        signalCapacity();
+    }
+
+    private void enqueue(PendingWrite<V> write) {
+        if ((pendingWrites.size() >= maxSize) && !pendingWrites.containsKey(write.getKey())) {
+            // Writer doesn't keep up with callers
+            awaitCapacity();
+        }
+
+        pendingWrites.put(write.getKey(), write);
+
+        if (pendingWrites.size() >= batchSize) {
+            scheduleFlush();
+        }
+    }
+
+    /*
+     * Waits while flush thread frees space. Write is queued after timeout anyway to not lose it
+     */
+    private void awaitCapacity() {
+        if (!scheduleFlush()) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + flushInterval;
+        synchronized (capacityMonitor) {
+            long waitTime;
+            while ((pendingWrites.size() >= maxSize) && ((waitTime = deadline - System.currentTimeMillis()) > 0)) {
+                try {
+                    capacityMonitor.wait(waitTime);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void signalCapacity() {
+        synchronized (capacityMonitor) {
+            capacityMonitor.notifyAll();
+        }
+    }
+
+    /*
+     * Returns false if there is no flush thread
+     */
+    private boolean scheduleFlush() {
+        if ((flushExecutor == null) || flushExecutor.isShutdown()) {
+            return false;
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> flush(false));
+            } catch (Exception ex) {
+                flushScheduled.set(false);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Writes all pending writes ignoring retry backoff
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    private void flush(boolean force) {
+        flushLock.lock();
+        try {
+            flushScheduled.set(false);
+            if (!force && (System.currentTimeMillis() < retryTime)) {
+                return;
+            }
+
+            List<PendingWrite<V>> batch = new ArrayList<PendingWrite<V>>(batchSize);
+            for (PendingWrite<V> write : pendingWrites.values()) {
+                batch.add(write);
+                if (batch.size() >= batchSize) {
+                    if (!writeBatch(batch)) {
+                        return;
+                    }
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /*
+     * Returns false if writer failed. Failed writes stay in queue and rest of flush is postponed
+     */
+    private boolean writeBatch(List<PendingWrite<V>> batch) {
+        try {
+            writer.accept(batch);
+        } catch (Exception ex) {
+            failedFlushCount++;
+            long retryDelay = Math.min(MAX_RETRY_DELAY, flushInterval << Math.min(failedFlushCount, 16));
+            retryTime = System.currentTimeMillis() + retryDelay;
+            LOG.error("Failed to write batch of {} cache entries, retry in {} ms", batch.size(), retryDelay, ex);
+
+            int droppedCount = 0;
+            for (PendingWrite<V> write : batch) {
+                // Don't let entry which writer can't store block queue forever
+                if ((++write.attempts >= MAX_WRITE_ATTEMPTS) && pendingWrites.remove(write.getKey(), write)) {
+                    droppedCount++;
+                }
+            }
+            if (droppedCount > 0) {
+                LOG.error("Dropped {} cache entries after {} failed write attempts", droppedCount, MAX_WRITE_ATTEMPTS);
+                signalCapacity();
+            }
+
+            return false;
+        }
+
+        failedFlushCount = 0;
+        retryTime = 0;
+
+        for (PendingWrite<V> write : batch) {
+            // Keep newer write for the same key
+            pendingWrites.remove(write.getKey(), write);
+        }
+        signalCapacity();
+
+        return true;
+    }
+
+    public static final class PendingWrite<V> {
+
+        private final String key;
+        private final V value;
+
+        // Guarded by flushLock
+        private int attempts;
+
+        private PendingWrite(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /*
+         * Value is null for remove operation
+         */
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isRemove() {
+            return value == null;
+        }
+    }
+
+}
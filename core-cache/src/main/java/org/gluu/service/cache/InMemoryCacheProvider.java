@@ -9,9 +9,20 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * In-memory cache provider. Default type keeps entries in {@link ExpiringMap} returned by {@link #getDelegate()}.
+ * BOUNDED and OFF_HEAP types keep entries in {@link InMemoryStore} returned by {@link #getStore()}. For these types
+ * {@link #getDelegate()} returns empty map, ExpiringMap specific use of delegate isn't supported for them.
+ *
  * @author yuriyz on 02/21/2017.
  */
 
@@ -26,6 +37,12 @@ public class InMemoryCacheProvider extends AbstractCacheProvider<ExpiringMap> {
 
     private ExpiringMap<String, Object> map = ExpiringMap.builder().build();
 
+    private InMemoryStore store;
+
+    private InMemoryCacheSnapshot snapshot;
+
+    private ScheduledExecutorService snapshotExecutor;
+
     private InMemoryConfiguration inMemoryConfiguration;
 
     public InMemoryCacheProvider() {
@@ -39,7 +56,27 @@ public class InMemoryCacheProvider extends AbstractCacheProvider<ExpiringMap> {
     public void create() {
     	log.debug("Starting InMemoryCacheProvider ...");
         try {
-            map = ExpiringMap.builder().expirationPolicy(ExpirationPolicy.CREATED).variableExpiration().build();
+            stopSnapshots();
+
+            // Release memory and mapped file of store created before configuration update
+            InMemoryStore previousStore = store;
+            store = null;
+            if (previousStore != null) {
+                previousStore.close();
+            }
+            map.clear();
+
+            InMemoryConfiguration currentConfiguration = cacheConfiguration.getInMemoryConfiguration();
+            if (currentConfiguration.getType() == InMemoryCacheType.BOUNDED) {
+                store = new TinyLfuCache(currentConfiguration.getMaxEntries(), currentConfiguration.getMaxWeight());
+            } else if (currentConfiguration.getType() == InMemoryCacheType.OFF_HEAP) {
+                store = new OffHeapCache(currentConfiguration.getOffHeapCapacity(), currentConfiguration.getOffHeapSlabSize(),
+                        currentConfiguration.getOffHeapMappedFile(), VersionedCacheSerializer.create(cacheConfiguration.getSerializerConfiguration()));
+            } else {
+                map = ExpiringMap.builder().expirationPolicy(ExpirationPolicy.CREATED).variableExpiration().build();
+            }
+
+            startSnapshots(currentConfiguration);
 
             log.debug("InMemoryCacheProvider started.");
         } catch (Exception e) {
@@ -56,7 +93,16 @@ public class InMemoryCacheProvider extends AbstractCacheProvider<ExpiringMap> {
     public void destroy() {
     	log.debug("Destroying InMemoryCacheProvider");
 
-        map.clear();
+        if (stopSnapshots()) {
+            // Last snapshot allows to start next time with warm cache
+            saveSnapshot();
+        }
+
+        if (store != null) {
+            store.close();
+        } else {
+            map.clear();
+        }
 
         log.debug("Destroyed InMemoryCacheProvider");
     }
@@ -66,37 +112,184 @@ public class InMemoryCacheProvider extends AbstractCacheProvider<ExpiringMap> {
         return map;
     }
 
+    /*
+     * Returns null when default cache type is used
+     */
+    public InMemoryStore getStore() {
+        return store;
+    }
+
 	@Override
 	public boolean hasKey(String key) {
+		if (store != null) {
+			return store.containsKey(key);
+		}
+
 		return map.containsKey(key);
 	}
 
     @Override
     public Object get(String key) {
+        if (store != null) {
+            return store.get(key);
+        }
+
         return map.get(key);
     }
 
     @Override
     public void put(int expirationInSeconds, String key, Object object) {
+        expirationInSeconds = expirationInSeconds >= 0 ? expirationInSeconds : inMemoryConfiguration.getDefaultPutExpiration();
+        if (store != null) {
+            store.put(key, object, expirationInSeconds * 1000L);
+            return;
+        }
+
         // if key already exists and hash is the same for value then expiration time is
         // not updated
         // net.jodah.expiringmap.ExpiringMap.putInternal()
         // therefore we first remove entry and then put it
         map.remove(key);
-        expirationInSeconds = expirationInSeconds >= 0 ? expirationInSeconds : inMemoryConfiguration.getDefaultPutExpiration();
         map.put(key, object, ExpirationPolicy.CREATED, expirationInSeconds, TimeUnit.SECONDS);
     }
 
     @Override
     public void remove(String key) {
+        if (store != null) {
+            store.remove(key);
+            return;
+        }
+
         map.remove(key);
     }
 
     @Override
     public void clear() {
+        if (store != null) {
+            store.clear();
+            return;
+        }
+
         map.clear();
     }
 
+    /*
+     * Bounded and off-heap stores reuse memory of expired entries on writes. Periodic clean up
+     * releases it when cache is idle
+     */
+    @Override
+    public void cleanup(final Date now) {
+        if (store != null) {
+            store.cleanUp();
+        }
+    }
+
+    @Override
+    public void setMetrics(CacheProviderMetrics metrics) {
+        super.setMetrics(metrics);
+        if (metrics == null) {
+            return;
+        }
+
+        metrics.registerGauge("size", () -> store == null ? map.size() : store.size());
+        metrics.registerGauge("weightedSize", () -> store == null ? map.size() : store.weightedSize());
+        metrics.registerGauge("evictions", () -> store == null ? 0L : store.getEvictionCount());
+        metrics.registerGauge("evictionWeight", () -> store == null ? 0L : store.getEvictionWeight());
+        metrics.registerGauge("expirations", () -> store == null ? 0L : store.getExpirationCount());
+
+        if (store instanceof OffHeapCache) {
+            OffHeapCache offHeapCache = (OffHeapCache) store;
+            offHeapCache.setSerializer(InstrumentedCacheSerializer.wrap(offHeapCache.getSerializer(), metrics));
+        }
+    }
+
+    /*
+     * Visit not expired entries, used to write snapshot
+     */
+    public void forEachEntry(InMemoryStore.EntryVisitor visitor) {
+        if (store != null) {
+            store.forEachEntry(visitor);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            try {
+                long expiration = map.getExpectedExpiration(entry.getKey());
+                if (expiration > 0) {
+                    visitor.visit(entry.getKey(), entry.getValue(), now + expiration);
+                }
+            } catch (NoSuchElementException ex) {
+                // Entry was removed concurrently
+            }
+        }
+    }
+
+    private void startSnapshots(InMemoryConfiguration currentConfiguration) {
+        String snapshotFile = currentConfiguration.getSnapshotFile();
+        if ((snapshotFile == null) || snapshotFile.trim().isEmpty()) {
+            return;
+        }
+
+        this.snapshot = new InMemoryCacheSnapshot(Paths.get(snapshotFile), VersionedCacheSerializer.create(cacheConfiguration.getSerializerConfiguration()));
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "in-memory-cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Periodic snapshots start after load to not overwrite file with empty cache
+        if (currentConfiguration.isSnapshotLoadInBackground()) {
+            snapshotExecutor.execute(this::loadSnapshot);
+        } else {
+            loadSnapshot();
+        }
+
+        int interval = currentConfiguration.getSnapshotInterval();
+        if (interval > 0) {
+            snapshotExecutor.scheduleWithFixedDelay(this::saveSnapshot, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * Returns true if snapshots were enabled
+     */
+    private boolean stopSnapshots() {
+        if (snapshotExecutor == null) {
+            return false;
+        }
+
+        snapshotExecutor.shutdownNow();
+        try {
+            snapshotExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotExecutor = null;
+
+        return true;
+    }
+
+    private void loadSnapshot() {
+        long startTime = System.currentTimeMillis();
+        try {
+            int count = snapshot.load(this);
+            log.info("Loaded {} entries from cache snapshot '{}' in {} ms", count, snapshot.getFile(), System.currentTimeMillis() - startTime);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Failed to load cache snapshot '{}'", snapshot.getFile(), ex);
+        }
+    }
+
+    private void saveSnapshot() {
+        long startTime = System.currentTimeMillis();
+        try {
+            int count = snapshot.write(this);
+            log.debug("Saved {} entries to cache snapshot '{}' in {} ms", count, snapshot.getFile(), System.currentTimeMillis() - startTime);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Failed to save cache snapshot '{}'", snapshot.getFile(), ex);
+        }
+    }
+
     public void setCacheConfiguration(CacheConfiguration cacheConfiguration) {
         this.cacheConfiguration = cacheConfiguration;
     }
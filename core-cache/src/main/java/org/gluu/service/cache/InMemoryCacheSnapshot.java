@@ -0,0 +1,312 @@
+package org.gluu.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshot of IN_MEMORY cache provider entries in local file. It allows node to start with warm cache after restart.
+ *
+ * Entries are written sequentially with NIO channel to temporary file which replaces snapshot when it's complete.
+ * Entry is stored with absolute expiration time, so on load it gets remaining TTL and downtime is taken into account.
+ * Values which can't be serialized are skipped.
+ *
+ * Loaded data is deserialized, so snapshot is created with owner only (rw-------) permissions and file which isn't
+ * owned by process user or is writable by group or others isn't loaded.
+ *
+ * File format: magic, version, creation time, then entries (key length, key in UTF-8, expiration time, data length,
+ * serialized data) terminated by -1 key length.
+ */
+public class InMemoryCacheSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryCacheSnapshot.class);
+
+    private static final int MAGIC = 0x47435331; // GCS1
+    private static final int VERSION = 1;
+
+    private static final int END_OF_ENTRIES = -1;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int MAX_KEY_LENGTH = 64 * 1024;
+    private static final int MAX_DATA_LENGTH = 256 * 1024 * 1024;
+
+    private static final Set<PosixFilePermission> NOT_TRUSTED_PERMISSIONS = EnumSet.of(PosixFilePermission.GROUP_WRITE,
+            PosixFilePermission.OTHERS_WRITE);
+
+    private static volatile UserPrincipal processUser;
+
+    private final Path file;
+
+    private final CacheSerializer serializer;
+
+    public InMemoryCacheSnapshot(Path file, CacheSerializer serializer) {
+        this.file = file;
+        this.serializer = serializer;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /*
+     * Write not expired entries of cache provider. Returns count of written entries
+     */
+    public int write(InMemoryCacheProvider cacheProvider) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        // Permissions are set on creation only, so file left by previous run is replaced
+        Files.deleteIfExists(tmpFile);
+
+        SnapshotWriter writer;
+        try (FileChannel channel = FileChannel.open(tmpFile, EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                ownerOnlyAttributes(tmpFile))) {
+            writer = new SnapshotWriter(channel);
+            writer.writeHeader();
+            try {
+                cacheProvider.forEachEntry(writer::writeEntry);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            writer.finish();
+            channel.force(false);
+        }
+
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (writer.skipped > 0) {
+            LOG.debug("Skipped {} entries which can't be serialized in cache snapshot '{}'", writer.skipped, file);
+        }
+
+        return writer.written;
+    }
+
+    /*
+     * Put entries which aren't expired yet to cache provider. Entries which were put to cache after start are kept.
+     * Returns count of loaded entries
+     */
+    public int load(InMemoryCacheProvider cacheProvider) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        if (!isTrusted(file)) {
+            LOG.warn("Cache snapshot '{}' isn't owned by process user or is writable by other users, it won't be loaded", file);
+            return 0;
+        }
+
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)),
+                BUFFER_SIZE))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                LOG.warn("Cache snapshot '{}' has unsupported format, it will be overwritten", file);
+                return 0;
+            }
+            in.readLong(); // creation time
+
+            int keyLength;
+            while ((keyLength = in.readInt()) != END_OF_ENTRIES) {
+                if ((keyLength < 0) || (keyLength > MAX_KEY_LENGTH)) {
+                    throw new IOException("Cache snapshot is corrupted, key length: " + keyLength);
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+
+                long expiresAt = in.readLong();
+
+                int dataLength = in.readInt();
+                if ((dataLength < 0) || (dataLength > MAX_DATA_LENGTH)) {
+                    throw new IOException("Cache snapshot is corrupted, data length: " + dataLength);
+                }
+                byte[] data = new byte[dataLength];
+                in.readFully(data);
+
+                if (loadEntry(cacheProvider, new String(key, StandardCharsets.UTF_8), data, expiresAt)) {
+                    loaded++;
+                }
+            }
+        } catch (EOFException ex) {
+            LOG.warn("Cache snapshot '{}' is truncated, loaded {} entries", file, loaded);
+        }
+
+        return loaded;
+    }
+
+    private static FileAttribute<?>[] ownerOnlyAttributes(Path path) {
+        if (!isPosix(path)) {
+            return new FileAttribute<?>[0];
+        }
+
+        return new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")) };
+    }
+
+    /*
+     * File should be regular file owned by process user and not writable by group and others
+     */
+    private static boolean isTrusted(Path path) throws IOException {
+        if (!isPosix(path)) {
+            return true;
+        }
+
+        PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isRegularFile() || !attributes.owner().equals(getProcessUser())) {
+            return false;
+        }
+
+        for (PosixFilePermission permission : attributes.permissions()) {
+            if (NOT_TRUSTED_PERMISSIONS.contains(permission)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /*
+     * Owner of new file is process user
+     */
+    private static UserPrincipal getProcessUser() throws IOException {
+        if (processUser == null) {
+            Path probe = Files.createTempFile("cache-snapshot", ".tmp");
+            try {
+                processUser = Files.getOwner(probe);
+            } finally {
+                Files.deleteIfExists(probe);
+            }
+        }
+
+        return processUser;
+    }
+
+    private boolean loadEntry(InMemoryCacheProvider cacheProvider, String key, byte[] data, long expiresAt) {
+        int expirationInSeconds = (int) Math.min((expiresAt - System.currentTimeMillis()) / 1000, Integer.MAX_VALUE);
+        if ((expirationInSeconds <= 0) || cacheProvider.hasKey(key)) {
+            return false;
+        }
+
+        Object value;
+        try {
+            value = serializer.deserialize(data);
+        } catch (RuntimeException ex) {
+            LOG.debug("Failed to deserialize cache snapshot entry, key: {}", key, ex);
+            return false;
+        }
+        if (value == null) {
+            return false;
+        }
+
+        cacheProvider.put(expirationInSeconds, key, value);
+
+        return true;
+    }
+
+    private final class SnapshotWriter {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private int written;
+        private int skipped;
+
+        private SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void writeHeader() {
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(System.currentTimeMillis());
+        }
+
+        private void writeEntry(String key, Object value, long expiresAt) {
+            byte[] data;
+            try {
+                data = serializer.serialize(value);
+            } catch (RuntimeException ex) {
+                skipped++;
+                return;
+            }
+
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int entrySize = 4 + keyBytes.length + 8 + 4 + data.length;
+            try {
+                if (buffer.remaining() < entrySize) {
+                    flush();
+                }
+
+                ByteBuffer target = buffer.remaining() < entrySize ? ByteBuffer.allocate(entrySize) : buffer;
+                target.putInt(keyBytes.length);
+                target.put(keyBytes);
+                target.putLong(expiresAt);
+                target.putInt(data.length);
+                target.put(data);
+
+                if (target != buffer) {
+                    // Entry is bigger than buffer
+                    target.flip();
+                    writeFully(target);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            written++;
+        }
+
+        private void finish() throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(END_OF_ENTRIES);
+            flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+
+}
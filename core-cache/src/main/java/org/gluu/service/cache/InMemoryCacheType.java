@@ -0,0 +1,8 @@
+package org.gluu.service.cache;
+
+/**
+ * Storage of IN_MEMORY cache provider: unbounded expiring map, bounded W-TinyLFU cache or off-heap slabs
+ */
+public enum InMemoryCacheType {
+    EXPIRING_MAP, BOUNDED, OFF_HEAP
+}
@@ -18,6 +18,33 @@ public class InMemoryConfiguration implements Serializable {
     @XmlElement(name = "defaultPutExpiration")
     private int defaultPutExpiration = 60; // in seconds
 
+    @XmlElement(name = "type")
+    private InMemoryCacheType type = InMemoryCacheType.EXPIRING_MAP;
+
+    @XmlElement(name = "maxEntries")
+    private int maxEntries = 100000;
+
+    @XmlElement(name = "maxWeight")
+    private long maxWeight = 0; // estimated size in bytes, takes precedence over maxEntries when positive
+
+    @XmlElement(name = "offHeapCapacity")
+    private long offHeapCapacity = 256L * 1024 * 1024; // in bytes
+
+    @XmlElement(name = "offHeapSlabSize")
+    private int offHeapSlabSize = 1024 * 1024; // in bytes
+
+    @XmlElement(name = "offHeapMappedFile")
+    private String offHeapMappedFile; // slabs are direct buffers if not set
+
+    @XmlElement(name = "snapshotFile")
+    private String snapshotFile; // snapshots are disabled if not set
+
+    @XmlElement(name = "snapshotInterval")
+    private int snapshotInterval = 300; // in seconds
+
+    @XmlElement(name = "snapshotLoadInBackground")
+    private boolean snapshotLoadInBackground = true;
+
     public int getDefaultPutExpiration() {
         return defaultPutExpiration;
     }
@@ -26,8 +53,83 @@ public class InMemoryConfiguration implements Serializable {
         this.defaultPutExpiration = defaultPutExpiration;
     }
 
+    public InMemoryCacheType getType() {
+        return type;
+    }
+
+    public void setType(InMemoryCacheType type) {
+        this.type = type;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public void setOffHeapCapacity(long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public int getOffHeapSlabSize() {
+        return offHeapSlabSize;
+    }
+
+    public void setOffHeapSlabSize(int offHeapSlabSize) {
+        this.offHeapSlabSize = offHeapSlabSize;
+    }
+
+    public String getOffHeapMappedFile() {
+        return offHeapMappedFile;
+    }
+
+    public void setOffHeapMappedFile(String offHeapMappedFile) {
+        this.offHeapMappedFile = offHeapMappedFile;
+    }
+
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public boolean isSnapshotLoadInBackground() {
+        return snapshotLoadInBackground;
+    }
+
+    public void setSnapshotLoadInBackground(boolean snapshotLoadInBackground) {
+        this.snapshotLoadInBackground = snapshotLoadInBackground;
+    }
+
     @Override
     public String toString() {
-        return "InMemoryConfiguration{" + "defaultPutExpiration=" + defaultPutExpiration + '}';
+        return "InMemoryConfiguration{" + "defaultPutExpiration=" + defaultPutExpiration + ", type=" + type + ", maxEntries=" + maxEntries
+                + ", maxWeight=" + maxWeight + ", offHeapCapacity=" + offHeapCapacity + ", offHeapSlabSize=" + offHeapSlabSize + ", offHeapMappedFile='"
+                + offHeapMappedFile + '\'' + ", snapshotFile='" + snapshotFile + '\'' + ", snapshotInterval=" + snapshotInterval
+                + ", snapshotLoadInBackground=" + snapshotLoadInBackground + '}';
     }
 }
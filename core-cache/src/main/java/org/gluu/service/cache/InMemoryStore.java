@@ -0,0 +1,55 @@
+package org.gluu.service.cache;
+
+/**
+ * Storage of IN_MEMORY cache provider used instead of expiring map by BOUNDED and OFF_HEAP cache types
+ */
+public interface InMemoryStore {
+
+    Object get(String key);
+
+    boolean containsKey(String key);
+
+    /*
+     * Put value with TTL. Zero or negative TTL removes entry
+     */
+    void put(String key, Object value, long ttlInMillis);
+
+    void remove(String key);
+
+    void clear();
+
+    /*
+     * Remove expired entries
+     */
+    void cleanUp();
+
+    int size();
+
+    /*
+     * Entries count or estimated size in bytes if store is weighted
+     */
+    long weightedSize();
+
+    long getEvictionCount();
+
+    long getEvictionWeight();
+
+    long getExpirationCount();
+
+    default void close() {
+        clear();
+    }
+
+    /*
+     * Visit not expired entries. Iteration is weakly consistent, concurrent updates may be missed
+     */
+    void forEachEntry(EntryVisitor visitor);
+
+    @FunctionalInterface
+    interface EntryVisitor {
+
+        void visit(String key, Object value, long expiresAt);
+
+    }
+
+}
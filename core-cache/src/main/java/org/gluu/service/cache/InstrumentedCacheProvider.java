@@ -0,0 +1,202 @@
+package org.gluu.service.cache;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Cache provider decorator which records operations latency, hits, misses and errors
+ * in {@link CacheProviderMetrics}. Wrapped provider gets the same metrics to record
+ * payload sizes and pool state.
+ */
+public class InstrumentedCacheProvider<T> extends AbstractCacheProvider<T> {
+
+    private final AbstractCacheProvider<T> cacheProvider;
+
+    private final CacheProviderMetrics metrics;
+
+    public InstrumentedCacheProvider(AbstractCacheProvider<T> cacheProvider, CacheProviderMetrics metrics) {
+        this.cacheProvider = cacheProvider;
+        this.metrics = metrics;
+
+        super.setMetrics(metrics);
+        cacheProvider.setMetrics(metrics);
+    }
+
+    public AbstractCacheProvider<T> getCacheProvider() {
+        return cacheProvider;
+    }
+
+    @Override
+    public void create() {
+        cacheProvider.create();
+        cacheProvider.setMetrics(metrics);
+    }
+
+    @Override
+    public void destroy() {
+        cacheProvider.destroy();
+    }
+
+    @Override
+    public T getDelegate() {
+        return cacheProvider.getDelegate();
+    }
+
+    @Override
+    public boolean hasKey(String key) {
+        long start = System.nanoTime();
+        try {
+            return cacheProvider.hasKey(key);
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updateHasKey(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Object get(String key) {
+        long start = System.nanoTime();
+        Object value = null;
+        try {
+            value = cacheProvider.get(key);
+            return value;
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updateGet(System.nanoTime() - start, value != null);
+        }
+    }
+
+    @Override
+    public void put(int expirationInSeconds, String key, Object object) {
+        long start = System.nanoTime();
+        try {
+            cacheProvider.put(expirationInSeconds, key, object);
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updatePut(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        long start = System.nanoTime();
+        try {
+            cacheProvider.remove(key);
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updateRemove(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        Map<String, Object> result = null;
+        try {
+            result = cacheProvider.getAll(keys);
+            return result;
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            int keysCount = keys == null ? 0 : keys.size();
+            int hitsCount = result == null ? 0 : result.size();
+            metrics.updateGetAll(System.nanoTime() - start, hitsCount, Math.max(0, keysCount - hitsCount));
+        }
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        long start = System.nanoTime();
+        try {
+            cacheProvider.putAll(expirationInSeconds, entries);
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updatePutAll(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            cacheProvider.removeAll(keys);
+        } catch (RuntimeException ex) {
+            metrics.markError();
+            throw ex;
+        } finally {
+            metrics.updateRemoveAll(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CompletionStage<Object> getAsync(String key) {
+        final long start = System.nanoTime();
+        return cacheProvider.getAsync(key).whenComplete((value, ex) -> {
+            if (ex != null) {
+                metrics.markError();
+            }
+            metrics.updateGet(System.nanoTime() - start, value != null);
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+        final long start = System.nanoTime();
+        return cacheProvider.putAsync(expirationInSeconds, key, object).whenComplete((value, ex) -> {
+            if (ex != null) {
+                metrics.markError();
+            }
+            metrics.updatePut(System.nanoTime() - start);
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key) {
+        final long start = System.nanoTime();
+        return cacheProvider.removeAsync(key).whenComplete((value, ex) -> {
+            if (ex != null) {
+                metrics.markError();
+            }
+            metrics.updateRemove(System.nanoTime() - start);
+        });
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        return cacheProvider.tryLock(key, token, expirationInSeconds);
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        cacheProvider.unlock(key, token);
+    }
+
+    @Override
+    public void clear() {
+        cacheProvider.clear();
+    }
+
+    @Override
+    public void cleanup(Date now) {
+        cacheProvider.cleanup(now);
+    }
+
+    @Override
+    public CacheProviderType getProviderType() {
+        return cacheProvider.getProviderType();
+    }
+
+}
@@ -0,0 +1,54 @@
+package org.gluu.service.cache;
+
+/**
+ * Serializer decorator which records serialized payload sizes
+ */
+public class InstrumentedCacheSerializer implements CacheSerializer {
+
+    private final CacheSerializer serializer;
+
+    private final CacheProviderMetrics metrics;
+
+    public InstrumentedCacheSerializer(CacheSerializer serializer, CacheProviderMetrics metrics) {
+        this.serializer = serializer;
+        this.metrics = metrics;
+    }
+
+    public static CacheSerializer wrap(CacheSerializer serializer, CacheProviderMetrics metrics) {
+        if (serializer instanceof InstrumentedCacheSerializer) {
+            serializer = ((InstrumentedCacheSerializer) serializer).getSerializer();
+        }
+        if (metrics == null) {
+            return serializer;
+        }
+
+        return new InstrumentedCacheSerializer(serializer, metrics);
+    }
+
+    @Override
+    public int getId() {
+        return serializer.getId();
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        byte[] data = serializer.serialize(object);
+        if (data != null) {
+            metrics.updateWritePayloadSize(data.length);
+        }
+
+        return data;
+    }
+
+    @Override
+    public Object deserialize(byte[] data, int offset, int length) {
+        metrics.updateReadPayloadSize(length);
+
+        return serializer.deserialize(data, offset, length);
+    }
+
+    public CacheSerializer getSerializer() {
+        return serializer;
+    }
+
+}
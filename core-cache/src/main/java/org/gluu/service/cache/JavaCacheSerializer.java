@@ -0,0 +1,30 @@
+package org.gluu.service.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Standard Java serialization. Without header it produces the same bytes as previous versions of cache providers
+ */
+public class JavaCacheSerializer implements CacheSerializer {
+
+    public static final int ID = 1;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        return SerializationUtils.serialize((Serializable) object);
+    }
+
+    @Override
+    public Object deserialize(byte[] data, int offset, int length) {
+        return SerializationUtils.deserialize(new ByteArrayInputStream(data, offset, length));
+    }
+
+}
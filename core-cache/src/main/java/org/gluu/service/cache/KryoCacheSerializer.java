@@ -0,0 +1,96 @@
+package org.gluu.service.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+
+/**
+ * Fast binary serializer based on Kryo
+ *
+ * Registered classes are written as small integer ids instead of class names. Registration list should be the same on
+ * all nodes. Id of class depends on position in list, missing classes don't shift ids of next classes.
+ */
+public class KryoCacheSerializer implements CacheSerializer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KryoCacheSerializer.class);
+
+    public static final int ID = 2;
+
+    private static final int FIRST_REGISTRATION_ID = 100;
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private final List<String> registeredClasses;
+
+    private final ThreadLocal<Kryo> kryos = ThreadLocal.withInitial(this::createKryo);
+
+    private final ThreadLocal<Output> outputs = ThreadLocal.withInitial(() -> new Output(INITIAL_BUFFER_SIZE, -1));
+
+    public KryoCacheSerializer(List<String> registeredClasses) {
+        this.registeredClasses = registeredClasses == null ? Collections.<String>emptyList() : new ArrayList<String>(registeredClasses);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        Output output = outputs.get();
+        if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+            // Don't keep huge buffer per thread after serialization of big object
+            output = new Output(INITIAL_BUFFER_SIZE, -1);
+            outputs.set(output);
+        }
+
+        output.reset();
+        kryos.get().writeClassAndObject(output, object);
+
+        return output.toBytes();
+    }
+
+    @Override
+    public Object deserialize(byte[] data, int offset, int length) {
+        Input input = new Input(data, offset, length);
+
+        return kryos.get().readClassAndObject(input);
+    }
+
+    private Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setReferences(true);
+        // Allow to create objects without default constructor
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader != null) {
+            kryo.setClassLoader(classLoader);
+        }
+
+        int id = FIRST_REGISTRATION_ID;
+        for (String className : registeredClasses) {
+            try {
+                kryo.register(Class.forName(className, false, kryo.getClassLoader()), id);
+            } catch (ClassNotFoundException ex) {
+                LOG.warn("Failed to register class '{}' in Kryo serializer", className);
+            }
+            id++;
+        }
+
+        return kryo;
+    }
+
+}
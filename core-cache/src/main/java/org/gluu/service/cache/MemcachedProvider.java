@@ -3,6 +3,7 @@ package org.gluu.service.cache;
 import net.spy.memcached.*;
 import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.transcoders.Transcoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +11,13 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * @author yuriyz on 02/02/2017.
@@ -17,6 +25,8 @@ import javax.inject.Inject;
 @ApplicationScoped
 public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
 
+    private static final String NOT_FOUND_STATUS = "NOT_FOUND";
+
     @Inject
     private Logger log;
 
@@ -39,6 +49,10 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
 
     private MemcachedClient client;
 
+    private Transcoder<Object> transcoder;
+
+    private VersionedCacheSerializer serializer;
+
     public void create() {
         log.debug("Starting MemcachedProvider ...");
         try {
@@ -52,6 +66,15 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
             }
 
             client = new MemcachedClient(connectionFactory, AddrUtil.getAddresses(memcachedConfiguration.getServers()));
+
+            serializer = VersionedCacheSerializer.create(cacheConfiguration.getSerializerConfiguration());
+            if (serializer.isLegacyFormat()) {
+                // Keep default spymemcached format
+                transcoder = client.getTranscoder();
+            } else {
+                transcoder = new CacheSerializerTranscoder(serializer, client.getTranscoder());
+            }
+
             testConnection();
             log.debug("MemcachedProvider started.");
         } catch (Exception e) {
@@ -96,6 +119,17 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
         return client;
     }
 
+    /*
+     * Payload sizes are available only for custom serializer, default spymemcached transcoder is kept as is
+     */
+    @Override
+    public void setMetrics(CacheProviderMetrics metrics) {
+        super.setMetrics(metrics);
+        if ((client != null) && (serializer != null) && !serializer.isLegacyFormat()) {
+            transcoder = new CacheSerializerTranscoder(InstrumentedCacheSerializer.wrap(serializer, metrics), client.getTranscoder());
+        }
+    }
+
 	@Override
 	public boolean hasKey(String key) {
 		Object value = get(key);
@@ -109,10 +143,11 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
             if (key == null) {
                 return null;
             }
-            Object o = client.get(key);
+            Object o = client.get(key, transcoder);
             log.trace("get - key: " + key + ", value:" + o);
             return o;
         } catch (Exception e) {
+            markError();
             log.error("Failed to fetch object by key: " + key, e);
             return null;
         }
@@ -122,10 +157,11 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
     public void put(int expirationInSeconds, String key, Object object) {
         try {
             int expiration = expirationInSeconds > 0 ? expirationInSeconds : memcachedConfiguration.getDefaultPutExpiration();
-            OperationFuture<Boolean> set = client.set(key, expiration, object);
+            OperationFuture<Boolean> set = client.set(key, expiration, object, transcoder);
             OperationStatus status = set.getStatus(); // block
             log.trace("set - key:" + key + ", expiration: " + expiration + ", status:" + status + ", get:" + get(key));
         } catch (Exception e) {
+            markError();
             log.error("Failed to put object in cache, key: " + key, e);
         }
     }
@@ -136,10 +172,187 @@ public class MemcachedProvider extends AbstractCacheProvider<MemcachedClient> {
             client.delete(key);
             log.trace("delete - key:" + key);
         } catch (Exception e) {
+            markError();
             log.error("Failed to remove object from cache, key: " + key, e);
         }
     }
 
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+
+        try {
+            result.putAll(client.getBulk(keys, transcoder));
+            log.trace("getBulk - keys: " + keys + ", found: " + result.size());
+        } catch (Exception e) {
+            markError();
+            log.error("Failed to fetch objects by keys: " + keys, e);
+        }
+
+        return result;
+    }
+
+    /*
+     * Sends all set operations first and then waits for them. Client pipelines requests to server
+     */
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+
+        int expiration = expirationInSeconds > 0 ? expirationInSeconds : memcachedConfiguration.getDefaultPutExpiration();
+        List<OperationFuture<Boolean>> futures = new ArrayList<OperationFuture<Boolean>>(entries.size());
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            try {
+                futures.add(client.set(entry.getKey(), expiration, entry.getValue(), transcoder));
+            } catch (Exception e) {
+                markError();
+                log.error("Failed to put object in cache, key: " + entry.getKey(), e);
+            }
+        }
+
+        for (OperationFuture<Boolean> future : futures) {
+            try {
+                OperationStatus status = future.getStatus(); // block
+                log.trace("set - key:" + future.getKey() + ", expiration: " + expiration + ", status:" + status);
+            } catch (Exception e) {
+                markError();
+                log.error("Failed to put object in cache, key: " + future.getKey(), e);
+            }
+        }
+    }
+
+    /*
+     * Delete operations are asynchronous, client pipelines them to server
+     */
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+
+        for (String key : keys) {
+            try {
+                client.delete(key);
+                log.trace("delete - key:" + key);
+            } catch (Exception e) {
+                markError();
+                log.error("Failed to remove object from cache, key: " + key, e);
+            }
+        }
+    }
+
+    @Override
+    public CompletionStage<Object> getAsync(String key) {
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+        if (key == null) {
+            result.complete(null);
+            return result;
+        }
+
+        try {
+            client.asyncGet(key, transcoder).addListener(future -> {
+                try {
+                    result.complete(future.get());
+                } catch (Exception e) {
+                    log.error("Failed to fetch object by key: " + key, e);
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to fetch object by key: " + key, e);
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+        int expiration = expirationInSeconds > 0 ? expirationInSeconds : memcachedConfiguration.getDefaultPutExpiration();
+        try {
+            return toCompletionStage(key, client.set(key, expiration, object, transcoder), false);
+        } catch (Exception e) {
+            log.error("Failed to put object in cache, key: " + key, e);
+            return failedStage(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key) {
+        try {
+            return toCompletionStage(key, client.delete(key), true);
+        } catch (Exception e) {
+            log.error("Failed to remove object from cache, key: " + key, e);
+            return failedStage(e);
+        }
+    }
+
+    /*
+     * Stage fails when operation fails or server returns not successful status. Delete of missing key is not a failure
+     */
+    private CompletionStage<Void> toCompletionStage(final String key, OperationFuture<Boolean> operationFuture, final boolean allowNotFound) {
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        operationFuture.addListener(future -> {
+            try {
+                future.get();
+                OperationStatus status = future.getStatus();
+                log.trace("operation - key:" + key + ", status:" + status);
+                if (status.isSuccess() || (allowNotFound && NOT_FOUND_STATUS.equals(status.getMessage()))) {
+                    result.complete(null);
+                } else {
+                    markError();
+                    result.completeExceptionally(new IllegalStateException(
+                            "Cache operation failed, key: " + key + ", status: " + status.getMessage()));
+                }
+            } catch (Exception e) {
+                markError();
+                log.error("Cache operation failed, key: " + key, e);
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    private static CompletionStage<Void> failedStage(Exception e) {
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+        result.completeExceptionally(e);
+
+        return result;
+    }
+
+    /*
+     * Memcached add operation stores value only if there is no value for key
+     */
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        try {
+            return Boolean.TRUE.equals(client.add(key, expirationInSeconds, token).get());
+        } catch (Exception e) {
+            log.error("Failed to acquire lock, key: " + key, e);
+            return false;
+        }
+    }
+
+    /*
+     * Memcached has no conditional delete. Lock is removed if token matches, lock can expire in between
+     */
+    @Override
+    public void unlock(String key, String token) {
+        try {
+            if (token.equals(client.get(key))) {
+                client.delete(key);
+            }
+        } catch (Exception e) {
+            log.error("Failed to release lock, key: " + key, e);
+        }
+    }
+
     @Override
     public void clear() {
         client.flush();
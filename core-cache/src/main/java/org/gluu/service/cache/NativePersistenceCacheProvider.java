@@ -1,8 +1,6 @@
 package org.gluu.service.cache;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.gluu.persist.PersistenceEntryManager;
 import org.gluu.persist.exception.EntryPersistenceException;
@@ -15,16 +13,21 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ApplicationScoped
 public class NativePersistenceCacheProvider extends AbstractCacheProvider<PersistenceEntryManager> {
 
+    private static final int BULK_BATCH_SIZE = 100;
+
+    private static final int KEY_CACHE_SIZE = 4096;
+
     @Inject
     private Logger log;
 
@@ -42,6 +45,16 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 
 	private boolean attemptUpdateBeforeInsert;
 
+	private CacheSerializer serializer = new VersionedCacheSerializer(new JavaCacheSerializer(), 0);
+
+	private CacheWriteBehindQueue<NativePersistenceCacheEntity> writeBehindQueue;
+
+	private volatile NativePersistenceKeyCache keyCache;
+
+	private CacheSweeper cleanupSweeper;
+
+	private CacheSweeper clearSweeper;
+
     @PostConstruct
     public void init() {
     }
@@ -50,6 +63,7 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
     public void create() {
         try {
             baseDn = cacheConfiguration.getNativePersistenceConfiguration().getBaseDn();
+            serializer = VersionedCacheSerializer.create(cacheConfiguration.getSerializerConfiguration());
             deleteExpiredOnGetRequest = cacheConfiguration.getNativePersistenceConfiguration().isDeleteExpiredOnGetRequest();
 
             if (StringUtils.isBlank(baseDn)) {
@@ -76,6 +90,14 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
             skipRemoveBeforePut = "couchbase".equals(persistenceType);
             attemptUpdateBeforeInsert = "sql".equals(persistenceType);
 
+            NativePersistenceConfiguration nativePersistenceConfiguration = cacheConfiguration.getNativePersistenceConfiguration();
+            if (nativePersistenceConfiguration.isWriteBehindEnabled()) {
+                writeBehindQueue = new CacheWriteBehindQueue<NativePersistenceCacheEntity>("native-persistence-cache-writer",
+                        nativePersistenceConfiguration.getWriteBehindBatchSize(), nativePersistenceConfiguration.getWriteBehindFlushInterval(),
+                        nativePersistenceConfiguration.getWriteBehindMaxSize(), this::writeBatch);
+                writeBehindQueue.start();
+            }
+
             log.info("Created NATIVE_PERSISTENCE cache provider. `baseDn`: " + baseDn);
         } catch (Exception e) {
             log.error("Failed to create NATIVE_PERSISTENCE cache provider.", e);
@@ -90,7 +112,16 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 	}
 
     @Override
-    public void destroy() {
+    public synchronized void destroy() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.stop();
+        }
+        if (cleanupSweeper != null) {
+            cleanupSweeper.stop();
+        }
+        if (clearSweeper != null) {
+            clearSweeper.stop();
+        }
     }
 
     @Override
@@ -98,11 +129,24 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
         return entryManager;
     }
 
+    @Override
+    public void setMetrics(CacheProviderMetrics metrics) {
+        super.setMetrics(metrics);
+        serializer = InstrumentedCacheSerializer.wrap(serializer, metrics);
+    }
+
 	@Override
 	public boolean hasKey(String key) {
         try {
-            key = hashKey(key);
-            boolean hasKey = entryManager.contains(createDn(key), NativePersistenceCacheEntity.class);
+            NativePersistenceKeyCache.HashedKey hashedKey = hashedKey(key);
+            if (writeBehindQueue != null) {
+                CacheWriteBehindQueue.PendingWrite<NativePersistenceCacheEntity> pendingWrite = writeBehindQueue.get(hashedKey.getHash());
+                if (pendingWrite != null) {
+                    return !pendingWrite.isRemove();
+                }
+            }
+
+            boolean hasKey = entryManager.contains(hashedKey.getDn(), NativePersistenceCacheEntity.class);
             
 //            log.trace("Contains key in cache, key: " + key + ", dn: " + createDn(key)) + ", contains: " + hasKey);
             return hasKey;
@@ -117,13 +161,20 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
     @Override
     public Object get(String key) {
         try {
-            key = hashKey(key);
-            NativePersistenceCacheEntity entity = entryManager.find(NativePersistenceCacheEntity.class, createDn(key));
+            NativePersistenceKeyCache.HashedKey hashedKey = hashedKey(key);
+            if (writeBehindQueue != null) {
+                CacheWriteBehindQueue.PendingWrite<NativePersistenceCacheEntity> pendingWrite = writeBehindQueue.get(hashedKey.getHash());
+                if (pendingWrite != null) {
+                    return pendingWrite.isRemove() ? null : fromPendingEntity(pendingWrite.getValue());
+                }
+            }
+
+            NativePersistenceCacheEntity entity = entryManager.find(NativePersistenceCacheEntity.class, hashedKey.getDn());
             if (entity != null && entity.getData() != null) {
                 if (isExpired(entity.getExpirationDate()) && entity.isDeletable()) {
                     log.trace("Cache entity exists but expired, return null, expirationDate:" + entity.getExpirationDate() + ", key: " + key);
                     if (deleteExpiredOnGetRequest && !skipRemoveBeforePut) {
-                    	remove(key);
+                    	remove(hashedKey);
                     }
                     return null;
                 }
@@ -138,12 +189,22 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
         return null;
     }
 
-    private String createDn(String key) {
-        return String.format("uuid=%s,%s", key, baseDn);
+    private String createDn(String hashedKey) {
+        return NativePersistenceKeyCache.createDn(hashedKey, baseDn);
+    }
+
+    private NativePersistenceKeyCache.HashedKey hashedKey(String key) {
+        NativePersistenceKeyCache currentKeyCache = keyCache;
+        if ((currentKeyCache == null) || !currentKeyCache.getBaseDn().equals(baseDn)) {
+            currentKeyCache = new NativePersistenceKeyCache(baseDn, KEY_CACHE_SIZE);
+            keyCache = currentKeyCache;
+        }
+
+        return currentKeyCache.get(key);
     }
 
     public static String hashKey(String key) {
-        return DigestUtils.sha256Hex(key);
+        return NativePersistenceKeyCache.hashKey(key);
     }
 
     @Override
@@ -163,17 +224,31 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 		
 		String originalKey = key;
 
-        key = hashKey(key);
+        NativePersistenceKeyCache.HashedKey hashedKey = hashedKey(key);
+        key = hashedKey.getHash();
 
         NativePersistenceCacheEntity entity = new NativePersistenceCacheEntity();
         entity.setTtl(expirationInSeconds);
         entity.setData(asString(object));
         entity.setId(key);
-        entity.setDn(createDn(key));
+        entity.setDn(hashedKey.getDn());
         entity.setCreationDate(creationDate);
         entity.setExpirationDate(expirationDate.getTime());
         entity.setDeletable(true);
 
+        if (writeBehindQueue != null) {
+            writeBehindQueue.put(key, entity);
+            return;
+        }
+
+        persistEntity(originalKey, entity);
+	}
+
+	/*
+	 * Returns false if entry wasn't stored
+	 */
+	private boolean persistEntity(String originalKey, NativePersistenceCacheEntity entity) {
+		String key = entity.getId();
         try {
         	if (attemptUpdateBeforeInsert) {
                 entryManager.merge(entity);
@@ -183,13 +258,15 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 				}
 				entryManager.persist(entity);
         	}
+        	return true;
         } catch (EntryPersistenceException e) {
             if (e.getCause() instanceof DuplicateEntryException) { // on duplicate, remove entry and try to persist again
                 try {
                     silentlyRemoveEntityIfExists(entity.getDn());
                     entryManager.persist(entity);
-                    return;
+                    return true;
                 } catch (Exception ex) {
+                    markError();
                     log.error("Failed to retry put entry, key: " + originalKey + ", hashedKey: " + key + ", message: " + ex.getMessage(), ex);
                 }
             }
@@ -197,16 +274,21 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 			if (attemptUpdateBeforeInsert) {
 				try {
 					entryManager.persist(entity);
-					return;
+					return true;
 				} catch (Exception ex) {
+					markError();
 					log.error("Failed to retry put entry, key: " + originalKey + ", hashedKey: " + key + ", message: " + ex.getMessage(), ex);
 				}
 			}
 
+            markError();
             log.error("Failed to put entry, key: " + originalKey + ", hashedKey: " + key + ", message: " + e.getMessage(), e);
         } catch (Exception e) {
+        	markError();
         	log.error("Failed to put entry, key: " + originalKey + ", hashedKey: " + key + ", message: " + e.getMessage(), e); // log as trace since it is perfectly valid that entry is removed by timer for example
         }
+
+        return false;
 	}
 
     private boolean silentlyRemoveEntityIfExists(String dn) {
@@ -227,27 +309,215 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 
     @Override
     public void remove(String key) {
-        if (silentlyRemoveEntityIfExists(createDn(hashKey(key)))) {
-            log.trace("Removed entity, key: " + key);
+        remove(hashedKey(key));
+    }
+
+    private void remove(NativePersistenceKeyCache.HashedKey hashedKey) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.remove(hashedKey.getHash());
+            return;
+        }
+
+        if (silentlyRemoveEntityIfExists(hashedKey.getDn())) {
+            log.trace("Removed entity, key: " + hashedKey.getKey());
+        }
+    }
+
+    /*
+     * Loads entries by batches with one search request per batch
+     */
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+
+        Map<String, String> originalKeys = hashKeys(keys);
+        List<String> hashedKeys = new ArrayList<String>(originalKeys.size());
+        for (Map.Entry<String, String> entry : originalKeys.entrySet()) {
+            CacheWriteBehindQueue.PendingWrite<NativePersistenceCacheEntity> pendingWrite = writeBehindQueue == null ? null
+                    : writeBehindQueue.get(entry.getKey());
+            if (pendingWrite == null) {
+                hashedKeys.add(entry.getKey());
+            } else if (!pendingWrite.isRemove()) {
+                Object o = fromPendingEntity(pendingWrite.getValue());
+                if (o != null) {
+                    result.put(entry.getValue(), o);
+                }
+            }
+        }
+
+        for (int i = 0; i < hashedKeys.size(); i += BULK_BATCH_SIZE) {
+            List<String> batch = hashedKeys.subList(i, Math.min(i + BULK_BATCH_SIZE, hashedKeys.size()));
+            try {
+                List<NativePersistenceCacheEntity> entities = entryManager.findEntries(baseDn, NativePersistenceCacheEntity.class,
+                        createKeysFilter(batch));
+                for (NativePersistenceCacheEntity entity : entities) {
+                    String key = originalKeys.get(entity.getId());
+                    if (key == null || entity.getData() == null) {
+                        continue;
+                    }
+                    if (isExpired(entity.getExpirationDate()) && entity.isDeletable()) {
+                        log.trace("Cache entity exists but expired, skip it, expirationDate:" + entity.getExpirationDate() + ", key: " + key);
+                        continue;
+                    }
+
+                    Object o = fromString(entity.getData());
+                    if (o != null) {
+                        result.put(key, o);
+                    }
+                }
+            } catch (Exception e) {
+                log.trace("Failed to load cache entries by batch, falling back to one by one load. Message: " + e.getMessage());
+                for (String hashedKey : batch) {
+                    String key = originalKeys.get(hashedKey);
+                    Object o = get(key);
+                    if (o != null) {
+                        result.put(key, o);
+                    }
+                }
+            }
         }
+
+        return result;
     }
 
+    /*
+     * Removes entries by batches with one request per batch
+     */
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> originalKeys = hashKeys(keys);
+        if (writeBehindQueue != null) {
+            for (String hashedKey : originalKeys.keySet()) {
+                writeBehindQueue.remove(hashedKey);
+            }
+            return;
+        }
+
+        removeEntities(new ArrayList<String>(originalKeys.keySet()));
+    }
+
+    private void removeEntities(List<String> hashedKeys) {
+        for (int i = 0; i < hashedKeys.size(); i += BULK_BATCH_SIZE) {
+            List<String> batch = hashedKeys.subList(i, Math.min(i + BULK_BATCH_SIZE, hashedKeys.size()));
+            try {
+                int removedCount = entryManager.remove(baseDn, NativePersistenceCacheEntity.class, createKeysFilter(batch), batch.size());
+                log.trace("Removed entities, count: " + removedCount);
+            } catch (Exception e) {
+                log.trace("Failed to remove cache entries by batch, falling back to one by one removal. Message: " + e.getMessage());
+                for (String hashedKey : batch) {
+                    silentlyRemoveEntityIfExists(createDn(hashedKey));
+                }
+            }
+        }
+    }
+
+    /*
+     * Writes batch from write-behind queue. Removes are sent in one request, entries are stored one by one.
+     * Throws exception if any entry isn't stored so that queue retries batch
+     */
+    private void writeBatch(List<CacheWriteBehindQueue.PendingWrite<NativePersistenceCacheEntity>> writes) {
+        List<String> removedKeys = new ArrayList<String>();
+        int failedCount = 0;
+        for (CacheWriteBehindQueue.PendingWrite<NativePersistenceCacheEntity> write : writes) {
+            if (write.isRemove()) {
+                removedKeys.add(write.getKey());
+            } else if (!persistEntity(write.getKey(), write.getValue())) {
+                failedCount++;
+            }
+        }
+
+        if (!removedKeys.isEmpty()) {
+            removeEntities(removedKeys);
+        }
+
+        if (failedCount > 0) {
+            // Queue keeps batch and retries it. Entries which are already stored are overwritten
+            throw new IllegalStateException("Failed to write " + failedCount + " of " + writes.size() + " cache entries");
+        }
+        log.trace("Written batch of cache entries, count: " + writes.size());
+    }
+
+    private Object fromPendingEntity(NativePersistenceCacheEntity entity) {
+        if (isExpired(entity.getExpirationDate())) {
+            return null;
+        }
+
+        return fromString(entity.getData());
+    }
+
+    /*
+     * Returns map from hashed key to original key
+     */
+    private static Map<String, String> hashKeys(Collection<String> keys) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String key : keys) {
+            if (key != null) {
+                result.put(hashKey(key), key);
+            }
+        }
+
+        return result;
+    }
+
+    private static Filter createKeysFilter(List<String> hashedKeys) {
+        List<Filter> filters = new ArrayList<Filter>(hashedKeys.size());
+        for (String hashedKey : hashedKeys) {
+            filters.add(Filter.createEqualityFilter("uuid", hashedKey));
+        }
+
+        return Filter.createORFilter(filters);
+    }
+
+    /*
+     * Removes all cache entries by partitions in parallel without rate limit
+     */
     @Override
     public void clear() {
-        // TODO: Implement all specific application objects removal
+        if (writeBehindQueue != null) {
+            writeBehindQueue.clear();
+        }
+
+        log.debug("Start NATIVE_PERSISTENCE clear");
+        long removedCount = getClearSweeper().sweep(cacheConfiguration.getNativePersistenceConfiguration().getDefaultCleanupBatchSize(),
+                (prefix, count) -> entryManager.remove(baseDn, NativePersistenceCacheEntity.class, createPrefixFilter(prefix), count));
+        log.debug("End NATIVE_PERSISTENCE clear, items removed: " + removedCount);
+    }
+
+    private static Filter createPrefixFilter(String prefix) {
+        return Filter.createSubstringFilter("uuid", prefix, null, null);
+    }
+
+    private synchronized CacheSweeper getCleanupSweeper() {
+        if (cleanupSweeper == null) {
+            NativePersistenceConfiguration nativePersistenceConfiguration = cacheConfiguration.getNativePersistenceConfiguration();
+            cleanupSweeper = new CacheSweeper("native-persistence-cache-cleanup", nativePersistenceConfiguration.getCleanupPartitionsCount(),
+                    nativePersistenceConfiguration.getCleanupConcurrency(), nativePersistenceConfiguration.getCleanupDeleteRate());
+        }
+
+        return cleanupSweeper;
+    }
+
+    private synchronized CacheSweeper getClearSweeper() {
+        if (clearSweeper == null) {
+            NativePersistenceConfiguration nativePersistenceConfiguration = cacheConfiguration.getNativePersistenceConfiguration();
+            clearSweeper = new CacheSweeper("native-persistence-cache-clear", nativePersistenceConfiguration.getCleanupPartitionsCount(),
+                    nativePersistenceConfiguration.getCleanupConcurrency(), 0);
+        }
+
+        return clearSweeper;
     }
 
     private Object fromString(String s) {
         try {
             byte[] data = Base64.decodeBase64(s);
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
-            try {
-                Object o = ois.readObject();
-                ois.close();
-                return o;
-            } finally {
-                IOUtils.closeQuietly(ois);
-            }
+            return serializer.deserialize(data);
         } catch (Exception e) {
             log.error("Failed to deserizalize cache entity, data: " + s, e);
             return null;
@@ -255,18 +525,11 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
     }
 
     private String asString(Object o) {
-        ObjectOutputStream oos = null;
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(o);
-            oos.close();
-            return Base64.encodeBase64String(baos.toByteArray());
+            return Base64.encodeBase64String(serializer.serialize(o));
         } catch (Exception e) {
             log.error("Failed to serizalize cache entity to string, object: " + 0, e);
             return null;
-        } finally {
-            IOUtils.closeQuietly(oos);
         }
     }
 
@@ -278,13 +541,18 @@ public class NativePersistenceCacheProvider extends AbstractCacheProvider<Persis
 		}
     }
 
+    /*
+     * Removes up to batchSize expired entries by partitions of hashed key space. Clean up which reached this limit
+     * continues from not completed partitions on next call
+     */
     public void cleanup(final Date now, int batchSize) {
         log.debug("Start NATIVE_PERSISTENCE clean up");
         try {
-            Filter filter = Filter.createANDFilter(
+            final Filter expiredFilter = Filter.createANDFilter(
                     Filter.createEqualityFilter("del", true),
                     Filter.createLessOrEqualFilter("exp", entryManager.encodeTime(baseDn, now)));
-            final int removedCount = entryManager.remove(baseDn, NativePersistenceCacheEntity.class, filter, batchSize);
+            final long removedCount = getCleanupSweeper().sweep(batchSize, batchSize, (prefix, count) -> entryManager.remove(baseDn,
+                    NativePersistenceCacheEntity.class, Filter.createANDFilter(createPrefixFilter(prefix), expiredFilter), count));
 
             log.debug("End NATIVE_PERSISTENCE clean up, items removed: " + removedCount);
         } catch (Exception e) {
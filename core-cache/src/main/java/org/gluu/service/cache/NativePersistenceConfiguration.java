@@ -20,6 +20,33 @@ public class NativePersistenceConfiguration implements Serializable {
     @XmlElement(name = "deleteExpiredOnGetRequest")
     private boolean deleteExpiredOnGetRequest = false;
 
+    /**
+     * Buffer puts and removes in memory and write them to DB by batches. Only last write per key is written
+     */
+    @XmlElement(name = "writeBehindEnabled")
+    private boolean writeBehindEnabled = false;
+
+    @XmlElement(name = "writeBehindBatchSize")
+    private int writeBehindBatchSize = 100;
+
+    @XmlElement(name = "writeBehindFlushInterval")
+    private int writeBehindFlushInterval = 1000; // in milliseconds
+
+    @XmlElement(name = "writeBehindMaxSize")
+    private int writeBehindMaxSize = 10000;
+
+    /**
+     * Clean up and clear remove entries by partitions of hashed key space. Rounded up to 16, 256 or 4096
+     */
+    @XmlElement(name = "cleanupPartitionsCount")
+    private int cleanupPartitionsCount = 16;
+
+    @XmlElement(name = "cleanupConcurrency")
+    private int cleanupConcurrency = 4;
+
+    @XmlElement(name = "cleanupDeleteRate")
+    private int cleanupDeleteRate = 0; // deletes per second, 0 - unlimited
+
     @JsonIgnore
     private String baseDn;
 
@@ -47,6 +74,62 @@ public class NativePersistenceConfiguration implements Serializable {
 		this.deleteExpiredOnGetRequest = deleteExpiredOnGetRequest;
 	}
 
+	public boolean isWriteBehindEnabled() {
+		return writeBehindEnabled;
+	}
+
+	public void setWriteBehindEnabled(boolean writeBehindEnabled) {
+		this.writeBehindEnabled = writeBehindEnabled;
+	}
+
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	public int getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
+
+	public void setWriteBehindFlushInterval(int writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+
+	public int getWriteBehindMaxSize() {
+		return writeBehindMaxSize;
+	}
+
+	public void setWriteBehindMaxSize(int writeBehindMaxSize) {
+		this.writeBehindMaxSize = writeBehindMaxSize;
+	}
+
+	public int getCleanupPartitionsCount() {
+		return cleanupPartitionsCount;
+	}
+
+	public void setCleanupPartitionsCount(int cleanupPartitionsCount) {
+		this.cleanupPartitionsCount = cleanupPartitionsCount;
+	}
+
+	public int getCleanupConcurrency() {
+		return cleanupConcurrency;
+	}
+
+	public void setCleanupConcurrency(int cleanupConcurrency) {
+		this.cleanupConcurrency = cleanupConcurrency;
+	}
+
+	public int getCleanupDeleteRate() {
+		return cleanupDeleteRate;
+	}
+
+	public void setCleanupDeleteRate(int cleanupDeleteRate) {
+		this.cleanupDeleteRate = cleanupDeleteRate;
+	}
+
 	public String getBaseDn() {
         return baseDn;
     }
@@ -58,6 +141,9 @@ public class NativePersistenceConfiguration implements Serializable {
     @Override
 	public String toString() {
 		return "NativePersistenceConfiguration [defaultPutExpiration=" + defaultPutExpiration + ", defaultCleanupBatchSize="
-				+ defaultCleanupBatchSize + ", deleteExpiredOnGetRequest=" + deleteExpiredOnGetRequest + ", baseDn=" + baseDn + "]";
+				+ defaultCleanupBatchSize + ", deleteExpiredOnGetRequest=" + deleteExpiredOnGetRequest + ", writeBehindEnabled="
+				+ writeBehindEnabled + ", writeBehindBatchSize=" + writeBehindBatchSize + ", writeBehindFlushInterval="
+				+ writeBehindFlushInterval + ", writeBehindMaxSize=" + writeBehindMaxSize + ", cleanupPartitionsCount=" + cleanupPartitionsCount + ", cleanupConcurrency="
+				+ cleanupConcurrency + ", cleanupDeleteRate=" + cleanupDeleteRate + ", baseDn=" + baseDn + "]";
 	}
 }
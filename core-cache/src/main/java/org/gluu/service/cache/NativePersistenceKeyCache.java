@@ -0,0 +1,106 @@
+package org.gluu.service.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Bounded memo of cache key to hashed key and DN used by {@link NativePersistenceCacheProvider}.
+ *
+ * Memo is direct mapped: each key has one slot selected by key hash code, new key replaces previous one.
+ * Lookup has no locks and no allocations on hit. Entries are immutable, so racy slot updates are safe.
+ */
+public class NativePersistenceKeyCache {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    });
+
+    private final String baseDn;
+
+    private final HashedKey[] slots;
+
+    private final int mask;
+
+    public NativePersistenceKeyCache(String baseDn, int size) {
+        this.baseDn = baseDn;
+
+        int slotsCount = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new HashedKey[slotsCount];
+        this.mask = slotsCount - 1;
+    }
+
+    public String getBaseDn() {
+        return baseDn;
+    }
+
+    public HashedKey get(String key) {
+        int h = key.hashCode();
+        int index = (h ^ (h >>> 16)) & mask;
+
+        HashedKey hashedKey = slots[index];
+        if ((hashedKey != null) && hashedKey.key.equals(key)) {
+            return hashedKey;
+        }
+
+        String hash = hashKey(key);
+        hashedKey = new HashedKey(key, hash, createDn(hash, baseDn));
+        slots[index] = hashedKey;
+
+        return hashedKey;
+    }
+
+    public static String createDn(String hashedKey, String baseDn) {
+        return new StringBuilder(5 + hashedKey.length() + 1 + baseDn.length()).append("uuid=").append(hashedKey).append(',')
+                .append(baseDn).toString();
+    }
+
+    /*
+     * SHA-256 hex of UTF-8 key bytes. Produces the same value as DigestUtils.sha256Hex
+     */
+    public static String hashKey(String key) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            int b = hash[i] & 0xFF;
+            hex[2 * i] = HEX_DIGITS[b >>> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+        }
+
+        return new String(hex);
+    }
+
+    public static final class HashedKey {
+
+        private final String key;
+        private final String hash;
+        private final String dn;
+
+        private HashedKey(String key, String hash, String dn) {
+            this.key = key;
+            this.hash = hash;
+            this.dn = dn;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getDn() {
+            return dn;
+        }
+    }
+
+}
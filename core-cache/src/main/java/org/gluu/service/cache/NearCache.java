@@ -0,0 +1,339 @@
+package org.gluu.service.cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-process cache used as L1 by {@link TwoTierCacheProvider}.
+ *
+ * Entries are kept in lock-striped LRU segments. Each segment gets equal part of max entries and max weight budgets.
+ * Weight is an estimation of entry size in bytes. Per entry TTL is capped by max age.
+ *
+ * Entries are indexed by 64 bit key hash to allow eviction by invalidation messages from other nodes.
+ * Hash collision replaces previous entry, lookup always verifies original key.
+ *
+ * Values are returned as is (without copy) like {@link InMemoryCacheProvider} does.
+ */
+public class NearCache {
+
+    private static final int SEGMENTS_COUNT = 16;
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Segment[] segments;
+
+    private final long maxAgeInMillis;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    public NearCache(int maxEntries, long maxWeight, int maxAgeInSeconds) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries should be positive, maxEntries: " + maxEntries);
+        }
+
+        this.maxAgeInMillis = Math.max(maxAgeInSeconds, 0) * 1000L;
+
+        int segmentMaxEntries = Math.max(1, maxEntries / SEGMENTS_COUNT);
+        long segmentMaxWeight = maxWeight > 0 ? Math.max(1, maxWeight / SEGMENTS_COUNT) : Long.MAX_VALUE;
+
+        this.segments = new Segment[SEGMENTS_COUNT];
+        for (int i = 0; i < SEGMENTS_COUNT; i++) {
+            segments[i] = new Segment(segmentMaxEntries, segmentMaxWeight);
+        }
+    }
+
+    public Object get(String key) {
+        long keyHash = CacheInvalidationMessage.hashKey(key);
+        Object value = segmentFor(keyHash).get(keyHash, key, System.currentTimeMillis());
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+
+        return value;
+    }
+
+    public boolean containsKey(String key) {
+        long keyHash = CacheInvalidationMessage.hashKey(key);
+        return segmentFor(keyHash).get(keyHash, key, System.currentTimeMillis()) != null;
+    }
+
+    /*
+     * Put value with TTL capped by max age. Zero or negative TTL means max age
+     */
+    public void put(String key, Object value, int expirationInSeconds) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+
+        long ttlInMillis = expirationInSeconds > 0 ? Math.min(expirationInSeconds * 1000L, maxAgeInMillis) : maxAgeInMillis;
+        if (ttlInMillis <= 0) {
+            return;
+        }
+
+        long keyHash = CacheInvalidationMessage.hashKey(key);
+        segmentFor(keyHash).put(keyHash, key, value, System.currentTimeMillis() + ttlInMillis, estimateWeight(key, value));
+    }
+
+    public void remove(String key) {
+        invalidate(CacheInvalidationMessage.hashKey(key));
+    }
+
+    /*
+     * Remove entry by key hash
+     */
+    public void invalidate(long keyHash) {
+        segmentFor(keyHash).remove(keyHash);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /*
+     * Remove expired entries from all segments
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.removeExpired(now);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+
+        return requests == 0 ? 0.0d : (double) hits / requests;
+    }
+
+    private Segment segmentFor(long keyHash) {
+        return segments[(int) (keyHash >>> 32) & (SEGMENTS_COUNT - 1)];
+    }
+
+    static long estimateWeight(String key, Object value) {
+        return ENTRY_OVERHEAD + 2L * key.length() + estimateWeight(value, 0);
+    }
+
+    private static long estimateWeight(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else if ((value instanceof Number) || (value instanceof Boolean) || (value instanceof Enum)) {
+            return 16;
+        } else if (depth < 2) {
+            if (value instanceof Collection) {
+                long weight = 32;
+                for (Object item : (Collection<?>) value) {
+                    weight += 8 + estimateWeight(item, depth + 1);
+                }
+                return weight;
+            } else if (value instanceof Map) {
+                long weight = 48;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    weight += 32 + estimateWeight(entry.getKey(), depth + 1) + estimateWeight(entry.getValue(), depth + 1);
+                }
+                return weight;
+            }
+        }
+
+        // Unknown object, use rough average size
+        return 256;
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final Object value;
+        private final long expiresAt;
+        private final long weight;
+
+        private Entry(String key, Object value, long expiresAt, long weight) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final LinkedHashMap<Long, Entry> map = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+
+        private final int maxEntries;
+        private final long maxWeight;
+
+        private long weight;
+
+        private Segment(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+
+        private Object get(long keyHash, String key, long now) {
+            lock.lock();
+            try {
+                Entry entry = map.get(keyHash);
+                if ((entry == null) || !key.equals(entry.key)) {
+                    return null;
+                }
+
+                if (entry.isExpired(now)) {
+                    map.remove(keyHash);
+                    weight -= entry.weight;
+                    expirationCount.increment();
+                    return null;
+                }
+
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(long keyHash, String key, Object value, long expiresAt, long entryWeight) {
+            if (entryWeight > maxWeight) {
+                // Entry is too big for this cache
+                remove(keyHash);
+                return;
+            }
+
+            lock.lock();
+            try {
+                Entry oldEntry = map.put(keyHash, new Entry(key, value, expiresAt, entryWeight));
+                if (oldEntry != null) {
+                    weight -= oldEntry.weight;
+                }
+                weight += entryWeight;
+
+                evictIfNeeded();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(long keyHash) {
+            lock.lock();
+            try {
+                Entry oldEntry = map.remove(keyHash);
+                if (oldEntry != null) {
+                    weight -= oldEntry.weight;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void removeExpired(long now) {
+            lock.lock();
+            try {
+                for (Iterator<Entry> it = map.values().iterator(); it.hasNext();) {
+                    Entry entry = it.next();
+                    if (entry.isExpired(now)) {
+                        it.remove();
+                        weight -= entry.weight;
+                        expirationCount.increment();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void evictIfNeeded() {
+            Iterator<Entry> it = map.values().iterator();
+            while (((map.size() > maxEntries) || (weight > maxWeight)) && it.hasNext()) {
+                // Eldest entry in access order goes first
+                Entry entry = it.next();
+                it.remove();
+                weight -= entry.weight;
+                evictionCount.increment();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long weight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,853 @@
+package org.gluu.service.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Off-heap store of IN_MEMORY cache provider. Used when {@link InMemoryCacheType#OFF_HEAP} is configured.
+ *
+ * Values are serialized and copied to direct (or memory-mapped file) slabs, only compact hash index of 16 bytes per
+ * entry stays on heap. Slabs are allocated lazily up to capacity and split into fixed size chunks. Each slab belongs to
+ * size class, chunk sizes grow with factor 1.25 from 64 bytes up to slab size. Entry which is bigger than slab isn't
+ * cached. Factor is increased when there are less slabs than size classes.
+ *
+ * When size class has no free chunks and all slabs of segment are allocated, CLOCK hand walks over class chunks.
+ * Expired entry is reused first, recently read entry gets second chance. Size class without slabs takes slab from the
+ * biggest class which has more than one slab.
+ *
+ * Keys are spread over segments with read-write locks. Capacity is split between segments evenly and segments count is
+ * chosen so that each size class of segment can keep own slab. Unlike other in-memory types get returns deserialized copy.
+ *
+ * Chunk layout: flags (1 byte, 3 bytes padding), key length, value length, expiration time, key hash, key, value.
+ */
+public class OffHeapCache implements InMemoryStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapCache.class);
+
+    private static final int FLAGS_OFFSET = 0;
+    private static final int KEY_LENGTH_OFFSET = 4;
+    private static final int VALUE_LENGTH_OFFSET = 8;
+    private static final int EXPIRES_AT_OFFSET = 12;
+    private static final int HASH_OFFSET = 20;
+    private static final int HEADER_SIZE = 28;
+
+    private static final byte FLAG_USED = 1;
+    private static final byte FLAG_REFERENCED = 2;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double CHUNK_SIZE_FACTOR = 1.25d;
+
+    private static final int MAX_SEGMENTS_COUNT = 16;
+    private static final int MIN_SEGMENT_SLABS = 8;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private static final int ITERATION_BATCH_SIZE = 256;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int[] chunkSizes;
+
+    private final Segment[] segments;
+
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+
+    private final FileChannel mappedFileChannel;
+
+    private volatile CacheSerializer serializer;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+
+    /*
+     * Slabs are mapped from mappedFile when it's specified, otherwise direct buffers are used
+     */
+    public OffHeapCache(long capacity, int slabSize, String mappedFile, CacheSerializer serializer) throws IOException {
+        if (slabSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("slabSize should be at least " + MIN_CHUNK_SIZE + " bytes, slabSize: " + slabSize);
+        }
+        if (capacity < slabSize) {
+            throw new IllegalArgumentException("capacity should be at least one slab, capacity: " + capacity + ", slabSize: " + slabSize);
+        }
+
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(capacity / slabSize, Integer.MAX_VALUE);
+        this.chunkSizes = chunkSizes(slabSize, maxSlabs);
+        this.serializer = serializer;
+
+        if (mappedFile == null) {
+            this.mappedFileChannel = null;
+        } else {
+            RandomAccessFile file = new RandomAccessFile(mappedFile, "rw");
+            this.mappedFileChannel = file.getChannel();
+        }
+
+        int minSegmentSlabs = Math.max(MIN_SEGMENT_SLABS, chunkSizes.length);
+        int segmentsCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS_COUNT, Math.max(1, maxSlabs / minSegmentSlabs)));
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment(maxSlabs / segmentsCount + (i < maxSlabs % segmentsCount ? 1 : 0));
+        }
+    }
+
+    /*
+     * Returns at most maxClasses chunk sizes (but at least two when slab can hold two chunks)
+     */
+    static int[] chunkSizes(int slabSize, int maxClasses) {
+        List<Integer> sizes;
+        double factor = CHUNK_SIZE_FACTOR;
+        do {
+            sizes = new ArrayList<Integer>();
+            int size = MIN_CHUNK_SIZE;
+            while (size < slabSize / 2) {
+                sizes.add(size);
+                // Keep chunks 8 bytes aligned
+                size = (int) Math.min((long) (size * factor + 7) & ~7L, Integer.MAX_VALUE);
+            }
+            sizes.add(slabSize);
+
+            factor *= CHUNK_SIZE_FACTOR;
+        } while ((sizes.size() > Math.max(2, maxClasses)));
+
+        int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i);
+        }
+
+        return result;
+    }
+
+    public void setSerializer(CacheSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public CacheSerializer getSerializer() {
+        return serializer;
+    }
+
+    @Override
+    public Object get(String key) {
+        long hash = CacheInvalidationMessage.hashKey(key);
+        byte[] data = segmentFor(hash).get(hash, key.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+        if (data == null) {
+            missCount.increment();
+            return null;
+        }
+
+        hitCount.increment();
+
+        return serializer.deserialize(data);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        long hash = CacheInvalidationMessage.hashKey(key);
+
+        return segmentFor(hash).containsKey(hash, key.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+    }
+
+    @Override
+    public void put(String key, Object value, long ttlInMillis) {
+        if ((value == null) || (ttlInMillis <= 0)) {
+            remove(key);
+            return;
+        }
+
+        byte[] data = serializer.serialize(value);
+        long hash = CacheInvalidationMessage.hashKey(key);
+        long now = System.currentTimeMillis();
+        segmentFor(hash).put(hash, key.getBytes(StandardCharsets.UTF_8), data, now + ttlInMillis, now);
+    }
+
+    @Override
+    public void remove(String key) {
+        long hash = CacheInvalidationMessage.hashKey(key);
+        segmentFor(hash).remove(hash, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.removeExpired(now);
+        }
+    }
+
+    /*
+     * Drop references to slabs and close mapped file. Memory of direct buffers is released by GC
+     */
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.release();
+        }
+        allocatedSlabs.set(0);
+
+        if (mappedFileChannel != null) {
+            try {
+                mappedFileChannel.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close off-heap cache mapped file", ex);
+            }
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.forEachEntry(visitor, now);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /*
+     * Size of stored entries in bytes including chunk headers
+     */
+    @Override
+    public long weightedSize() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.storedBytes();
+        }
+
+        return weight;
+    }
+
+    public long getAllocatedBytes() {
+        return (long) allocatedSlabs.get() * slabSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getEvictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /*
+     * Count of entries which weren't stored because they are bigger than slab
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    private int sizeClassFor(int chunkSize) {
+        int index = Arrays.binarySearch(chunkSizes, chunkSize);
+
+        return index >= 0 ? index : (-index - 1 < chunkSizes.length ? -index - 1 : -1);
+    }
+
+    private ByteBuffer allocateSlab(Segment segment) {
+        if (segment.slabs.size() >= segment.maxSlabs) {
+            return null;
+        }
+
+        int slabIndex;
+        do {
+            slabIndex = allocatedSlabs.get();
+            if (slabIndex >= maxSlabs) {
+                return null;
+            }
+        } while (!allocatedSlabs.compareAndSet(slabIndex, slabIndex + 1));
+
+        if (mappedFileChannel == null) {
+            return ByteBuffer.allocateDirect(slabSize);
+        }
+
+        try {
+            return mappedFileChannel.map(FileChannel.MapMode.READ_WRITE, (long) slabIndex * slabSize, slabSize);
+        } catch (IOException ex) {
+            allocatedSlabs.decrementAndGet();
+            LOG.error("Failed to map off-heap cache slab", ex);
+            return null;
+        }
+    }
+
+    private static long address(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+    private static int slabIndexOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private static final class SizeClass {
+
+        private final int chunkSize;
+        private final int chunksPerSlab;
+
+        private final List<Integer> slabs = new ArrayList<Integer>();
+
+        private long[] freeChunks = new long[16];
+        private int freeCount;
+
+        private long clockHand;
+
+        private SizeClass(int chunkSize, int slabSize) {
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = slabSize / chunkSize;
+        }
+
+        private void pushFree(long address) {
+            if (freeCount == freeChunks.length) {
+                freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+            }
+            freeChunks[freeCount++] = address;
+        }
+
+        private long popFree() {
+            return freeCount == 0 ? -1 : freeChunks[--freeCount];
+        }
+    }
+
+    private final class Segment {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private final int maxSlabs;
+
+        private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+        private final List<SizeClass> slabOwners = new ArrayList<SizeClass>();
+
+        private final SizeClass[] sizeClasses;
+
+        // Open addressing hash index: key hash and chunk address + 1, zero means empty slot
+        private long[] indexHashes = new long[INITIAL_INDEX_CAPACITY];
+        private long[] indexAddresses = new long[INITIAL_INDEX_CAPACITY];
+        private int indexSize;
+
+        private long storedBytes;
+
+        private Segment(int maxSlabs) {
+            this.maxSlabs = maxSlabs;
+            this.sizeClasses = new SizeClass[chunkSizes.length];
+            for (int i = 0; i < chunkSizes.length; i++) {
+                sizeClasses[i] = new SizeClass(chunkSizes[i], slabSize);
+            }
+        }
+
+        private byte[] get(long hash, byte[] key, long now) {
+            lock.readLock().lock();
+            try {
+                int slot = find(hash, key);
+                if (slot < 0) {
+                    return null;
+                }
+
+                long address = indexAddresses[slot] - 1;
+                ByteBuffer slab = slabs.get(slabIndexOf(address));
+                int offset = offsetOf(address);
+                if (slab.getLong(offset + EXPIRES_AT_OFFSET) <= now) {
+                    // Chunk will be reused by clean up or eviction
+                    return null;
+                }
+
+                // Concurrent readers write the same value
+                slab.put(offset + FLAGS_OFFSET, (byte) (FLAG_USED | FLAG_REFERENCED));
+
+                byte[] data = new byte[slab.getInt(offset + VALUE_LENGTH_OFFSET)];
+                ByteBuffer view = slab.duplicate();
+                view.position(offset + HEADER_SIZE + key.length);
+                view.get(data);
+
+                return data;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private boolean containsKey(long hash, byte[] key, long now) {
+            lock.readLock().lock();
+            try {
+                int slot = find(hash, key);
+                if (slot < 0) {
+                    return false;
+                }
+
+                long address = indexAddresses[slot] - 1;
+
+                return slabs.get(slabIndexOf(address)).getLong(offsetOf(address) + EXPIRES_AT_OFFSET) > now;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void put(long hash, byte[] key, byte[] data, long expiresAt, long now) {
+            int entrySize = HEADER_SIZE + key.length + data.length;
+            int sizeClassIndex = sizeClassFor(entrySize);
+
+            lock.writeLock().lock();
+            try {
+                int slot = find(hash, key);
+                if (slot >= 0) {
+                    long oldAddress = indexAddresses[slot] - 1;
+                    removeSlot(slot);
+                    freeChunk(oldAddress);
+                }
+
+                if (sizeClassIndex < 0) {
+                    rejectionCount.increment();
+                    return;
+                }
+
+                long address = allocateChunk(sizeClassIndex, now);
+                if (address < 0) {
+                    rejectionCount.increment();
+                    return;
+                }
+
+                ByteBuffer slab = slabs.get(slabIndexOf(address));
+                int offset = offsetOf(address);
+                slab.putInt(offset + KEY_LENGTH_OFFSET, key.length);
+                slab.putInt(offset + VALUE_LENGTH_OFFSET, data.length);
+                slab.putLong(offset + EXPIRES_AT_OFFSET, expiresAt);
+                slab.putLong(offset + HASH_OFFSET, hash);
+
+                ByteBuffer view = slab.duplicate();
+                view.position(offset + HEADER_SIZE);
+                view.put(key);
+                view.put(data);
+                slab.put(offset + FLAGS_OFFSET, FLAG_USED);
+
+                insert(hash, address);
+                storedBytes += entrySize;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long hash, byte[] key) {
+            lock.writeLock().lock();
+            try {
+                int slot = find(hash, key);
+                if (slot >= 0) {
+                    long address = indexAddresses[slot] - 1;
+                    removeSlot(slot);
+                    freeChunk(address);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void clear() {
+            lock.writeLock().lock();
+            try {
+                for (SizeClass sizeClass : sizeClasses) {
+                    sizeClass.freeCount = 0;
+                    sizeClass.clockHand = 0;
+                    for (Integer slabIndex : sizeClass.slabs) {
+                        formatSlab(sizeClass, slabIndex);
+                    }
+                }
+
+                resetIndex();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void release() {
+            lock.writeLock().lock();
+            try {
+                for (SizeClass sizeClass : sizeClasses) {
+                    sizeClass.slabs.clear();
+                    sizeClass.freeChunks = new long[16];
+                    sizeClass.freeCount = 0;
+                    sizeClass.clockHand = 0;
+                }
+                slabs.clear();
+                slabOwners.clear();
+
+                resetIndex();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeExpired(long now) {
+            lock.writeLock().lock();
+            try {
+                for (SizeClass sizeClass : sizeClasses) {
+                    for (Integer slabIndex : sizeClass.slabs) {
+                        ByteBuffer slab = slabs.get(slabIndex);
+                        for (int i = 0; i < sizeClass.chunksPerSlab; i++) {
+                            int offset = i * sizeClass.chunkSize;
+                            if (((slab.get(offset + FLAGS_OFFSET) & FLAG_USED) != 0) && (slab.getLong(offset + EXPIRES_AT_OFFSET) <= now)) {
+                                long address = address(slabIndex, offset);
+                                dropEntry(slab, address);
+                                sizeClass.pushFree(address);
+                                expirationCount.increment();
+                            }
+                        }
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /*
+         * Entries are copied in batches to not block writers while visitor works
+         */
+        private void forEachEntry(EntryVisitor visitor, long now) {
+            List<String> keys = new ArrayList<String>(ITERATION_BATCH_SIZE);
+            List<byte[]> values = new ArrayList<byte[]>(ITERATION_BATCH_SIZE);
+            List<Long> expirations = new ArrayList<Long>(ITERATION_BATCH_SIZE);
+
+            int slot = 0;
+            boolean hasMore = true;
+            while (hasMore) {
+                lock.readLock().lock();
+                try {
+                    for (; (slot < indexAddresses.length) && (keys.size() < ITERATION_BATCH_SIZE); slot++) {
+                        if (indexAddresses[slot] == 0) {
+                            continue;
+                        }
+
+                        long address = indexAddresses[slot] - 1;
+                        ByteBuffer slab = slabs.get(slabIndexOf(address));
+                        int offset = offsetOf(address);
+                        long expiresAt = slab.getLong(offset + EXPIRES_AT_OFFSET);
+                        if (expiresAt <= now) {
+                            continue;
+                        }
+
+                        byte[] key = new byte[slab.getInt(offset + KEY_LENGTH_OFFSET)];
+                        byte[] data = new byte[slab.getInt(offset + VALUE_LENGTH_OFFSET)];
+                        ByteBuffer view = slab.duplicate();
+                        view.position(offset + HEADER_SIZE);
+                        view.get(key);
+                        view.get(data);
+
+                        keys.add(new String(key, StandardCharsets.UTF_8));
+                        values.add(data);
+                        expirations.add(expiresAt);
+                    }
+                    hasMore = slot < indexAddresses.length;
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                for (int i = 0; i < keys.size(); i++) {
+                    Object value;
+                    try {
+                        value = serializer.deserialize(values.get(i));
+                    } catch (RuntimeException ex) {
+                        LOG.debug("Failed to deserialize off-heap cache entry, key: {}", keys.get(i), ex);
+                        continue;
+                    }
+                    visitor.visit(keys.get(i), value, expirations.get(i));
+                }
+                keys.clear();
+                values.clear();
+                expirations.clear();
+            }
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return indexSize;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private long storedBytes() {
+            lock.readLock().lock();
+            try {
+                return storedBytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private long allocateChunk(int sizeClassIndex, long now) {
+            SizeClass sizeClass = sizeClasses[sizeClassIndex];
+            long address = sizeClass.popFree();
+            if (address >= 0) {
+                return address;
+            }
+
+            ByteBuffer slab = allocateSlab(this);
+            if (slab != null) {
+                slabs.add(slab);
+                slabOwners.add(sizeClass);
+                sizeClass.slabs.add(slabs.size() - 1);
+                formatSlab(sizeClass, slabs.size() - 1);
+
+                return sizeClass.popFree();
+            }
+
+            if (sizeClass.slabs.isEmpty()) {
+                return reassignSlab(sizeClass) ? sizeClass.popFree() : -1;
+            }
+
+            return evict(sizeClass, now);
+        }
+
+        /*
+         * CLOCK over chunks of size class. Expired entry is taken first, referenced entry gets second chance
+         */
+        private long evict(SizeClass sizeClass, long now) {
+            long chunksCount = (long) sizeClass.slabs.size() * sizeClass.chunksPerSlab;
+            for (long step = 0; step <= 2 * chunksCount; step++) {
+                long position = sizeClass.clockHand++ % chunksCount;
+                int slabIndex = sizeClass.slabs.get((int) (position / sizeClass.chunksPerSlab));
+                int offset = (int) (position % sizeClass.chunksPerSlab) * sizeClass.chunkSize;
+
+                ByteBuffer slab = slabs.get(slabIndex);
+                byte flags = slab.get(offset + FLAGS_OFFSET);
+                if ((flags & FLAG_USED) == 0) {
+                    continue;
+                }
+
+                long address = address(slabIndex, offset);
+                if (slab.getLong(offset + EXPIRES_AT_OFFSET) <= now) {
+                    expirationCount.increment();
+                } else if ((flags & FLAG_REFERENCED) != 0) {
+                    slab.put(offset + FLAGS_OFFSET, FLAG_USED);
+                    continue;
+                } else {
+                    evictionCount.increment();
+                    evictionWeight.add(entrySize(slab, offset));
+                }
+
+                dropEntry(slab, address);
+
+                return address;
+            }
+
+            return -1;
+        }
+
+        /*
+         * Move slab from the biggest size class of this segment to size class which has no slabs. Last slab of class isn't
+         * taken, otherwise classes would take it from each other on every put
+         */
+        private boolean reassignSlab(SizeClass sizeClass) {
+            SizeClass donor = null;
+            for (SizeClass candidate : sizeClasses) {
+                if ((candidate != sizeClass) && ((donor == null) || (candidate.slabs.size() > donor.slabs.size()))) {
+                    donor = candidate;
+                }
+            }
+            if ((donor == null) || (donor.slabs.size() <= 1)) {
+                return false;
+            }
+
+            int slabIndex = donor.slabs.remove(donor.slabs.size() - 1);
+            ByteBuffer slab = slabs.get(slabIndex);
+            for (int i = 0; i < donor.chunksPerSlab; i++) {
+                int offset = i * donor.chunkSize;
+                if ((slab.get(offset + FLAGS_OFFSET) & FLAG_USED) != 0) {
+                    evictionCount.increment();
+                    evictionWeight.add(entrySize(slab, offset));
+                    dropEntry(slab, address(slabIndex, offset));
+                }
+            }
+
+            int freeCount = 0;
+            for (int i = 0; i < donor.freeCount; i++) {
+                if (slabIndexOf(donor.freeChunks[i]) != slabIndex) {
+                    donor.freeChunks[freeCount++] = donor.freeChunks[i];
+                }
+            }
+            donor.freeCount = freeCount;
+            donor.clockHand = 0;
+
+            sizeClass.slabs.add(slabIndex);
+            slabOwners.set(slabIndex, sizeClass);
+            formatSlab(sizeClass, slabIndex);
+
+            return true;
+        }
+
+        private void formatSlab(SizeClass sizeClass, int slabIndex) {
+            ByteBuffer slab = slabs.get(slabIndex);
+            // Push in reverse order to fill slab from the beginning
+            for (int i = sizeClass.chunksPerSlab - 1; i >= 0; i--) {
+                int offset = i * sizeClass.chunkSize;
+                slab.put(offset + FLAGS_OFFSET, (byte) 0);
+                sizeClass.pushFree(address(slabIndex, offset));
+            }
+        }
+
+        private void freeChunk(long address) {
+            ByteBuffer slab = slabs.get(slabIndexOf(address));
+            dropEntryFlags(slab, offsetOf(address));
+            slabOwners.get(slabIndexOf(address)).pushFree(address);
+        }
+
+        /*
+         * Remove entry from index and mark chunk as unused. Caller reuses chunk
+         */
+        private void dropEntry(ByteBuffer slab, long address) {
+            int offset = offsetOf(address);
+            dropEntryFlags(slab, offset);
+            removeAddress(slab.getLong(offset + HASH_OFFSET), address);
+        }
+
+        private void dropEntryFlags(ByteBuffer slab, int offset) {
+            storedBytes -= entrySize(slab, offset);
+            slab.put(offset + FLAGS_OFFSET, (byte) 0);
+        }
+
+        private int entrySize(ByteBuffer slab, int offset) {
+            return HEADER_SIZE + slab.getInt(offset + KEY_LENGTH_OFFSET) + slab.getInt(offset + VALUE_LENGTH_OFFSET);
+        }
+
+        private int find(long hash, byte[] key) {
+            int mask = indexAddresses.length - 1;
+            for (int i = (int) hash & mask; indexAddresses[i] != 0; i = (i + 1) & mask) {
+                if ((indexHashes[i] == hash) && keyEquals(indexAddresses[i] - 1, key)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private boolean keyEquals(long address, byte[] key) {
+            ByteBuffer slab = slabs.get(slabIndexOf(address));
+            int offset = offsetOf(address);
+            if (slab.getInt(offset + KEY_LENGTH_OFFSET) != key.length) {
+                return false;
+            }
+
+            int keyOffset = offset + HEADER_SIZE;
+            for (int i = 0; i < key.length; i++) {
+                if (slab.get(keyOffset + i) != key[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void insert(long hash, long address) {
+            if ((indexSize + 1) * 2 > indexAddresses.length) {
+                resizeIndex(indexAddresses.length * 2);
+            }
+
+            int mask = indexAddresses.length - 1;
+            int i = (int) hash & mask;
+            while (indexAddresses[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            indexHashes[i] = hash;
+            indexAddresses[i] = address + 1;
+            indexSize++;
+        }
+
+        private void removeAddress(long hash, long address) {
+            int mask = indexAddresses.length - 1;
+            for (int i = (int) hash & mask; indexAddresses[i] != 0; i = (i + 1) & mask) {
+                if (indexAddresses[i] == address + 1) {
+                    removeSlot(i);
+                    return;
+                }
+            }
+        }
+
+        /*
+         * Backward shift deletion keeps linear probing chains without tombstones
+         */
+        private void removeSlot(int slot) {
+            int mask = indexAddresses.length - 1;
+            int hole = slot;
+            indexAddresses[hole] = 0;
+            for (int i = (hole + 1) & mask; indexAddresses[i] != 0; i = (i + 1) & mask) {
+                int home = (int) indexHashes[i] & mask;
+                boolean inPlace = hole <= i ? ((hole < home) && (home <= i)) : ((hole < home) || (home <= i));
+                if (!inPlace) {
+                    indexHashes[hole] = indexHashes[i];
+                    indexAddresses[hole] = indexAddresses[i];
+                    indexAddresses[i] = 0;
+                    hole = i;
+                }
+            }
+            indexSize--;
+        }
+
+        private void resizeIndex(int capacity) {
+            long[] oldHashes = indexHashes;
+            long[] oldAddresses = indexAddresses;
+
+            indexHashes = new long[capacity];
+            indexAddresses = new long[capacity];
+            indexSize = 0;
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] != 0) {
+                    insert(oldHashes[i], oldAddresses[i] - 1);
+                }
+            }
+        }
+
+        private void resetIndex() {
+            indexHashes = new long[INITIAL_INDEX_CAPACITY];
+            indexAddresses = new long[INITIAL_INDEX_CAPACITY];
+            indexSize = 0;
+            storedBytes = 0;
+        }
+    }
+
+}
@@ -0,0 +1,440 @@
+package org.gluu.service.cache;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Client side caching for redis providers. Values read from redis are kept in bounded local {@link NearCache} while
+ * redis server tracks keys and sends invalidation messages when they are changed, expired or evicted (redis 6+).
+ *
+ * Tracking uses RESP2 protocol with redirect: each node has subscriber connection to __redis__:invalidate channel and
+ * tracking connection in BCAST mode which redirects invalidation messages to subscriber. BCAST mode doesn't require
+ * tracking on pooled connections, it's enabled for configured key prefixes. Keys outside of prefixes aren't cached.
+ *
+ * Local copies are used only while all nodes have active subscription. When subscription is lost local cache is
+ * cleared because invalidation messages might be lost, it's restored by supervisor with resubscribe delay.
+ */
+public class RedisClientTracking {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisClientTracking.class);
+
+    private static final byte[] INVALIDATE_CHANNEL = SafeEncoder.encode("__redis__:invalidate");
+
+    private static final long RESUBSCRIBE_DELAY = 1000;
+
+    private static final int STAMPS_COUNT = 1024;
+
+    /*
+     * Subscribes to invalidation messages of node. Implementation should call onSubscribed after subscription and
+     * onInvalidate for each message. It should block till subscription is closed or connection failure
+     */
+    public interface NodeSubscriber {
+        void subscribe(String node, RedisClientTracking tracking) throws Exception;
+    }
+
+    private final NearCache localCache;
+
+    private final String[] prefixes;
+
+    private final Supplier<Collection<String>> nodes;
+
+    private final NodeSubscriber subscriber;
+
+    // Incremented on key invalidation. Value read from server is cached only if stamp of key wasn't changed
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMPS_COUNT);
+
+    // Incremented on invalidation of all keys
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+
+    private Collection<String> currentNodes = Collections.emptyList();
+
+    private volatile boolean running;
+
+    private volatile boolean active;
+
+    private ScheduledExecutorService supervisor;
+
+    private final LongAdder invalidationCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder resubscriptionCount = new LongAdder();
+
+    public RedisClientTracking(RedisConfiguration redisConfiguration, Supplier<Collection<String>> nodes, NodeSubscriber subscriber) {
+        this.localCache = new NearCache(redisConfiguration.getClientTrackingMaxEntries(), 0, redisConfiguration.getClientTrackingMaxAge());
+        String[] configuredPrefixes = StringUtils.split(redisConfiguration.getClientTrackingPrefixes(), ",");
+        this.prefixes = configuredPrefixes == null ? new String[0] : StringUtils.stripAll(configuredPrefixes);
+        this.nodes = nodes;
+        this.subscriber = subscriber;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        LOG.debug("Starting redis client tracking, prefixes: {}", (Object) prefixes);
+        running = true;
+
+        supervisor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-cache-tracking-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        supervisor.scheduleWithFixedDelay(this::checkSubscriptions, 0, RESUBSCRIBE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+
+            LOG.debug("Stopping redis client tracking");
+            running = false;
+            active = false;
+        }
+
+        supervisor.shutdownNow();
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.close();
+        }
+        subscriptions.clear();
+
+        invalidateAll();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /*
+     * Get value from local cache or load it with loader. Loaded value is cached if there was no invalidation of key
+     * during load
+     */
+    public Object get(String key, Function<String, Object> loader) {
+        if (!active || !isTracked(key)) {
+            return loader.apply(key);
+        }
+
+        Object value = localCache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        int stampIndex = stampIndex(key);
+        long stamp = stamps.get(stampIndex);
+        long currentEpoch = epoch.get();
+
+        value = loader.apply(key);
+        if (value == null) {
+            return null;
+        }
+
+        localCache.put(key, value, 0);
+
+        // Invalidation might come while value was loaded or cached. Stamp is changed before local entry removal,
+        // so check after put doesn't allow stale value to stay in cache
+        if (!active || (stamps.get(stampIndex) != stamp) || (epoch.get() != currentEpoch)) {
+            localCache.remove(key);
+        }
+
+        return value;
+    }
+
+    /*
+     * Remove local copy of key. Should be called after key change in redis
+     */
+    public void invalidate(String key) {
+        stamps.incrementAndGet(stampIndex(key));
+        localCache.remove(key);
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        localCache.clear();
+    }
+
+    public void cleanUp() {
+        localCache.cleanUp();
+    }
+
+    /*
+     * Should be called by subscriber when it's ready to receive invalidation messages. Handle is closed to stop
+     * subscription
+     */
+    public void onSubscribed(String node, Closeable handle) {
+        Subscription subscription = subscriptions.get(node);
+        if ((subscription == null) || (subscription.thread != Thread.currentThread())) {
+            // Subscription was stopped before it was ready
+            closeQuietly(node, handle);
+            return;
+        }
+
+        subscription.handle = handle;
+        subscription.subscribed = true;
+        if (subscription.closed) {
+            closeQuietly(node, handle);
+            return;
+        }
+
+        LOG.debug("Redis client tracking subscribed to node '{}'", node);
+        updateActive();
+    }
+
+    /*
+     * Process payload of invalidation message. It's list of invalidated keys or null when server was flushed
+     */
+    public void onInvalidate(Object payload) {
+        if (payload == null) {
+            flushCount.increment();
+            invalidateAll();
+            return;
+        }
+
+        if (!(payload instanceof List)) {
+            return;
+        }
+
+        for (Object key : (List<?>) payload) {
+            if (key instanceof byte[]) {
+                invalidationCount.increment();
+                invalidate(SafeEncoder.encode((byte[]) key));
+            }
+        }
+    }
+
+    public int getSize() {
+        return localCache.size();
+    }
+
+    public long getHitCount() {
+        return localCache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return localCache.getMissCount();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getResubscriptionCount() {
+        return resubscriptionCount.sum();
+    }
+
+    private boolean isTracked(String key) {
+        if (prefixes.length == 0) {
+            return true;
+        }
+
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int stampIndex(String key) {
+        return (int) CacheInvalidationMessage.hashKey(key) & (STAMPS_COUNT - 1);
+    }
+
+    private void checkSubscriptions() {
+        Collection<String> nodeNames;
+        try {
+            nodeNames = new ArrayList<String>(nodes.get());
+        } catch (Exception ex) {
+            LOG.warn("Failed to get redis nodes for client tracking", ex);
+            return;
+        }
+
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            currentNodes = nodeNames;
+
+            for (String node : nodeNames) {
+                if (!subscriptions.containsKey(node)) {
+                    Subscription subscription = new Subscription(node);
+                    subscriptions.put(node, subscription);
+                    subscription.thread.start();
+                }
+            }
+
+            for (Subscription subscription : subscriptions.values()) {
+                if (!nodeNames.contains(subscription.node)) {
+                    // Node was removed from cluster
+                    subscriptions.remove(subscription.node);
+                    subscription.close();
+                }
+            }
+        }
+
+        updateActive();
+    }
+
+    private synchronized void updateActive() {
+        boolean allSubscribed = running && !currentNodes.isEmpty();
+        for (String node : currentNodes) {
+            Subscription subscription = subscriptions.get(node);
+            if ((subscription == null) || !subscription.subscribed) {
+                allSubscribed = false;
+                break;
+            }
+        }
+
+        active = allSubscribed;
+    }
+
+    private void runSubscription(Subscription subscription) {
+        try {
+            subscriber.subscribe(subscription.node, this);
+        } catch (Exception ex) {
+            if (running) {
+                LOG.warn("Redis client tracking subscription to node '{}' failed", subscription.node, ex);
+            }
+        }
+
+        synchronized (this) {
+            subscriptions.remove(subscription.node, subscription);
+            active = false;
+        }
+
+        // Messages might be lost while there was no subscription
+        invalidateAll();
+        if (running) {
+            resubscriptionCount.increment();
+        }
+    }
+
+    /*
+     * Subscribe to invalidation messages of node with connections from pool. It blocks till subscription is closed
+     */
+    public void subscribe(String node, Pool<Jedis> pool) {
+        Jedis subscriberJedis = pool.getResource();
+        Jedis trackingJedis = null;
+        try {
+            final Client client = subscriberJedis.getClient();
+            long clientId = subscriberJedis.clientId();
+
+            client.setTimeoutInfinite();
+            client.subscribe(INVALIDATE_CHANNEL);
+            client.flush();
+            // Subscription confirmation
+            client.getUnflushedObjectMultiBulkReply();
+
+            trackingJedis = pool.getResource();
+            trackingJedis.sendCommand(Protocol.Command.CLIENT, trackingArguments(clientId));
+
+            onSubscribed(node, () -> {
+                client.unsubscribe();
+                client.flush();
+            });
+
+            while (true) {
+                List<Object> reply = client.getUnflushedObjectMultiBulkReply();
+                String type = SafeEncoder.encode((byte[]) reply.get(0));
+                if ("message".equals(type)) {
+                    onInvalidate(reply.get(2));
+                } else if ("unsubscribe".equals(type)) {
+                    break;
+                }
+            }
+
+            client.rollbackTimeout();
+        } finally {
+            if (trackingJedis != null) {
+                try {
+                    trackingJedis.sendCommand(Protocol.Command.CLIENT, "TRACKING", "off");
+                } catch (Exception ex) {
+                    LOG.debug("Failed to turn off redis client tracking", ex);
+                }
+                trackingJedis.close();
+            }
+            subscriberJedis.close();
+        }
+    }
+
+    private static void closeQuietly(String node, Closeable handle) {
+        try {
+            handle.close();
+        } catch (Exception ex) {
+            LOG.debug("Failed to close redis client tracking subscription to node '{}'", node, ex);
+        }
+    }
+
+    private String[] trackingArguments(long clientId) {
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("TRACKING");
+        arguments.add("on");
+        arguments.add("REDIRECT");
+        arguments.add(String.valueOf(clientId));
+        arguments.add("BCAST");
+        for (String prefix : prefixes) {
+            arguments.add("PREFIX");
+            arguments.add(prefix);
+        }
+
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    private final class Subscription {
+
+        private final String node;
+
+        private final Thread thread;
+
+        private volatile Closeable handle;
+
+        private volatile boolean subscribed;
+
+        private volatile boolean closed;
+
+        private Subscription(String node) {
+            this.node = node;
+            this.thread = new Thread(() -> runSubscription(this), "redis-cache-tracking-" + node);
+            this.thread.setDaemon(true);
+        }
+
+        private void close() {
+            closed = true;
+            Closeable currentHandle = handle;
+            if (currentHandle != null) {
+                closeQuietly(node, currentHandle);
+            }
+            thread.interrupt();
+        }
+    }
+
+}
@@ -1,15 +1,24 @@
 package org.gluu.service.cache;
 
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPoolConfig;
-
-import java.io.Serializable;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -47,6 +56,8 @@ public class RedisClusterProvider extends AbstractRedisProvider {
             }
 
             testConnection();
+            startInvalidationChannel();
+            startClientTracking();
             LOG.debug("RedisClusterProvider started.");
         } catch (Exception e) {
             LOG.error("Failed to start RedisClusterProvider.", e);
@@ -70,6 +81,9 @@ public class RedisClusterProvider extends AbstractRedisProvider {
     public void destroy() {
         LOG.debug("Destroying RedisClusterProvider");
 
+        stopAsyncWriter();
+        stopClientTracking();
+        stopInvalidationChannel();
         pool.close();
 
         LOG.debug("Destroyed RedisClusterProvider");
@@ -80,6 +94,16 @@ public class RedisClusterProvider extends AbstractRedisProvider {
         return pool;
     }
 
+    @Override
+    public Collection<? extends Pool<?>> getPools() {
+        return pool == null ? Collections.<Pool<?>>emptyList() : pool.getClusterNodes().values();
+    }
+
+    @Override
+    protected Map<String, ? extends Pool<Jedis>> getTrackingPools() {
+        return pool == null ? Collections.<String, Pool<Jedis>>emptyMap() : pool.getClusterNodes();
+    }
+
 	@Override
 	public boolean hasKey(String key) {
         Boolean hasKey = pool.exists(key);
@@ -88,31 +112,113 @@ public class RedisClusterProvider extends AbstractRedisProvider {
 	}
 
     @Override
-    public Object get(String key) {
+    protected Object loadValue(String key) {
         byte[] value = pool.get(key.getBytes());
         Object deserialized = null;
         if (value != null && value.length > 0) {
-            deserialized = SerializationUtils.deserialize(value);
+            deserialized = serializer.deserialize(value);
         }
         return deserialized;
     }
 
     @Override
     public void put(int expirationInSeconds, String key, Object object) {
-        String status = pool.setex(key.getBytes(), expirationInSeconds, SerializationUtils.serialize((Serializable) object));
+        String status = pool.setex(key.getBytes(), expirationInSeconds, serializer.serialize(object));
         LOG.trace("put - key: " + key + ", status: " + status);
+        invalidate(key);
     }
 
     @Override
     public void put(String key, Object object) {
-        String status = pool.set(key.getBytes(), SerializationUtils.serialize((Serializable) object));
+        String status = pool.set(key.getBytes(), serializer.serialize(object));
         LOG.trace("put - key: " + key + ", status: " + status);
+        invalidate(key);
     }
 
     @Override
     public void remove(String key) {
         Long entriesRemoved = pool.del(key.getBytes());
         LOG.trace("remove - key: " + key + ", entriesRemoved: " + entriesRemoved);
+        invalidate(key);
+    }
+
+    /*
+     * Multi-key commands are allowed only for keys from one hash slot. Keys are grouped by slot and each group is loaded in one request
+     */
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        for (List<String> slotKeys : groupBySlot(keys)) {
+            List<byte[]> values = pool.mget(toKeysBytes(slotKeys));
+            addValues(result, slotKeys, values);
+        }
+
+        return result;
+    }
+
+    /*
+     * JedisCluster has no pipeline support, values are stored one by one
+     */
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            pool.setex(entry.getKey().getBytes(), expirationInSeconds, serializer.serialize(entry.getValue()));
+            invalidate(entry.getKey());
+        }
+        LOG.trace("putAll - keys: " + entries.keySet());
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        for (List<String> slotKeys : groupBySlot(keys)) {
+            Long entriesRemoved = pool.del(toKeysBytes(slotKeys));
+            LOG.trace("removeAll - keys: " + slotKeys + ", entriesRemoved: " + entriesRemoved);
+        }
+
+        for (String key : keys) {
+            invalidate(key);
+        }
+    }
+
+    private static Collection<List<String>> groupBySlot(Collection<String> keys) {
+        Map<Integer, List<String>> slots = new HashMap<Integer, List<String>>();
+        for (String key : keys) {
+            Integer slot = JedisClusterCRC16.getSlot(key.getBytes());
+
+            List<String> slotKeys = slots.get(slot);
+            if (slotKeys == null) {
+                slotKeys = new ArrayList<String>();
+                slots.put(slot, slotKeys);
+            }
+            slotKeys.add(key);
+        }
+
+        return slots.values();
+    }
+
+    /*
+     * JedisCluster has no pipeline support, operations are sent one by one
+     */
+    @Override
+    protected void writeBatch(List<RedisWriteOperation> operations) {
+        for (RedisWriteOperation operation : operations) {
+            if (operation.isRemove()) {
+                pool.del(operation.getKey().getBytes());
+            } else {
+                pool.setex(operation.getKey().getBytes(), operation.getExpirationInSeconds(), operation.getValue());
+            }
+        }
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        String status = pool.set(key, token, SetParams.setParams().nx().ex(expirationInSeconds));
+        return "OK".equals(status);
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        pool.eval(UNLOCK_SCRIPT, 1, key, token);
     }
 
     @Override
@@ -120,4 +226,14 @@ public class RedisClusterProvider extends AbstractRedisProvider {
         LOG.trace("clear not allowed for cluster deployments");
     }
 
+    @Override
+    protected void publish(byte[] channel, byte[] message) {
+        pool.publish(channel, message);
+    }
+
+    @Override
+    protected void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        pool.subscribe(pubSub, channel);
+    }
+
 }
@@ -46,6 +46,35 @@ public class RedisConfiguration implements Serializable {
 
     private int maxTotalConnections = 500;
 
+    private int minIdleConnections = 2;
+
+    /**
+     * Max time to wait for free connection when pool is exhausted. Negative value means wait without limit
+     */
+    private long maxWaitMillis = -1;
+
+    private boolean testOnBorrow = false;
+
+    /**
+     * Evictor settings aren't set by default, so each provider keeps defaults of its pool config (JedisPoolConfig
+     * checks idle connections in background, sharded pool doesn't)
+     */
+    private Boolean testWhileIdle;
+
+    /**
+     * Idle connections are checked and evicted in background with this interval. Negative value disables evictor
+     */
+    private Long timeBetweenEvictionRunsMillis;
+
+    private Long minEvictableIdleTimeMillis;
+
+    private boolean jmxEnabled = true;
+
+    /**
+     * JMX name prefix of pool. Commons pool default "pool" is used if it's not set
+     */
+    private String jmxNamePrefix;
+
     private int connectionTimeout = 3000;
 
     /**
@@ -58,6 +87,27 @@ public class RedisConfiguration implements Serializable {
 
     private int maxRetryAttempts = 5;
 
+    /**
+     * Publish compact invalidation messages on put/remove and evict local (near cache) copies on other nodes
+     */
+    private boolean invalidationChannelEnabled = false;
+
+    private String invalidationChannel = "gluu_cache_invalidation";
+
+    private int invalidationBatchInterval = 5; // in milliseconds
+
+    /**
+     * Keep local copies of entries read from redis. Server sends invalidation messages when tracked keys are changed,
+     * expired or evicted (CLIENT TRACKING in BCAST mode). Requires redis 6+
+     */
+    private boolean clientTrackingEnabled = false;
+
+    private String clientTrackingPrefixes = ""; // prefix1,prefix2 ; empty to track all keys
+
+    private int clientTrackingMaxEntries = 10000;
+
+    private int clientTrackingMaxAge = 60; // in seconds
+
     public int getMaxIdleConnections() {
         return maxIdleConnections;
     }
@@ -98,6 +148,70 @@ public class RedisConfiguration implements Serializable {
         this.maxTotalConnections = maxTotalConnections;
     }
 
+    public int getMinIdleConnections() {
+        return minIdleConnections;
+    }
+
+    public void setMinIdleConnections(int minIdleConnections) {
+        this.minIdleConnections = minIdleConnections;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    public Boolean getTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    public void setTestWhileIdle(Boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    public Long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    public void setTimeBetweenEvictionRunsMillis(Long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public Long getMinEvictableIdleTimeMillis() {
+        return minEvictableIdleTimeMillis;
+    }
+
+    public void setMinEvictableIdleTimeMillis(Long minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    public String getJmxNamePrefix() {
+        return jmxNamePrefix;
+    }
+
+    public void setJmxNamePrefix(String jmxNamePrefix) {
+        this.jmxNamePrefix = jmxNamePrefix;
+    }
+
     public String getServers() {
         return servers;
     }
@@ -170,6 +284,62 @@ public class RedisConfiguration implements Serializable {
         this.sslKeyStorePassword = sslKeyStorePassword;
     }
 
+    public boolean isInvalidationChannelEnabled() {
+        return invalidationChannelEnabled;
+    }
+
+    public void setInvalidationChannelEnabled(boolean invalidationChannelEnabled) {
+        this.invalidationChannelEnabled = invalidationChannelEnabled;
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    public void setInvalidationChannel(String invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+    }
+
+    public int getInvalidationBatchInterval() {
+        return invalidationBatchInterval;
+    }
+
+    public void setInvalidationBatchInterval(int invalidationBatchInterval) {
+        this.invalidationBatchInterval = invalidationBatchInterval;
+    }
+
+    public boolean isClientTrackingEnabled() {
+        return clientTrackingEnabled;
+    }
+
+    public void setClientTrackingEnabled(boolean clientTrackingEnabled) {
+        this.clientTrackingEnabled = clientTrackingEnabled;
+    }
+
+    public String getClientTrackingPrefixes() {
+        return clientTrackingPrefixes;
+    }
+
+    public void setClientTrackingPrefixes(String clientTrackingPrefixes) {
+        this.clientTrackingPrefixes = clientTrackingPrefixes;
+    }
+
+    public int getClientTrackingMaxEntries() {
+        return clientTrackingMaxEntries;
+    }
+
+    public void setClientTrackingMaxEntries(int clientTrackingMaxEntries) {
+        this.clientTrackingMaxEntries = clientTrackingMaxEntries;
+    }
+
+    public int getClientTrackingMaxAge() {
+        return clientTrackingMaxAge;
+    }
+
+    public void setClientTrackingMaxAge(int clientTrackingMaxAge) {
+        this.clientTrackingMaxAge = clientTrackingMaxAge;
+    }
+
     public String getSentinelMasterGroupName() {
         return sentinelMasterGroupName;
     }
@@ -190,9 +360,24 @@ public class RedisConfiguration implements Serializable {
                 ", sentinelMasterGroupName=" + sentinelMasterGroupName +
                 ", maxIdleConnections=" + maxIdleConnections +
                 ", maxTotalConnections=" + maxTotalConnections +
+                ", minIdleConnections=" + minIdleConnections +
+                ", maxWaitMillis=" + maxWaitMillis +
+                ", testOnBorrow=" + testOnBorrow +
+                ", testWhileIdle=" + testWhileIdle +
+                ", timeBetweenEvictionRunsMillis=" + timeBetweenEvictionRunsMillis +
+                ", minEvictableIdleTimeMillis=" + minEvictableIdleTimeMillis +
+                ", jmxEnabled=" + jmxEnabled +
+                ", jmxNamePrefix=" + jmxNamePrefix +
                 ", connectionTimeout=" + connectionTimeout +
                 ", soTimeout=" + soTimeout +
                 ", maxRetryAttempts=" + maxRetryAttempts +
+                ", invalidationChannelEnabled=" + invalidationChannelEnabled +
+                ", invalidationChannel=" + invalidationChannel +
+                ", invalidationBatchInterval=" + invalidationBatchInterval +
+                ", clientTrackingEnabled=" + clientTrackingEnabled +
+                ", clientTrackingPrefixes=" + clientTrackingPrefixes +
+                ", clientTrackingMaxEntries=" + clientTrackingMaxEntries +
+                ", clientTrackingMaxAge=" + clientTrackingMaxAge +
                 '}';
     }
 }
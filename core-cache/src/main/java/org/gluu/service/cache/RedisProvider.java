@@ -9,6 +9,14 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.ToLongFunction;
 
 /**
  * @author yuriyz on 02/23/2017.
@@ -45,6 +53,7 @@ public class RedisProvider extends AbstractCacheProvider<AbstractRedisProvider>
             defaultPutExpiration = redisConfiguration.getDefaultPutExpiration() > 0 ? redisConfiguration.getDefaultPutExpiration()
                     : DEFAULT_PUT_EXPIRATION_IN_SECONDS;
             redisProvider = RedisProviderFactory.create(cacheConfiguration.getRedisConfiguration());
+            redisProvider.setSerializer(VersionedCacheSerializer.create(cacheConfiguration.getSerializerConfiguration()));
             redisProvider.create();
             log.debug("RedisProvider started.");
         } catch (Exception e) {
@@ -93,6 +102,36 @@ public class RedisProvider extends AbstractCacheProvider<AbstractRedisProvider>
         return redisProvider;
     }
 
+    @Override
+    public void setMetrics(CacheProviderMetrics metrics) {
+        super.setMetrics(metrics);
+        if (redisProvider == null) {
+            return;
+        }
+
+        redisProvider.setSerializer(InstrumentedCacheSerializer.wrap(redisProvider.getSerializer(), metrics));
+        if (metrics == null) {
+            redisProvider.setMetrics(null);
+            return;
+        }
+
+        metrics.registerPoolGauges(() -> redisProvider == null ? null : redisProvider.getPools());
+        redisProvider.setMetrics(metrics);
+        if (redisProvider.getClientTracking() != null) {
+            metrics.registerGauge("tracking.size", () -> getClientTrackingValue(RedisClientTracking::getSize));
+            metrics.registerGauge("tracking.hits", () -> getClientTrackingValue(RedisClientTracking::getHitCount));
+            metrics.registerGauge("tracking.misses", () -> getClientTrackingValue(RedisClientTracking::getMissCount));
+            metrics.registerGauge("tracking.invalidations", () -> getClientTrackingValue(RedisClientTracking::getInvalidationCount));
+            metrics.registerGauge("tracking.resubscriptions", () -> getClientTrackingValue(RedisClientTracking::getResubscriptionCount));
+        }
+    }
+
+    private long getClientTrackingValue(ToLongFunction<RedisClientTracking> value) {
+        RedisClientTracking clientTracking = redisProvider == null ? null : redisProvider.getClientTracking();
+
+        return clientTracking == null ? 0L : value.applyAsLong(clientTracking);
+    }
+
 	@Override
 	public boolean hasKey(String key) {
         if (key == null) {
@@ -119,6 +158,75 @@ public class RedisProvider extends AbstractCacheProvider<AbstractRedisProvider>
         redisProvider.remove(key);
     }
 
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        List<String> nonNullKeys = nonNullKeys(keys);
+        if (nonNullKeys.isEmpty()) {
+            return new HashMap<String, Object>();
+        }
+        return redisProvider.getAll(nonNullKeys);
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        redisProvider.putAll(expirationInSeconds > 0 ? expirationInSeconds : defaultPutExpiration, entries);
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        List<String> nonNullKeys = nonNullKeys(keys);
+        if (nonNullKeys.isEmpty()) {
+            return;
+        }
+        redisProvider.removeAll(nonNullKeys);
+    }
+
+    @Override
+    public CompletionStage<Object> getAsync(String key) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return redisProvider.getAsync(key);
+    }
+
+    @Override
+    public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+        return redisProvider.putAsync(expirationInSeconds > 0 ? expirationInSeconds : defaultPutExpiration, key, object);
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key) {
+        return redisProvider.removeAsync(key);
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        return redisProvider.tryLock(key, token, expirationInSeconds);
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        redisProvider.unlock(key, token);
+    }
+
+    private static List<String> nonNullKeys(Collection<String> keys) {
+        List<String> result = new ArrayList<String>();
+        if (keys == null) {
+            return result;
+        }
+
+        for (String key : keys) {
+            if (key != null) {
+                result.add(key);
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public void clear() {
         redisProvider.clear();
@@ -1,11 +1,17 @@
 package org.gluu.service.cache;
 
-import org.apache.commons.lang.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import java.io.Serializable;
 
 import static org.gluu.service.cache.RedisClusterProvider.hosts;
 
@@ -43,6 +49,8 @@ public class RedisSentinelProvider extends AbstractRedisProvider {
                     hosts(getRedisConfiguration().getServers()), poolConfig, jedisClientConfig, jedisClientConfig);
 
             testConnection();
+            startInvalidationChannel();
+            startClientTracking();
             LOG.debug("RedisSentinelProvider started.");
         } catch (Exception e) {
             LOG.error("Failed to start RedisSentinelProvider.", e);
@@ -54,6 +62,9 @@ public class RedisSentinelProvider extends AbstractRedisProvider {
         LOG.debug("Destroying RedisSentinelProvider");
 
         try {
+            stopAsyncWriter();
+            stopClientTracking();
+            stopInvalidationChannel();
             pool.close();
         } catch (Exception e) {
             LOG.error("Failed to destroy RedisSentinelProvider", e);
@@ -68,9 +79,19 @@ public class RedisSentinelProvider extends AbstractRedisProvider {
         return pool;
     }
 
+    @Override
+    public Collection<? extends Pool<?>> getPools() {
+        return pool == null ? Collections.<Pool<?>>emptyList() : Collections.singletonList(pool);
+    }
+
+    @Override
+    protected Map<String, ? extends Pool<Jedis>> getTrackingPools() {
+        return pool == null ? Collections.<String, Pool<Jedis>>emptyMap() : Collections.singletonMap(MASTER_NODE, pool);
+    }
+
 	@Override
 	public boolean hasKey(String key) {
-        try (final Jedis resource = pool.getResource()) {
+        try (final Jedis resource = getResource(pool)) {
             Boolean hasKey = resource.exists(key);
 
             return Boolean.TRUE.equals(hasKey);
@@ -78,12 +99,12 @@ public class RedisSentinelProvider extends AbstractRedisProvider {
 	}
 
     @Override
-    public Object get(String key) {
-        try (final Jedis resource = pool.getResource()) {
+    protected Object loadValue(String key) {
+        try (final Jedis resource = getResource(pool)) {
             byte[] value = resource.get(key.getBytes());
             Object deserialized = null;
             if (value != null && value.length > 0) {
-                deserialized = SerializationUtils.deserialize(value);
+                deserialized = serializer.deserialize(value);
             }
             return deserialized;
         }
@@ -91,33 +112,126 @@ public class RedisSentinelProvider extends AbstractRedisProvider {
 
     @Override
     public void put(int expirationInSeconds, String key, Object object) {
-        try (final Jedis resource = pool.getResource()) {
-            String status = resource.setex(key.getBytes(), expirationInSeconds, SerializationUtils.serialize((Serializable) object));
+        try (final Jedis resource = getResource(pool)) {
+            String status = resource.setex(key.getBytes(), expirationInSeconds, serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         }
+        invalidate(key);
     }
 
     @Override
     public void put(String key, Object object) {
-        try (final Jedis resource = pool.getResource()) {
-            String status = resource.set(key.getBytes(), SerializationUtils.serialize((Serializable) object));
+        try (final Jedis resource = getResource(pool)) {
+            String status = resource.set(key.getBytes(), serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         }
+        invalidate(key);
     }
 
     @Override
     public void remove(String key) {
-        try (final Jedis resource = pool.getResource()) {
+        try (final Jedis resource = getResource(pool)) {
             Long entriesRemoved = resource.del(key.getBytes());
             LOG.trace("remove - key: " + key + ", entriesRemoved: " + entriesRemoved);
         }
+        invalidate(key);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        try (final Jedis resource = getResource(pool)) {
+            List<byte[]> values = resource.mget(toKeysBytes(keys));
+            addValues(result, keys, values);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        try (final Jedis resource = getResource(pool)) {
+            Pipeline pipeline = resource.pipelined();
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                pipeline.setex(entry.getKey().getBytes(), expirationInSeconds, serializer.serialize(entry.getValue()));
+            }
+            pipeline.sync();
+            LOG.trace("putAll - keys: " + entries.keySet());
+        }
+
+        for (String key : entries.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        try (final Jedis resource = getResource(pool)) {
+            Long entriesRemoved = resource.del(toKeysBytes(keys));
+            LOG.trace("removeAll - keys: " + keys + ", entriesRemoved: " + entriesRemoved);
+        }
+
+        for (String key : keys) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    protected void writeBatch(List<RedisWriteOperation> operations) {
+        try (final Jedis resource = getResource(pool)) {
+            Pipeline pipeline = resource.pipelined();
+            addToPipeline(pipeline, operations);
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        try (final Jedis resource = getResource(pool)) {
+            String status = resource.set(key, token, SetParams.setParams().nx().ex(expirationInSeconds));
+            return "OK".equals(status);
+        }
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        try (final Jedis resource = getResource(pool)) {
+            resource.eval(UNLOCK_SCRIPT, 1, key, token);
+        }
     }
 
     @Override
     public void clear() {
-        try (final Jedis resource = pool.getResource()) {
+        try (final Jedis resource = getResource(pool)) {
             resource.flushAll();
             LOG.trace("clear");
         }
+        invalidateAll();
+    }
+
+    @Override
+    protected void publish(byte[] channel, byte[] message) {
+        try (final Jedis resource = getResource(pool)) {
+            resource.publish(channel, message);
+        }
+    }
+
+    @Override
+    protected void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        try (final Jedis resource = getResource(pool)) {
+            resource.subscribe(pubSub, channel);
+        }
     }
 }
@@ -1,19 +1,27 @@
 package org.gluu.service.cache;
 
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisShardInfo;
 import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
 
 import javax.net.ssl.SSLParameters;
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Important : keep it weld free. It's reused by oxd !
@@ -35,13 +43,12 @@ public class RedisShardedProvider extends AbstractRedisProvider {
             LOG.debug("Starting RedisShardedProvider ... configuration:" + redisConfiguration);
 
             GenericObjectPoolConfig<ShardedJedis> poolConfig = new GenericObjectPoolConfig<>();
-            poolConfig.setMaxTotal(redisConfiguration.getMaxTotalConnections());
-            poolConfig.setMaxIdle(redisConfiguration.getMaxIdleConnections());
-            poolConfig.setMinIdle(2);
+            configurePool(poolConfig);
 
             pool = new ShardedJedisPool(poolConfig, shards(redisConfiguration));
 
             testConnection();
+            startInvalidationChannel();
             LOG.debug("RedisShardedProvider started.");
         } catch (Exception e) {
             LOG.error("Failed to start RedisShardedProvider.", e);
@@ -88,6 +95,8 @@ public class RedisShardedProvider extends AbstractRedisProvider {
     public void destroy() {
         LOG.debug("Destroying RedisShardedProvider");
 
+        stopAsyncWriter();
+        stopInvalidationChannel();
         pool.close();
 
         LOG.debug("Destroyed RedisShardedProvider");
@@ -98,9 +107,14 @@ public class RedisShardedProvider extends AbstractRedisProvider {
         return pool;
     }
 
+    @Override
+    public Collection<? extends Pool<?>> getPools() {
+        return pool == null ? Collections.<Pool<?>>emptyList() : Collections.singletonList(pool);
+    }
+
 	@Override
 	public boolean hasKey(String key) {
-        try (final ShardedJedis resource = pool.getResource()) {
+        try (final ShardedJedis resource = getResource(pool)) {
             Boolean hasKey = resource.exists(key);
 
             return Boolean.TRUE.equals(hasKey);
@@ -108,13 +122,13 @@ public class RedisShardedProvider extends AbstractRedisProvider {
 	}
 
     @Override
-    public Object get(String key) {
-        ShardedJedis jedis = pool.getResource();
+    protected Object loadValue(String key) {
+        ShardedJedis jedis = getResource(pool);
         try {
             byte[] value = jedis.get(key.getBytes());
             Object deserialized = null;
             if (value != null && value.length > 0) {
-                deserialized = SerializationUtils.deserialize(value);
+                deserialized = serializer.deserialize(value);
             }
             return deserialized;
         } finally {
@@ -124,39 +138,191 @@ public class RedisShardedProvider extends AbstractRedisProvider {
 
     @Override
     public void put(int expirationInSeconds, String key, Object object) {
-        ShardedJedis jedis = pool.getResource();
+        ShardedJedis jedis = getResource(pool);
         try {
-            String status = jedis.setex(key.getBytes(), expirationInSeconds, SerializationUtils.serialize((Serializable) object));
+            String status = jedis.setex(key.getBytes(), expirationInSeconds, serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         } finally {
             jedis.close();
         }
+        invalidate(key);
     }
 
     @Override
     public void put(String key, Object object) {
-        ShardedJedis jedis = pool.getResource();
+        ShardedJedis jedis = getResource(pool);
         try {
-            String status = jedis.set(key.getBytes(), SerializationUtils.serialize((Serializable) object));
+            String status = jedis.set(key.getBytes(), serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         } finally {
             jedis.close();
         }
+        invalidate(key);
     }
 
     @Override
     public void remove(String key) {
-        ShardedJedis jedis = pool.getResource();
+        ShardedJedis jedis = getResource(pool);
         try {
             Long entriesRemoved = jedis.del(key.getBytes());
             LOG.trace("remove - key: " + key + ", entriesRemoved: " + entriesRemoved);
         } finally {
             jedis.close();
         }
+        invalidate(key);
+    }
+
+    /*
+     * Keys are grouped by shard and each group is loaded in one request
+     */
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        ShardedJedis jedis = getResource(pool);
+        try {
+            for (Map.Entry<Jedis, List<String>> shardKeys : groupByShard(jedis, keys).entrySet()) {
+                List<byte[]> values = shardKeys.getKey().mget(toKeysBytes(shardKeys.getValue()));
+                addValues(result, shardKeys.getValue(), values);
+            }
+        } finally {
+            jedis.close();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        ShardedJedis jedis = getResource(pool);
+        try {
+            for (Map.Entry<Jedis, List<String>> shardKeys : groupByShard(jedis, entries.keySet()).entrySet()) {
+                Pipeline pipeline = shardKeys.getKey().pipelined();
+                for (String key : shardKeys.getValue()) {
+                    pipeline.setex(key.getBytes(), expirationInSeconds, serializer.serialize(entries.get(key)));
+                }
+                pipeline.sync();
+            }
+            LOG.trace("putAll - keys: " + entries.keySet());
+        } finally {
+            jedis.close();
+        }
+
+        for (String key : entries.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        ShardedJedis jedis = getResource(pool);
+        try {
+            for (Map.Entry<Jedis, List<String>> shardKeys : groupByShard(jedis, keys).entrySet()) {
+                Long entriesRemoved = shardKeys.getKey().del(toKeysBytes(shardKeys.getValue()));
+                LOG.trace("removeAll - keys: " + shardKeys.getValue() + ", entriesRemoved: " + entriesRemoved);
+            }
+        } finally {
+            jedis.close();
+        }
+
+        for (String key : keys) {
+            invalidate(key);
+        }
+    }
+
+    private static Map<Jedis, List<String>> groupByShard(ShardedJedis jedis, Collection<String> keys) {
+        Map<Jedis, List<String>> shards = new LinkedHashMap<Jedis, List<String>>();
+        for (String key : keys) {
+            Jedis shard = jedis.getShard(key.getBytes());
+
+            List<String> shardKeys = shards.get(shard);
+            if (shardKeys == null) {
+                shardKeys = new ArrayList<String>();
+                shards.put(shard, shardKeys);
+            }
+            shardKeys.add(key);
+        }
+
+        return shards;
+    }
+
+    @Override
+    protected void writeBatch(List<RedisWriteOperation> operations) {
+        ShardedJedis jedis = getResource(pool);
+        try {
+            Map<Jedis, List<RedisWriteOperation>> shards = new LinkedHashMap<Jedis, List<RedisWriteOperation>>();
+            for (RedisWriteOperation operation : operations) {
+                Jedis shard = jedis.getShard(operation.getKey().getBytes());
+
+                List<RedisWriteOperation> shardOperations = shards.get(shard);
+                if (shardOperations == null) {
+                    shardOperations = new ArrayList<RedisWriteOperation>();
+                    shards.put(shard, shardOperations);
+                }
+                shardOperations.add(operation);
+            }
+
+            for (Map.Entry<Jedis, List<RedisWriteOperation>> shardOperations : shards.entrySet()) {
+                Pipeline pipeline = shardOperations.getKey().pipelined();
+                addToPipeline(pipeline, shardOperations.getValue());
+                pipeline.sync();
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        ShardedJedis jedis = getResource(pool);
+        try {
+            String status = jedis.set(key, token, SetParams.setParams().nx().ex(expirationInSeconds));
+            return "OK".equals(status);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        ShardedJedis jedis = getResource(pool);
+        try {
+            jedis.getShard(key).eval(UNLOCK_SCRIPT, 1, key, token);
+        } finally {
+            jedis.close();
+        }
     }
 
     @Override
     public void clear() {
         LOG.trace("clear not supported by sharded implemented");
     }
+
+    /*
+     * Channel is served by shard which owns channel name
+     */
+    @Override
+    protected void publish(byte[] channel, byte[] message) {
+        try (final ShardedJedis resource = getResource(pool)) {
+            resource.getShard(channel).publish(channel, message);
+        }
+    }
+
+    @Override
+    protected void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        try (final ShardedJedis resource = getResource(pool)) {
+            resource.getShard(channel).subscribe(pubSub, channel);
+        }
+    }
 }
@@ -1,19 +1,26 @@
 package org.gluu.service.cache;
 
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.Pool;
 
 import javax.annotation.PreDestroy;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
-import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Important : keep it weld free. It's reused by oxd !
@@ -53,6 +60,8 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
             }
 
             testConnection();
+            startInvalidationChannel();
+            startClientTracking();
             LOG.debug("RedisStandaloneProvider started.");
         } catch (Exception e) {
             LOG.error("Problems connecting with Redis", e);
@@ -64,6 +73,9 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
     public void destroy() {
         LOG.debug("Destroying RedisStandaloneProvider");
 
+        stopAsyncWriter();
+        stopClientTracking();
+        stopInvalidationChannel();
         pool.close();
 
         LOG.debug("Destroyed RedisStandaloneProvider");
@@ -74,22 +86,34 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
         return pool;
     }
 
+    @Override
+    public Collection<? extends Pool<?>> getPools() {
+        return pool == null ? Collections.<Pool<?>>emptyList() : Collections.singletonList(pool);
+    }
+
+    @Override
+    protected Map<String, ? extends Pool<Jedis>> getTrackingPools() {
+        return pool == null ? Collections.<String, Pool<Jedis>>emptyMap() : Collections.singletonMap(MASTER_NODE, pool);
+    }
+
 	@Override
 	public boolean hasKey(String key) {
-        Boolean hasKey = pool.getResource().exists(key);
+        try (final Jedis jedis = getResource(pool)) {
+            Boolean hasKey = jedis.exists(key);
 
-        return Boolean.TRUE.equals(hasKey);
+            return Boolean.TRUE.equals(hasKey);
+        }
 	}
 
     @Override
-    public Object get(String key) {
-        Jedis jedis = pool.getResource();
+    protected Object loadValue(String key) {
+        Jedis jedis = getResource(pool);
 
         try {
             byte[] value = jedis.get(key.getBytes());
             Object deserialized = null;
             if (value != null && value.length > 0) {
-                deserialized = SerializationUtils.deserialize(value);
+                deserialized = serializer.deserialize(value);
             }
             return deserialized;
         } finally {
@@ -99,31 +123,33 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
 
     @Override
     public void put(int expirationInSeconds, String key, Object object) {
-        Jedis jedis = pool.getResource();
+        Jedis jedis = getResource(pool);
 
         try {
-            String status = jedis.setex(key.getBytes(), expirationInSeconds, SerializationUtils.serialize((Serializable) object));
+            String status = jedis.setex(key.getBytes(), expirationInSeconds, serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         } finally {
             jedis.close();
         }
+        invalidate(key);
     }
 
     @Override
     public void put(String key, Object object) {
-        Jedis jedis = pool.getResource();
+        Jedis jedis = getResource(pool);
 
         try {
-            String status = jedis.set(key.getBytes(), SerializationUtils.serialize((Serializable) object));
+            String status = jedis.set(key.getBytes(), serializer.serialize(object));
             LOG.trace("put - key: " + key + ", status: " + status);
         } finally {
             jedis.close();
         }
+        invalidate(key);
     }
 
     @Override
     public void remove(String key) {
-        Jedis jedis = pool.getResource();
+        Jedis jedis = getResource(pool);
 
         try {
             Long entriesRemoved = jedis.del(key.getBytes());
@@ -131,11 +157,111 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
         } finally {
             jedis.close();
         }
+        invalidate(key);
+    }
+
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        Jedis jedis = getResource(pool);
+
+        try {
+            List<byte[]> values = jedis.mget(toKeysBytes(keys));
+            addValues(result, keys, values);
+        } finally {
+            jedis.close();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Jedis jedis = getResource(pool);
+
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                pipeline.setex(entry.getKey().getBytes(), expirationInSeconds, serializer.serialize(entry.getValue()));
+            }
+            pipeline.sync();
+            LOG.trace("putAll - keys: " + entries.keySet());
+        } finally {
+            jedis.close();
+        }
+
+        for (String key : entries.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        Jedis jedis = getResource(pool);
+
+        try {
+            Long entriesRemoved = jedis.del(toKeysBytes(keys));
+            LOG.trace("removeAll - keys: " + keys + ", entriesRemoved: " + entriesRemoved);
+        } finally {
+            jedis.close();
+        }
+
+        for (String key : keys) {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    protected void writeBatch(List<RedisWriteOperation> operations) {
+        Jedis jedis = getResource(pool);
+
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            addToPipeline(pipeline, operations);
+            pipeline.sync();
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        Jedis jedis = getResource(pool);
+
+        try {
+            String status = jedis.set(key, token, SetParams.setParams().nx().ex(expirationInSeconds));
+            return "OK".equals(status);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        Jedis jedis = getResource(pool);
+
+        try {
+            jedis.eval(UNLOCK_SCRIPT, 1, key, token);
+        } finally {
+            jedis.close();
+        }
     }
 
     @Override
     public void clear() {
-        Jedis jedis = pool.getResource();
+        Jedis jedis = getResource(pool);
 
         try {
             jedis.flushAll();
@@ -143,5 +269,28 @@ public class RedisStandaloneProvider extends AbstractRedisProvider {
         } finally {
             jedis.close();
         }
+        invalidateAll();
+    }
+
+    @Override
+    protected void publish(byte[] channel, byte[] message) {
+        Jedis jedis = getResource(pool);
+
+        try {
+            jedis.publish(channel, message);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    protected void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+        Jedis jedis = getResource(pool);
+
+        try {
+            jedis.subscribe(pubSub, channel);
+        } finally {
+            jedis.close();
+        }
     }
 }
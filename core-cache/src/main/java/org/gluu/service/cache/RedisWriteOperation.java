@@ -0,0 +1,42 @@
+package org.gluu.service.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous write to redis waiting in {@link AbstractRedisProvider} queue. Remove operation has no value
+ */
+public class RedisWriteOperation {
+
+    private final String key;
+    private final int expirationInSeconds;
+    private final byte[] value;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+    public RedisWriteOperation(String key, int expirationInSeconds, byte[] value) {
+        this.key = key;
+        this.expirationInSeconds = expirationInSeconds;
+        this.value = value;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getExpirationInSeconds() {
+        return expirationInSeconds;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public boolean isRemove() {
+        return value == null;
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+}
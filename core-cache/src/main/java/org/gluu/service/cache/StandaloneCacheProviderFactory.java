@@ -15,6 +15,7 @@ public class StandaloneCacheProviderFactory {
 
 	private PersistenceEntryManager entryManager;
 	private StringEncrypter stringEncrypter;
+	private CacheMetrics cacheMetrics;
 
 	public StandaloneCacheProviderFactory(PersistenceEntryManager entryManager, StringEncrypter stringEncrypter) {
 		this.entryManager = entryManager;
@@ -30,6 +31,61 @@ public class StandaloneCacheProviderFactory {
 		}
 
 		// Create bean
+		AbstractCacheProvider<?> cacheProvider = null;
+		if (CacheProviderType.TWO_TIER == cacheProviderType) {
+			TwoTierConfiguration twoTierConfiguration = cacheConfiguration.getTwoTierConfiguration();
+			CacheProviderType remoteCacheProviderType = twoTierConfiguration == null ? null : twoTierConfiguration.getRemoteCacheProviderType();
+			if ((remoteCacheProviderType == null) || (CacheProviderType.TWO_TIER == remoteCacheProviderType)) {
+				throw new RuntimeException("Failed to initialize TWO_TIER cacheProvider, remoteCacheProviderType is invalid: " + remoteCacheProviderType);
+			}
+
+			AbstractCacheProvider<?> remoteCacheProvider = createCacheProvider(remoteCacheProviderType, cacheConfiguration);
+			if (remoteCacheProvider == null) {
+				throw new RuntimeException("Failed to initialize TWO_TIER cacheProvider, remoteCacheProviderType is unsupported: " + remoteCacheProviderType);
+			}
+			remoteCacheProvider.create();
+
+			TwoTierCacheProvider twoTierCacheProvider = new TwoTierCacheProvider();
+			twoTierCacheProvider.configure(cacheConfiguration, remoteCacheProvider);
+			twoTierCacheProvider.init();
+
+			cacheProvider = twoTierCacheProvider;
+		} else {
+			cacheProvider = createCacheProvider(cacheProviderType, cacheConfiguration);
+		}
+
+		if (cacheProvider == null) {
+			throw new RuntimeException("Failed to initialize cacheProvider, cacheProviderType is unsupported: " + cacheProviderType);
+		}
+
+		cacheProvider.create();
+
+		if (cacheConfiguration.isMetricsEnabled()) {
+			if (cacheMetrics == null) {
+				cacheMetrics = new CacheMetrics();
+			}
+			return instrument(cacheProvider, cacheMetrics.getProviderMetrics(cacheProviderType));
+		}
+
+		return cacheProvider;
+	}
+
+	private static <T> InstrumentedCacheProvider<T> instrument(AbstractCacheProvider<T> cacheProvider, CacheProviderMetrics metrics) {
+		return new InstrumentedCacheProvider<T>(cacheProvider, metrics);
+	}
+
+	/*
+	 * Metrics of created providers. Application can bind them to own metric registry
+	 */
+	public CacheMetrics getCacheMetrics() {
+		return cacheMetrics;
+	}
+
+	public void setCacheMetrics(CacheMetrics cacheMetrics) {
+		this.cacheMetrics = cacheMetrics;
+	}
+
+	private AbstractCacheProvider<?> createCacheProvider(CacheProviderType cacheProviderType, CacheConfiguration cacheConfiguration) {
 		AbstractCacheProvider<?> cacheProvider = null;
 		switch (cacheProviderType) {
 			case IN_MEMORY:
@@ -74,14 +130,10 @@ public class StandaloneCacheProviderFactory {
 	
 				cacheProvider = nativePersistenceCacheProvider;
 				break;
+			default:
+				break;
 		}
 
-		if (cacheProvider == null) {
-			throw new RuntimeException("Failed to initialize cacheProvider, cacheProviderType is unsupported: " + cacheProviderType);
-		}
-
-		cacheProvider.create();
-
 		return cacheProvider;
 	}
 
@@ -0,0 +1,722 @@
+package org.gluu.service.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-process cache with W-TinyLFU admission and per entry TTL. Used by {@link InMemoryCacheProvider}
+ * when {@link InMemoryCacheType#BOUNDED} is configured.
+ *
+ * Keys are spread over lock-striped segments. Each segment keeps small admission window LRU, probation and protected
+ * LRU queues of main space, count-min frequency sketch and hierarchical timer wheel. New entries go to window. Entry
+ * pushed out of window is admitted to main space only if it was requested more often than probation victim.
+ *
+ * Reads don't take segment lock. Value is read from concurrent map and access is recorded in lossy ring buffer which is
+ * replayed against eviction policy by thread which holds segment lock next.
+ *
+ * Size is measured in entries or, when max weight is set, in estimated entry size in bytes.
+ */
+public class TinyLfuCache implements InMemoryStore {
+
+    private static final int MAX_SEGMENTS_COUNT = 16;
+
+    private static final int MIN_SEGMENT_CAPACITY = 32;
+
+    private static final int READ_BUFFER_SIZE = 64;
+
+    private static final int QUEUE_WINDOW = 0;
+    private static final int QUEUE_PROBATION = 1;
+    private static final int QUEUE_PROTECTED = 2;
+    private static final int QUEUE_DEAD = 3;
+
+    private final Segment[] segments;
+
+    private final boolean weighted;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /*
+     * Max weight (estimated size in bytes) takes precedence over max entries when it's positive
+     */
+    public TinyLfuCache(int maxEntries, long maxWeight) {
+        this.weighted = maxWeight > 0;
+        long maximum = weighted ? maxWeight : maxEntries;
+        if (maximum <= 0) {
+            throw new IllegalArgumentException("maxEntries or maxWeight should be positive, maxEntries: " + maxEntries + ", maxWeight: " + maxWeight);
+        }
+
+        int segmentsCount = Integer.highestOneBit((int) Math.min(MAX_SEGMENTS_COUNT, Math.max(1, maximum / MIN_SEGMENT_CAPACITY)));
+        long now = System.currentTimeMillis();
+
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment(Math.max(1, maximum / segmentsCount), now);
+        }
+    }
+
+    @Override
+    public Object get(String key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        Node node = segment.data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        Object value = node.value;
+        if (node.expiresAt <= now) {
+            missCount.increment();
+            segment.tryMaintenance(now);
+            return null;
+        }
+
+        hitCount.increment();
+        segment.recordRead(node, now);
+
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        Node node = segmentFor(hash(key)).data.get(key);
+
+        return (node != null) && (node.expiresAt > System.currentTimeMillis());
+    }
+
+    @Override
+    public void put(String key, Object value, long ttlInMillis) {
+        if ((value == null) || (ttlInMillis <= 0)) {
+            remove(key);
+            return;
+        }
+
+        long hash = hash(key);
+        long weight = weighted ? NearCache.estimateWeight(key, value) : 1;
+        long now = System.currentTimeMillis();
+        segmentFor(hash).put(key, hash, value, now + ttlInMillis, weight, now);
+    }
+
+    @Override
+    public void remove(String key) {
+        segmentFor(hash(key)).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /*
+     * Apply pending reads, remove expired entries and evict entries over capacity in all segments
+     */
+    @Override
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.maintenance(now);
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            for (Node node : segment.data.values()) {
+                Object value = node.value;
+                long expiresAt = node.expiresAt;
+                if (expiresAt > now) {
+                    visitor.visit(node.key, value, expiresAt);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.data.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public long weightedSize() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weightedSize.get();
+        }
+
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getEvictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+
+        return requests == 0 ? 0.0d : (double) hits / requests;
+    }
+
+    int getSegmentsCount() {
+        return segments.length;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    static long hash(String key) {
+        long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+
+        return hash ^ (hash >>> 29);
+    }
+
+    private static final class Node {
+
+        private final String key;
+        private final long hash;
+
+        private volatile Object value;
+        private volatile long expiresAt;
+        private long weight;
+
+        private int queue;
+
+        // Access order queue links
+        private Node prev;
+        private Node next;
+
+        // Timer wheel bucket links
+        private Node timerPrev;
+        private Node timerNext;
+
+        private Node(String key, long hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+
+        private static Node sentinel() {
+            Node sentinel = new Node(null, 0);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            sentinel.timerPrev = sentinel;
+            sentinel.timerNext = sentinel;
+
+            return sentinel;
+        }
+    }
+
+    /*
+     * LRU queue. Head is the eldest entry
+     */
+    private static final class AccessOrderQueue {
+
+        private final Node sentinel = Node.sentinel();
+
+        private long weight;
+
+        private Node first() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        private Node nextOf(Node node) {
+            return node.next == sentinel ? null : node.next;
+        }
+
+        private void addLast(Node node) {
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            weight += node.weight;
+        }
+
+        private void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        private void moveToBack(Node node) {
+            unlink(node);
+            addLast(node);
+        }
+
+        private void clear() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            weight = 0;
+        }
+    }
+
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<String, Node>();
+
+        private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+        private final AtomicLong readBufferWrites = new AtomicLong();
+
+        private final AccessOrderQueue window = new AccessOrderQueue();
+        private final AccessOrderQueue probation = new AccessOrderQueue();
+        private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+
+        private final FrequencySketch sketch;
+        private final TimerWheel timerWheel;
+
+        private final long maximum;
+        private final long windowMaximum;
+        private final long protectedMaximum;
+
+        private final AtomicLong weightedSize = new AtomicLong();
+
+        private Segment(long maximum, long now) {
+            this.maximum = maximum;
+            this.windowMaximum = Math.max(1, maximum / 100);
+            this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8d);
+
+            this.sketch = new FrequencySketch((int) Math.min(weighted ? maximum / 512 : maximum, Integer.MAX_VALUE >> 4));
+            this.timerWheel = new TimerWheel(now);
+        }
+
+        private void recordRead(Node node, long now) {
+            long index = readBufferWrites.getAndIncrement();
+            readBuffer.lazySet((int) index & (READ_BUFFER_SIZE - 1), node);
+
+            // Buffer is lossy, slot may be overwritten before drain. Drain when it's full
+            if ((index & (READ_BUFFER_SIZE - 1)) == READ_BUFFER_SIZE - 1) {
+                tryMaintenance(now);
+            }
+        }
+
+        private void tryMaintenance(long now) {
+            if (lock.tryLock()) {
+                try {
+                    maintenanceUnderLock(now);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void maintenance(long now) {
+            lock.lock();
+            try {
+                maintenanceUnderLock(now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(String key, long hash, Object value, long expiresAt, long weight, long now) {
+            lock.lock();
+            try {
+                if (weight > maximum) {
+                    // Entry is too big for this cache
+                    removeUnderLock(data.get(key));
+                    return;
+                }
+
+                long weightDelta = weight;
+                Node node = data.get(key);
+                if (node == null) {
+                    node = new Node(key, hash);
+                    node.weight = weight;
+                    node.expiresAt = expiresAt;
+                    node.value = value;
+                    node.queue = QUEUE_WINDOW;
+
+                    data.put(key, node);
+                    window.addLast(node);
+                } else {
+                    weightDelta -= node.weight;
+                    queueOf(node).unlink(node);
+                    node.weight = weight;
+                    node.expiresAt = expiresAt;
+                    node.value = value;
+                    queueOf(node).addLast(node);
+
+                    timerWheel.deschedule(node);
+                    onAccess(node);
+                }
+                weightedSize.addAndGet(weightDelta);
+                timerWheel.schedule(node);
+                sketch.increment(hash);
+
+                maintenanceUnderLock(now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(String key) {
+            lock.lock();
+            try {
+                removeUnderLock(data.get(key));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                for (Node node : data.values()) {
+                    node.queue = QUEUE_DEAD;
+                }
+                data.clear();
+                for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                    readBuffer.lazySet(i, null);
+                }
+
+                window.clear();
+                probation.clear();
+                protectedQueue.clear();
+                timerWheel.clear();
+                weightedSize.set(0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void maintenanceUnderLock(long now) {
+            drainReadBuffer();
+            timerWheel.advance(now, this);
+            evict();
+        }
+
+        private void drainReadBuffer() {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                Node node = readBuffer.getAndSet(i, null);
+                if ((node != null) && (node.queue != QUEUE_DEAD)) {
+                    sketch.increment(node.hash);
+                    onAccess(node);
+                }
+            }
+        }
+
+        private void onAccess(Node node) {
+            if (node.queue == QUEUE_WINDOW) {
+                window.moveToBack(node);
+            } else if (node.queue == QUEUE_PROBATION) {
+                // Second access promotes entry to protected queue
+                probation.unlink(node);
+                node.queue = QUEUE_PROTECTED;
+                protectedQueue.addLast(node);
+
+                while (protectedQueue.weight > protectedMaximum) {
+                    Node demoted = protectedQueue.first();
+                    protectedQueue.unlink(demoted);
+                    demoted.queue = QUEUE_PROBATION;
+                    probation.addLast(demoted);
+                }
+            } else if (node.queue == QUEUE_PROTECTED) {
+                protectedQueue.moveToBack(node);
+            }
+        }
+
+        private void evict() {
+            // Entries pushed out of window become admission candidates at probation tail
+            Node candidate = null;
+            while (window.weight > windowMaximum) {
+                Node node = window.first();
+                window.unlink(node);
+                node.queue = QUEUE_PROBATION;
+                probation.addLast(node);
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+
+            while (weightedSize.get() > maximum) {
+                Node victim = probation.first();
+                if (victim == null) {
+                    victim = protectedQueue.first();
+                }
+                if (victim == null) {
+                    victim = window.first();
+                }
+                if (victim == null) {
+                    break;
+                }
+
+                if ((candidate == null) || (candidate == victim)) {
+                    if (candidate == victim) {
+                        candidate = probation.nextOf(victim);
+                    }
+                    evictEntry(victim);
+                } else if (admit(candidate.hash, victim.hash)) {
+                    evictEntry(victim);
+                } else {
+                    Node rejected = candidate;
+                    candidate = probation.nextOf(candidate);
+                    evictEntry(rejected);
+                }
+            }
+        }
+
+        private boolean admit(long candidateHash, long victimHash) {
+            int candidateFrequency = sketch.frequency(candidateHash);
+            int victimFrequency = sketch.frequency(victimHash);
+            if (candidateFrequency > victimFrequency) {
+                return true;
+            }
+
+            // Admit warm candidate randomly to not allow attacker to keep victim in cache with hash collisions
+            return (candidateFrequency > 5) && ((ThreadLocalRandom.current().nextInt() & 127) == 0);
+        }
+
+        private void evictEntry(Node node) {
+            evictionCount.increment();
+            evictionWeight.add(node.weight);
+            removeUnderLock(node);
+        }
+
+        private void expireEntry(Node node) {
+            expirationCount.increment();
+            removeUnderLock(node);
+        }
+
+        private void removeUnderLock(Node node) {
+            if ((node == null) || (node.queue == QUEUE_DEAD)) {
+                return;
+            }
+
+            data.remove(node.key, node);
+            queueOf(node).unlink(node);
+            timerWheel.deschedule(node);
+            weightedSize.addAndGet(-node.weight);
+            node.queue = QUEUE_DEAD;
+        }
+
+        private AccessOrderQueue queueOf(Node node) {
+            if (node.queue == QUEUE_WINDOW) {
+                return window;
+            } else if (node.queue == QUEUE_PROBATION) {
+                return probation;
+            }
+
+            return protectedQueue;
+        }
+    }
+
+    /*
+     * Count-min sketch with 4 bit counters. Counters are halved after sample of 10 * max entries increments,
+     * so frequency reflects recent popularity
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+
+        private int size;
+
+        FrequencySketch(int maximumSize) {
+            int capacity = Integer.highestOneBit(Math.max(8, maximumSize) - 1) << 1;
+            this.table = new long[capacity];
+            this.tableMask = capacity - 1;
+            this.sampleSize = 10 * Math.max(8, maximumSize);
+        }
+
+        int frequency(long hash) {
+            int start = (int) (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+
+            return frequency;
+        }
+
+        void increment(long hash) {
+            int start = (int) (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+
+            if (added && (++size == sampleSize)) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+
+            return false;
+        }
+
+        private void reset() {
+            int oddCount = 0;
+            for (int i = 0; i < table.length; i++) {
+                oddCount += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size - (oddCount >>> 2)) >>> 1;
+        }
+
+        private int indexOf(long hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+
+            return ((int) h) & tableMask;
+        }
+    }
+
+    /*
+     * Hierarchical timer wheel. Levels have buckets of ~1 second, ~1 minute, ~1 hour, ~18 hours and ~12 days.
+     * Advance visits only buckets which time passed and moves not yet expired entries to lower levels
+     */
+    private static final class TimerWheel {
+
+        private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+        private static final int[] SHIFTS = { 10, 16, 22, 26, 30 };
+        private static final long[] SPANS = { 1L << 10, 1L << 16, 1L << 22, 1L << 26, 1L << 30 };
+
+        private final Node[][] wheel;
+
+        private long time;
+
+        private TimerWheel(long now) {
+            this.time = now;
+            this.wheel = new Node[BUCKETS.length][];
+            for (int i = 0; i < BUCKETS.length; i++) {
+                wheel[i] = new Node[BUCKETS[i]];
+                for (int j = 0; j < BUCKETS[i]; j++) {
+                    wheel[i][j] = Node.sentinel();
+                }
+            }
+        }
+
+        private void schedule(Node node) {
+            Node sentinel = findBucket(node.expiresAt);
+            node.timerPrev = sentinel.timerPrev;
+            node.timerNext = sentinel;
+            sentinel.timerPrev.timerNext = node;
+            sentinel.timerPrev = node;
+        }
+
+        private void deschedule(Node node) {
+            if (node.timerNext != null) {
+                node.timerNext.timerPrev = node.timerPrev;
+                node.timerPrev.timerNext = node.timerNext;
+                node.timerNext = null;
+                node.timerPrev = null;
+            }
+        }
+
+        private Node findBucket(long expiresAt) {
+            long duration = expiresAt - time;
+            int length = BUCKETS.length - 1;
+            for (int i = 0; i < length; i++) {
+                if (duration < SPANS[i + 1]) {
+                    long ticks = expiresAt >>> SHIFTS[i];
+                    return wheel[i][(int) ticks & (BUCKETS[i] - 1)];
+                }
+            }
+
+            return wheel[length][0];
+        }
+
+        private void advance(long now, Segment segment) {
+            long previousTime = time;
+            time = now;
+
+            for (int i = 0; i < SHIFTS.length; i++) {
+                long previousTicks = previousTime >>> SHIFTS[i];
+                long currentTicks = now >>> SHIFTS[i];
+                if (currentTicks - previousTicks <= 0) {
+                    break;
+                }
+                expire(i, previousTicks, currentTicks - previousTicks, segment);
+            }
+        }
+
+        private void expire(int level, long previousTicks, long delta, Segment segment) {
+            Node[] timerWheel = wheel[level];
+            int mask = timerWheel.length - 1;
+            int steps = (int) Math.min(1 + delta, timerWheel.length);
+            int start = (int) (previousTicks & mask);
+            for (int i = start; i < start + steps; i++) {
+                Node sentinel = timerWheel[i & mask];
+                Node node = sentinel.timerNext;
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+
+                while (node != sentinel) {
+                    Node next = node.timerNext;
+                    node.timerPrev = null;
+                    node.timerNext = null;
+
+                    if (node.expiresAt <= time) {
+                        segment.expireEntry(node);
+                    } else {
+                        schedule(node);
+                    }
+                    node = next;
+                }
+            }
+        }
+
+        private void clear() {
+            for (Node[] buckets : wheel) {
+                for (Node sentinel : buckets) {
+                    sentinel.timerPrev = sentinel;
+                    sentinel.timerNext = sentinel;
+                }
+            }
+        }
+    }
+
+}
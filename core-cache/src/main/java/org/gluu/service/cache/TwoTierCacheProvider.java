@@ -0,0 +1,366 @@
+package org.gluu.service.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache provider which puts bounded in-process L1 cache in front of remote L2 cache provider.
+ *
+ * Value read from L2 is put into L1 only if key wasn't changed or invalidated during read, so late read doesn't bring
+ * back value which was replaced. Values from L1 are returned without copy and shared between callers, so cached
+ * objects should be treated as immutable. Changed object should be put into cache again.
+ */
+@ApplicationScoped
+public class TwoTierCacheProvider extends AbstractCacheProvider<AbstractCacheProvider<?>> {
+
+    private static final int STAMPS_COUNT = 1024;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private CacheConfiguration cacheConfiguration;
+
+    private TwoTierConfiguration twoTierConfiguration;
+
+    private AbstractCacheProvider<?> remoteCacheProvider;
+
+    private NearCache nearCache;
+
+    // Incremented on key change or invalidation. Value read from L2 is put into L1 only if stamp of key wasn't changed
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMPS_COUNT);
+
+    // Incremented on invalidation of all keys
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final CacheInvalidationListener invalidationListener = new CacheInvalidationListener() {
+
+        @Override
+        public void onInvalidate(long keyHash) {
+            stamps.incrementAndGet(stampIndex(keyHash));
+            nearCache.invalidate(keyHash);
+        }
+
+        @Override
+        public void onInvalidateAll() {
+            epoch.incrementAndGet();
+            nearCache.clear();
+        }
+    };
+
+    public TwoTierCacheProvider() {
+    }
+
+    @PostConstruct
+    public void init() {
+        this.twoTierConfiguration = cacheConfiguration.getTwoTierConfiguration();
+        if (this.twoTierConfiguration == null) {
+            this.twoTierConfiguration = new TwoTierConfiguration();
+        }
+    }
+
+    @Override
+    public void create() {
+        log.debug("Starting TwoTierCacheProvider ... configuration: {}", twoTierConfiguration);
+        if (remoteCacheProvider == null) {
+            throw new IllegalStateException("Error starting TwoTierCacheProvider. Remote cache provider is not specified");
+        }
+
+        try {
+            nearCache = new NearCache(twoTierConfiguration.getLocalMaxEntries(), twoTierConfiguration.getLocalMaxWeight(),
+                    twoTierConfiguration.getLocalMaxAge());
+
+            AbstractRedisProvider redisProvider = getRemoteRedisProvider();
+            if (redisProvider != null) {
+                redisProvider.addInvalidationListener(invalidationListener);
+                if (!redisProvider.isInvalidationChannelActive()) {
+                    log.info("Redis invalidation channel is disabled. Local copies can be stale up to localMaxAge: {} seconds",
+                            twoTierConfiguration.getLocalMaxAge());
+                }
+            }
+
+            log.debug("TwoTierCacheProvider started.");
+        } catch (Exception e) {
+            throw new IllegalStateException("Error starting TwoTierCacheProvider", e);
+        }
+    }
+
+    public void configure(CacheConfiguration cacheConfiguration, AbstractCacheProvider<?> remoteCacheProvider) {
+        this.log = LoggerFactory.getLogger(TwoTierCacheProvider.class);
+        this.cacheConfiguration = cacheConfiguration;
+        this.remoteCacheProvider = remoteCacheProvider;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.debug("Destroying TwoTierCacheProvider");
+
+        AbstractRedisProvider redisProvider = getRemoteRedisProvider();
+        if (redisProvider != null) {
+            redisProvider.removeInvalidationListener(invalidationListener);
+        }
+
+        if (nearCache != null) {
+            nearCache.clear();
+        }
+
+        log.debug("Destroyed TwoTierCacheProvider");
+    }
+
+    @Override
+    public AbstractCacheProvider<?> getDelegate() {
+        return remoteCacheProvider;
+    }
+
+    /*
+     * Remote provider records payload sizes and pool state into the same metrics
+     */
+    @Override
+    public void setMetrics(CacheProviderMetrics metrics) {
+        super.setMetrics(metrics);
+        if (remoteCacheProvider != null) {
+            remoteCacheProvider.setMetrics(metrics);
+        }
+    }
+
+    private AbstractRedisProvider getRemoteRedisProvider() {
+        if (remoteCacheProvider instanceof RedisProvider) {
+            return ((RedisProvider) remoteCacheProvider).getDelegate();
+        }
+
+        return null;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    @Override
+    public boolean hasKey(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        return nearCache.containsKey(key) || remoteCacheProvider.hasKey(key);
+    }
+
+    @Override
+    public Object get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        Object value = nearCache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        long stamp = getStamp(key);
+        long currentEpoch = epoch.get();
+
+        value = remoteCacheProvider.get(key);
+        putRemoteValue(key, value, stamp, currentEpoch);
+
+        return value;
+    }
+
+    @Override
+    public void put(int expirationInSeconds, String key, Object object) {
+        remoteCacheProvider.put(expirationInSeconds, key, object);
+        changeStamp(key);
+        nearCache.put(key, object, expirationInSeconds);
+    }
+
+    @Override
+    public void remove(String key) {
+        changeStamp(key);
+        nearCache.remove(key);
+        remoteCacheProvider.remove(key);
+    }
+
+    /*
+     * Keys missing in L1 are requested from L2 in one bulk request
+     */
+    @Override
+    public Map<String, Object> getAll(Collection<String> keys) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+
+        List<String> missingKeys = new ArrayList<String>();
+        Map<String, Long> missingKeyStamps = new HashMap<String, Long>();
+        long currentEpoch = epoch.get();
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+
+            Object value = nearCache.get(key);
+            if (value == null) {
+                missingKeys.add(key);
+                missingKeyStamps.put(key, getStamp(key));
+            } else {
+                result.put(key, value);
+            }
+        }
+
+        if (!missingKeys.isEmpty()) {
+            Map<String, Object> remoteValues = remoteCacheProvider.getAll(missingKeys);
+            for (Map.Entry<String, Object> entry : remoteValues.entrySet()) {
+                Long stamp = missingKeyStamps.get(entry.getKey());
+                if (stamp != null) {
+                    putRemoteValue(entry.getKey(), entry.getValue(), stamp, currentEpoch);
+                }
+            }
+            result.putAll(remoteValues);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(int expirationInSeconds, Map<String, ?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+
+        remoteCacheProvider.putAll(expirationInSeconds, entries);
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            changeStamp(entry.getKey());
+            nearCache.put(entry.getKey(), entry.getValue(), expirationInSeconds);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+
+        for (String key : keys) {
+            changeStamp(key);
+            nearCache.remove(key);
+        }
+        remoteCacheProvider.removeAll(keys);
+    }
+
+    @Override
+    public CompletionStage<Object> getAsync(String key) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Object value = nearCache.get(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        long stamp = getStamp(key);
+        long currentEpoch = epoch.get();
+
+        return remoteCacheProvider.getAsync(key).thenApply(remoteValue -> {
+            putRemoteValue(key, remoteValue, stamp, currentEpoch);
+            return remoteValue;
+        });
+    }
+
+    /*
+     * L1 is updated immediately, so this node reads new value before L2 write completes
+     */
+    @Override
+    public CompletionStage<Void> putAsync(int expirationInSeconds, String key, Object object) {
+        changeStamp(key);
+        nearCache.put(key, object, expirationInSeconds);
+        return remoteCacheProvider.putAsync(expirationInSeconds, key, object);
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key) {
+        changeStamp(key);
+        nearCache.remove(key);
+        return remoteCacheProvider.removeAsync(key);
+    }
+
+    @Override
+    public boolean tryLock(String key, String token, int expirationInSeconds) {
+        return remoteCacheProvider.tryLock(key, token, expirationInSeconds);
+    }
+
+    @Override
+    public void unlock(String key, String token) {
+        remoteCacheProvider.unlock(key, token);
+    }
+
+    @Override
+    public void clear() {
+        epoch.incrementAndGet();
+        nearCache.clear();
+        remoteCacheProvider.clear();
+    }
+
+    @Override
+    public void cleanup(final Date now) {
+        nearCache.cleanUp();
+        remoteCacheProvider.cleanup(now);
+    }
+
+    /*
+     * Put value read from L2 into L1 if there was no change or invalidation of key since read start. Stamp is changed
+     * before L1 entry removal, so check after put doesn't allow stale value to stay in L1
+     */
+    private void putRemoteValue(String key, Object value, long stamp, long currentEpoch) {
+        if (value == null) {
+            return;
+        }
+
+        // Remaining TTL in remote cache is unknown. Local max age limits staleness
+        nearCache.put(key, value, 0);
+
+        if ((getStamp(key) != stamp) || (epoch.get() != currentEpoch)) {
+            nearCache.remove(key);
+        }
+    }
+
+    private long getStamp(String key) {
+        return stamps.get(stampIndex(CacheInvalidationMessage.hashKey(key)));
+    }
+
+    private void changeStamp(String key) {
+        stamps.incrementAndGet(stampIndex(CacheInvalidationMessage.hashKey(key)));
+    }
+
+    private static int stampIndex(long keyHash) {
+        return (int) keyHash & (STAMPS_COUNT - 1);
+    }
+
+    public void setRemoteCacheProvider(AbstractCacheProvider<?> remoteCacheProvider) {
+        this.remoteCacheProvider = remoteCacheProvider;
+    }
+
+    public void setCacheConfiguration(CacheConfiguration cacheConfiguration) {
+        this.cacheConfiguration = cacheConfiguration;
+    }
+
+    @Override
+    public CacheProviderType getProviderType() {
+        return CacheProviderType.TWO_TIER;
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.gluu.service.cache;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Configuration of TWO_TIER cache provider: bounded in-process L1 in front of remote L2
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TwoTierConfiguration implements Serializable {
+
+    private static final long serialVersionUID = -2375830471843517735L;
+
+    @XmlElement(name = "remoteCacheProviderType")
+    private CacheProviderType remoteCacheProviderType = CacheProviderType.REDIS;
+
+    @XmlElement(name = "localMaxEntries")
+    private int localMaxEntries = 10000;
+
+    @XmlElement(name = "localMaxWeight")
+    private long localMaxWeight = 64 * 1024 * 1024; // estimated size in bytes
+
+    @XmlElement(name = "localMaxAge")
+    private int localMaxAge = 30; // in seconds
+
+    public CacheProviderType getRemoteCacheProviderType() {
+        return remoteCacheProviderType;
+    }
+
+    public void setRemoteCacheProviderType(CacheProviderType remoteCacheProviderType) {
+        this.remoteCacheProviderType = remoteCacheProviderType;
+    }
+
+    public int getLocalMaxEntries() {
+        return localMaxEntries;
+    }
+
+    public void setLocalMaxEntries(int localMaxEntries) {
+        this.localMaxEntries = localMaxEntries;
+    }
+
+    public long getLocalMaxWeight() {
+        return localMaxWeight;
+    }
+
+    public void setLocalMaxWeight(long localMaxWeight) {
+        this.localMaxWeight = localMaxWeight;
+    }
+
+    public int getLocalMaxAge() {
+        return localMaxAge;
+    }
+
+    public void setLocalMaxAge(int localMaxAge) {
+        this.localMaxAge = localMaxAge;
+    }
+
+    @Override
+    public String toString() {
+        return "TwoTierConfiguration{" + "remoteCacheProviderType=" + remoteCacheProviderType + ", localMaxEntries=" + localMaxEntries
+                + ", localMaxWeight=" + localMaxWeight + ", localMaxAge=" + localMaxAge + '}';
+    }
+}
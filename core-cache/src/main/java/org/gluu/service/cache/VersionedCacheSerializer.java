@@ -0,0 +1,170 @@
+package org.gluu.service.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Serializer which prepends header byte with format description to serialized value
+ *
+ * Header byte layout: 11CR IIII, where C is LZ4 compression flag, R is reserved and IIII is serializer id.
+ * Compressed value has 4 bytes original length after header.
+ *
+ * Java serialization stream starts with 0xAC byte. Such data has no header and it's read as is. Java serializer
+ * without compression writes data without header too. This allows old and new nodes to share cache during rolling
+ * upgrade. Other formats can be enabled when all nodes are able to read them.
+ */
+public class VersionedCacheSerializer implements CacheSerializer {
+
+    private static final int HEADER_MASK = 0xC0;
+    private static final int HEADER_MARKER = 0xC0;
+    private static final int COMPRESSED_FLAG = 0x20;
+    private static final int SERIALIZER_ID_MASK = 0x0F;
+
+    private static final int COMPRESSED_HEADER_SIZE = 1 + 4;
+
+    private final CacheSerializer serializer;
+
+    private final int compressionThreshold;
+
+    private final CacheSerializer[] serializers = new CacheSerializer[SERIALIZER_ID_MASK + 1];
+
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public VersionedCacheSerializer(CacheSerializer serializer, int compressionThreshold, CacheSerializer... readSerializers) {
+        this.serializer = serializer;
+        this.compressionThreshold = compressionThreshold;
+
+        registerSerializer(new JavaCacheSerializer());
+        for (CacheSerializer readSerializer : readSerializers) {
+            registerSerializer(readSerializer);
+        }
+        registerSerializer(serializer);
+
+        LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+        this.compressor = lz4Factory.fastCompressor();
+        this.decompressor = lz4Factory.fastDecompressor();
+    }
+
+    public static VersionedCacheSerializer create(CacheSerializerConfiguration serializerConfiguration) {
+        if (serializerConfiguration == null) {
+            serializerConfiguration = new CacheSerializerConfiguration();
+        }
+
+        // Keep Kryo serializer available for read to allow switching format without cache flush
+        KryoCacheSerializer kryoSerializer = new KryoCacheSerializer(serializerConfiguration.getRegisteredClasses());
+
+        CacheSerializer serializer;
+        if (CacheSerializerType.KRYO == serializerConfiguration.getSerializerType()) {
+            serializer = kryoSerializer;
+        } else {
+            serializer = new JavaCacheSerializer();
+        }
+
+        return new VersionedCacheSerializer(serializer, serializerConfiguration.getCompressionThreshold(), kryoSerializer);
+    }
+
+    private void registerSerializer(CacheSerializer serializer) {
+        int id = serializer.getId();
+        if ((id < 0) || (id > SERIALIZER_ID_MASK)) {
+            throw new IllegalArgumentException("Serializer id should be in range [0, " + SERIALIZER_ID_MASK + "], id: " + id);
+        }
+
+        serializers[id] = serializer;
+    }
+
+    @Override
+    public int getId() {
+        return serializer.getId();
+    }
+
+    public CacheSerializer getSerializer() {
+        return serializer;
+    }
+
+    /*
+     * Returns true if output is readable by previous versions
+     */
+    public boolean isLegacyFormat() {
+        return (serializer.getId() == JavaCacheSerializer.ID) && (compressionThreshold <= 0);
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        byte[] data = serializer.serialize(object);
+
+        if ((compressionThreshold > 0) && (data.length >= compressionThreshold)) {
+            byte[] compressed = compress(data);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+
+        if (serializer.getId() == JavaCacheSerializer.ID) {
+            // Legacy format
+            return data;
+        }
+
+        byte[] result = new byte[data.length + 1];
+        result[0] = header(false);
+        System.arraycopy(data, 0, result, 1, data.length);
+
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] data, int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+
+        int header = data[offset] & 0xFF;
+        if ((header & HEADER_MASK) != HEADER_MARKER) {
+            // Data without header
+            return serializers[JavaCacheSerializer.ID].deserialize(data, offset, length);
+        }
+
+        CacheSerializer dataSerializer = serializers[header & SERIALIZER_ID_MASK];
+        if (dataSerializer == null) {
+            throw new IllegalStateException("Unsupported cache serializer id: " + (header & SERIALIZER_ID_MASK));
+        }
+
+        if ((header & COMPRESSED_FLAG) == 0) {
+            return dataSerializer.deserialize(data, offset + 1, length - 1);
+        }
+
+        int originalLength = ((data[offset + 1] & 0xFF) << 24) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 8)
+                | (data[offset + 4] & 0xFF);
+        byte[] decompressed = new byte[originalLength];
+        decompressor.decompress(data, offset + COMPRESSED_HEADER_SIZE, decompressed, 0, originalLength);
+
+        return dataSerializer.deserialize(decompressed, 0, originalLength);
+    }
+
+    private byte[] compress(byte[] data) {
+        int maxCompressedLength = compressor.maxCompressedLength(data.length);
+        byte[] result = new byte[COMPRESSED_HEADER_SIZE + maxCompressedLength];
+        int compressedLength = compressor.compress(data, 0, data.length, result, COMPRESSED_HEADER_SIZE, maxCompressedLength);
+        if (COMPRESSED_HEADER_SIZE + compressedLength >= data.length) {
+            // Compression is not effective
+            return null;
+        }
+
+        result[0] = header(true);
+        result[1] = (byte) (data.length >>> 24);
+        result[2] = (byte) (data.length >>> 16);
+        result[3] = (byte) (data.length >>> 8);
+        result[4] = (byte) data.length;
+
+        byte[] trimmed = new byte[COMPRESSED_HEADER_SIZE + compressedLength];
+        System.arraycopy(result, 0, trimmed, 0, trimmed.length);
+
+        return trimmed;
+    }
+
+    private byte header(boolean compressed) {
+        return (byte) (HEADER_MARKER | (compressed ? COMPRESSED_FLAG : 0) | serializer.getId());
+    }
+
+}
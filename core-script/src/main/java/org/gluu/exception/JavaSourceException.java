@@ -0,0 +1,27 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.exception;
+
+/**
+ * Java source script compilation or instantiation exception
+ */
+public class JavaSourceException extends Exception {
+
+    private static final long serialVersionUID = 3094316862711549310L;
+
+    public JavaSourceException(Throwable root) {
+        super(root);
+    }
+
+    public JavaSourceException(String string, Throwable root) {
+        super(string, root);
+    }
+
+    public JavaSourceException(String s) {
+        super(s);
+    }
+}
@@ -37,6 +37,10 @@ public class CustomScript extends BaseEntry {
 
     public static final String LOCATION_TYPE_MODEL_PROPERTY = "location_type";
     public static final String LOCATION_PATH_MODEL_PROPERTY = "location_path";
+    public static final String EXECUTION_TIMEOUT_MODEL_PROPERTY = "execution_timeout";
+    public static final String MAX_CONCURRENCY_MODEL_PROPERTY = "max_concurrency";
+    public static final String MAX_QUEUE_DEPTH_MODEL_PROPERTY = "max_queue_depth";
+    public static final String QUEUE_TIMEOUT_MODEL_PROPERTY = "queue_timeout";
 
     @AttributeName(ignoreDuringUpdate = true)
     private String inum;
@@ -278,6 +282,70 @@ public class CustomScript extends BaseEntry {
         setModuleProperty(LOCATION_PATH_MODEL_PROPERTY, locationPath);
     }
 
+    /*
+     * Execution deadline of script methods in milliseconds, 0 if there is no deadline
+     */
+    public long getExecutionTimeout() {
+        SimpleCustomProperty moduleProperty = getModuleProperty(EXECUTION_TIMEOUT_MODEL_PROPERTY);
+        if (moduleProperty == null) {
+            return 0;
+        }
+
+        return Math.max(0, StringHelper.toLong(moduleProperty.getValue2(), 0));
+    }
+
+    public void setExecutionTimeout(long executionTimeout) {
+        setModuleProperty(EXECUTION_TIMEOUT_MODEL_PROPERTY, String.valueOf(executionTimeout));
+    }
+
+    /*
+     * Count of concurrent invocations of script methods, 0 if it's not limited
+     */
+    public int getMaxConcurrency() {
+        SimpleCustomProperty moduleProperty = getModuleProperty(MAX_CONCURRENCY_MODEL_PROPERTY);
+        if (moduleProperty == null) {
+            return 0;
+        }
+
+        return Math.max(0, StringHelper.toInt(moduleProperty.getValue2(), 0));
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        setModuleProperty(MAX_CONCURRENCY_MODEL_PROPERTY, String.valueOf(maxConcurrency));
+    }
+
+    /*
+     * Count of invocations which can wait when concurrency limit is reached
+     */
+    public int getMaxQueueDepth() {
+        SimpleCustomProperty moduleProperty = getModuleProperty(MAX_QUEUE_DEPTH_MODEL_PROPERTY);
+        if (moduleProperty == null) {
+            return 0;
+        }
+
+        return Math.max(0, StringHelper.toInt(moduleProperty.getValue2(), 0));
+    }
+
+    public void setMaxQueueDepth(int maxQueueDepth) {
+        setModuleProperty(MAX_QUEUE_DEPTH_MODEL_PROPERTY, String.valueOf(maxQueueDepth));
+    }
+
+    /*
+     * Time in milliseconds which invocation can wait in queue
+     */
+    public long getQueueTimeout() {
+        SimpleCustomProperty moduleProperty = getModuleProperty(QUEUE_TIMEOUT_MODEL_PROPERTY);
+        if (moduleProperty == null) {
+            return 0;
+        }
+
+        return Math.max(0, StringHelper.toLong(moduleProperty.getValue2(), 0));
+    }
+
+    public void setQueueTimeout(long queueTimeout) {
+        setModuleProperty(QUEUE_TIMEOUT_MODEL_PROPERTY, String.valueOf(queueTimeout));
+    }
+
     protected SimpleCustomProperty getModuleProperty(final String modulePropertyName) {
         SimpleCustomProperty result = null;
 
@@ -1,5 +1,6 @@
 package org.gluu.model.custom.script.type.scim;
 
+import java.util.List;
 import java.util.Map;
 
 import org.gluu.model.SimpleCustomProperty;
@@ -47,5 +48,35 @@ public interface ScimType extends BaseExternalType {
     Response manageResourceOperation(Object context, Object entity, Object payload, Map<String, SimpleCustomProperty> configurationAttributes);
     
     Response manageSearchOperation(Object context, Object searchRequest, Map<String, SimpleCustomProperty> configurationAttributes);
-    
+
+    /*
+     * Batch variants of user methods for bulk operations. Script can override them to process users with one call
+     */
+    default boolean[] createUsers(List<?> users, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = createUser(users.get(i), configurationAttributes);
+        }
+
+        return result;
+    }
+
+    default boolean[] updateUsers(List<?> users, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateUser(users.get(i), configurationAttributes);
+        }
+
+        return result;
+    }
+
+    default boolean[] deleteUsers(List<?> users, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = deleteUser(users.get(i), configurationAttributes);
+        }
+
+        return result;
+    }
+
 }
@@ -5,6 +5,7 @@
  */
 package org.gluu.model.custom.script.type.user;
 
+import java.util.List;
 import java.util.Map;
 
 import org.gluu.model.SimpleCustomProperty;
@@ -26,4 +27,28 @@ public interface CacheRefreshType extends BaseExternalType {
 
     public boolean updateSourceUser(Object person, Map<String, SimpleCustomProperty> configurationAttributes);
 
+    /*
+     * Batch variant of updateUser. Script can override it to process persons with one call
+     */
+    public default boolean[] updateUsers(List<?> persons, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[persons.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateUser(persons.get(i), configurationAttributes);
+        }
+
+        return result;
+    }
+
+    /*
+     * Batch variant of updateSourceUser. Script can override it to process persons with one call
+     */
+    public default boolean[] updateSourceUsers(List<?> persons, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[persons.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateSourceUser(persons.get(i), configurationAttributes);
+        }
+
+        return result;
+    }
+
 }
@@ -5,6 +5,7 @@
  */
 package org.gluu.model.custom.script.type.user;
 
+import java.util.List;
 import java.util.Map;
 
 import org.gluu.model.SimpleCustomProperty;
@@ -31,4 +32,34 @@ public interface UpdateUserType extends BaseExternalType {
 
     boolean postDeleteUser(Object user, Map<String, SimpleCustomProperty> configurationAttributes);
 
+    /*
+     * Batch variants of user methods. Script can override them to process users with one call
+     */
+    default boolean[] updateUsers(List<?> users, boolean persisted, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateUser(users.get(i), persisted, configurationAttributes);
+        }
+
+        return result;
+    }
+
+    default boolean[] addUsers(List<?> users, boolean persisted, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = addUser(users.get(i), persisted, configurationAttributes);
+        }
+
+        return result;
+    }
+
+    default boolean[] deleteUsers(List<?> users, boolean persisted, Map<String, SimpleCustomProperty> configurationAttributes) {
+        boolean[] result = new boolean[users.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = deleteUser(users.get(i), persisted, configurationAttributes);
+        }
+
+        return result;
+    }
+
 }
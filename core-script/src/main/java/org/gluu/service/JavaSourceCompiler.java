@@ -0,0 +1,248 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.gluu.exception.JavaSourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles custom scripts written in Java with javax.tools compiler. Script source should declare public class with
+ * name of script type python class and no-arg constructor.
+ *
+ * Compiled class is kept in memory per script inum while script revision and source are the same, so script instance
+ * is created without compilation on reinit. Each script revision gets own class loader, so class of previous revision
+ * is unloaded when its instances aren't used.
+ */
+public class JavaSourceCompiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JavaSourceCompiler.class);
+
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+    private final Map<String, CompiledClass> compiledClasses = new ConcurrentHashMap<String, CompiledClass>();
+
+    /*
+     * Create new instance of script class. Class is compiled if there is no class of this script revision
+     */
+    public <T> T loadJavaScript(String script, String inum, long revision, String simpleClassName, Class<T> scriptJavaType)
+            throws JavaSourceException {
+        String scriptKey = inum.toLowerCase();
+        CompiledClass compiledClass = compiledClasses.get(scriptKey);
+        if ((compiledClass == null) || (compiledClass.revision != revision) || !compiledClass.script.equals(script)) {
+            Class<?> scriptClass = compile(script, getClassName(script, simpleClassName), scriptJavaType);
+            compiledClass = new CompiledClass(revision, script, scriptClass);
+            compiledClasses.put(scriptKey, compiledClass);
+        }
+
+        if (!scriptJavaType.isAssignableFrom(compiledClass.scriptClass)) {
+            throw new JavaSourceException(String.format("Class '%s' doesn't implement '%s'", compiledClass.scriptClass.getName(),
+                    scriptJavaType.getName()));
+        }
+
+        try {
+            return scriptJavaType.cast(compiledClass.scriptClass.getConstructor().newInstance());
+        } catch (ReflectiveOperationException ex) {
+            throw new JavaSourceException(String.format("Failed to create instance of '%s'", compiledClass.scriptClass.getName()), ex);
+        }
+    }
+
+    public void remove(String inum) {
+        compiledClasses.remove(inum.toLowerCase());
+    }
+
+    private Class<?> compile(String script, String className, Class<?> scriptJavaType) throws JavaSourceException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new JavaSourceException("Java compiler is not available. Java scripts require JDK");
+        }
+
+        ClassLoader parentClassLoader = scriptJavaType.getClassLoader();
+        StringWriter output = new StringWriter();
+        List<String> options = Arrays.asList("-classpath", getClassPath(parentClassLoader, scriptJavaType), "-g");
+        List<JavaFileObject> sources = Arrays.<JavaFileObject>asList(new SourceFile(className, script));
+
+        Map<String, ClassFile> classes;
+        try (StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+                MemoryFileManager fileManager = new MemoryFileManager(standardFileManager)) {
+            long start = System.nanoTime();
+            Boolean compiled = compiler.getTask(output, fileManager, null, options, null, sources).call();
+            if (!Boolean.TRUE.equals(compiled)) {
+                throw new JavaSourceException(String.format("Failed to compile java script '%s': %s", className, output));
+            }
+            LOG.debug("Compiled java script '{}' in {} ms", className, (System.nanoTime() - start) / 1000000);
+
+            classes = fileManager.classes;
+        } catch (IOException ex) {
+            throw new JavaSourceException(String.format("Failed to close file manager of java script '%s'", className), ex);
+        }
+
+        try {
+            return new MemoryClassLoader(classes, parentClassLoader).loadClass(className);
+        } catch (ClassNotFoundException ex) {
+            throw new JavaSourceException(String.format("Java script doesn't declare class '%s'", className), ex);
+        }
+    }
+
+    private String getClassName(String script, String simpleClassName) {
+        Matcher matcher = PACKAGE_PATTERN.matcher(script);
+        if (matcher.find()) {
+            return matcher.group(1) + "." + simpleClassName;
+        }
+
+        return simpleClassName;
+    }
+
+    /*
+     * Application classes aren't in java.class.path in servlet container, so class path is built from class loaders
+     */
+    private String getClassPath(ClassLoader classLoader, Class<?> scriptJavaType) {
+        Set<String> entries = new LinkedHashSet<String>();
+        addCodeSource(entries, scriptJavaType);
+        addCodeSource(entries, getClass());
+
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            if (current instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) current).getURLs()) {
+                    addUrl(entries, url);
+                }
+            }
+        }
+
+        String classPath = System.getProperty("java.class.path");
+        if (classPath != null) {
+            entries.addAll(Arrays.asList(classPath.split(File.pathSeparator)));
+        }
+
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private void addCodeSource(Set<String> entries, Class<?> clazz) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if ((codeSource != null) && (codeSource.getLocation() != null)) {
+            addUrl(entries, codeSource.getLocation());
+        }
+    }
+
+    private void addUrl(Set<String> entries, URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return;
+        }
+
+        try {
+            entries.add(new File(url.toURI()).getPath());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            LOG.trace("Skipping class path entry '{}'", url);
+        }
+    }
+
+    private static final class CompiledClass {
+        private final long revision;
+        private final String script;
+        private final Class<?> scriptClass;
+
+        CompiledClass(long revision, String script, Class<?> scriptClass) {
+            this.revision = revision;
+            this.script = script;
+            this.scriptClass = scriptClass;
+        }
+    }
+
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String script;
+
+        SourceFile(String className, String script) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.script = script;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return script;
+        }
+    }
+
+    private static final class ClassFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+
+        ClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytecode;
+        }
+    }
+
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+
+        MemoryFileManager(JavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) {
+            ClassFile classFile = new ClassFile(className);
+            classes.put(className, classFile);
+
+            return classFile;
+        }
+    }
+
+    private static final class MemoryClassLoader extends ClassLoader {
+        private final Map<String, ClassFile> classes;
+
+        MemoryClassLoader(Map<String, ClassFile> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            ClassFile classFile = classes.get(name);
+            if (classFile == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            byte[] bytecode = classFile.bytecode.toByteArray();
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.python.core.BytecodeLoader;
+import org.python.core.PyCode;
+import org.python.core.Version;
+import org.python.core.imp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of compiled python scripts. Script source is compiled by Jython to Java bytecode once per script inum,
+ * revision and content hash.
+ *
+ * Bytecode is stored in cache dir, so after restart scripts are loaded without compilation. Files of previous
+ * script revisions are removed when new revision is compiled. Content hash includes Jython version, so cache becomes
+ * stale after Jython update.
+ *
+ * Loaded bytecode runs inside server, so cache dir should be accessible by process user only. Dir is created with 0700
+ * permissions, and dir or file which is owned by other user or accessible by group or others is not used. Each file
+ * starts with SHA-256 digest of bytecode, file with wrong digest is compiled again. Bytecode is kept only in memory on
+ * file systems without POSIX permissions.
+ */
+public class PythonScriptCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PythonScriptCache.class);
+
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private static final Set<PosixFilePermission> NOT_PRIVATE_PERMISSIONS = EnumSet.of(PosixFilePermission.GROUP_READ,
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+    private static volatile UserPrincipal processUser;
+
+    private final Path cacheDir;
+
+    private final Map<String, CompiledScript> compiledScripts = new ConcurrentHashMap<String, CompiledScript>();
+
+    /*
+     * Compiled scripts are kept only in memory if cache dir is null or it isn't private
+     */
+    public PythonScriptCache(Path cacheDir) {
+        this.cacheDir = preparePrivateDirectory(cacheDir);
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /*
+     * Get compiled code of script module. It's loaded from cache dir or compiled if there is no actual bytecode
+     */
+    public PyCode getCode(String script, String scriptName, String inum, long revision) {
+        String scriptKey = toFileNamePart(inum);
+        String fileName = scriptKey + "." + revision + "." + hash(scriptName, script) + CLASS_FILE_EXTENSION;
+
+        CompiledScript compiledScript = compiledScripts.get(scriptKey);
+        if ((compiledScript != null) && compiledScript.fileName.equals(fileName)) {
+            return compiledScript.code;
+        }
+
+        String className = toModuleName(scriptName) + "$py";
+        PyCode code = null;
+
+        byte[] bytecode = readBytecode(fileName);
+        if (bytecode != null) {
+            try {
+                code = BytecodeLoader.makeCode(className, bytecode, scriptName);
+                LOG.debug("Loaded compiled python script '{}' from '{}'", scriptName, fileName);
+            } catch (RuntimeException ex) {
+                LOG.warn("Failed to load compiled python script '{}', it will be compiled again", fileName, ex);
+            }
+        }
+
+        if (code == null) {
+            bytecode = imp.compileSource(toModuleName(scriptName), new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)),
+                    scriptName);
+            code = BytecodeLoader.makeCode(className, bytecode, scriptName);
+            writeBytecode(scriptKey, fileName, bytecode);
+        }
+
+        compiledScripts.put(scriptKey, new CompiledScript(fileName, code));
+
+        return code;
+    }
+
+    public void remove(String inum) {
+        compiledScripts.remove(toFileNamePart(inum));
+    }
+
+    private byte[] readBytecode(String fileName) {
+        if (cacheDir == null) {
+            return null;
+        }
+
+        Path file = cacheDir.resolve(fileName);
+        if (!Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+
+        try {
+            if (!isPrivate(cacheDir, true) || !isPrivate(file, false)) {
+                LOG.warn("Compiled python script '{}' is accessible by other users, it will be compiled again", file);
+                return null;
+            }
+
+            byte[] content = Files.readAllBytes(file);
+            if (content.length <= DIGEST_LENGTH) {
+                return null;
+            }
+
+            byte[] bytecode = Arrays.copyOfRange(content, DIGEST_LENGTH, content.length);
+            if (!MessageDigest.isEqual(Arrays.copyOf(content, DIGEST_LENGTH), digest(bytecode))) {
+                LOG.warn("Compiled python script '{}' has wrong digest, it will be compiled again", file);
+                return null;
+            }
+
+            return bytecode;
+        } catch (IOException ex) {
+            LOG.warn("Failed to read compiled python script '{}'", file, ex);
+        }
+
+        return null;
+    }
+
+    private void writeBytecode(String scriptKey, String fileName, byte[] bytecode) {
+        if (cacheDir == null) {
+            return;
+        }
+
+        Path file = cacheDir.resolve(fileName);
+        try {
+            byte[] content = new byte[DIGEST_LENGTH + bytecode.length];
+            System.arraycopy(digest(bytecode), 0, content, 0, DIGEST_LENGTH);
+            System.arraycopy(bytecode, 0, content, DIGEST_LENGTH, bytecode.length);
+
+            Path tmpFile = Files.createTempFile(cacheDir, fileName, ".tmp",
+                    PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+            Files.write(tmpFile, content);
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            LOG.warn("Failed to store compiled python script '{}'", file, ex);
+            return;
+        }
+
+        // Remove previous revisions of script
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir, scriptKey + ".*" + CLASS_FILE_EXTENSION)) {
+            for (Path prevFile : files) {
+                if (!fileName.equals(prevFile.getFileName().toString())) {
+                    Files.deleteIfExists(prevFile);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.debug("Failed to remove previous revisions of compiled python script '{}'", fileName, ex);
+        }
+    }
+
+    private static Path preparePrivateDirectory(Path dir) {
+        if (dir == null) {
+            return null;
+        }
+
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            LOG.info("File system doesn't support POSIX permissions, compiled python scripts are kept only in memory");
+            return null;
+        }
+
+        try {
+            if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+                if (dir.getParent() != null) {
+                    Files.createDirectories(dir.getParent());
+                }
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+                        PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE)));
+            }
+
+            if (isPrivate(dir, true)) {
+                return dir;
+            }
+            LOG.warn("Directory '{}' is not private to process user, compiled python scripts are kept only in memory", dir);
+        } catch (IOException ex) {
+            LOG.warn("Failed to prepare directory '{}', compiled python scripts are kept only in memory", dir, ex);
+        }
+
+        return null;
+    }
+
+    /*
+     * Path should be owned by process user and not accessible by group and others
+     */
+    private static boolean isPrivate(Path path, boolean directory) throws IOException {
+        PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isDirectory() != directory || (!directory && !attributes.isRegularFile())) {
+            return false;
+        }
+
+        if (!attributes.owner().equals(getProcessUser())) {
+            return false;
+        }
+
+        for (PosixFilePermission permission : attributes.permissions()) {
+            if (NOT_PRIVATE_PERMISSIONS.contains(permission)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Owner of new file is process user
+     */
+    private static UserPrincipal getProcessUser() throws IOException {
+        if (processUser == null) {
+            Path probe = Files.createTempFile("python-cache", ".tmp");
+            try {
+                processUser = Files.getOwner(probe);
+            } finally {
+                Files.deleteIfExists(probe);
+            }
+        }
+
+        return processUser;
+    }
+
+    private static byte[] digest(byte[] bytecode) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytecode);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hash(String scriptName, String script) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        digest.update((Version.PY_VERSION + "/" + imp.APIVersion + "/" + scriptName + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] hash = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder result = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return result.toString();
+    }
+
+    private static String toFileNamePart(String value) {
+        return String.valueOf(value).replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private static String toModuleName(String scriptName) {
+        String moduleName = scriptName.endsWith(".py") ? scriptName.substring(0, scriptName.length() - 3) : scriptName;
+        moduleName = moduleName.replaceAll("[^A-Za-z0-9_]", "_");
+        if (moduleName.isEmpty() || Character.isDigit(moduleName.charAt(0))) {
+            moduleName = "_" + moduleName;
+        }
+
+        return moduleName;
+    }
+
+    private static final class CompiledScript {
+
+        private final String fileName;
+
+        private final PyCode code;
+
+        private CompiledScript(String fileName, PyCode code) {
+            this.fileName = fileName;
+            this.code = code;
+        }
+    }
+
+}
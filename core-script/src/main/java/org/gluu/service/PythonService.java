@@ -7,12 +7,10 @@
 package org.gluu.service;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 import javax.annotation.PostConstruct;
@@ -23,8 +21,11 @@ import javax.inject.Inject;
 import org.gluu.exception.PythonException;
 import org.gluu.persist.reflect.util.ReflectHelper;
 import org.gluu.util.StringHelper;
+import org.python.core.Py;
+import org.python.core.PyCode;
 import org.python.core.PyException;
 import org.python.core.PyObject;
+import org.python.core.PyProxy;
 import org.python.util.PythonInterpreter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,22 +40,26 @@ public class PythonService implements Serializable {
 
     private static final long serialVersionUID = 3398422090669045605L;
 
+    public static final String PRELOAD_MODULES_PROPERTY = "python.preload.modules";
+    public static final String SCRIPT_CACHE_DIR_PROPERTY = "python.scripts.cachedir";
+    public static final String DEFAULT_PRELOAD_MODULES = "java,sys,time,datetime,json";
+
+    private static final int MAX_LOG_LINE_LENGTH = 8192;
+
     @Inject
     private Logger log;
 
     private PythonInterpreter pythonInterpreter;
     private boolean interpereterReady;
 
-    private OutputStreamWriter logOut, logErr;
+    private PythonScriptCache scriptCache;
+
+    private Writer logOut, logErr;
 
     @PostConstruct
     public void init() {
-        try {
-            this.logOut = new OutputStreamWriter(new PythonLoggerOutputStream(log, false), "UTF-8");
-            this.logErr = new OutputStreamWriter(new PythonLoggerOutputStream(log, true), "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            log.error("Failed to initialize Jython out/err loggers", ex);
-        }
+        this.logOut = new PythonLoggerWriter(log, false);
+        this.logErr = new PythonLoggerWriter(log, true);
     }
 
     public void configure() {
@@ -73,8 +78,11 @@ public class PythonService implements Serializable {
             try {
             	PythonInterpreter.initialize(getPreProperties(), getPostProperties(pythonModulesDir, pythonHome), null);
                 this.pythonInterpreter = new PythonInterpreter();
+                this.scriptCache = new PythonScriptCache(Paths.get(getScriptCacheDir()));
 
+                // Output is redirected once in global system state, it's shared by all interpreters
                 initPythonInterpreter(this.pythonInterpreter);
+                preloadModules(this.pythonInterpreter);
 
                 result = true;
             } catch (PyException ex) {
@@ -102,6 +110,21 @@ public class PythonService implements Serializable {
         }
     }
 
+    private void preloadModules(PythonInterpreter interpreter) {
+        String preloadModules = System.getProperty(PRELOAD_MODULES_PROPERTY, DEFAULT_PRELOAD_MODULES);
+        for (String module : StringHelper.split(preloadModules, ",")) {
+            if (StringHelper.isEmpty(module)) {
+                continue;
+            }
+
+            try {
+                interpreter.exec("import " + module);
+            } catch (Exception ex) {
+                log.warn("Failed to preload python module '{}'", module, ex);
+            }
+        }
+    }
+
     /**
      * When application undeploy we need clean up pythonInterpreter
      */
@@ -127,8 +150,7 @@ public class PythonService implements Serializable {
     private Properties getPostProperties(String pythonModulesDir, String pythonHome) {
         Properties props = getPreProperties();
 
-        String catalinaTmpFolder = System.getProperty("java.io.tmpdir") + File.separator + "python" + File.separator + "cachedir";
-        props.setProperty("python.cachedir", catalinaTmpFolder);
+        props.setProperty("python.cachedir", getPythonCacheDir());
 
         props.setProperty("python.home", pythonHome);
 
@@ -143,6 +165,23 @@ public class PythonService implements Serializable {
         return props;
     }
 
+    private String getPythonCacheDir() {
+        return System.getProperty("java.io.tmpdir") + File.separator + "python" + File.separator + "cachedir";
+    }
+
+    /*
+     * Compiled scripts are stored in private dir of process user, not in shared python cache dir
+     */
+    private String getScriptCacheDir() {
+        String scriptCacheDir = System.getProperty(SCRIPT_CACHE_DIR_PROPERTY);
+        if (StringHelper.isNotEmpty(scriptCacheDir)) {
+            return scriptCacheDir;
+        }
+
+        return System.getProperty("java.io.tmpdir") + File.separator + "python-scripts-"
+                + System.getProperty("user.name").replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
 	private String getPythonHome() {
 		String pythonHome = System.getenv("PYTHON_HOME");
         if (StringHelper.isNotEmpty(pythonHome)) {
@@ -158,9 +197,8 @@ public class PythonService implements Serializable {
             return null;
         }
 
+        // Interpreter shares global system state, script module is executed in own namespace
         PythonInterpreter currentPythonInterpreter = PythonInterpreter.threadLocalStateInterpreter(null);
-        initPythonInterpreter(currentPythonInterpreter);
-
         try {
             currentPythonInterpreter.execfile(scriptName);
         } catch (Exception ex) {
@@ -178,8 +216,6 @@ public class PythonService implements Serializable {
         }
 
         PythonInterpreter currentPythonInterpreter = PythonInterpreter.threadLocalStateInterpreter(null);
-        initPythonInterpreter(currentPythonInterpreter);
-
         try {
             currentPythonInterpreter.execfile(scriptFile, scriptName);
         } catch (Exception ex) {
@@ -190,6 +226,68 @@ public class PythonService implements Serializable {
         return loadPythonScript(scriptPythonType, scriptJavaType, constructorArgs, currentPythonInterpreter);
     }
 
+    /*
+     * Load script with compiled code from script cache. Script is compiled only if there is no compiled code of this
+     * inum, revision and content
+     */
+    public <T> T loadPythonScript(String script, String scriptName, String inum, long revision, String scriptPythonType,
+            Class<T> scriptJavaType, PyObject[] constructorArgs) throws PythonException {
+        if (!interpereterReady || (script == null)) {
+            return null;
+        }
+
+        PyCode scriptCode;
+        try {
+            scriptCode = scriptCache.getCode(script, scriptName, inum, revision);
+        } catch (Exception ex) {
+            log.error("Failed to compile python file", ex.getMessage(), ex);
+            throw new PythonException(String.format("Failed to compile python file '%s'", scriptName), ex);
+        }
+
+        PythonInterpreter currentPythonInterpreter = PythonInterpreter.threadLocalStateInterpreter(null);
+        try {
+            currentPythonInterpreter.exec(scriptCode);
+        } catch (Exception ex) {
+            log.error("Failed to load python file", ex.getMessage(), ex);
+            throw new PythonException(String.format("Failed to load python file '%s'", scriptName), ex);
+        }
+
+        return loadPythonScript(scriptPythonType, scriptJavaType, constructorArgs, currentPythonInterpreter);
+    }
+
+    /*
+     * Call method of python script which isn't declared in script Java type. Returns null if script has no such
+     * method or result is None, otherwise python truth value of result
+     */
+    public Boolean callOptionalMethod(Object script, String methodName, Object... args) {
+        if (!(script instanceof PyProxy)) {
+            return null;
+        }
+
+        PyObject method = ((PyProxy) script)._getPyInstance().__findattr__(methodName);
+        if (method == null) {
+            return null;
+        }
+
+        PyObject[] pythonArgs = new PyObject[args.length];
+        for (int i = 0; i < args.length; i++) {
+            pythonArgs[i] = Py.java2py(args[i]);
+        }
+
+        PyObject result = method.__call__(pythonArgs);
+        if ((result == null) || (result == Py.None)) {
+            return null;
+        }
+
+        return result.__nonzero__();
+    }
+
+    public void removePythonScript(String inum) {
+        if (scriptCache != null) {
+            scriptCache.remove(inum);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T loadPythonScript(String scriptPythonType, Class<T> scriptJavaType, PyObject[] constructorArgs, PythonInterpreter interpreter)
             throws PythonException {
@@ -215,35 +313,56 @@ public class PythonService implements Serializable {
         return (T) scriptJavaClass;
     }
 
-    final class PythonLoggerOutputStream extends OutputStream {
+    /*
+     * Writes script output to log line by line. Each thread has own line buffer, so concurrent scripts neither
+     * contend on it nor mix their output
+     */
+    static final class PythonLoggerWriter extends Writer {
 
-        private boolean error;
-        private Logger log;
-        private StringBuffer buffer;
+        private final boolean error;
+        private final Logger log;
+        private final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(StringBuilder::new);
 
-        private PythonLoggerOutputStream(Logger log, boolean error) {
+        PythonLoggerWriter(Logger log, boolean error) {
             this.error = error;
             this.log = log;
-            this.buffer = new StringBuffer();
         }
 
-        public void write(int b) throws IOException {
-            if (((char) b == '\n') || ((char) b == '\r')) {
-                flush();
-            } else {
-                buffer.append((char) b);
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            StringBuilder currentBuffer = buffer.get();
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if ((c == '\n') || (c == '\r')) {
+                    flush(currentBuffer);
+                } else {
+                    currentBuffer.append(c);
+                    if (currentBuffer.length() >= MAX_LOG_LINE_LENGTH) {
+                        flush(currentBuffer);
+                    }
+                }
             }
         }
 
+        @Override
         public void flush() {
-            if (buffer.length() > 0) {
+            flush(buffer.get());
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+
+        private void flush(StringBuilder currentBuffer) {
+            if (currentBuffer.length() > 0) {
                 if (error) {
-                    this.log.error(buffer.toString());
+                    this.log.error(currentBuffer.toString());
                 } else {
-                    this.log.info(buffer.toString());
+                    this.log.info(currentBuffer.toString());
                 }
 
-                this.buffer.setLength(0);
+                currentBuffer.setLength(0);
             }
         }
     }
@@ -13,6 +13,7 @@ import org.gluu.search.filter.Filter;
 import org.gluu.util.OxConstants;
 import org.slf4j.Logger;
 
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -34,16 +35,32 @@ public abstract class AbstractCustomScriptService implements Serializable {
     @Inject
     protected PersistenceEntryManager persistenceEntryManager;
 
+    @Inject
+    private Instance<CustomScriptChangeSignal> changeSignalInstance;
+
     public void add(CustomScript customScript) {
         persistenceEntryManager.persist(customScript);
+        notifyChanged();
     }
 
     public void update(CustomScript customScript) {
         persistenceEntryManager.merge(customScript);
+        notifyChanged();
     }
 
     public void remove(CustomScript customScript) {
         persistenceEntryManager.remove(customScript);
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        if (changeSignalInstance == null) {
+            return;
+        }
+
+        for (CustomScriptChangeSignal changeSignal : changeSignalInstance) {
+            changeSignal.notifyChanged();
+        }
     }
 
     public CustomScript getCustomScriptByDn(String customScriptDn, String... returnAttributes) {
@@ -0,0 +1,119 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits count of concurrent invocations of custom script.
+ *
+ * Invocation which can't start immediately waits in queue with limited depth up to queue timeout. Invocation which
+ * can't enter queue or times out in it is rejected, so script which blocks can occupy only limited count of container
+ * threads.
+ */
+public class CustomScriptBulkhead {
+
+	private final int maxConcurrent;
+	private final int maxQueueDepth;
+	private final long queueTimeoutMillis;
+
+	private final Semaphore permits;
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final LongAdder acceptedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder queuedCount = new LongAdder();
+
+	public CustomScriptBulkhead(int maxConcurrent, int maxQueueDepth, long queueTimeoutMillis) {
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueueDepth = maxQueueDepth;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.permits = new Semaphore(maxConcurrent, true);
+	}
+
+	/*
+	 * Returns true if invocation can start. Caller should call release after invocation
+	 */
+	public boolean tryAcquire() {
+		if (permits.tryAcquire()) {
+			acceptedCount.increment();
+			return true;
+		}
+
+		if ((maxQueueDepth <= 0) || (queueTimeoutMillis <= 0)) {
+			rejectedCount.increment();
+			return false;
+		}
+
+		if (queued.incrementAndGet() > maxQueueDepth) {
+			queued.decrementAndGet();
+			rejectedCount.increment();
+			return false;
+		}
+
+		queuedCount.increment();
+		try {
+			if (permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				acceptedCount.increment();
+				return true;
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			queued.decrementAndGet();
+		}
+
+		rejectedCount.increment();
+		return false;
+	}
+
+	public void release() {
+		permits.release();
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	public long getQueueTimeoutMillis() {
+		return queueTimeoutMillis;
+	}
+
+	public int getActiveCount() {
+		return maxConcurrent - permits.availablePermits();
+	}
+
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/*
+	 * Share of used concurrency limit from 0 to 1
+	 */
+	public double getSaturation() {
+		return (double) getActiveCount() / maxConcurrent;
+	}
+
+	public long getAcceptedCount() {
+		return acceptedCount.sum();
+	}
+
+	public long getQueuedCount() {
+		return queuedCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides when custom scripts should be checked for changes.
+ *
+ * Script files are watched with {@link WatchService}, change of watched file makes check due on next timer event.
+ * Revisions in DB are checked with adaptive interval: it's reset to minimal after change and doubled after each check
+ * without changes up to maximal interval. So scripts which are edited are propagated fast and idle nodes do few checks.
+ */
+public class CustomScriptChangeDetector {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CustomScriptChangeDetector.class);
+
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+
+	private final AtomicBoolean filesChanged = new AtomicBoolean();
+
+	private volatile long currentIntervalMillis;
+	private volatile long nextCheckTime;
+
+	private WatchService watchService;
+	private Thread watchThread;
+
+	private final Map<Path, WatchKey> watchedDirectories = new HashMap<Path, WatchKey>();
+	private volatile Set<Path> watchedFiles = Collections.emptySet();
+
+	public CustomScriptChangeDetector(long minIntervalMillis, long maxIntervalMillis) {
+		this.minIntervalMillis = minIntervalMillis;
+		this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+		this.currentIntervalMillis = minIntervalMillis;
+	}
+
+	public synchronized void start() {
+		if (watchService != null) {
+			return;
+		}
+
+		try {
+			this.watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException ex) {
+			LOG.warn("Failed to create script files watch service, modification time of files will be checked", ex);
+			return;
+		}
+
+		this.watchThread = new Thread(this::watch, "custom-script-watcher");
+		this.watchThread.setDaemon(true);
+		this.watchThread.start();
+	}
+
+	public synchronized void stop() {
+		if (watchService == null) {
+			return;
+		}
+
+		try {
+			watchService.close();
+		} catch (IOException ex) {
+			LOG.debug("Failed to close script files watch service", ex);
+		}
+		watchThread.interrupt();
+
+		this.watchService = null;
+		this.watchThread = null;
+		this.watchedDirectories.clear();
+		this.watchedFiles = Collections.emptySet();
+	}
+
+	/*
+	 * Check is due when watched file was changed or check interval elapsed
+	 */
+	public boolean isCheckDue() {
+		return filesChanged.get() || (System.currentTimeMillis() >= nextCheckTime);
+	}
+
+	/*
+	 * Returns true if watched files were changed since previous call
+	 */
+	public boolean pollFilesChanged() {
+		return filesChanged.getAndSet(false);
+	}
+
+	/*
+	 * Should be called after each check to schedule next one
+	 */
+	public void onCheck(boolean changed) {
+		if (changed) {
+			currentIntervalMillis = minIntervalMillis;
+		} else {
+			currentIntervalMillis = Math.min(currentIntervalMillis * 2, maxIntervalMillis);
+		}
+
+		nextCheckTime = System.currentTimeMillis() + currentIntervalMillis;
+	}
+
+	public long getCurrentIntervalMillis() {
+		return currentIntervalMillis;
+	}
+
+	public boolean isWatched(String locationPath) {
+		return watchedFiles.contains(toPath(locationPath));
+	}
+
+	/*
+	 * Replace set of watched files. Files in directories which can't be watched aren't added
+	 */
+	public synchronized void watchFiles(Collection<String> locationPaths) {
+		if (watchService == null) {
+			return;
+		}
+
+		Set<Path> newWatchedFiles = new HashSet<Path>();
+		Set<Path> directories = new HashSet<Path>();
+		for (String locationPath : locationPaths) {
+			Path file = toPath(locationPath);
+			Path directory = file.getParent();
+			if (directory == null) {
+				continue;
+			}
+
+			if (!watchedDirectories.containsKey(directory)) {
+				try {
+					watchedDirectories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+				} catch (IOException | RuntimeException ex) {
+					LOG.warn("Failed to watch script files directory '{}'", directory, ex);
+					continue;
+				}
+			}
+
+			directories.add(directory);
+			newWatchedFiles.add(file);
+		}
+
+		for (Iterator<Entry<Path, WatchKey>> it = watchedDirectories.entrySet().iterator(); it.hasNext();) {
+			Entry<Path, WatchKey> watchedDirectory = it.next();
+			if (!directories.contains(watchedDirectory.getKey())) {
+				watchedDirectory.getValue().cancel();
+				it.remove();
+			}
+		}
+
+		this.watchedFiles = Collections.unmodifiableSet(newWatchedFiles);
+	}
+
+	private void watch() {
+		WatchService currentWatchService = this.watchService;
+		while (true) {
+			WatchKey watchKey;
+			try {
+				watchKey = currentWatchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				return;
+			}
+
+			Path directory = (Path) watchKey.watchable();
+			for (WatchEvent<?> event : watchKey.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events were lost
+					filesChanged.set(true);
+					continue;
+				}
+
+				Path file = directory.resolve((Path) event.context());
+				if (watchedFiles.contains(file)) {
+					LOG.debug("Script file '{}' was changed", file);
+					filesChanged.set(true);
+				}
+			}
+
+			watchKey.reset();
+		}
+	}
+
+	private static Path toPath(String locationPath) {
+		return Paths.get(locationPath).toAbsolutePath().normalize();
+	}
+
+}
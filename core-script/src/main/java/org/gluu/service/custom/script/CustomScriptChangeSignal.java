@@ -0,0 +1,27 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+/**
+ * Cluster wide signal of custom scripts modification.
+ *
+ * Token is changed on each modification of scripts done with {@link AbstractCustomScriptService}. Custom script manager
+ * reads token on each timer event and loads script revisions only after token change, so idle nodes don't query
+ * scripts. Implementation should be cheap to read, e.g. single key in distributed cache.
+ */
+public interface CustomScriptChangeSignal {
+
+	/*
+	 * Returns current token or null if there were no modifications which this signal knows about
+	 */
+	String getToken();
+
+	/*
+	 * Changes token. Called after script was added, updated or removed
+	 */
+	void notifyChanged();
+
+}
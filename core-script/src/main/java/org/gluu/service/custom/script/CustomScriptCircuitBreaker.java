@@ -0,0 +1,87 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker of custom script which keeps exceeding execution deadline or failing.
+ *
+ * Breaker opens after configured count of consecutive failures (timeouts or exceptions). While it's open invocations
+ * aren't sent to script. After open period one trial invocation is sent to script, breaker is closed if it finishes in
+ * time without exception and opened again otherwise.
+ */
+public class CustomScriptCircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openPeriodMillis;
+
+	private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	private volatile long openedAt;
+
+	public CustomScriptCircuitBreaker(int failureThreshold, long openPeriodMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openPeriodMillis = openPeriodMillis;
+	}
+
+	/*
+	 * Returns true if invocation should be sent to script
+	 */
+	public boolean allowInvocation() {
+		State currentState = state.get();
+		if (currentState == State.CLOSED) {
+			return true;
+		}
+
+		if ((currentState == State.OPEN) && (System.currentTimeMillis() - openedAt >= openPeriodMillis)) {
+			// Only one thread gets trial invocation
+			return state.compareAndSet(State.OPEN, State.HALF_OPEN);
+		}
+
+		return false;
+	}
+
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		if (state.get() != State.CLOSED) {
+			state.set(State.CLOSED);
+		}
+	}
+
+	/*
+	 * Returns true if breaker was opened by this failure
+	 */
+	public boolean onFailure() {
+		if (state.get() == State.HALF_OPEN) {
+			open();
+			return true;
+		}
+
+		if ((consecutiveFailures.incrementAndGet() >= failureThreshold) && state.compareAndSet(State.CLOSED, State.OPEN)) {
+			openedAt = System.currentTimeMillis();
+			return true;
+		}
+
+		return false;
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	private void open() {
+		openedAt = System.currentTimeMillis();
+		state.set(State.OPEN);
+	}
+
+}
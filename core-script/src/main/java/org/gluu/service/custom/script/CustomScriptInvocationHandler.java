@@ -0,0 +1,207 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.model.custom.script.CustomScriptType;
+import org.gluu.model.custom.script.model.CustomScript;
+import org.gluu.model.custom.script.type.BaseExternalType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records invocation statistics of custom script methods and applies execution deadline of script.
+ *
+ * Scripts run on caller thread because they use request context, so deadline isn't enforced by interruption. Invocation
+ * which exceeds deadline is counted as timeout and script which keeps timing out or throwing exceptions is cut off with
+ * {@link CustomScriptCircuitBreaker}. Deadline of batch method (e.g. CacheRefreshType.updateUsers) is multiplied by
+ * count of entities in batch, so batch is compared with deadline of the same count of single invocations. Script with
+ * concurrency limit is guarded by {@link CustomScriptBulkhead} which is shared by versions of script. Lifecycle methods
+ * of {@link BaseExternalType} are always invoked on script.
+ *
+ * Invocations which aren't sent to script are served by default implementation of script type only for types from
+ * {@link #FALLBACK_SCRIPT_TYPES}. Their default implementation just skips optional processing. Default implementation
+ * of other types may allow what script denies (e.g. post authentication script doesn't force re-authentication), so
+ * {@link RejectedExecutionException} is thrown for them instead.
+ */
+public class CustomScriptInvocationHandler implements InvocationHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CustomScriptInvocationHandler.class);
+
+	public static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+	public static final long CIRCUIT_BREAKER_OPEN_PERIOD = 30 * 1000L;
+
+	public static final Set<CustomScriptType> FALLBACK_SCRIPT_TYPES = Collections.unmodifiableSet(EnumSet.of(CustomScriptType.CACHE_REFRESH,
+			CustomScriptType.ID_GENERATOR, CustomScriptType.DYNAMIC_SCOPE, CustomScriptType.UMA_RPT_CLAIMS, CustomScriptType.SCIM,
+			CustomScriptType.CIBA_END_USER_NOTIFICATION, CustomScriptType.END_SESSION));
+
+	private final String inum;
+	private final BaseExternalType externalType;
+	private final BaseExternalType defaultImplementation;
+	private final long deadlineNanos;
+
+	private final CustomScriptMetrics metrics;
+	private final CustomScriptCircuitBreaker circuitBreaker;
+	private final CustomScriptBulkhead bulkhead;
+
+	// Invocations which are running now. Script version is destroyed after they finish
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+
+	private final Map<Method, CustomScriptInvocationStats> methodStats = new ConcurrentHashMap<Method, CustomScriptInvocationStats>();
+
+	private CustomScriptInvocationHandler(CustomScript customScript, BaseExternalType externalType, CustomScriptMetrics metrics) {
+		this.inum = customScript.getInum();
+		this.externalType = externalType;
+		CustomScriptType scriptType = customScript.getScriptType();
+		this.defaultImplementation = FALLBACK_SCRIPT_TYPES.contains(scriptType) ? scriptType.getDefaultImplementation() : null;
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(customScript.getExecutionTimeout());
+		this.metrics = metrics;
+		this.circuitBreaker = new CustomScriptCircuitBreaker(CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_PERIOD);
+
+		metrics.setCircuitBreaker(inum, circuitBreaker);
+
+		this.bulkhead = metrics.getBulkhead(inum, customScript.getMaxConcurrency(), customScript.getMaxQueueDepth(),
+				customScript.getQueueTimeout());
+	}
+
+	/*
+	 * Wrap script into proxy of script type interface. Returns script as is if it doesn't implement this interface
+	 */
+	public static BaseExternalType wrap(CustomScript customScript, BaseExternalType externalType, CustomScriptMetrics metrics) {
+		Class<? extends BaseExternalType> scriptJavaType = customScript.getScriptType().getCustomScriptType();
+		if ((externalType == null) || !scriptJavaType.isInstance(externalType)) {
+			return externalType;
+		}
+
+		return (BaseExternalType) Proxy.newProxyInstance(scriptJavaType.getClassLoader(), new Class<?>[] { scriptJavaType },
+				new CustomScriptInvocationHandler(customScript, externalType, metrics));
+	}
+
+	/*
+	 * Returns count of running invocations of wrapped script or 0 if script isn't wrapped
+	 */
+	public static int getInFlightCount(BaseExternalType externalType) {
+		if ((externalType == null) || !Proxy.isProxyClass(externalType.getClass())) {
+			return 0;
+		}
+
+		InvocationHandler invocationHandler = Proxy.getInvocationHandler(externalType);
+		if (!(invocationHandler instanceof CustomScriptInvocationHandler)) {
+			return 0;
+		}
+
+		return ((CustomScriptInvocationHandler) invocationHandler).inFlightCount.get();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return invokeObjectMethod(proxy, method, args);
+		}
+
+		CustomScriptInvocationStats stats = methodStats.computeIfAbsent(method,
+				key -> metrics.getInvocationStats(inum, key.getName()));
+
+		boolean lifecycleMethod = method.getDeclaringClass() == BaseExternalType.class;
+		boolean limited = (bulkhead != null) && !lifecycleMethod;
+		if (limited && !bulkhead.tryAcquire()) {
+			if (defaultImplementation == null) {
+				throw new RejectedExecutionException(String.format("Custom script '%s' reached concurrency limit %d",
+						inum, bulkhead.getMaxConcurrent()));
+			}
+
+			stats.markFallback();
+			return invokeTarget(defaultImplementation, method, args);
+		}
+
+		// Check breaker after bulkhead, so trial invocation isn't lost on rejection
+		boolean guarded = (deadlineNanos > 0) && !lifecycleMethod;
+		if (guarded && !circuitBreaker.allowInvocation()) {
+			if (limited) {
+				bulkhead.release();
+			}
+
+			if (defaultImplementation == null) {
+				throw new RejectedExecutionException(String.format("Custom script '%s' is disabled by circuit breaker after %d failures",
+						inum, CIRCUIT_BREAKER_FAILURE_THRESHOLD));
+			}
+
+			stats.markFallback();
+			return invokeTarget(defaultImplementation, method, args);
+		}
+
+		inFlightCount.incrementAndGet();
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Object result = invokeTarget(externalType, method, args);
+			error = false;
+
+			return result;
+		} finally {
+			inFlightCount.decrementAndGet();
+			if (limited) {
+				bulkhead.release();
+			}
+
+			long duration = System.nanoTime() - start;
+			boolean timeout = (deadlineNanos > 0) && (duration > getDeadlineNanos(method, args));
+			stats.update(duration, error, timeout);
+
+			if (guarded) {
+				if (!timeout && !error) {
+					circuitBreaker.onSuccess();
+				} else if (circuitBreaker.onFailure()) {
+					LOG.warn("Custom script '{}' failed or exceeded execution deadline {} ms, it's disabled for {} ms", inum,
+							TimeUnit.NANOSECONDS.toMillis(deadlineNanos), CIRCUIT_BREAKER_OPEN_PERIOD);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Batch method gets list of entities as first argument and returns result for each of them
+	 */
+	private long getDeadlineNanos(Method method, Object[] args) {
+		if ((method.getReturnType() == boolean[].class) && (args != null) && (args.length > 0) && (args[0] instanceof List)) {
+			return deadlineNanos * Math.max(1, ((List<?>) args[0]).size());
+		}
+
+		return deadlineNanos;
+	}
+
+	private Object invokeTarget(BaseExternalType target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) throws Throwable {
+		if ("equals".equals(method.getName())) {
+			return proxy == args[0];
+		} else if ("hashCode".equals(method.getName())) {
+			return System.identityHashCode(proxy);
+		}
+
+		return invokeTarget(externalType, method, args);
+	}
+
+}
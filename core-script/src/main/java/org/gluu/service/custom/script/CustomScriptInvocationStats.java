@@ -0,0 +1,152 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation statistics of one custom script method: count, errors, timeouts and latency histogram.
+ *
+ * Histogram has fixed buckets in milliseconds, so percentiles are upper bounds of bucket which contains them.
+ */
+public class CustomScriptInvocationStats {
+
+	private static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000,
+			Long.MAX_VALUE };
+
+	private final String inum;
+	private final String method;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder fallbackCount = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+
+	public CustomScriptInvocationStats(String inum, String method) {
+		this.inum = inum;
+		this.method = method;
+	}
+
+	public void update(long durationNanos, boolean error, boolean timeout) {
+		count.increment();
+		totalNanos.add(durationNanos);
+		if (error) {
+			errorCount.increment();
+		}
+		if (timeout) {
+			timeoutCount.increment();
+		}
+
+		long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			if (durationMillis < BUCKET_BOUNDS[i]) {
+				buckets.incrementAndGet(i);
+				break;
+			}
+		}
+	}
+
+	public void markFallback() {
+		fallbackCount.increment();
+	}
+
+	public String getInum() {
+		return inum;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+
+	/*
+	 * Count of invocations which were served by default implementation while circuit breaker was open
+	 */
+	public long getFallbackCount() {
+		return fallbackCount.sum();
+	}
+
+	public double getErrorRate() {
+		long currentCount = getCount();
+		if (currentCount == 0) {
+			return 0;
+		}
+
+		return (double) getErrorCount() / currentCount;
+	}
+
+	public double getMeanMillis() {
+		long currentCount = getCount();
+		if (currentCount == 0) {
+			return 0;
+		}
+
+		return totalNanos.sum() / 1000000.0 / currentCount;
+	}
+
+	/*
+	 * Returns upper bound of bucket which contains percentile or -1 if it's in last unbounded bucket
+	 */
+	public long getPercentileMillis(double percentile) {
+		long[] counts = new long[BUCKET_BOUNDS.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return BUCKET_BOUNDS[i] == Long.MAX_VALUE ? -1 : BUCKET_BOUNDS[i];
+			}
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Returns bucket upper bounds in milliseconds and counts of invocations in them
+	 */
+	public long[][] getHistogram() {
+		long[][] histogram = new long[2][BUCKET_BOUNDS.length];
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			histogram[0][i] = BUCKET_BOUNDS[i];
+			histogram[1][i] = buckets.get(i);
+		}
+
+		return histogram;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CustomScriptInvocationStats [inum=%s, method=%s, count=%d, errors=%d, timeouts=%d, fallbacks=%d, mean=%.2fms, p99=%dms]",
+				inum, method, getCount(), getErrorCount(), getTimeoutCount(), getFallbackCount(), getMeanMillis(),
+				getPercentileMillis(0.99));
+	}
+
+}
@@ -5,20 +5,32 @@
  */
 package org.gluu.service.custom.script;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.BeforeDestroyed;
@@ -29,9 +41,9 @@ import javax.inject.Inject;
 import javax.servlet.ServletContext;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.gluu.model.ProgrammingLanguage;
 import org.gluu.model.ScriptLocationType;
 import org.gluu.model.SimpleCustomProperty;
 import org.gluu.model.SimpleExtendedCustomProperty;
@@ -40,6 +52,7 @@ import org.gluu.model.custom.script.conf.CustomScriptConfiguration;
 import org.gluu.model.custom.script.model.CustomScript;
 import org.gluu.model.custom.script.model.ScriptError;
 import org.gluu.model.custom.script.type.BaseExternalType;
+import org.gluu.service.JavaSourceCompiler;
 import org.gluu.service.PythonService;
 import org.gluu.service.cdi.async.Asynchronous;
 import org.gluu.service.cdi.event.Scheduled;
@@ -64,6 +77,16 @@ public class CustomScriptManager implements Serializable {
 
 	public static final String CUSTOM_SCRIPT_MODIFIED_EVENT_TYPE = "customScriptModifiedEvent";
 	public static final int DEFAULT_INTERVAL = 30; // 30 seconds
+	public static final int MIN_CHECK_INTERVAL = 1; // 1 second
+	// Revisions are still checked with this interval if there is change signal, to apply changes done bypassing it
+	public static final int SIGNAL_CHECK_INTERVAL = 5 * 60; // 5 minutes
+	public static final int MAX_LOAD_THREADS = 8;
+	public static final long DRAIN_TIMEOUT = 30 * 1000L; // 30 seconds
+	// Caller which took previous version from dispatch snapshot just before switch calls it within this period
+	public static final long DRAIN_GRACE_PERIOD = 1000L; // 1 second
+	private static final long DRAIN_CHECK_INTERVAL = 100L;
+
+	public static final String SELF_TEST_METHOD = "selfTest";
 
 	public static final String[] CUSTOM_SCRIPT_CHECK_ATTRIBUTES = { "dn", "inum", "oxRevision", "oxScriptType",
 			"oxModuleProperty", "oxEnabled" };
@@ -87,13 +110,30 @@ public class CustomScriptManager implements Serializable {
 	@Inject
 	private Instance<ExternalScriptService> externalScriptServiceInstance;
 
+	@Inject
+	private Instance<CustomScriptChangeSignal> changeSignalInstance;
+
 	protected List<CustomScriptType> supportedCustomScriptTypes;
-	private Map<String, CustomScriptConfiguration> customScriptConfigurations;
+
+	// Configurations and their grouping by type are published together after reload
+	private volatile LoadedConfigurations loadedConfigurations;
 
 	private AtomicBoolean isActive;
 	private long lastFinishedTime;
 
-	private Map<CustomScriptType, List<CustomScriptConfiguration>> customScriptConfigurationsByScriptType;
+	private transient CustomScriptChangeDetector changeDetector;
+	private transient CustomScriptChangeSignal changeSignal;
+	private volatile String lastSignalToken;
+	private transient CustomScriptMetrics scriptMetrics = new CustomScriptMetrics();
+	private transient JavaSourceCompiler javaSourceCompiler = new JavaSourceCompiler();
+	private String lastRevisionsFingerprint;
+
+	// Revisions which failed to load while previous revision is still in use
+	private Map<String, Long> failedRevisions = new HashMap<String, Long>();
+
+	// Previous versions of scripts which wait for in-flight invocations before destroy
+	private transient Set<CustomScriptConfiguration> retiringCustomScriptConfigurations = ConcurrentHashMap.newKeySet();
+	private transient ScheduledExecutorService drainExecutor;
 
 	@Asynchronous
 	public void initTimer(List<CustomScriptType> supportedCustomScriptTypes) {
@@ -102,7 +142,8 @@ public class CustomScriptManager implements Serializable {
 		configure();
 
 		final int delay = 30;
-		final int interval = DEFAULT_INTERVAL;
+		// Timer only wakes up manager, revisions are checked after change signal or with check interval
+		final int interval = MIN_CHECK_INTERVAL;
 
 		reload(true);
 
@@ -113,9 +154,53 @@ public class CustomScriptManager implements Serializable {
 	protected void configure() {
 		this.isActive = new AtomicBoolean(false);
 		this.lastFinishedTime = System.currentTimeMillis();
+
+		if ((changeSignalInstance != null) && !changeSignalInstance.isUnsatisfied() && !changeSignalInstance.isAmbiguous()) {
+			this.changeSignal = changeSignalInstance.get();
+		}
+
+		if (this.changeSignal == null) {
+			// Without signal revisions are checked with adaptive interval up to DEFAULT_INTERVAL
+			this.changeDetector = new CustomScriptChangeDetector(MIN_CHECK_INTERVAL * 1000L, DEFAULT_INTERVAL * 1000L);
+		} else {
+			this.changeDetector = new CustomScriptChangeDetector(SIGNAL_CHECK_INTERVAL * 1000L, SIGNAL_CHECK_INTERVAL * 1000L);
+		}
+		this.changeDetector.start();
+
+		this.drainExecutor = Executors.newSingleThreadScheduledExecutor(
+				new ScriptThreadFactory("custom-script-drain-", Thread.currentThread().getContextClassLoader()));
 	}
 
 	public void reloadTimerEvent(@Observes @Scheduled UpdateScriptEvent updateScriptEvent) {
+		if (!isChangeSignalled() && !this.changeDetector.isCheckDue()) {
+			return;
+		}
+
+		reloadScripts();
+	}
+
+	private boolean isChangeSignalled() {
+		if (this.changeSignal == null) {
+			return false;
+		}
+
+		return !StringHelper.equals(getChangeSignalToken(), this.lastSignalToken);
+	}
+
+	private String getChangeSignalToken() {
+		if (this.changeSignal == null) {
+			return null;
+		}
+
+		try {
+			return this.changeSignal.getToken();
+		} catch (Exception ex) {
+			log.debug("Failed to get custom scripts change signal token", ex);
+			return this.lastSignalToken;
+		}
+	}
+
+	protected void reloadScripts() {
 		if (this.isActive.get()) {
 			return;
 		}
@@ -137,23 +222,39 @@ public class CustomScriptManager implements Serializable {
 
 	public void destroy(@BeforeDestroyed(ApplicationScoped.class) ServletContext init) {
 		log.debug("Destroying custom scripts configurations");
-		if (this.customScriptConfigurations == null) {
+		if (this.changeDetector != null) {
+			this.changeDetector.stop();
+		}
+
+		// Destroy previous versions of scripts without waiting for in-flight invocations
+		if (this.drainExecutor != null) {
+			this.drainExecutor.shutdownNow();
+		}
+		for (CustomScriptConfiguration retiringCustomScriptConfiguration : retiringCustomScriptConfigurations) {
+			destroyRetiredCustomScript(retiringCustomScriptConfiguration);
+		}
+
+		LoadedConfigurations currentConfigurations = this.loadedConfigurations;
+		if (currentConfigurations == null) {
 			return;
 		}
 
 		// Destroy authentication methods
-		for (Entry<String, CustomScriptConfiguration> customScriptConfigurationEntry : this.customScriptConfigurations
+		for (Entry<String, CustomScriptConfiguration> customScriptConfigurationEntry : currentConfigurations.customScriptConfigurations
 				.entrySet()) {
 			destroyCustomScript(customScriptConfigurationEntry.getValue());
 		}
 	}
 
 	private void reload(boolean syncUpdate) {
-		boolean modified = reloadImpl();
+		ReloadResult reloadResult = reloadImpl();
 
-		if (modified) {
+		if (reloadResult.isModified()) {
 			updateScriptServices(syncUpdate);
 		}
+
+		// Script services use new versions now, previous versions are destroyed after in-flight invocations
+		retireCustomScripts(reloadResult.getRetiredCustomScriptConfigurations());
 	}
 
 	protected void updateScriptServices(boolean syncUpdate) {
@@ -168,8 +269,13 @@ public class CustomScriptManager implements Serializable {
 		}
 	}
 
-	private boolean reloadImpl() {
-		// Load current script revisions
+	private ReloadResult reloadImpl() {
+		// Token is taken before query, so modification done during reload is seen by next check
+		String signalToken = getChangeSignalToken();
+		boolean filesChanged = changeDetector.pollFilesChanged();
+		LoadedConfigurations currentConfigurations = this.loadedConfigurations;
+
+		// Load current script revisions. Scripts are reloaded only if there are changes
 		List<CustomScript> customScripts;
 		if (supportedCustomScriptTypes.isEmpty()) {
 			customScripts = new ArrayList<CustomScript>();
@@ -177,34 +283,129 @@ public class CustomScriptManager implements Serializable {
 			customScripts = customScriptService.findCustomScripts(supportedCustomScriptTypes,
 					CUSTOM_SCRIPT_CHECK_ATTRIBUTES);
 		}
+		this.lastSignalToken = signalToken;
+
+		String revisionsFingerprint = getRevisionsFingerprint(customScripts, currentConfigurations);
+		if (!filesChanged && (currentConfigurations != null) && revisionsFingerprint.equals(this.lastRevisionsFingerprint)) {
+			changeDetector.onCheck(false);
+			return new ReloadResult(currentConfigurations.customScriptConfigurations, false);
+		}
 
 		// Store updated external authenticator configurations
-		ReloadResult reloadResult = reloadCustomScriptConfigurations(this.customScriptConfigurations, customScripts);
-		this.customScriptConfigurations = reloadResult.getCustomScriptConfigurations();
+		ReloadResult reloadResult = reloadCustomScriptConfigurations(
+				currentConfigurations == null ? null : currentConfigurations.customScriptConfigurations, customScripts);
+		Map<String, CustomScriptConfiguration> newCustomScriptConfigurations = reloadResult.getCustomScriptConfigurations();
+
+		// Group external authenticator configurations by usage type and publish both at once
+		this.loadedConfigurations = new LoadedConfigurations(newCustomScriptConfigurations,
+				groupCustomScriptConfigurationsByScriptType(newCustomScriptConfigurations));
+		// Scripts which failed to load are loaded again on next check, so fingerprint is kept only after full load
+		this.lastRevisionsFingerprint = reloadResult.isComplete() ? revisionsFingerprint : null;
 
-		// Group external authenticator configurations by usage type
-		this.customScriptConfigurationsByScriptType = groupCustomScriptConfigurationsByScriptType(
-				this.customScriptConfigurations);
+		changeDetector.watchFiles(getScriptFileLocations(newCustomScriptConfigurations));
+		changeDetector.onCheck(true);
+
+		return reloadResult;
+	}
+
+	/*
+	 * Fingerprint of scripts revisions, types and module properties. Modification time of script files is added only
+	 * if they aren't watched
+	 */
+	private String getRevisionsFingerprint(List<CustomScript> customScripts, LoadedConfigurations currentConfigurations) {
+		List<String> revisions = new ArrayList<String>();
+		for (CustomScript customScript : customScripts) {
+			revisions.add(customScript.getDn() + ":" + customScript.getRevision() + ":" + customScript.isEnabled() + ":"
+					+ customScript.getScriptType() + ":" + getModulePropertiesFingerprint(customScript));
+		}
+
+		if (currentConfigurations != null) {
+			for (String locationPath : getScriptFileLocations(currentConfigurations.customScriptConfigurations)) {
+				if (!changeDetector.isWatched(locationPath)) {
+					revisions.add(locationPath + ":" + getFileModificationTime(locationPath));
+				}
+			}
+		}
+		Collections.sort(revisions);
+
+		return StringUtils.join(revisions, "\n");
+	}
+
+	private String getModulePropertiesFingerprint(CustomScript customScript) {
+		List<String> moduleProperties = new ArrayList<String>();
+		if (customScript.getModuleProperties() != null) {
+			for (SimpleCustomProperty moduleProperty : customScript.getModuleProperties()) {
+				moduleProperties.add(moduleProperty.getValue1() + "=" + moduleProperty.getValue2());
+			}
+		}
+		Collections.sort(moduleProperties);
 
-		return reloadResult.isModified();
+		return StringUtils.join(moduleProperties, ",");
+	}
+
+	private List<String> getScriptFileLocations(Map<String, CustomScriptConfiguration> customScriptConfigurations) {
+		List<String> locationPaths = new ArrayList<String>();
+		for (CustomScriptConfiguration customScriptConfiguration : customScriptConfigurations.values()) {
+			CustomScript customScript = customScriptConfiguration.getCustomScript();
+			if ((ScriptLocationType.FILE == customScript.getLocationType())
+					&& StringHelper.isNotEmpty(customScript.getLocationPath())) {
+				locationPaths.add(customScript.getLocationPath());
+			}
+		}
+
+		return locationPaths;
+	}
+
+	private static class LoadedConfigurations implements Serializable {
+
+		private static final long serialVersionUID = 4160518429465613093L;
+
+		private final Map<String, CustomScriptConfiguration> customScriptConfigurations;
+		private final Map<CustomScriptType, List<CustomScriptConfiguration>> customScriptConfigurationsByScriptType;
+
+		LoadedConfigurations(Map<String, CustomScriptConfiguration> customScriptConfigurations,
+				Map<CustomScriptType, List<CustomScriptConfiguration>> customScriptConfigurationsByScriptType) {
+			this.customScriptConfigurations = customScriptConfigurations;
+			this.customScriptConfigurationsByScriptType = customScriptConfigurationsByScriptType;
+		}
 	}
 
 	private class ReloadResult {
 		private Map<String, CustomScriptConfiguration> customScriptConfigurations;
+		private List<CustomScriptConfiguration> retiredCustomScriptConfigurations;
 		private boolean modified;
+		private boolean complete;
 
 		ReloadResult(Map<String, CustomScriptConfiguration> customScriptConfigurations, boolean modified) {
+			this(customScriptConfigurations, new ArrayList<CustomScriptConfiguration>(0), modified, true);
+		}
+
+		ReloadResult(Map<String, CustomScriptConfiguration> customScriptConfigurations,
+				List<CustomScriptConfiguration> retiredCustomScriptConfigurations, boolean modified, boolean complete) {
 			this.customScriptConfigurations = customScriptConfigurations;
+			this.retiredCustomScriptConfigurations = retiredCustomScriptConfigurations;
 			this.modified = modified;
+			this.complete = complete;
 		}
 
 		public Map<String, CustomScriptConfiguration> getCustomScriptConfigurations() {
 			return customScriptConfigurations;
 		}
 
+		public List<CustomScriptConfiguration> getRetiredCustomScriptConfigurations() {
+			return retiredCustomScriptConfigurations;
+		}
+
 		public boolean isModified() {
 			return modified;
 		}
+
+		/*
+		 * False if some of changed scripts failed to load, e.g. because of persistence error
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
 	}
 
 	private ReloadResult reloadCustomScriptConfigurations(
@@ -223,6 +424,9 @@ public class CustomScriptManager implements Serializable {
 		}
 
 		List<String> newSupportedCustomScriptInums = new ArrayList<String>();
+		List<CustomScript> changedCustomScripts = new ArrayList<CustomScript>();
+		Map<String, Long> changedRevisions = new HashMap<String, Long>();
+		List<CustomScriptConfiguration> retiredCustomScriptConfigurations = new ArrayList<CustomScriptConfiguration>();
 		for (CustomScript newCustomScript : newCustomScripts) {
 			if (!newCustomScript.isEnabled()) {
 				continue;
@@ -242,84 +446,272 @@ public class CustomScriptManager implements Serializable {
 			CustomScriptConfiguration prevCustomScriptConfiguration = newCustomScriptConfigurations
 					.get(newSupportedCustomScriptInum);
 			if (prevCustomScriptConfiguration == null || prevCustomScriptConfiguration.getCustomScript()
-                    .getRevision() != newCustomScript.getRevision()) {
-				// Destroy old version properly before creating new one
-				if (prevCustomScriptConfiguration != null) {
-					destroyCustomScript(prevCustomScriptConfiguration);
+                    .getRevision() != newCustomScript.getRevision()
+					|| isDefinitionChanged(prevCustomScriptConfiguration.getCustomScript(), newCustomScript)) {
+				// Don't retry revision which failed while previous one is in use
+				Long failedRevision = failedRevisions.get(newSupportedCustomScriptInum);
+				if ((prevCustomScriptConfiguration != null) && (failedRevision != null)
+						&& (failedRevision == newCustomScript.getRevision())) {
+					continue;
 				}
 
-				// Load script entry with all attributes
-				CustomScript loadedCustomScript = customScriptService.getCustomScriptByDn(
-						newCustomScript.getScriptType().getCustomScriptModel(), newCustomScript.getDn());
+				changedCustomScripts.add(newCustomScript);
+				changedRevisions.put(newSupportedCustomScriptInum, newCustomScript.getRevision());
+			}
+		}
 
-				// Prepare configuration attributes
-				Map<String, SimpleCustomProperty> newConfigurationAttributes = new HashMap<String, SimpleCustomProperty>();
+		// Load changed scripts while previous versions still serve requests. Scripts are independent, so they are
+		// compiled and initialized in parallel
+		Map<String, CustomScriptConfiguration> loadedCustomScriptConfigurations = loadCustomScriptConfigurations(
+				changedCustomScripts);
+		boolean complete = loadedCustomScriptConfigurations.keySet().containsAll(changedRevisions.keySet());
+		for (Entry<String, CustomScriptConfiguration> loadedCustomScriptConfigurationEntry : loadedCustomScriptConfigurations
+				.entrySet()) {
+			String customScriptInum = loadedCustomScriptConfigurationEntry.getKey();
+			CustomScriptConfiguration loadedCustomScriptConfiguration = loadedCustomScriptConfigurationEntry.getValue();
+
+			CustomScriptConfiguration prevCustomScriptConfiguration = newCustomScriptConfigurations.get(customScriptInum);
+			if ((prevCustomScriptConfiguration != null) && isFailedToLoad(loadedCustomScriptConfiguration)) {
+				log.error("Failed to load new revision of custom script '{}', previous revision is kept in use",
+						customScriptInum);
+				failedRevisions.put(customScriptInum, changedRevisions.get(customScriptInum));
+				continue;
+			}
 
-				List<SimpleExtendedCustomProperty> simpleCustomProperties = loadedCustomScript
-						.getConfigurationProperties();
-				if (simpleCustomProperties == null) {
-					simpleCustomProperties = new ArrayList<SimpleExtendedCustomProperty>(0);
+			failedRevisions.remove(customScriptInum);
+			newCustomScriptConfigurations.put(customScriptInum, loadedCustomScriptConfiguration);
+			if (prevCustomScriptConfiguration != null) {
+				retiredCustomScriptConfigurations.add(prevCustomScriptConfiguration);
 
+				// Compiled class of previous version isn't needed after switch to python
+				if ((ProgrammingLanguage.JAVA == prevCustomScriptConfiguration.getCustomScript().getProgrammingLanguage())
+						&& (ProgrammingLanguage.JAVA != loadedCustomScriptConfiguration.getCustomScript().getProgrammingLanguage())) {
+					javaSourceCompiler.remove(customScriptInum);
 				}
+			}
 
-				for (SimpleCustomProperty simpleCustomProperty : simpleCustomProperties) {
-					newConfigurationAttributes.put(simpleCustomProperty.getValue1(), simpleCustomProperty);
-				}
+			modified = true;
+		}
+
+		// Remove old external scripts configurations
+		for (Iterator<Entry<String, CustomScriptConfiguration>> it = newCustomScriptConfigurations.entrySet()
+				.iterator(); it.hasNext();) {
+			Entry<String, CustomScriptConfiguration> externalAuthenticatorConfigurationEntry = it.next();
+
+			String prevSupportedCustomScriptInum = externalAuthenticatorConfigurationEntry.getKey();
+
+			if (!newSupportedCustomScriptInums.contains(prevSupportedCustomScriptInum)) {
+				// Old authentication method will be destroyed after switch
+				retiredCustomScriptConfigurations.add(externalAuthenticatorConfigurationEntry.getValue());
+				pythonService.removePythonScript(externalAuthenticatorConfigurationEntry.getValue().getInum());
+				javaSourceCompiler.remove(externalAuthenticatorConfigurationEntry.getValue().getInum());
+				scriptMetrics.remove(externalAuthenticatorConfigurationEntry.getValue().getInum());
+				failedRevisions.remove(prevSupportedCustomScriptInum);
+				it.remove();
+
+				modified = true;
+			}
+		}
+
+		return new ReloadResult(newCustomScriptConfigurations, retiredCustomScriptConfigurations, modified, complete);
+	}
+
+	/*
+	 * Script type and module properties can be changed without revision update
+	 */
+	private boolean isDefinitionChanged(CustomScript prevCustomScript, CustomScript newCustomScript) {
+		if (prevCustomScript.getScriptType() != newCustomScript.getScriptType()) {
+			return true;
+		}
+
+		return !getModulePropertiesFingerprint(prevCustomScript).equals(getModulePropertiesFingerprint(newCustomScript));
+	}
+
+	private boolean isFailedToLoad(CustomScriptConfiguration customScriptConfiguration) {
+		BaseExternalType externalType = customScriptConfiguration.getExternalType();
+
+		return (externalType == null)
+				|| (externalType == customScriptConfiguration.getCustomScript().getScriptType().getDefaultImplementation());
+	}
 
-				if (ScriptLocationType.FILE == loadedCustomScript.getLocationType()) {
-					// Replace script revision with file modification time. This should allow to
-					// reload script automatically after changing location_type
-					long fileModifiactionTime = getFileModificationTime(loadedCustomScript.getLocationPath());
-					loadedCustomScript.setRevision(loadedCustomScript.getRevision() + fileModifiactionTime);
+	/*
+	 * Destroy previous versions of scripts when there are no in-flight invocations of them. Drain is checked by
+	 * separate thread, so reload doesn't wait for it. Check starts after grace period, because invocation which
+	 * isn't started yet can't be counted
+	 */
+	private void retireCustomScripts(List<CustomScriptConfiguration> retiredCustomScriptConfigurations) {
+		long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		for (CustomScriptConfiguration retiredCustomScriptConfiguration : retiredCustomScriptConfigurations) {
+			retiringCustomScriptConfigurations.add(retiredCustomScriptConfiguration);
+			scheduleDrainCheck(retiredCustomScriptConfiguration, drainDeadline, DRAIN_GRACE_PERIOD);
+		}
+	}
+
+	private void scheduleDrainCheck(final CustomScriptConfiguration retiredCustomScriptConfiguration, final long drainDeadline,
+			long delay) {
+		if (this.drainExecutor == null) {
+			destroyRetiredCustomScript(retiredCustomScriptConfiguration);
+			return;
+		}
+
+		try {
+			this.drainExecutor.schedule(() -> checkDrained(retiredCustomScriptConfiguration, drainDeadline), delay,
+					TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ex) {
+			// Manager is destroyed
+			destroyRetiredCustomScript(retiredCustomScriptConfiguration);
+		}
+	}
+
+	private void checkDrained(CustomScriptConfiguration retiredCustomScriptConfiguration, long drainDeadline) {
+		int inFlightCount = CustomScriptInvocationHandler.getInFlightCount(retiredCustomScriptConfiguration.getExternalType());
+		if (inFlightCount > 0) {
+			if (System.currentTimeMillis() < drainDeadline) {
+				scheduleDrainCheck(retiredCustomScriptConfiguration, drainDeadline, DRAIN_CHECK_INTERVAL);
+				return;
+			}
+
+			log.warn("Destroying previous version of custom script '{}' with {} in-flight invocations",
+					retiredCustomScriptConfiguration.getInum(), inFlightCount);
+		}
 
-					if (fileModifiactionTime != 0) {
-						String scriptFromFile = loadFromFile(loadedCustomScript.getLocationPath());
-						if (StringHelper.isNotEmpty(scriptFromFile)) {
-							loadedCustomScript.setScript(scriptFromFile);
-						}
+		destroyRetiredCustomScript(retiredCustomScriptConfiguration);
+	}
+
+	private void destroyRetiredCustomScript(CustomScriptConfiguration retiredCustomScriptConfiguration) {
+		// Script is destroyed once even if drain check and manager destroy race
+		if (retiringCustomScriptConfigurations.remove(retiredCustomScriptConfiguration)) {
+			destroyCustomScript(retiredCustomScriptConfiguration);
+		}
+	}
 
-					}
+	/*
+	 * Load scripts on bounded pool or on caller thread if there is one script. Script which failed to load isn't added
+	 * to result. Caller marks reload as incomplete then, so revisions fingerprint isn't stored and script is loaded
+	 * again on next check
+	 */
+	private Map<String, CustomScriptConfiguration> loadCustomScriptConfigurations(List<CustomScript> customScripts) {
+		Map<String, CustomScriptConfiguration> loadedCustomScriptConfigurations = new HashMap<String, CustomScriptConfiguration>();
+		if (customScripts.isEmpty()) {
+			return loadedCustomScriptConfigurations;
+		}
+
+		List<Callable<CustomScriptConfiguration>> tasks = new ArrayList<Callable<CustomScriptConfiguration>>();
+		for (final CustomScript customScript : customScripts) {
+			tasks.add(() -> loadCustomScriptConfiguration(customScript));
+		}
+
+		int threadsCount = Math.min(Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()), MAX_LOAD_THREADS);
+		if (threadsCount <= 1) {
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					putCustomScriptConfiguration(loadedCustomScriptConfigurations, tasks.get(i).call());
+				} catch (Exception ex) {
+					log.error("Failed to load custom script '{}'", customScripts.get(i).getInum(), ex);
 				}
-				
-				// Automatic package update '.xdi' --> '.org'
-				// TODO: Remove in CE 5.0
-				String scriptCode = loadedCustomScript.getScript();
-				if (scriptCode != null) {
-					scriptCode = scriptCode.replaceAll(".xdi", ".gluu");
-					loadedCustomScript.setScript(scriptCode);
+			}
+
+			return loadedCustomScriptConfigurations;
+		}
+
+		log.debug("Loading {} custom scripts with {} threads", tasks.size(), threadsCount);
+		ExecutorService executorService = Executors.newFixedThreadPool(threadsCount,
+				new ScriptThreadFactory("custom-script-loader-", Thread.currentThread().getContextClassLoader()));
+		try {
+			List<Future<CustomScriptConfiguration>> futures = executorService.invokeAll(tasks);
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					putCustomScriptConfiguration(loadedCustomScriptConfigurations, futures.get(i).get());
+				} catch (ExecutionException ex) {
+					log.error("Failed to load custom script '{}'", customScripts.get(i).getInum(), ex.getCause());
 				}
+			}
+		} catch (InterruptedException ex) {
+			log.warn("Loading of custom scripts was interrupted");
+			Thread.currentThread().interrupt();
+		} finally {
+			executorService.shutdownNow();
+		}
 
-				// Load script
-				BaseExternalType newCustomScriptExternalType = createExternalType(loadedCustomScript,
-						newConfigurationAttributes);
+		return loadedCustomScriptConfigurations;
+	}
 
-				CustomScriptConfiguration newCustomScriptConfiguration = new CustomScriptConfiguration(
-						loadedCustomScript, newCustomScriptExternalType, newConfigurationAttributes);
+	private void putCustomScriptConfiguration(Map<String, CustomScriptConfiguration> customScriptConfigurations,
+			CustomScriptConfiguration customScriptConfiguration) {
+		customScriptConfigurations.put(StringHelper.toLowerCase(customScriptConfiguration.getInum()),
+				customScriptConfiguration);
+	}
 
-				// Store configuration and script
-				newCustomScriptConfigurations.put(newSupportedCustomScriptInum, newCustomScriptConfiguration);
+	private CustomScriptConfiguration loadCustomScriptConfiguration(CustomScript newCustomScript) {
+		// Load script entry with all attributes
+		CustomScript loadedCustomScript = customScriptService.getCustomScriptByDn(
+				newCustomScript.getScriptType().getCustomScriptModel(), newCustomScript.getDn());
+
+		// Prepare configuration attributes
+		Map<String, SimpleCustomProperty> newConfigurationAttributes = new HashMap<String, SimpleCustomProperty>();
+
+		List<SimpleExtendedCustomProperty> simpleCustomProperties = loadedCustomScript
+				.getConfigurationProperties();
+		if (simpleCustomProperties == null) {
+			simpleCustomProperties = new ArrayList<SimpleExtendedCustomProperty>(0);
 
-				modified = true;
-			}
 		}
 
-		// Remove old external scripts configurations
-		for (Iterator<Entry<String, CustomScriptConfiguration>> it = newCustomScriptConfigurations.entrySet()
-				.iterator(); it.hasNext();) {
-			Entry<String, CustomScriptConfiguration> externalAuthenticatorConfigurationEntry = it.next();
+		for (SimpleCustomProperty simpleCustomProperty : simpleCustomProperties) {
+			newConfigurationAttributes.put(simpleCustomProperty.getValue1(), simpleCustomProperty);
+		}
 
-			String prevSupportedCustomScriptInum = externalAuthenticatorConfigurationEntry.getKey();
+		if (ScriptLocationType.FILE == loadedCustomScript.getLocationType()) {
+			// Replace script revision with file modification time. This should allow to
+			// reload script automatically after changing location_type
+			long fileModifiactionTime = getFileModificationTime(loadedCustomScript.getLocationPath());
+			loadedCustomScript.setRevision(loadedCustomScript.getRevision() + fileModifiactionTime);
 
-			if (!newSupportedCustomScriptInums.contains(prevSupportedCustomScriptInum)) {
-				// Destroy old authentication method
-				destroyCustomScript(externalAuthenticatorConfigurationEntry.getValue());
-				it.remove();
+			if (fileModifiactionTime != 0) {
+				String scriptFromFile = loadFromFile(loadedCustomScript.getLocationPath());
+				if (StringHelper.isNotEmpty(scriptFromFile)) {
+					loadedCustomScript.setScript(scriptFromFile);
+				}
 
-				modified = true;
 			}
 		}
+		
+		// Automatic package update '.xdi' --> '.org'
+		// TODO: Remove in CE 5.0
+		String scriptCode = loadedCustomScript.getScript();
+		if (scriptCode != null) {
+			scriptCode = scriptCode.replaceAll(".xdi", ".gluu");
+			loadedCustomScript.setScript(scriptCode);
+		}
 
-		return new ReloadResult(newCustomScriptConfigurations, modified);
+		// Load script
+		BaseExternalType newCustomScriptExternalType = createExternalType(loadedCustomScript,
+				newConfigurationAttributes);
+
+		return new CustomScriptConfiguration(loadedCustomScript, newCustomScriptExternalType,
+				newConfigurationAttributes);
+	}
+
+	private static class ScriptThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String namePrefix;
+		private final ClassLoader contextClassLoader;
+
+		ScriptThreadFactory(String namePrefix, ClassLoader contextClassLoader) {
+			this.namePrefix = namePrefix;
+			this.contextClassLoader = contextClassLoader;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			// Scripts import application classes
+			thread.setContextClassLoader(contextClassLoader);
+
+			return thread;
+		}
 	}
 
 	private String loadFromFile(String locationPath) {
@@ -382,7 +774,11 @@ public class CustomScriptManager implements Serializable {
 
 		BaseExternalType externalType;
 		try {
-			externalType = createExternalTypeFromStringWithPythonException(customScript, configurationAttributes);
+			if (ProgrammingLanguage.JAVA == customScript.getProgrammingLanguage()) {
+				externalType = createExternalTypeFromJavaSourceWithException(customScript, configurationAttributes);
+			} else {
+				externalType = createExternalTypeFromStringWithPythonException(customScript, configurationAttributes);
+			}
 		} catch (Exception ex) {
 			log.error("Failed to prepare external type '{}'", ex, customScriptInum);
 			saveScriptError(customScript, ex, true);
@@ -395,6 +791,9 @@ public class CustomScriptManager implements Serializable {
 			externalType = customScript.getScriptType().getDefaultImplementation();
 		} else {
 			clearScriptError(customScript);
+
+			// Collect invocation statistics and apply execution deadline
+			externalType = CustomScriptInvocationHandler.wrap(customScript, externalType, scriptMetrics);
 		}
 
 		return externalType;
@@ -411,21 +810,45 @@ public class CustomScriptManager implements Serializable {
 		CustomScriptType customScriptType = customScript.getScriptType();
 		BaseExternalType externalType = null;
 
-		InputStream bis = null;
-		try {
-			bis = new ByteArrayInputStream(script.getBytes("UTF-8"));
-			externalType = pythonService.loadPythonScript(bis, scriptName, customScriptType.getPythonClass(),
-					customScriptType.getCustomScriptType(), new PyObject[] { new PyLong(System.currentTimeMillis()) });
-		} catch (UnsupportedEncodingException e) {
-			log.error(String.format("%s. Script inum: %s", e.getMessage(), customScript.getInum()), e);
-		} finally {
-			IOUtils.closeQuietly(bis);
-		}
+		// Compiled script code is reused while script revision and content are the same
+		externalType = pythonService.loadPythonScript(script, scriptName, customScript.getInum(),
+				customScript.getRevision(), customScriptType.getPythonClass(), customScriptType.getCustomScriptType(),
+				new PyObject[] { new PyLong(System.currentTimeMillis()) });
 
 		if (externalType == null) {
 			return null;
 		}
 
+		if (initExternalType(customScript, externalType, configurationAttributes)) {
+			return externalType;
+		}
+
+		return null;
+	}
+
+	/*
+	 * Create script from Java source. Compiled class is reused while script revision and content are the same
+	 */
+	public BaseExternalType createExternalTypeFromJavaSourceWithException(CustomScript customScript,
+			Map<String, SimpleCustomProperty> configurationAttributes) throws Exception {
+		String script = customScript.getScript();
+		if (script == null) {
+			return null;
+		}
+
+		CustomScriptType customScriptType = customScript.getScriptType();
+		BaseExternalType externalType = javaSourceCompiler.loadJavaScript(script, customScript.getInum(),
+				customScript.getRevision(), customScriptType.getPythonClass(), customScriptType.getCustomScriptType());
+
+		if (initExternalType(customScript, externalType, configurationAttributes)) {
+			return externalType;
+		}
+
+		return null;
+	}
+
+	private boolean initExternalType(CustomScript customScript, BaseExternalType externalType,
+			Map<String, SimpleCustomProperty> configurationAttributes) {
 		boolean initialized = false;
 		try {
 			// Workaround to allow load all required class in init method needed for proper script work
@@ -440,6 +863,11 @@ public class CustomScriptManager implements Serializable {
 					initialized = externalType.init(configurationAttributes);
 					log.warn(" Update the script's init method to init(self, customScript, configurationAttributes)",  customScript.getName());
 				}
+
+				if (initialized && !executeSelfTest(customScript, externalType, configurationAttributes)) {
+					externalType.destroy(configurationAttributes);
+					initialized = false;
+				}
 			} finally {
 				Thread.currentThread().setContextClassLoader(oldClassLoader);
 			}
@@ -447,11 +875,50 @@ public class CustomScriptManager implements Serializable {
 			log.error("Failed to initialize custom script: '{}'", ex, customScript.getName());
 		}
 
-		if (initialized) {
-			return externalType;
+		return initialized;
+	}
+
+	/*
+	 * Call optional selfTest(self, configurationAttributes) method of script. New version of script is used only if
+	 * it returns true
+	 */
+	private boolean executeSelfTest(CustomScript customScript, BaseExternalType externalType,
+			Map<String, SimpleCustomProperty> configurationAttributes) {
+		try {
+			Boolean result;
+			if (ProgrammingLanguage.JAVA == customScript.getProgrammingLanguage()) {
+				result = callJavaSelfTest(externalType, configurationAttributes);
+			} else {
+				result = pythonService.callOptionalMethod(externalType, SELF_TEST_METHOD, configurationAttributes);
+			}
+			if ((result != null) && !result) {
+				log.error("Self test of custom script '{}' failed", customScript.getName());
+				return false;
+			}
+		} catch (Exception ex) {
+			log.error("Failed to execute self test of custom script '{}'", customScript.getName(), ex);
+			return false;
 		}
 
-		return null;
+		return true;
+	}
+
+	private Boolean callJavaSelfTest(BaseExternalType externalType, Map<String, SimpleCustomProperty> configurationAttributes)
+			throws Exception {
+		Method selfTestMethod;
+		try {
+			selfTestMethod = externalType.getClass().getMethod(SELF_TEST_METHOD, Map.class);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+
+		try {
+			Object result = selfTestMethod.invoke(externalType, configurationAttributes);
+
+			return (result instanceof Boolean) ? (Boolean) result : null;
+		} catch (InvocationTargetException ex) {
+			throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+		}
 	}
 
 	public boolean executeCustomScriptDestroy(CustomScriptConfiguration customScriptConfiguration) {
@@ -531,12 +998,12 @@ public class CustomScriptManager implements Serializable {
 	}
 
 	public CustomScriptConfiguration getCustomScriptConfigurationByInum(String inum) {
-		return this.customScriptConfigurations.get(inum);
+		return this.loadedConfigurations.customScriptConfigurations.get(inum);
 	}
 
 	public List<CustomScriptConfiguration> getCustomScriptConfigurationsByScriptType(
 			CustomScriptType customScriptType) {
-		List<CustomScriptConfiguration> tmpCustomScriptConfigurationsByScriptType = this.customScriptConfigurationsByScriptType
+		List<CustomScriptConfiguration> tmpCustomScriptConfigurationsByScriptType = this.loadedConfigurations.customScriptConfigurationsByScriptType
 				.get(customScriptType);
 		if (tmpCustomScriptConfigurationsByScriptType == null) {
 			tmpCustomScriptConfigurationsByScriptType = new ArrayList<CustomScriptConfiguration>(0);
@@ -545,7 +1012,11 @@ public class CustomScriptManager implements Serializable {
 	}
 
 	public List<CustomScriptConfiguration> getCustomScriptConfigurations() {
-		return new ArrayList<CustomScriptConfiguration>(this.customScriptConfigurations.values());
+		return new ArrayList<CustomScriptConfiguration>(this.loadedConfigurations.customScriptConfigurations.values());
+	}
+
+	public CustomScriptMetrics getScriptMetrics() {
+		return scriptMetrics;
 	}
 
 	public List<CustomScriptType> getSupportedCustomScriptTypes() {
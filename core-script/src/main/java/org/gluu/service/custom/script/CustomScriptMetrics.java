@@ -0,0 +1,113 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gluu.service.custom.script.CustomScriptCircuitBreaker.State;
+import org.gluu.util.StringHelper;
+
+/**
+ * Registry of custom scripts invocation statistics per script inum and method, circuit breakers and bulkheads
+ */
+public class CustomScriptMetrics {
+
+	private final Map<String, Map<String, CustomScriptInvocationStats>> invocationStats = new ConcurrentHashMap<String, Map<String, CustomScriptInvocationStats>>();
+
+	private final Map<String, CustomScriptCircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CustomScriptCircuitBreaker>();
+
+	private final Map<String, CustomScriptBulkhead> bulkheads = new ConcurrentHashMap<String, CustomScriptBulkhead>();
+
+	public CustomScriptInvocationStats getInvocationStats(String inum, String method) {
+		return invocationStats.computeIfAbsent(StringHelper.toLowerCase(inum), key -> new ConcurrentHashMap<String, CustomScriptInvocationStats>())
+				.computeIfAbsent(method, key -> new CustomScriptInvocationStats(inum, method));
+	}
+
+	/*
+	 * Returns statistics of script methods by method name
+	 */
+	public Map<String, CustomScriptInvocationStats> getInvocationStats(String inum) {
+		Map<String, CustomScriptInvocationStats> scriptInvocationStats = invocationStats.get(StringHelper.toLowerCase(inum));
+		if (scriptInvocationStats == null) {
+			return Collections.emptyMap();
+		}
+
+		return new HashMap<String, CustomScriptInvocationStats>(scriptInvocationStats);
+	}
+
+	public List<CustomScriptInvocationStats> getInvocationStats() {
+		List<CustomScriptInvocationStats> result = new ArrayList<CustomScriptInvocationStats>();
+		for (Map<String, CustomScriptInvocationStats> scriptInvocationStats : invocationStats.values()) {
+			result.addAll(scriptInvocationStats.values());
+		}
+
+		return result;
+	}
+
+	public State getCircuitBreakerState(String inum) {
+		CustomScriptCircuitBreaker circuitBreaker = circuitBreakers.get(StringHelper.toLowerCase(inum));
+		if (circuitBreaker == null) {
+			return State.CLOSED;
+		}
+
+		return circuitBreaker.getState();
+	}
+
+	public void setCircuitBreaker(String inum, CustomScriptCircuitBreaker circuitBreaker) {
+		circuitBreakers.put(StringHelper.toLowerCase(inum), circuitBreaker);
+	}
+
+	/*
+	 * Returns bulkhead of script or null if script concurrency isn't limited
+	 */
+	public CustomScriptBulkhead getBulkhead(String inum) {
+		return bulkheads.get(StringHelper.toLowerCase(inum));
+	}
+
+	public void setBulkhead(String inum, CustomScriptBulkhead bulkhead) {
+		String key = StringHelper.toLowerCase(inum);
+		if (bulkhead == null) {
+			bulkheads.remove(key);
+		} else {
+			bulkheads.put(key, bulkhead);
+		}
+	}
+
+	/*
+	 * Returns bulkhead of script shared by all loaded versions of script. Bulkhead is replaced only when limits are
+	 * changed, so previous version which drains and new version don't get separate permits. Removes bulkhead and
+	 * returns null if script concurrency isn't limited
+	 */
+	public CustomScriptBulkhead getBulkhead(String inum, int maxConcurrent, int maxQueueDepth, long queueTimeoutMillis) {
+		String key = StringHelper.toLowerCase(inum);
+		if (maxConcurrent <= 0) {
+			bulkheads.remove(key);
+			return null;
+		}
+
+		return bulkheads.compute(key, (k, bulkhead) -> {
+			if ((bulkhead != null) && (bulkhead.getMaxConcurrent() == maxConcurrent) && (bulkhead.getMaxQueueDepth() == maxQueueDepth)
+					&& (bulkhead.getQueueTimeoutMillis() == queueTimeoutMillis)) {
+				return bulkhead;
+			}
+
+			return new CustomScriptBulkhead(maxConcurrent, maxQueueDepth, queueTimeoutMillis);
+		});
+	}
+
+	public void remove(String inum) {
+		String key = StringHelper.toLowerCase(inum);
+		invocationStats.remove(key);
+		circuitBreakers.remove(key);
+		bulkheads.remove(key);
+	}
+
+}
@@ -10,11 +10,13 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import org.gluu.model.SimpleCustomProperty;
 import org.gluu.model.custom.script.CustomScriptType;
 import org.gluu.model.custom.script.conf.CustomScriptConfiguration;
 import org.gluu.model.custom.script.model.CustomScript;
@@ -35,6 +37,8 @@ public abstract class ExternalScriptService implements Serializable {
 
     private static final long serialVersionUID = -1070021905117441202L;
 
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
     @Inject
     protected Logger log;
 
@@ -43,12 +47,16 @@ public abstract class ExternalScriptService implements Serializable {
 
     protected CustomScriptType customScriptType;
     
-    protected boolean loaded;
+    protected volatile boolean loaded;
 
     protected Map<String, CustomScriptConfiguration> customScriptConfigurationsNameMap;
     protected List<CustomScriptConfiguration> customScriptConfigurations;
     protected CustomScriptConfiguration defaultExternalCustomScript;
 
+    // Request threads read configurations from snapshot which is replaced as a whole on reload
+    private volatile ScriptDispatchSnapshot dispatchSnapshot = ScriptDispatchSnapshot.EMPTY;
+    private final AtomicLong dispatchVersion = new AtomicLong();
+
     @PostConstruct
     public void init() {
     	this.loaded = false;
@@ -84,6 +92,10 @@ public abstract class ExternalScriptService implements Serializable {
 
         // Allow to execute additional logic
         reloadExternal();
+
+        // Publish configurations for request threads
+        this.dispatchSnapshot = new ScriptDispatchSnapshot(dispatchVersion.incrementAndGet(), this.customScriptConfigurations,
+                this.defaultExternalCustomScript);
         
         loaded = true;
     }
@@ -130,6 +142,51 @@ public abstract class ExternalScriptService implements Serializable {
         return -1;
     }
 
+    /*
+     * Call batch script method for entities in chunks of batchSize. Returns result for each entity, entities of chunk
+     * which failed get false. Execution deadline of script applies to chunk multiplied by chunk size
+     */
+    public <T extends BaseExternalType> boolean[] executeExternalBatch(CustomScriptConfiguration customScriptConfiguration,
+            List<?> entities, int batchSize, ExternalBatchMethod<T> batchMethod) {
+        boolean[] result = new boolean[entities.size()];
+        if (entities.isEmpty()) {
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        T externalType = (T) customScriptConfiguration.getExternalType();
+        Map<String, SimpleCustomProperty> configurationAttributes = customScriptConfiguration.getConfigurationAttributes();
+
+        int offset = 0;
+        for (List<?> batch : Lists.partition(entities, Math.max(1, batchSize))) {
+            try {
+                log.trace("Executing python batch method for {} entities", batch.size());
+                boolean[] batchResult = batchMethod.execute(externalType, batch, configurationAttributes);
+                if ((batchResult != null) && (batchResult.length == batch.size())) {
+                    System.arraycopy(batchResult, 0, result, offset, batchResult.length);
+                } else {
+                    log.error("Batch method of script '{}' returned {} results instead of {}", customScriptConfiguration.getName(),
+                            (batchResult == null) ? null : batchResult.length, batch.size());
+                }
+            } catch (Exception ex) {
+                log.error(ex.getMessage(), ex);
+                saveScriptError(customScriptConfiguration.getCustomScript(), ex);
+            }
+            offset += batch.size();
+        }
+
+        return result;
+    }
+
+    /**
+     * Batch method of script, e.g. CacheRefreshType.updateUsers
+     */
+    public interface ExternalBatchMethod<T extends BaseExternalType> {
+
+        boolean[] execute(T externalType, List<?> batch, Map<String, SimpleCustomProperty> configurationAttributes);
+
+    }
+
     public void saveScriptError(CustomScript customScript, Exception exception) {
         customScriptManager.saveScriptError(customScript, exception);
     }
@@ -139,31 +196,39 @@ public abstract class ExternalScriptService implements Serializable {
     }
 
     public boolean isEnabled() {
-        if (this.customScriptConfigurations == null) {
-            return false;
-        }
-
-        return this.customScriptConfigurations.size() > 0;
+        return !this.dispatchSnapshot.isEmpty();
     }
 
     public CustomScriptConfiguration getCustomScriptConfigurationByName(String name) {
-        return this.customScriptConfigurationsNameMap.get(StringHelper.toLowerCase(name));
+        return this.dispatchSnapshot.getCustomScriptConfigurationByName(name);
     }
 
     public CustomScriptConfiguration getDefaultExternalCustomScript() {
-        return defaultExternalCustomScript;
+        return this.dispatchSnapshot.getDefaultCustomScriptConfiguration();
     }
 
     public List<CustomScriptConfiguration> getCustomScriptConfigurations() {
-        return this.customScriptConfigurations;
+        return this.dispatchSnapshot.getCustomScriptConfigurations();
+    }
+
+    /*
+     * Configurations sorted by level in descending order
+     */
+    public List<CustomScriptConfiguration> getCustomScriptConfigurationsByLevel() {
+        return this.dispatchSnapshot.getCustomScriptConfigurationsByLevel();
+    }
+
+    public ScriptDispatchSnapshot getDispatchSnapshot() {
+        return this.dispatchSnapshot;
     }
 
     public List<CustomScriptConfiguration> getCustomScriptConfigurationsByDns(List<String> dns) {
-        if (dns == null || dns.isEmpty() || customScriptConfigurations == null || customScriptConfigurations.isEmpty()) {
+        List<CustomScriptConfiguration> currentCustomScriptConfigurations = this.dispatchSnapshot.getCustomScriptConfigurations();
+        if (dns == null || dns.isEmpty() || currentCustomScriptConfigurations.isEmpty()) {
             return Lists.newArrayList();
         }
         List<CustomScriptConfiguration> scripts = Lists.newArrayList();
-        for (CustomScriptConfiguration script : customScriptConfigurations) {
+        for (CustomScriptConfiguration script : currentCustomScriptConfigurations) {
             if (dns.contains(script.getCustomScript().getDn())) {
                 scripts.add(script);
             }
@@ -171,6 +236,20 @@ public abstract class ExternalScriptService implements Serializable {
         return scripts;
     }
 
+    /*
+     * Returns invocation statistics of script methods by method name
+     */
+    public Map<String, CustomScriptInvocationStats> getInvocationStats(CustomScriptConfiguration customScriptConfiguration) {
+        return customScriptManager.getScriptMetrics().getInvocationStats(customScriptConfiguration.getInum());
+    }
+
+    /*
+     * Returns concurrency limit and saturation of script or null if script concurrency isn't limited
+     */
+    public CustomScriptBulkhead getBulkhead(CustomScriptConfiguration customScriptConfiguration) {
+        return customScriptManager.getScriptMetrics().getBulkhead(customScriptConfiguration.getInum());
+    }
+
 	public CustomScriptType getCustomScriptType() {
 		return customScriptType;
 	}
@@ -0,0 +1,111 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom.script;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gluu.model.custom.script.conf.CustomScriptConfiguration;
+import org.gluu.util.StringHelper;
+
+/**
+ * Immutable view of script configurations of one script type. It's built on reload and published at once, so request
+ * threads read consistent configurations without locks.
+ *
+ * Names are indexed both as is and in lower case, so lookup with name in its original case doesn't allocate.
+ */
+public final class ScriptDispatchSnapshot {
+
+	public static final ScriptDispatchSnapshot EMPTY = new ScriptDispatchSnapshot(0,
+			Collections.<CustomScriptConfiguration>emptyList(), null);
+
+	private static final Comparator<CustomScriptConfiguration> LEVEL_DESCENDING = new Comparator<CustomScriptConfiguration>() {
+		@Override
+		public int compare(CustomScriptConfiguration o1, CustomScriptConfiguration o2) {
+			return Integer.compare(o2.getLevel(), o1.getLevel());
+		}
+	};
+
+	private final long version;
+
+	private final List<CustomScriptConfiguration> customScriptConfigurations;
+	private final List<CustomScriptConfiguration> customScriptConfigurationsByLevel;
+	private final Map<String, CustomScriptConfiguration> customScriptConfigurationsByName;
+	private final CustomScriptConfiguration defaultCustomScriptConfiguration;
+
+	public ScriptDispatchSnapshot(long version, List<CustomScriptConfiguration> customScriptConfigurations,
+			CustomScriptConfiguration defaultCustomScriptConfiguration) {
+		this.version = version;
+		this.customScriptConfigurations = Collections
+				.unmodifiableList(new ArrayList<CustomScriptConfiguration>(customScriptConfigurations));
+
+		CustomScriptConfiguration[] byLevel = customScriptConfigurations
+				.toArray(new CustomScriptConfiguration[customScriptConfigurations.size()]);
+		// Stable sort keeps original order of scripts with same level
+		Arrays.sort(byLevel, LEVEL_DESCENDING);
+		this.customScriptConfigurationsByLevel = Collections.unmodifiableList(Arrays.asList(byLevel));
+
+		Map<String, CustomScriptConfiguration> byName = new HashMap<String, CustomScriptConfiguration>(
+				customScriptConfigurations.size() * 4);
+		for (CustomScriptConfiguration customScriptConfiguration : customScriptConfigurations) {
+			byName.put(StringHelper.toLowerCase(customScriptConfiguration.getName()), customScriptConfiguration);
+		}
+		for (CustomScriptConfiguration customScriptConfiguration : customScriptConfigurations) {
+			String name = customScriptConfiguration.getName();
+			if (name != null) {
+				byName.putIfAbsent(name, customScriptConfiguration);
+			}
+		}
+		this.customScriptConfigurationsByName = byName;
+
+		this.defaultCustomScriptConfiguration = defaultCustomScriptConfiguration;
+	}
+
+	/*
+	 * Version is incremented on each reload of script type
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public List<CustomScriptConfiguration> getCustomScriptConfigurations() {
+		return customScriptConfigurations;
+	}
+
+	/*
+	 * Configurations sorted by level in descending order
+	 */
+	public List<CustomScriptConfiguration> getCustomScriptConfigurationsByLevel() {
+		return customScriptConfigurationsByLevel;
+	}
+
+	public CustomScriptConfiguration getCustomScriptConfigurationByName(String name) {
+		if (name == null) {
+			return null;
+		}
+
+		CustomScriptConfiguration customScriptConfiguration = customScriptConfigurationsByName.get(name);
+		if (customScriptConfiguration == null) {
+			customScriptConfiguration = customScriptConfigurationsByName.get(StringHelper.toLowerCase(name));
+		}
+
+		return customScriptConfiguration;
+	}
+
+	public CustomScriptConfiguration getDefaultCustomScriptConfiguration() {
+		return defaultCustomScriptConfiguration;
+	}
+
+	public boolean isEmpty() {
+		return customScriptConfigurations.isEmpty();
+	}
+
+}
@@ -42,7 +42,7 @@ public class StandaloneCustomScriptManager extends CustomScriptManager {
 
 	public void init() {
 		configure();
-		reloadTimerEvent(null);
+		reloadScripts();
 	}
 
 	public void destory() {
@@ -50,7 +50,7 @@ public class StandaloneCustomScriptManager extends CustomScriptManager {
 	}
 
 	public void reload() {
-		reloadTimerEvent(null);
+		reloadScripts();
 	}
 	
 	public void registerExternalScriptService(ExternalScriptService externalScriptService) {
@@ -0,0 +1,112 @@
+package org.gluu.service.custom.script.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.service.PythonService;
+import org.python.core.PyLong;
+import org.python.core.PyObject;
+
+/**
+ * Measures throughput of python scripts loading and execution with different count of threads
+ */
+public class PythonServiceBenchmark {
+
+	private static final int LOAD_ITERATIONS = 200;
+	private static final int CALL_ITERATIONS = 20000;
+
+	private static final String SCRIPT = "from java.util.concurrent import Callable\n" +
+			"\n" +
+			"class BenchmarkScript(Callable):\n" +
+			"    def __init__(self, currentTimeMillis):\n" +
+			"        self.currentTimeMillis = currentTimeMillis\n" +
+			"\n" +
+			"    def call(self):\n" +
+			"        total = 0\n" +
+			"        for i in range(100):\n" +
+			"            total += i * i\n" +
+			"        return total\n";
+
+	public static void main(String[] args) throws Exception {
+		if (System.getenv("PYTHON_HOME") == null) {
+			System.err.println("PYTHON_HOME environment variable is not defined");
+			System.exit(-1);
+		}
+
+		PythonService pythonService = new PythonService();
+		pythonService.configure();
+		pythonService.init();
+		pythonService.initPythonInterpreter(null);
+
+		Callable<?> script = loadScript(pythonService);
+
+		// Warm up
+		runLoad(pythonService, 1);
+		runCalls(script, 1);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println(String.format("%8s %16s %16s", "threads", "loads/s", "calls/s"));
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			double loads = runLoad(pythonService, threads);
+			double calls = runCalls(script, threads);
+			System.out.println(String.format("%8d %16.0f %16.0f", threads, loads, calls));
+		}
+
+		pythonService.destroy();
+	}
+
+	private static Callable<?> loadScript(PythonService pythonService) throws Exception {
+		return pythonService.loadPythonScript(SCRIPT, "benchmark_script.py", "benchmark", 1, "BenchmarkScript", Callable.class,
+				new PyObject[] { new PyLong(System.currentTimeMillis()) });
+	}
+
+	private static double runLoad(PythonService pythonService, int threads) throws Exception {
+		return run(threads, LOAD_ITERATIONS, () -> loadScript(pythonService));
+	}
+
+	private static double runCalls(Callable<?> script, int threads) throws Exception {
+		return run(threads, CALL_ITERATIONS, script);
+	}
+
+	/*
+	 * Returns operations per second
+	 */
+	private static double run(int threads, int iterations, Callable<?> operation) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		List<Exception> errors = new ArrayList<Exception>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+					for (int j = 0; j < iterations; j++) {
+						operation.call();
+					}
+				} catch (Exception ex) {
+					synchronized (errors) {
+						errors.add(ex);
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long duration = System.nanoTime() - startTime;
+
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+
+		return (double) threads * iterations / duration * TimeUnit.SECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.gluu.service.custom.script.test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.service.JavaSourceCompiler;
+import org.gluu.service.PythonService;
+import org.python.core.PyLong;
+import org.python.core.PyObject;
+
+/**
+ * Compares load time and call throughput of the same claims script in Jython and in Java
+ */
+public class ScriptEngineBenchmark {
+
+	private static final int CALL_ITERATIONS = 200000;
+
+	private static final String PYTHON_SCRIPT = "from java.util.concurrent import Callable\n" +
+			"from java.util import HashMap\n" +
+			"\n" +
+			"class ClaimsScript(Callable):\n" +
+			"    def __init__(self, currentTimeMillis):\n" +
+			"        self.currentTimeMillis = currentTimeMillis\n" +
+			"\n" +
+			"    def call(self):\n" +
+			"        claims = HashMap()\n" +
+			"        claims.put(\"org\", \"gluu\")\n" +
+			"        claims.put(\"level\", 1)\n" +
+			"        claims.put(\"roles\", \"admin,user\")\n" +
+			"        return claims\n";
+
+	private static final String JAVA_SCRIPT = "package org.gluu.benchmark;\n" +
+			"\n" +
+			"import java.util.HashMap;\n" +
+			"import java.util.Map;\n" +
+			"import java.util.concurrent.Callable;\n" +
+			"\n" +
+			"public class ClaimsScript implements Callable<Map<String, Object>> {\n" +
+			"    public Map<String, Object> call() {\n" +
+			"        Map<String, Object> claims = new HashMap<String, Object>();\n" +
+			"        claims.put(\"org\", \"gluu\");\n" +
+			"        claims.put(\"level\", 1);\n" +
+			"        claims.put(\"roles\", \"admin,user\");\n" +
+			"        return claims;\n" +
+			"    }\n" +
+			"}\n";
+
+	public static void main(String[] args) throws Exception {
+		if (System.getenv("PYTHON_HOME") == null) {
+			System.err.println("PYTHON_HOME environment variable is not defined");
+			System.exit(-1);
+		}
+
+		PythonService pythonService = new PythonService();
+		pythonService.configure();
+		pythonService.init();
+		pythonService.initPythonInterpreter(null);
+
+		JavaSourceCompiler javaSourceCompiler = new JavaSourceCompiler();
+
+		long start = System.nanoTime();
+		Callable<?> pythonScript = pythonService.loadPythonScript(PYTHON_SCRIPT, "claims_script.py", "python", 1,
+				"ClaimsScript", Callable.class, new PyObject[] { new PyLong(System.currentTimeMillis()) });
+		long pythonLoad = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Callable<?> javaScript = javaSourceCompiler.loadJavaScript(JAVA_SCRIPT, "java", 1, "ClaimsScript", Callable.class);
+		long javaLoad = System.nanoTime() - start;
+
+		// Warm up
+		run(pythonScript);
+		run(javaScript);
+
+		System.out.println(String.format("%8s %16s %16s", "engine", "load ms", "calls/s"));
+		System.out.println(String.format("%8s %16d %16.0f", "jython", TimeUnit.NANOSECONDS.toMillis(pythonLoad), run(pythonScript)));
+		System.out.println(String.format("%8s %16d %16.0f", "java", TimeUnit.NANOSECONDS.toMillis(javaLoad), run(javaScript)));
+
+		pythonService.destroy();
+	}
+
+	/*
+	 * Returns calls per second
+	 */
+	private static double run(Callable<?> script) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < CALL_ITERATIONS; i++) {
+			script.call();
+		}
+		long duration = System.nanoTime() - start;
+
+		return (double) CALL_ITERATIONS / duration * TimeUnit.SECONDS.toNanos(1);
+	}
+
+}
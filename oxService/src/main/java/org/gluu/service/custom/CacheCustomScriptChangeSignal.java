@@ -0,0 +1,52 @@
+/*
+ * oxCore is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.service.custom;
+
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gluu.service.CacheService;
+import org.gluu.service.custom.script.CustomScriptChangeSignal;
+import org.slf4j.Logger;
+
+/**
+ * Keeps custom scripts modification token in distributed cache, so all nodes which share cache see it
+ */
+@ApplicationScoped
+public class CacheCustomScriptChangeSignal implements CustomScriptChangeSignal {
+
+	public static final String TOKEN_KEY = "custom_scripts_modification_token";
+
+	// Token expiration only causes one more revisions check on each node
+	private static final int TOKEN_EXPIRATION = 24 * 60 * 60; // 1 day
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private CacheService cacheService;
+
+	@Override
+	public String getToken() {
+		Object token = cacheService.get(TOKEN_KEY);
+
+		return token == null ? null : token.toString();
+	}
+
+	@Override
+	public void notifyChanged() {
+		String token = UUID.randomUUID().toString();
+		try {
+			cacheService.put(TOKEN_EXPIRATION, TOKEN_KEY, token);
+			log.debug("Custom scripts modification token was changed to '{}'", token);
+		} catch (Exception ex) {
+			log.error("Failed to change custom scripts modification token", ex);
+		}
+	}
+
+}
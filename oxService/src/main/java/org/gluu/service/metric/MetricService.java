@@ -19,12 +19,14 @@ import org.gluu.persist.model.DefaultBatchOperation;
 import org.gluu.persist.model.SearchScope;
 import org.gluu.persist.model.base.SimpleBranch;
 import org.gluu.search.filter.Filter;
+import org.gluu.service.cache.CacheMetrics;
 import org.gluu.service.cdi.async.Asynchronous;
 import org.gluu.service.metric.inject.ReportMetric;
 import org.gluu.util.StringHelper;
 import org.slf4j.Logger;
 
 import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
@@ -60,6 +62,9 @@ public abstract class MetricService implements Serializable {
     @Inject
     private Logger log;
 
+    @Inject
+    private Instance<CacheMetrics> cacheMetricsInstance;
+
     public void initTimer(int metricInterval, int entryLifetimeInDays) {
         this.metricRegistry = new MetricRegistry();
         this.registeredMetricTypes = new HashSet<MetricType>();
@@ -72,6 +77,15 @@ public abstract class MetricService implements Serializable {
             metricReporterInterval = DEFAULT_METRIC_REPORTER_INTERVAL;
         }
         ldapEntryReporter.start(metricReporterInterval, TimeUnit.SECONDS);
+
+        // Cache metrics are available in registry for reporters. They are not stored in metric entries
+        if ((cacheMetricsInstance != null) && !cacheMetricsInstance.isUnsatisfied()) {
+            cacheMetricsInstance.get().bindTo(this.metricRegistry);
+        }
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
     }
 
     public void close() {
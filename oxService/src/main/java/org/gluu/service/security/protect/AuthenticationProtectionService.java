@@ -46,6 +46,7 @@ public abstract class AuthenticationProtectionService {
         AuthenticationAttempt authenticationAttempt = new AuthenticationAttempt(currentTime, currentTime + attemptExpiration * 1000, success);
         authenticationAttemptList.getAuthenticationAttempts().add(authenticationAttempt);
 
+        // Write synchronously, next attempt should see this one or attempts aren't counted by brute force protection
         cacheService.put(Integer.toString(attemptExpiration), buildKey(key), authenticationAttemptList);
     }
 
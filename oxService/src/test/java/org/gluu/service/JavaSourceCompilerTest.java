@@ -0,0 +1,100 @@
+package org.gluu.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Callable;
+
+import org.gluu.exception.JavaSourceException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class JavaSourceCompilerTest {
+
+    private static final String SCRIPT = "package org.gluu.test;\n" +
+            "\n" +
+            "import java.util.concurrent.Callable;\n" +
+            "\n" +
+            "public class TestScript implements Callable<String> {\n" +
+            "    public String call() {\n" +
+            "        return \"%s\";\n" +
+            "    }\n" +
+            "}\n";
+
+    private JavaSourceCompiler javaSourceCompiler;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        javaSourceCompiler = new JavaSourceCompiler();
+    }
+
+    @Test
+    public void compileAndLoadTest() throws Exception {
+        Callable<?> script = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "test", 1, "TestScript", Callable.class);
+
+        assertEquals(script.getClass().getName(), "org.gluu.test.TestScript");
+        assertEquals(script.call(), "result1");
+    }
+
+    @Test
+    public void compiledClassReuseTest() throws Exception {
+        Callable<?> script = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "test", 1, "TestScript", Callable.class);
+
+        // Same revision creates new instance without compilation
+        Callable<?> sameRevisionScript = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "TEST", 1, "TestScript",
+                Callable.class);
+        assertNotSame(sameRevisionScript, script);
+        assertSame(sameRevisionScript.getClass(), script.getClass());
+
+        Callable<?> newRevisionScript = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result2"), "test", 2, "TestScript",
+                Callable.class);
+        assertNotSame(newRevisionScript.getClass(), script.getClass());
+        assertEquals(newRevisionScript.call(), "result2");
+    }
+
+    @Test
+    public void removeTest() throws Exception {
+        Callable<?> script = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "test", 1, "TestScript", Callable.class);
+        javaSourceCompiler.remove("test");
+
+        Callable<?> reloadedScript = javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "test", 1, "TestScript",
+                Callable.class);
+        assertNotSame(reloadedScript.getClass(), script.getClass());
+    }
+
+    @Test
+    public void compileErrorTest() {
+        try {
+            javaSourceCompiler.loadJavaScript("package org.gluu.test;\npublic class TestScript { compile error }", "test", 1, "TestScript",
+                    Callable.class);
+            fail("Compilation error expected");
+        } catch (JavaSourceException ex) {
+            assertTrue(ex.getMessage().startsWith("Failed to compile java script 'org.gluu.test.TestScript'"), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void missingClassTest() {
+        try {
+            // Source compiles, but it has only helper class
+            javaSourceCompiler.loadJavaScript("package org.gluu.test;\nclass Helper {}", "test", 1, "TestScript", Callable.class);
+            fail("Missing class error expected");
+        } catch (JavaSourceException ex) {
+            assertEquals(ex.getMessage(), "Java script doesn't declare class 'org.gluu.test.TestScript'");
+        }
+    }
+
+    @Test
+    public void wrongTypeTest() {
+        try {
+            javaSourceCompiler.loadJavaScript(String.format(SCRIPT, "result1"), "test", 1, "TestScript", Runnable.class);
+            fail("Type error expected");
+        } catch (JavaSourceException ex) {
+            assertEquals(ex.getMessage(), "Class 'org.gluu.test.TestScript' doesn't implement 'java.lang.Runnable'");
+        }
+    }
+
+}
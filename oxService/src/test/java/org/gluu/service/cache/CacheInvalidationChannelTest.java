@@ -0,0 +1,223 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+
+/**
+ * Verifies invalidation channel of AbstractRedisProvider with in-JVM pub/sub stand-in instead of redis server
+ */
+public class CacheInvalidationChannelTest {
+
+    private final List<BlockingQueue<byte[]>> subscribers = new CopyOnWriteArrayList<BlockingQueue<byte[]>>();
+
+    private LoopbackRedisProvider node1;
+    private LoopbackRedisProvider node2;
+
+    private final BlockingQueue<Long> node1Invalidations = new LinkedBlockingQueue<Long>();
+    private final BlockingQueue<Long> node2Invalidations = new LinkedBlockingQueue<Long>();
+
+    @BeforeClass
+    public void beforeClass() throws InterruptedException {
+        RedisConfiguration redisConfiguration = new RedisConfiguration();
+        redisConfiguration.setInvalidationChannelEnabled(true);
+        redisConfiguration.setInvalidationBatchInterval(2);
+
+        node1 = new LoopbackRedisProvider(redisConfiguration);
+        node1.addInvalidationListener(new QueueInvalidationListener(node1Invalidations));
+        node1.create();
+
+        node2 = new LoopbackRedisProvider(redisConfiguration);
+        node2.addInvalidationListener(new QueueInvalidationListener(node2Invalidations));
+        node2.create();
+
+        for (int i = 0; (i < 100) && (subscribers.size() < 2); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(subscribers.size(), 2);
+    }
+
+    @AfterClass
+    public void afterClass() {
+        node1.destroy();
+        node2.destroy();
+    }
+
+    @Test
+    public void messageCodecTest() {
+        long[] keyHashes = new long[] { CacheInvalidationMessage.hashKey("key1"), CacheInvalidationMessage.hashKey("key2"), 0 };
+        CacheInvalidationMessage message = new CacheInvalidationMessage(42, false, keyHashes, 2);
+
+        CacheInvalidationMessage decoded = CacheInvalidationMessage.decode(message.encode());
+        assertNotNull(decoded);
+        assertEquals(decoded.getNodeId(), 42);
+        assertFalse(decoded.isInvalidateAll());
+        assertEquals(decoded.getCount(), 2);
+        assertEquals(decoded.getKeyHashes()[0], keyHashes[0]);
+        assertEquals(decoded.getKeyHashes()[1], keyHashes[1]);
+    }
+
+    @Test
+    public void remoteNodeInvalidationTest() throws InterruptedException {
+        node1.put(60, "remoteNodeKey", "value");
+
+        Long keyHash = node2Invalidations.poll(1, TimeUnit.SECONDS);
+        assertNotNull(keyHash);
+        assertEquals(keyHash.longValue(), CacheInvalidationMessage.hashKey("remoteNodeKey"));
+
+        // Sender ignores own messages
+        assertTrue(node1Invalidations.isEmpty());
+    }
+
+    @Test(dependsOnMethods = "remoteNodeInvalidationTest")
+    public void batchInvalidationTest() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            node2.remove("batchKey" + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            Long keyHash = node1Invalidations.poll(1, TimeUnit.SECONDS);
+            assertNotNull(keyHash);
+            assertEquals(keyHash.longValue(), CacheInvalidationMessage.hashKey("batchKey" + i));
+        }
+    }
+
+    @Test(dependsOnMethods = "batchInvalidationTest")
+    public void asyncWriteInvalidationTest() throws Exception {
+        node1.putAsync(60, "asyncKey", "value").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertEquals(node1.get("asyncKey"), "value");
+
+        Long keyHash = node2Invalidations.poll(1, TimeUnit.SECONDS);
+        assertNotNull(keyHash);
+        assertEquals(keyHash.longValue(), CacheInvalidationMessage.hashKey("asyncKey"));
+
+        node1.removeAsync("asyncKey").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertNull(node1.get("asyncKey"));
+    }
+
+    private static class QueueInvalidationListener implements CacheInvalidationListener {
+
+        private final BlockingQueue<Long> invalidations;
+
+        QueueInvalidationListener(BlockingQueue<Long> invalidations) {
+            this.invalidations = invalidations;
+        }
+
+        @Override
+        public void onInvalidate(long keyHash) {
+            invalidations.add(keyHash);
+        }
+
+        @Override
+        public void onInvalidateAll() {
+            invalidations.add(0L);
+        }
+    }
+
+    private class LoopbackRedisProvider extends AbstractRedisProvider {
+
+        private final Map<String, Object> map = new ConcurrentHashMap<String, Object>();
+
+        LoopbackRedisProvider(RedisConfiguration redisConfiguration) {
+            super(redisConfiguration);
+        }
+
+        @Override
+        public void create() {
+            startInvalidationChannel();
+        }
+
+        @Override
+        public void destroy() {
+            stopInvalidationChannel();
+        }
+
+        @Override
+        public Object getDelegate() {
+            return map;
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        protected Object loadValue(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            map.remove(key);
+            invalidate(key);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+            invalidateAll();
+        }
+
+        @Override
+        public void put(int expirationInSeconds, String key, Object object) {
+            put(key, object);
+        }
+
+        @Override
+        public void put(String key, Object object) {
+            map.put(key, object);
+            invalidate(key);
+        }
+
+        @Override
+        protected void writeBatch(List<RedisWriteOperation> operations) {
+            for (RedisWriteOperation operation : operations) {
+                if (operation.isRemove()) {
+                    map.remove(operation.getKey());
+                } else {
+                    map.put(operation.getKey(), serializer.deserialize(operation.getValue()));
+                }
+            }
+        }
+
+        @Override
+        protected void publish(byte[] channel, byte[] message) {
+            for (BlockingQueue<byte[]> subscriber : subscribers) {
+                subscriber.add(message);
+            }
+        }
+
+        @Override
+        protected void subscribe(BinaryJedisPubSub pubSub, byte[] channel) {
+            BlockingQueue<byte[]> queue = new LinkedBlockingQueue<byte[]>();
+            subscribers.add(queue);
+            try {
+                while (true) {
+                    pubSub.onMessage(channel, queue.take());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.remove(queue);
+            }
+        }
+    }
+
+}
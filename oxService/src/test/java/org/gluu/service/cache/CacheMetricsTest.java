@@ -0,0 +1,141 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+public class CacheMetricsTest {
+
+    @Test
+    public void instrumentedProviderTest() {
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        MetricRegistry registry = new MetricRegistry();
+        cacheMetrics.bindTo(registry);
+
+        InMemoryCacheProvider inMemoryCacheProvider = new InMemoryCacheProvider();
+        inMemoryCacheProvider.configure(new CacheConfiguration());
+        inMemoryCacheProvider.init();
+        inMemoryCacheProvider.create();
+
+        CacheProviderMetrics metrics = cacheMetrics.getProviderMetrics(CacheProviderType.IN_MEMORY);
+        InstrumentedCacheProvider<?> cacheProvider = new InstrumentedCacheProvider<>(inMemoryCacheProvider, metrics);
+
+        cacheProvider.put(60, "key1", "value1");
+        assertEquals(cacheProvider.get("key1"), "value1");
+        assertEquals(cacheProvider.get("key2"), null);
+        cacheProvider.getAll(Arrays.asList("key1", "key2", "key3"));
+
+        assertEquals(metrics.getHits(), 2);
+        assertEquals(metrics.getMisses(), 3);
+
+        Timer getTimer = (Timer) registry.getMetrics().get("cache.in_memory.get");
+        assertEquals(getTimer.getCount(), 2);
+        assertEquals(((Timer) registry.getMetrics().get("cache.in_memory.put")).getCount(), 1);
+        assertEquals(((Gauge<?>) registry.getMetrics().get("cache.in_memory.hitRatio")).getValue(), 0.4);
+    }
+
+    @Test
+    public void serializerPayloadTest() {
+        CacheProviderMetrics metrics = new CacheMetrics().getProviderMetrics("test");
+        CacheSerializer serializer = InstrumentedCacheSerializer.wrap(new JavaCacheSerializer(), metrics);
+
+        byte[] data = serializer.serialize("value");
+        assertEquals(serializer.deserialize(data), "value");
+
+        // Wrapping again replaces metrics instead of nesting decorators
+        CacheSerializer rewrapped = InstrumentedCacheSerializer.wrap(serializer, metrics);
+        assertTrue(((InstrumentedCacheSerializer) rewrapped).getSerializer() instanceof JavaCacheSerializer);
+    }
+
+    @Test
+    public void poolMetricsTest() {
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        MetricRegistry registry = new MetricRegistry();
+        cacheMetrics.bindTo(registry);
+
+        CacheProviderMetrics metrics = cacheMetrics.getProviderMetrics(CacheProviderType.REDIS);
+
+        // Borrow time is reported only for providers with pools
+        metrics.updatePoolBorrow(1000);
+        assertFalse(registry.getMetrics().containsKey("cache.redis.pool.borrow"));
+
+        metrics.registerPoolGauges(() -> Collections.emptyList());
+        metrics.updatePoolBorrow(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.markPoolExhausted();
+
+        assertEquals(((Timer) registry.getMetrics().get("cache.redis.pool.borrow")).getCount(), 1);
+        assertEquals(((Counter) registry.getMetrics().get("cache.redis.pool.exhausted")).getCount(), 1);
+        assertEquals(((Gauge<?>) registry.getMetrics().get("cache.redis.pool.active")).getValue(), 0L);
+    }
+
+    @Test
+    public void reservoirTest() {
+        CacheHistogramReservoir reservoir = new CacheHistogramReservoir();
+        Histogram histogram = new Histogram(reservoir);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.update(i * 1000L);
+        }
+
+        Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(snapshot.size(), 1000);
+        assertWithin(snapshot.getMedian(), 500000, 0.25);
+        assertWithin(snapshot.get99thPercentile(), 990000, 0.25);
+        assertWithin(snapshot.getMax(), 1000000, 0.25);
+        assertWithin(snapshot.getMin(), 1000, 0.25);
+
+        // Counters are cumulative
+        assertEquals(reservoir.size(), 1000);
+        assertEquals(histogram.getSnapshot().size(), 1000);
+    }
+
+    @Test
+    public void reservoirIntervalTest() {
+        CacheHistogramReservoir reservoir = new CacheHistogramReservoir();
+        CacheHistogramReservoir.Interval firstReporter = reservoir.newInterval();
+        CacheHistogramReservoir.Interval secondReporter = reservoir.newInterval();
+        for (int i = 0; i < 10; i++) {
+            reservoir.update(1000);
+        }
+
+        assertEquals(firstReporter.getSnapshot().size(), 10);
+
+        for (int i = 0; i < 5; i++) {
+            reservoir.update(100000);
+        }
+
+        // Each reporter gets values since its previous snapshot
+        Snapshot snapshot = firstReporter.getSnapshot();
+        assertEquals(snapshot.size(), 5);
+        assertWithin(snapshot.getMin(), 100000, 0.25);
+        assertEquals(secondReporter.getSnapshot().size(), 15);
+        assertEquals(firstReporter.getSnapshot().size(), 0);
+        assertEquals(reservoir.getSnapshot().size(), 15);
+    }
+
+    @Test
+    public void bucketsTest() {
+        for (long value : new long[] { 0, 1, 3, 4, 7, 8, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = CacheHistogramReservoir.bucketIndex(value);
+            assertTrue(CacheHistogramReservoir.bucketLowerBound(index) <= value);
+            assertWithin(CacheHistogramReservoir.bucketValue(index), value, 0.25);
+        }
+    }
+
+    private static void assertWithin(double actual, double expected, double error) {
+        assertTrue(Math.abs(actual - expected) <= expected * error, "Expected " + expected + " but was " + actual);
+    }
+
+}
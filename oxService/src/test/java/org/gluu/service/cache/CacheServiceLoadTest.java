@@ -0,0 +1,228 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.service.BaseCacheService;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Verifies single-flight load, early refresh and distributed lock in BaseCacheService.getWithPut
+ */
+public class CacheServiceLoadTest {
+
+    private final CacheLoadConfiguration loadConfiguration = new CacheLoadConfiguration();
+
+    private InMemoryCacheProvider cacheProvider;
+    private BaseCacheService cacheService;
+
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        loadConfiguration.setEarlyRefreshBeta(0);
+        loadConfiguration.setDistributedLockEnabled(false);
+        loadCount.set(0);
+
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheProvider = new InMemoryCacheProvider();
+        cacheProvider.configure(cacheConfiguration);
+        cacheProvider.init();
+        cacheProvider.create();
+
+        cacheService = new TestCacheService();
+
+        Field logField = BaseCacheService.class.getDeclaredField("log");
+        logField.setAccessible(true);
+        logField.set(cacheService, LoggerFactory.getLogger(BaseCacheService.class));
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        final int threadsCount = 16;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadsCount);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < threadsCount; i++) {
+                results.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        startLatch.await();
+                        return cacheService.getWithPut("key", () -> slowLoad("value", 300), 60);
+                    }
+                }));
+            }
+
+            startLatch.countDown();
+            for (Future<String> result : results) {
+                assertEquals(result.get(), "value");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(loadCount.get(), 1);
+    }
+
+    @Test
+    public void earlyRefreshTest() {
+        // Huge beta makes refresh certain on each hit
+        loadConfiguration.setEarlyRefreshBeta(1000000);
+
+        assertEquals(cacheService.getWithPut("key", () -> slowLoad("value1", 10), 60), "value1");
+        assertEquals(cacheService.getWithPut("key", () -> slowLoad("value2", 10), 60), "value2");
+        assertEquals(loadCount.get(), 2);
+        assertEquals(cacheProvider.get("key"), "value2");
+    }
+
+    @Test
+    public void earlyRefreshDisabledByDefaultTest() {
+        assertEquals(new CacheLoadConfiguration().getEarlyRefreshBeta(), 0.0d);
+    }
+
+    @Test
+    public void earlyRefreshDoesNotWaitTest() throws Exception {
+        loadConfiguration.setEarlyRefreshBeta(1000000);
+        assertEquals(cacheService.getWithPut("key", () -> slowLoad("value1", 10), 60), "value1");
+
+        // First hit refreshes value slowly
+        Thread refresher = new Thread(() -> cacheService.getWithPut("key", () -> slowLoad("value2", 1000), 60));
+        refresher.start();
+        while (loadCount.get() < 2) {
+            Thread.sleep(5);
+        }
+
+        // Second hit gets cached value without waiting for running refresh
+        long start = System.currentTimeMillis();
+        assertEquals(cacheService.getWithPut("key", () -> slowLoad("value3", 1000), 60), "value1");
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertEquals(loadCount.get(), 2);
+
+        refresher.join();
+        assertEquals(cacheProvider.get("key"), "value2");
+    }
+
+    @Test
+    public void distributedLockTest() throws InterruptedException {
+        loadConfiguration.setDistributedLockEnabled(true);
+
+        // Other node holds lock and puts value shortly
+        cacheProvider.put(10, "lock_key", "otherNode");
+        Thread otherNode = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            cacheProvider.put(60, "key", "otherNodeValue");
+        });
+        otherNode.start();
+
+        assertEquals(cacheService.getWithPut("key", () -> slowLoad("value", 10), 60), "otherNodeValue");
+        assertEquals(loadCount.get(), 0);
+
+        otherNode.join();
+    }
+
+    private String slowLoad(String value, long delay) {
+        loadCount.incrementAndGet();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        return value;
+    }
+
+    private class TestCacheService extends BaseCacheService {
+
+        @Override
+        protected CacheProvider getCacheProvider() {
+            return lockingCacheProvider;
+        }
+
+        @Override
+        protected CacheLoadConfiguration getLoadConfiguration() {
+            return loadConfiguration;
+        }
+    }
+
+    /*
+     * In-memory provider with lock emulation
+     */
+    private final CacheProvider<Object> lockingCacheProvider = new CacheProvider<Object>() {
+
+        @Override
+        public Object getDelegate() {
+            return cacheProvider;
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return cacheProvider.hasKey(key);
+        }
+
+        @Override
+        public Object get(String key) {
+            return cacheProvider.get(key);
+        }
+
+        @Override
+        public void put(int expirationInSeconds, String key, Object object) {
+            cacheProvider.put(expirationInSeconds, key, object);
+        }
+
+        @Override
+        public void remove(String key) {
+            cacheProvider.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            cacheProvider.clear();
+        }
+
+        @Override
+        public void cleanup(Date now) {
+            cacheProvider.cleanup(now);
+        }
+
+        @Override
+        public synchronized boolean tryLock(String key, String token, int expirationInSeconds) {
+            if (cacheProvider.hasKey(key)) {
+                return false;
+            }
+            cacheProvider.put(expirationInSeconds, key, token);
+            return true;
+        }
+
+        @Override
+        public synchronized void unlock(String key, String token) {
+            if (token.equals(cacheProvider.get(key))) {
+                cacheProvider.remove(key);
+            }
+        }
+
+        @Override
+        public CacheProviderType getProviderType() {
+            return CacheProviderType.IN_MEMORY;
+        }
+    };
+
+}
@@ -0,0 +1,145 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CacheSweeperTest {
+
+    private final Set<String> store = ConcurrentHashMap.newKeySet();
+
+    @BeforeMethod
+    public void beforeMethod() {
+        store.clear();
+        for (int i = 0; i < 1000; i++) {
+            store.add(NativePersistenceKeyCache.hashKey("key" + i));
+        }
+    }
+
+    @Test
+    public void partitionsTest() {
+        assertEquals(new CacheSweeper("test", 10, 1, 0).getPartitions().size(), 16);
+        assertEquals(new CacheSweeper("test", 256, 1, 0).getPartitions().size(), 256);
+        assertEquals(new CacheSweeper("test", 1000, 1, 0).getPartitions().get(1), "001");
+    }
+
+    @Test
+    public void sweepTest() {
+        CacheSweeper sweeper = new CacheSweeper("test", 16, 4, 0);
+
+        assertEquals(sweeper.sweep(10, this::remove), 1000);
+        assertTrue(store.isEmpty());
+        assertFalse(sweeper.hasCheckpoint());
+    }
+
+    @Test
+    public void failedPartitionTest() {
+        CacheSweeper sweeper = new CacheSweeper("test", 16, 2, 0);
+
+        // Partition "a" fails on first sweep
+        final AtomicInteger failures = new AtomicInteger(1);
+        long removedCount = sweeper.sweep(10, (prefix, count) -> {
+            if ("a".equals(prefix) && failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("Connection lost");
+            }
+            return remove(prefix, count);
+        });
+
+        assertEquals(removedCount + countByPrefix("a"), 1000);
+
+        // Sweep which wasn't cut short doesn't keep checkpoint, so next sweep starts with all partitions
+        assertFalse(sweeper.hasCheckpoint());
+
+        final Set<String> sweptPartitions = ConcurrentHashMap.newKeySet();
+        sweeper.sweep(10, (prefix, count) -> {
+            sweptPartitions.add(prefix);
+            return remove(prefix, count);
+        });
+
+        assertEquals(sweptPartitions.size(), 16);
+        assertTrue(store.isEmpty());
+        assertFalse(sweeper.hasCheckpoint());
+    }
+
+    @Test
+    public void removedCountLimitTest() {
+        // One partition at a time, so first partitions are completed before limit is reached
+        CacheSweeper sweeper = new CacheSweeper("test", 16, 1, 0);
+
+        assertEquals(sweeper.sweep(10, 100, this::remove), 100);
+        assertEquals(store.size(), 900);
+        assertTrue(sweeper.hasCheckpoint());
+
+        // Next sweeps continue from not completed partitions
+        final Set<String> sweptPartitions = ConcurrentHashMap.newKeySet();
+        long removedCount = sweeper.sweep(10, 100, (prefix, count) -> {
+            sweptPartitions.add(prefix);
+            return remove(prefix, count);
+        });
+        assertEquals(removedCount, 100);
+        assertFalse(sweptPartitions.contains("0"));
+
+        long totalRemovedCount = 200;
+        for (int i = 0; (i < 20) && !store.isEmpty(); i++) {
+            totalRemovedCount += sweeper.sweep(10, 100, this::remove);
+        }
+
+        assertEquals(totalRemovedCount, 1000);
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void restartAfterFullSweepTest() {
+        CacheSweeper sweeper = new CacheSweeper("test", 16, 2, 0);
+
+        assertEquals(sweeper.sweep(10, this::remove), 1000);
+        assertFalse(sweeper.hasCheckpoint());
+
+        // Entries expired after sweep in already swept partitions are removed by next sweep
+        store.add(NativePersistenceKeyCache.hashKey("key1"));
+        assertEquals(sweeper.sweep(10, this::remove), 1);
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void rateLimitTest() {
+        // One second of burst, then 500 deletes per second
+        CacheSweeper sweeper = new CacheSweeper("test", 16, 4, 500);
+
+        long start = System.currentTimeMillis();
+        assertEquals(sweeper.sweep(100, this::remove), 1000);
+        assertTrue(System.currentTimeMillis() - start >= 900);
+    }
+
+    private int remove(String prefix, int count) {
+        int removed = 0;
+        for (Iterator<String> it = store.iterator(); it.hasNext() && (removed < count);) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    private int countByPrefix(String prefix) {
+        int count = 0;
+        for (String key : store) {
+            if (key.startsWith(prefix)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+}
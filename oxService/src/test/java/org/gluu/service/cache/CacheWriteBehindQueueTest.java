@@ -0,0 +1,142 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CacheWriteBehindQueueTest {
+
+    private final Map<String, String> store = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger writesCount = new AtomicInteger();
+    private final AtomicBoolean failWrites = new AtomicBoolean();
+    private final Map<String, String> writerThreads = new ConcurrentHashMap<String, String>();
+
+    private CacheWriteBehindQueue<String> queue;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        store.clear();
+        writesCount.set(0);
+        failWrites.set(false);
+        writerThreads.clear();
+
+        queue = new CacheWriteBehindQueue<String>("test-cache-writer", 10, 60000, 100, this::write);
+        queue.start();
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        queue.stop();
+    }
+
+    @Test
+    public void coalescingTest() {
+        queue.put("key", "value1");
+        queue.put("key", "value2");
+        queue.put("key", "value3");
+
+        assertEquals(queue.size(), 1);
+        assertEquals(queue.get("key").getValue(), "value3"); // pending write is visible before flush
+        assertTrue(store.isEmpty());
+
+        queue.flush();
+        assertEquals(store.get("key"), "value3");
+        assertEquals(writesCount.get(), 1);
+        assertNull(queue.get("key"));
+    }
+
+    @Test
+    public void removeTest() {
+        store.put("key", "value");
+
+        queue.put("key", "newValue");
+        queue.remove("key");
+        assertTrue(queue.get("key").isRemove());
+
+        queue.flush();
+        assertNull(store.get("key"));
+    }
+
+    @Test
+    public void batchSizeTriggerTest() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            queue.put("key" + i, "value" + i);
+        }
+
+        for (int i = 0; (i < 100) && (store.size() < 10); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(store.size(), 10); // flushed without waiting for flush interval
+    }
+
+    @Test
+    public void stopTest() {
+        queue.put("key", "value");
+        queue.stop();
+
+        assertEquals(store.get("key"), "value");
+    }
+
+    @Test
+    public void failedWriteRetryTest() {
+        failWrites.set(true);
+        queue.put("key", "value");
+        queue.flush();
+
+        assertTrue(store.isEmpty());
+        assertEquals(queue.get("key").getValue(), "value"); // failed write is kept
+
+        failWrites.set(false);
+        queue.flush();
+        assertEquals(store.get("key"), "value");
+        assertNull(queue.get("key"));
+    }
+
+    @Test
+    public void maxSizeTest() {
+        queue.stop();
+        queue = new CacheWriteBehindQueue<String>("test-cache-writer", 10, 60000, 20, this::write);
+        queue.start();
+
+        for (int i = 0; i < 30; i++) {
+            queue.put("key" + i, "value" + i);
+        }
+        // Caller waited for flush thread instead of flushing
+        assertFalse(writerThreads.containsValue(Thread.currentThread().getName()));
+        assertTrue(queue.size() <= 20);
+
+        queue.flush();
+        assertEquals(store.size(), 30);
+    }
+
+    private void write(List<CacheWriteBehindQueue.PendingWrite<String>> writes) {
+        if (failWrites.get()) {
+            throw new IllegalStateException("Store is not available");
+        }
+
+        for (CacheWriteBehindQueue.PendingWrite<String> write : writes) {
+            writerThreads.put(write.getKey(), Thread.currentThread().getName());
+        }
+
+        for (CacheWriteBehindQueue.PendingWrite<String> write : writes) {
+            writesCount.incrementAndGet();
+            if (write.isRemove()) {
+                store.remove(write.getKey());
+            } else {
+                store.put(write.getKey(), write.getValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.testng.annotations.Test;
+
+public class InMemoryCacheSnapshotTest {
+
+    private InMemoryCacheProvider createCacheProvider(InMemoryCacheType type, Path snapshotFile) {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.getInMemoryConfiguration().setType(type);
+        cacheConfiguration.getInMemoryConfiguration().setOffHeapCapacity(1024 * 1024);
+        cacheConfiguration.getInMemoryConfiguration().setOffHeapSlabSize(64 * 1024);
+        if (snapshotFile != null) {
+            cacheConfiguration.getInMemoryConfiguration().setSnapshotFile(snapshotFile.toString());
+            cacheConfiguration.getInMemoryConfiguration().setSnapshotLoadInBackground(false);
+            cacheConfiguration.getInMemoryConfiguration().setSnapshotInterval(0);
+        }
+
+        InMemoryCacheProvider cacheProvider = new InMemoryCacheProvider();
+        cacheProvider.configure(cacheConfiguration);
+        cacheProvider.init();
+        cacheProvider.create();
+
+        return cacheProvider;
+    }
+
+    private InMemoryCacheSnapshot createSnapshot(Path file) {
+        return new InMemoryCacheSnapshot(file, new VersionedCacheSerializer(new JavaCacheSerializer(), 0));
+    }
+
+    @Test
+    public void writeLoadTest() throws IOException {
+        Path file = Files.createTempDirectory("cache-snapshot").resolve("local-cache.snapshot");
+        InMemoryCacheProvider cacheProvider = createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null);
+        for (int i = 0; i < 1000; i++) {
+            cacheProvider.put(60, "key" + i, "value" + i);
+        }
+        cacheProvider.put(60, "notSerializable", new Object());
+
+        InMemoryCacheSnapshot snapshot = createSnapshot(file);
+        assertEquals(snapshot.write(cacheProvider), 1000);
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+        InMemoryCacheProvider restoredCacheProvider = createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null);
+        restoredCacheProvider.put(60, "key1", "newValue");
+        assertEquals(snapshot.load(restoredCacheProvider), 999);
+
+        assertEquals(restoredCacheProvider.get("key999"), "value999");
+        assertEquals(restoredCacheProvider.get("key1"), "newValue");
+        assertNull(restoredCacheProvider.get("notSerializable"));
+    }
+
+    @Test
+    public void expiredEntriesSkippedTest() throws IOException, InterruptedException {
+        Path file = Files.createTempDirectory("cache-snapshot").resolve("local-cache.snapshot");
+        InMemoryCacheProvider cacheProvider = createCacheProvider(InMemoryCacheType.BOUNDED, null);
+        cacheProvider.put(1, "short", "value");
+        cacheProvider.put(60, "long", "value");
+
+        InMemoryCacheSnapshot snapshot = createSnapshot(file);
+        assertEquals(snapshot.write(cacheProvider), 2);
+
+        Thread.sleep(1100);
+        InMemoryCacheProvider restoredCacheProvider = createCacheProvider(InMemoryCacheType.BOUNDED, null);
+        assertEquals(snapshot.load(restoredCacheProvider), 1);
+        assertTrue(restoredCacheProvider.hasKey("long"));
+        assertFalse(restoredCacheProvider.hasKey("short"));
+    }
+
+    @Test
+    public void truncatedSnapshotTest() throws IOException {
+        Path file = Files.createTempDirectory("cache-snapshot").resolve("local-cache.snapshot");
+        InMemoryCacheProvider cacheProvider = createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null);
+        for (int i = 0; i < 100; i++) {
+            cacheProvider.put(60, "key" + i, "value" + i);
+        }
+
+        InMemoryCacheSnapshot snapshot = createSnapshot(file);
+        snapshot.write(cacheProvider);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() / 2);
+        }
+
+        int loaded = snapshot.load(createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null));
+        assertTrue((loaded > 0) && (loaded < 100), "loaded: " + loaded);
+    }
+
+    @Test
+    public void warmRestartTest() throws IOException {
+        for (InMemoryCacheType type : InMemoryCacheType.values()) {
+            File dir = Files.createTempDirectory("cache-snapshot").toFile();
+            Path file = new File(dir, "local-cache.snapshot").toPath();
+
+            InMemoryCacheProvider cacheProvider = createCacheProvider(type, file);
+            cacheProvider.put(60, "key", "value");
+            cacheProvider.destroy();
+            assertTrue(Files.exists(file), "type: " + type);
+
+            InMemoryCacheProvider restartedCacheProvider = createCacheProvider(type, file);
+            assertEquals(restartedCacheProvider.get("key"), "value", "type: " + type);
+            restartedCacheProvider.destroy();
+        }
+    }
+
+    @Test
+    public void permissionsTest() throws IOException {
+        Path file = Files.createTempDirectory("cache-snapshot").resolve("local-cache.snapshot");
+        InMemoryCacheProvider cacheProvider = createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null);
+        cacheProvider.put(60, "key", "value");
+
+        InMemoryCacheSnapshot snapshot = createSnapshot(file);
+        snapshot.write(cacheProvider);
+        assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(file)), "rw-------");
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+        assertEquals(snapshot.load(createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null)), 0); // writable by others
+
+        snapshot.write(cacheProvider);
+        assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(file)), "rw-------");
+        assertEquals(snapshot.load(createCacheProvider(InMemoryCacheType.EXPIRING_MAP, null)), 1);
+    }
+
+}
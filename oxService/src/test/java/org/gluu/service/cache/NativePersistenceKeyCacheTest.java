@@ -0,0 +1,35 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.testng.annotations.Test;
+
+public class NativePersistenceKeyCacheTest {
+
+    @Test
+    public void hashKeyTest() {
+        assertEquals(NativePersistenceKeyCache.hashKey("abc"), "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+
+        String key = "session_\u00e9\u4e2d_" + 12345;
+        assertEquals(NativePersistenceKeyCache.hashKey(key), DigestUtils.sha256Hex(key));
+    }
+
+    @Test
+    public void memoTest() {
+        NativePersistenceKeyCache keyCache = new NativePersistenceKeyCache("ou=cache,o=gluu", 16);
+
+        NativePersistenceKeyCache.HashedKey hashedKey = keyCache.get("abc");
+        assertEquals(hashedKey.getDn(), "uuid=ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad,ou=cache,o=gluu");
+        assertSame(keyCache.get("abc"), hashedKey);
+
+        // Evicted key is recomputed with same value
+        for (int i = 0; i < 1000; i++) {
+            keyCache.get("key" + i);
+        }
+        NativePersistenceKeyCache.HashedKey recomputed = keyCache.get("abc");
+        assertEquals(recomputed.getDn(), hashedKey.getDn());
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.testng.annotations.Test;
+
+public class OffHeapCacheTest {
+
+    private static final int SLAB_SIZE = 64 * 1024;
+
+    private OffHeapCache createCache(long capacity) throws IOException {
+        return new OffHeapCache(capacity, SLAB_SIZE, null, new VersionedCacheSerializer(new JavaCacheSerializer(), 0));
+    }
+
+    @Test
+    public void putGetRemoveTest() throws IOException {
+        OffHeapCache cache = createCache(16 * SLAB_SIZE);
+
+        HashMap<String, String> session = new HashMap<String, String>();
+        session.put("id", "sessionId");
+        session.put("dn", "oxAuthSessionId=sessionId,ou=session,o=gluu");
+        cache.put("session", session, 60000);
+        cache.put("string", "value", 60000);
+
+        assertEquals(cache.get("session"), session);
+        assertEquals(cache.get("string"), "value");
+        assertTrue(cache.containsKey("string"));
+        assertEquals(cache.size(), 2);
+
+        cache.put("string", "value2", 60000);
+        assertEquals(cache.get("string"), "value2");
+        assertEquals(cache.size(), 2);
+
+        cache.remove("string");
+        assertNull(cache.get("string"));
+        assertFalse(cache.containsKey("string"));
+        assertEquals(cache.size(), 1);
+
+        cache.clear();
+        assertNull(cache.get("session"));
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.weightedSize(), 0);
+    }
+
+    @Test
+    public void boundedByCapacityTest() throws IOException {
+        OffHeapCache cache = createCache(8 * SLAB_SIZE);
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'a');
+        String value = new String(chars);
+
+        for (int i = 0; i < 20000; i++) {
+            cache.put("key" + i, value, 60000);
+        }
+
+        assertTrue(cache.getAllocatedBytes() <= 8 * SLAB_SIZE);
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(cache.get("key19999"), value);
+        assertEquals(cache.size() + cache.getEvictionCount(), 20000);
+    }
+
+    @Test
+    public void expiredEntriesReusedTest() throws IOException, InterruptedException {
+        OffHeapCache cache = createCache(8 * SLAB_SIZE);
+        cache.put("short", "value", 100);
+        cache.put("long", "value", 60000);
+
+        Thread.sleep(200);
+        assertNull(cache.get("short"));
+        assertFalse(cache.containsKey("short"));
+        assertEquals(cache.get("long"), "value");
+
+        cache.cleanUp();
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getExpirationCount(), 1);
+    }
+
+    @Test
+    public void sizeClassesTest() throws IOException {
+        OffHeapCache cache = createCache(2 * SLAB_SIZE);
+
+        // Big values get second slab, third big value evicts first one
+        for (int i = 0; i < 100; i++) {
+            cache.put("small" + i, "value" + i, 60000);
+        }
+        byte[] big = new byte[SLAB_SIZE / 2];
+        for (int i = 0; i < 3; i++) {
+            cache.put("big" + i, big, 60000);
+        }
+        assertEquals(((byte[]) cache.get("big2")).length, big.length);
+
+        // Value bigger than slab isn't cached
+        cache.put("huge", new byte[SLAB_SIZE], 60000);
+        assertNull(cache.get("huge"));
+        assertEquals(cache.getRejectionCount(), 1);
+    }
+
+    @Test
+    public void eachSizeClassKeepsSlabTest() throws IOException {
+        OffHeapCache cache = createCache(16 * SLAB_SIZE);
+
+        // Values of more sizes than there are slabs
+        for (int length = 16; length < SLAB_SIZE / 2; length = length * 4 / 3) {
+            cache.put("value" + length, new byte[length], 60000);
+        }
+
+        for (int length = 16; length < SLAB_SIZE / 2; length = length * 4 / 3) {
+            assertEquals(((byte[]) cache.get("value" + length)).length, length);
+        }
+        assertEquals(cache.getEvictionCount(), 0);
+        assertTrue(cache.getAllocatedBytes() <= 16 * SLAB_SIZE);
+    }
+
+    @Test
+    public void mappedFileTest() throws IOException {
+        File file = File.createTempFile("off-heap-cache", ".slabs");
+        file.deleteOnExit();
+
+        OffHeapCache cache = new OffHeapCache(4 * SLAB_SIZE, SLAB_SIZE, file.getAbsolutePath(),
+                new VersionedCacheSerializer(new JavaCacheSerializer(), 0));
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, "value" + i, 60000);
+        }
+        assertEquals(cache.get("key999"), "value999");
+        assertTrue(file.length() > 0);
+
+        cache.close();
+    }
+
+    @Test
+    public void offHeapProviderTest() {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.getInMemoryConfiguration().setType(InMemoryCacheType.OFF_HEAP);
+        cacheConfiguration.getInMemoryConfiguration().setOffHeapCapacity(16 * SLAB_SIZE);
+        cacheConfiguration.getInMemoryConfiguration().setOffHeapSlabSize(SLAB_SIZE);
+
+        InMemoryCacheProvider cacheProvider = new InMemoryCacheProvider();
+        cacheProvider.configure(cacheConfiguration);
+        cacheProvider.init();
+        cacheProvider.create();
+
+        cacheProvider.put(60, "key", "value");
+        assertEquals(cacheProvider.get("key"), "value");
+        assertTrue(cacheProvider.hasKey("key"));
+        // Delegate isn't used by store, but it's still available
+        assertNotNull(cacheProvider.getDelegate());
+        assertTrue(cacheProvider.getDelegate().isEmpty());
+
+        cacheProvider.remove("key");
+        assertNull(cacheProvider.get("key"));
+
+        cacheProvider.destroy();
+    }
+
+}
@@ -0,0 +1,190 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Verifies redis client tracking with in-JVM stand-in of redis node which sends invalidation messages on change
+ */
+public class RedisClientTrackingTest {
+
+    private static final Object FLUSH = new Object();
+    private static final Object FAILURE = new Object();
+    private static final Object UNSUBSCRIBE = new Object();
+
+    private final Map<String, Object> server = new ConcurrentHashMap<String, Object>();
+
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    private BlockingQueue<Object> messages;
+
+    private RedisClientTracking tracking;
+
+    @BeforeMethod
+    public void beforeMethod() throws InterruptedException {
+        server.clear();
+        loadCount.set(0);
+        messages = new LinkedBlockingQueue<Object>();
+
+        RedisConfiguration redisConfiguration = new RedisConfiguration();
+        redisConfiguration.setClientTrackingEnabled(true);
+        redisConfiguration.setClientTrackingPrefixes("session_, token_");
+
+        tracking = new RedisClientTracking(redisConfiguration, () -> Collections.singletonList("node1"), this::subscribe);
+        tracking.start();
+        waitFor(tracking::isActive);
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        tracking.stop();
+    }
+
+    @Test
+    public void localCopyTest() throws InterruptedException {
+        serverPut("session_1", "value1");
+
+        assertEquals(get("session_1"), "value1");
+        assertEquals(get("session_1"), "value1");
+        assertEquals(loadCount.get(), 1);
+        assertEquals(tracking.getHitCount(), 1);
+        assertEquals(tracking.getSize(), 1);
+    }
+
+    @Test
+    public void remoteChangeTest() throws InterruptedException {
+        serverPut("session_2", "value1");
+        assertEquals(get("session_2"), "value1");
+
+        serverPut("session_2", "value2");
+
+        assertEquals(get("session_2"), "value2");
+        assertEquals(loadCount.get(), 2);
+    }
+
+    @Test
+    public void flushTest() throws InterruptedException {
+        serverPut("token_1", "value1");
+        assertEquals(get("token_1"), "value1");
+
+        server.clear();
+        messages.add(FLUSH);
+        waitFor(() -> tracking.getFlushCount() == 1);
+
+        assertEquals(get("token_1"), null);
+        assertEquals(tracking.getSize(), 0);
+    }
+
+    @Test
+    public void untrackedKeyTest() throws InterruptedException {
+        serverPut("other_1", "value1");
+
+        assertEquals(get("other_1"), "value1");
+        assertEquals(get("other_1"), "value1");
+        assertEquals(loadCount.get(), 2);
+        assertEquals(tracking.getSize(), 0);
+    }
+
+    @Test
+    public void invalidationDuringLoadTest() throws InterruptedException {
+        serverPut("session_3", "value1");
+
+        Object value = tracking.get("session_3", key -> {
+            Object loaded = server.get(key);
+            // Key was changed by other client while value was in flight
+            tracking.invalidate(key);
+            return loaded;
+        });
+        assertEquals(value, "value1");
+        assertEquals(tracking.getSize(), 0);
+    }
+
+    @Test
+    public void subscriptionLossTest() throws InterruptedException {
+        serverPut("session_4", "value1");
+        assertEquals(get("session_4"), "value1");
+
+        messages.add(FAILURE);
+        waitFor(() -> tracking.getResubscriptionCount() == 1);
+
+        // Local copies are dropped, messages might be lost
+        assertEquals(tracking.getSize(), 0);
+
+        waitFor(tracking::isActive);
+        assertEquals(get("session_4"), "value1");
+        assertEquals(get("session_4"), "value1");
+        assertEquals(loadCount.get(), 2);
+    }
+
+    @Test
+    public void stopTest() throws InterruptedException {
+        serverPut("session_5", "value1");
+        assertEquals(get("session_5"), "value1");
+
+        tracking.stop();
+        assertFalse(tracking.isActive());
+        assertEquals(tracking.getSize(), 0);
+
+        assertEquals(get("session_5"), "value1");
+        assertEquals(loadCount.get(), 2);
+    }
+
+    private Object get(String key) {
+        return tracking.get(key, this::load);
+    }
+
+    private Object load(String key) {
+        loadCount.incrementAndGet();
+        return server.get(key);
+    }
+
+    /*
+     * Change value on stand-in node and wait for invalidation message delivery
+     */
+    private void serverPut(String key, Object value) throws InterruptedException {
+        long invalidationCount = tracking.getInvalidationCount();
+
+        server.put(key, value);
+        messages.add(Collections.singletonList(key.getBytes(StandardCharsets.UTF_8)));
+
+        waitFor(() -> tracking.getInvalidationCount() > invalidationCount);
+    }
+
+    private void subscribe(String node, RedisClientTracking tracking) throws InterruptedException {
+        BlockingQueue<Object> nodeMessages = messages;
+        tracking.onSubscribed(node, () -> nodeMessages.add(UNSUBSCRIBE));
+
+        while (true) {
+            Object message = nodeMessages.take();
+            if (message == UNSUBSCRIBE) {
+                return;
+            } else if (message == FAILURE) {
+                throw new IllegalStateException("Connection reset");
+            }
+
+            tracking.onInvalidate(message == FLUSH ? null : message);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; (i < 500) && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+}
@@ -7,9 +7,11 @@ import org.gluu.service.cache.RedisProviderFactory;
 import org.gluu.service.cache.RedisShardedProvider;
 import org.gluu.service.cache.RedisStandaloneProvider;
 import org.python.google.common.base.Stopwatch;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import redis.clients.jedis.JedisPoolConfig;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -47,6 +49,46 @@ public class RedisProviderTest {
         RedisProviderFactory.destroySilently(shardedProvider);
     }
 
+    @Test
+    public void poolConfigurationTest() {
+        RedisConfiguration config = new RedisConfiguration();
+        config.setMinIdleConnections(5);
+        config.setMaxWaitMillis(200);
+        config.setTestOnBorrow(true);
+        config.setTimeBetweenEvictionRunsMillis(10000L);
+        config.setJmxEnabled(false);
+
+        JedisPoolConfig poolConfig = new RedisStandaloneProvider(config).createPoolConfig();
+        assertEquals(poolConfig.getMinIdle(), 5);
+        assertEquals(poolConfig.getMaxWaitMillis(), 200);
+        assertEquals(poolConfig.getTestOnBorrow(), true);
+        assertEquals(poolConfig.getTimeBetweenEvictionRunsMillis(), 10000);
+        assertEquals(poolConfig.getJmxEnabled(), false);
+    }
+
+    @Test
+    public void defaultPoolConfigurationTest() {
+        RedisConfiguration config = new RedisConfiguration();
+
+        // Evictor settings and JMX name keep defaults of pool config
+        JedisPoolConfig poolConfig = new RedisStandaloneProvider(config).createPoolConfig();
+        JedisPoolConfig defaultPoolConfig = new JedisPoolConfig();
+        assertEquals(poolConfig.getTestWhileIdle(), defaultPoolConfig.getTestWhileIdle());
+        assertEquals(poolConfig.getTimeBetweenEvictionRunsMillis(), defaultPoolConfig.getTimeBetweenEvictionRunsMillis());
+        assertEquals(poolConfig.getMinEvictableIdleTimeMillis(), defaultPoolConfig.getMinEvictableIdleTimeMillis());
+        assertEquals(poolConfig.getNumTestsPerEvictionRun(), defaultPoolConfig.getNumTestsPerEvictionRun());
+        assertEquals(poolConfig.getJmxNamePrefix(), defaultPoolConfig.getJmxNamePrefix());
+
+        GenericObjectPoolConfig<Object> shardedPoolConfig = new GenericObjectPoolConfig<Object>();
+        new RedisShardedProvider(config).configurePool(shardedPoolConfig);
+        GenericObjectPoolConfig<Object> defaultShardedPoolConfig = new GenericObjectPoolConfig<Object>();
+        assertEquals(shardedPoolConfig.getTestWhileIdle(), defaultShardedPoolConfig.getTestWhileIdle());
+        assertEquals(shardedPoolConfig.getTimeBetweenEvictionRunsMillis(), defaultShardedPoolConfig.getTimeBetweenEvictionRunsMillis());
+        assertEquals(shardedPoolConfig.getMinEvictableIdleTimeMillis(), defaultShardedPoolConfig.getMinEvictableIdleTimeMillis());
+        assertEquals(shardedPoolConfig.getNumTestsPerEvictionRun(), defaultShardedPoolConfig.getNumTestsPerEvictionRun());
+        assertEquals(shardedPoolConfig.getMinIdle(), 2);
+    }
+
     @Test(enabled = false)
     public void standaloneSimpleTest() throws InterruptedException {
         standaloneProvider.create();
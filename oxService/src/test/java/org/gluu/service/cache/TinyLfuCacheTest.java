@@ -0,0 +1,142 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class TinyLfuCacheTest {
+
+    @Test
+    public void boundedByEntriesTest() {
+        TinyLfuCache cache = new TinyLfuCache(1000, 0);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("key" + i, "value" + i, 60000);
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.size() <= 1000, "size: " + cache.size());
+        assertEquals(cache.getEvictionCount(), 10000 - cache.size());
+        assertEquals(cache.weightedSize(), cache.size());
+    }
+
+    @Test
+    public void boundedByWeightTest() {
+        TinyLfuCache cache = new TinyLfuCache(0, 64 * 1024);
+        for (int i = 0; i < 2000; i++) {
+            cache.put("key" + i, "value" + i, 60000);
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.weightedSize() <= 64 * 1024, "weightedSize: " + cache.weightedSize());
+        assertTrue(cache.getEvictionWeight() > 0);
+    }
+
+    @Test
+    public void frequentEntriesSurviveScanTest() {
+        TinyLfuCache cache = new TinyLfuCache(1000, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hot" + i, "value" + i, 60000);
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.get("hot" + i);
+            }
+            cache.cleanUp();
+        }
+
+        // One-time keys should not push out frequently used entries
+        for (int i = 0; i < 20000; i++) {
+            cache.put("scan" + i, "value" + i, 60000);
+        }
+
+        int hotCount = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.containsKey("hot" + i)) {
+                hotCount++;
+            }
+        }
+        assertTrue(hotCount >= 90, "hot entries left: " + hotCount);
+    }
+
+    @Test
+    public void variableExpirationTest() throws InterruptedException {
+        TinyLfuCache cache = new TinyLfuCache(1000, 0);
+        cache.put("short", "value", 100);
+        cache.put("long", "value", 60000);
+        assertEquals(cache.get("short"), "value");
+
+        Thread.sleep(1200);
+        assertNull(cache.get("short"));
+        assertEquals(cache.get("long"), "value");
+
+        cache.cleanUp();
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getExpirationCount(), 1);
+    }
+
+    @Test
+    public void updateResetsExpirationTest() throws InterruptedException {
+        TinyLfuCache cache = new TinyLfuCache(1000, 0);
+        cache.put("key", "value1", 300);
+        cache.put("key", "value2", 60000);
+
+        Thread.sleep(1200);
+        cache.cleanUp();
+        assertEquals(cache.get("key"), "value2");
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.weightedSize(), 1);
+
+        cache.put("key", "value3", 0);
+        assertFalse(cache.containsKey("key"));
+        assertEquals(cache.weightedSize(), 0);
+    }
+
+    @Test
+    public void frequencySketchTest() {
+        TinyLfuCache.FrequencySketch sketch = new TinyLfuCache.FrequencySketch(1024);
+        long hash = TinyLfuCache.hash("key");
+        assertEquals(sketch.frequency(hash), 0);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(hash);
+        }
+        assertEquals(sketch.frequency(hash), 5);
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(hash);
+        }
+        assertEquals(sketch.frequency(hash), 15);
+    }
+
+    @Test
+    public void boundedProviderTest() {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.getInMemoryConfiguration().setType(InMemoryCacheType.BOUNDED);
+        cacheConfiguration.getInMemoryConfiguration().setMaxEntries(100);
+
+        InMemoryCacheProvider cacheProvider = new InMemoryCacheProvider();
+        cacheProvider.configure(cacheConfiguration);
+        cacheProvider.init();
+        cacheProvider.create();
+
+        for (int i = 0; i < 1000; i++) {
+            cacheProvider.put(60, "key" + i, "value" + i);
+        }
+        assertEquals(cacheProvider.get("key999"), "value999");
+        assertTrue(cacheProvider.hasKey("key999"));
+        assertTrue(cacheProvider.getStore().size() <= 100);
+        // Delegate isn't used by store, but it's still available
+        assertNotNull(cacheProvider.getDelegate());
+        assertTrue(cacheProvider.getDelegate().isEmpty());
+
+        cacheProvider.remove("key999");
+        assertNull(cacheProvider.get("key999"));
+
+        cacheProvider.destroy();
+        assertEquals(cacheProvider.getStore().size(), 0);
+    }
+
+}
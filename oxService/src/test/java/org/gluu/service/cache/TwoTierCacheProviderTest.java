@@ -0,0 +1,185 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TwoTierCacheProviderTest {
+
+    private InMemoryCacheProvider remoteCache;
+    private TwoTierCacheProvider cache;
+
+    // Runs after remote cache read, before value is returned to L1
+    private Runnable remoteReadHook;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.getTwoTierConfiguration().setRemoteCacheProviderType(CacheProviderType.IN_MEMORY);
+        cacheConfiguration.getTwoTierConfiguration().setLocalMaxEntries(32);
+        cacheConfiguration.getTwoTierConfiguration().setLocalMaxAge(2);
+
+        remoteReadHook = null;
+        remoteCache = new InMemoryCacheProvider() {
+            @Override
+            public Object get(String key) {
+                Object value = super.get(key);
+                runRemoteReadHook();
+
+                return value;
+            }
+
+            @Override
+            public Map<String, Object> getAll(Collection<String> keys) {
+                Map<String, Object> values = super.getAll(keys);
+                runRemoteReadHook();
+
+                return values;
+            }
+        };
+        remoteCache.configure(cacheConfiguration);
+        remoteCache.init();
+        remoteCache.create();
+
+        cache = new TwoTierCacheProvider();
+        cache.configure(cacheConfiguration, remoteCache);
+        cache.init();
+        cache.create();
+    }
+
+    @Test
+    public void readThroughTest() {
+        remoteCache.put(60, "key", "value");
+
+        assertEquals(cache.get("key"), "value"); // miss in L1, loaded from L2
+        assertEquals(cache.get("key"), "value"); // hit in L1
+
+        assertEquals(cache.getNearCache().getMissCount(), 1);
+        assertEquals(cache.getNearCache().getHitCount(), 1);
+    }
+
+    @Test
+    public void removeTest() {
+        cache.put(60, "key", "value");
+        assertEquals(cache.get("key"), "value");
+
+        cache.remove("key");
+        assertNull(cache.get("key"));
+        assertNull(remoteCache.get("key"));
+    }
+
+    @Test
+    public void localMaxAgeTest() throws InterruptedException {
+        cache.put(60, "key", "value");
+        assertEquals(cache.get("key"), "value");
+
+        // Change value in L2 behind L1
+        remoteCache.put(60, "key", "newValue");
+        assertEquals(cache.get("key"), "value");
+
+        Thread.sleep(2100);
+        assertEquals(cache.get("key"), "newValue"); // L1 entry expired after local max age
+    }
+
+    @Test
+    public void bulkTest() {
+        Map<String, Object> entries = new HashMap<String, Object>();
+        entries.put("key1", "value1");
+        entries.put("key2", "value2");
+        cache.putAll(60, entries);
+        remoteCache.put(60, "key3", "value3");
+
+        Map<String, Object> values = cache.getAll(Arrays.asList("key1", "key2", "key3", "key4"));
+        assertEquals(values.size(), 3);
+        assertEquals(values.get("key1"), "value1");
+        assertEquals(values.get("key3"), "value3"); // loaded from L2
+        assertEquals(cache.getNearCache().getHitCount(), 2);
+
+        cache.removeAll(Arrays.asList("key1", "key3"));
+        assertNull(remoteCache.get("key1"));
+        assertNull(remoteCache.get("key3"));
+
+        values = cache.getAll(Arrays.asList("key1", "key2", "key3"));
+        assertEquals(values.size(), 1);
+        assertEquals(values.get("key2"), "value2");
+    }
+
+    @Test
+    public void asyncTest() throws Exception {
+        cache.putAsync(60, "key", "value").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertEquals(remoteCache.get("key"), "value");
+
+        remoteCache.put(60, "remoteKey", "remoteValue");
+        assertEquals(cache.getAsync("remoteKey").toCompletableFuture().get(1, TimeUnit.SECONDS), "remoteValue");
+        assertEquals(cache.getNearCache().get("remoteKey"), "remoteValue");
+
+        cache.removeAsync("key").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertNull(remoteCache.get("key"));
+    }
+
+    @Test
+    public void evictionTest() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put(60, "key" + i, i);
+        }
+
+        assertTrue(cache.getNearCache().size() <= 32);
+        assertTrue(cache.getNearCache().getEvictionCount() >= 1000 - 32);
+        assertEquals(cache.get("key0"), 0); // value still available in L2
+    }
+
+    @Test
+    public void staleReadTest() {
+        remoteCache.put(60, "key", "value");
+
+        // Key is removed while value is read from L2
+        remoteReadHook = () -> cache.remove("key");
+        assertEquals(cache.get("key"), "value");
+
+        remoteReadHook = null;
+        assertNull(cache.getNearCache().get("key")); // stale value isn't kept in L1
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void staleBulkReadTest() {
+        remoteCache.put(60, "key1", "value1");
+        remoteCache.put(60, "key2", "value2");
+
+        // Value is replaced while values are read from L2
+        remoteReadHook = () -> cache.put(60, "key1", "newValue1");
+        cache.getAll(Arrays.asList("key1", "key2"));
+
+        remoteReadHook = null;
+        assertEquals(cache.get("key1"), "newValue1");
+        assertEquals(cache.getNearCache().get("key2"), "value2");
+    }
+
+    @Test
+    public void staleReadAfterClearTest() {
+        remoteCache.put(60, "key", "value");
+
+        remoteReadHook = () -> cache.clear();
+        assertEquals(cache.get("key"), "value");
+
+        assertNull(cache.getNearCache().get("key"));
+    }
+
+    private void runRemoteReadHook() {
+        Runnable hook = remoteReadHook;
+        if (hook != null) {
+            remoteReadHook = null;
+            hook.run();
+        }
+    }
+
+}
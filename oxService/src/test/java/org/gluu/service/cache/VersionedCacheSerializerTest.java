@@ -0,0 +1,48 @@
+package org.gluu.service.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.testng.annotations.Test;
+
+public class VersionedCacheSerializerTest {
+
+    @Test
+    public void legacyFormatTest() {
+        VersionedCacheSerializer serializer = VersionedCacheSerializer.create(new CacheSerializerConfiguration());
+        assertTrue(serializer.isLegacyFormat());
+
+        ArrayList<String> value = new ArrayList<String>(Arrays.asList("a", "b", "c"));
+
+        // Default configuration writes the same bytes as previous versions
+        byte[] data = serializer.serialize(value);
+        assertTrue(Arrays.equals(data, SerializationUtils.serialize(value)));
+
+        // Data written by previous versions is readable
+        assertEquals(serializer.deserialize(SerializationUtils.serialize(value)), value);
+    }
+
+    @Test
+    public void emptyDataTest() {
+        VersionedCacheSerializer serializer = VersionedCacheSerializer.create(new CacheSerializerConfiguration());
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    @Test
+    public void unknownSerializerTest() {
+        VersionedCacheSerializer serializer = VersionedCacheSerializer.create(new CacheSerializerConfiguration());
+        try {
+            serializer.deserialize(new byte[] { (byte) 0xCF, 1, 2, 3 });
+            fail("Data with unknown serializer id should be rejected");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+
+}
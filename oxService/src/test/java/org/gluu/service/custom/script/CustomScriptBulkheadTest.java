@@ -0,0 +1,102 @@
+package org.gluu.service.custom.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CustomScriptBulkheadTest {
+
+    private ExecutorService executorService;
+
+    @BeforeClass
+    public void beforeClass() {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterClass
+    public void afterClass() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void releaseTest() {
+        CustomScriptBulkhead bulkhead = new CustomScriptBulkhead(2, 0, 0);
+
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getActiveCount(), 2);
+        assertEquals(bulkhead.getSaturation(), 1.0);
+
+        bulkhead.release();
+        assertEquals(bulkhead.getActiveCount(), 1);
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getAcceptedCount(), 3);
+    }
+
+    @Test
+    public void rejectionTest() {
+        CustomScriptBulkhead bulkhead = new CustomScriptBulkhead(1, 0, 1000);
+
+        assertTrue(bulkhead.tryAcquire());
+
+        // There is no queue, so invocation is rejected without wait
+        long start = System.nanoTime();
+        assertFalse(bulkhead.tryAcquire());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        assertEquals(bulkhead.getRejectedCount(), 1);
+        assertEquals(bulkhead.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void queueTest() throws Exception {
+        CustomScriptBulkhead bulkhead = new CustomScriptBulkhead(1, 1, 5000);
+        assertTrue(bulkhead.tryAcquire());
+
+        Future<Boolean> queued = executorService.submit(bulkhead::tryAcquire);
+        waitForQueueDepth(bulkhead, 1);
+
+        // Queue is full
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getRejectedCount(), 1);
+
+        // Queued invocation gets released permit
+        bulkhead.release();
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(bulkhead.getQueueDepth(), 0);
+        assertEquals(bulkhead.getActiveCount(), 1);
+        assertEquals(bulkhead.getQueuedCount(), 1);
+        assertEquals(bulkhead.getAcceptedCount(), 2);
+    }
+
+    @Test
+    public void queueTimeoutTest() throws Exception {
+        CustomScriptBulkhead bulkhead = new CustomScriptBulkhead(1, 1, 50);
+        assertTrue(bulkhead.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(bulkhead.tryAcquire());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+
+        assertEquals(bulkhead.getQueueDepth(), 0);
+        assertEquals(bulkhead.getQueuedCount(), 1);
+        assertEquals(bulkhead.getRejectedCount(), 1);
+        assertEquals(bulkhead.getActiveCount(), 1);
+    }
+
+    private void waitForQueueDepth(CustomScriptBulkhead bulkhead, int queueDepth) throws InterruptedException {
+        for (int i = 0; (i < 100) && (bulkhead.getQueueDepth() < queueDepth); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(bulkhead.getQueueDepth(), queueDepth);
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.gluu.service.custom.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.gluu.service.custom.script.CustomScriptCircuitBreaker.State;
+import org.testng.annotations.Test;
+
+public class CustomScriptCircuitBreakerTest {
+
+    private static final long OPEN_PERIOD = 50;
+
+    @Test
+    public void openAfterThresholdTest() {
+        CustomScriptCircuitBreaker circuitBreaker = new CustomScriptCircuitBreaker(3, OPEN_PERIOD);
+
+        assertFalse(circuitBreaker.onFailure());
+        assertFalse(circuitBreaker.onFailure());
+        circuitBreaker.onSuccess(); // success resets consecutive failures
+        assertFalse(circuitBreaker.onFailure());
+        assertFalse(circuitBreaker.onFailure());
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        assertTrue(circuitBreaker.allowInvocation());
+
+        assertTrue(circuitBreaker.onFailure());
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertFalse(circuitBreaker.allowInvocation());
+    }
+
+    @Test
+    public void halfOpenTrialTest() throws InterruptedException {
+        CustomScriptCircuitBreaker circuitBreaker = openCircuitBreaker();
+
+        Thread.sleep(OPEN_PERIOD + 10);
+        assertTrue(circuitBreaker.allowInvocation());
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        assertFalse(circuitBreaker.allowInvocation()); // only one trial invocation
+
+        // Failed trial opens breaker for next period
+        assertTrue(circuitBreaker.onFailure());
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertFalse(circuitBreaker.allowInvocation());
+    }
+
+    @Test
+    public void closeAfterTrialTest() throws InterruptedException {
+        CustomScriptCircuitBreaker circuitBreaker = openCircuitBreaker();
+
+        Thread.sleep(OPEN_PERIOD + 10);
+        assertTrue(circuitBreaker.allowInvocation());
+        circuitBreaker.onSuccess();
+
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        assertTrue(circuitBreaker.allowInvocation());
+        assertFalse(circuitBreaker.onFailure()); // failures are counted from zero again
+    }
+
+    private CustomScriptCircuitBreaker openCircuitBreaker() {
+        CustomScriptCircuitBreaker circuitBreaker = new CustomScriptCircuitBreaker(2, OPEN_PERIOD);
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+
+        return circuitBreaker;
+    }
+
+}
@@ -0,0 +1,199 @@
+package org.gluu.service.custom.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.model.custom.script.CustomScriptType;
+import org.gluu.model.custom.script.model.CustomScript;
+import org.gluu.model.custom.script.type.BaseExternalType;
+import org.gluu.model.custom.script.type.postauthn.PostAuthnType;
+import org.gluu.model.custom.script.type.scope.DynamicScopeType;
+import org.gluu.model.custom.script.type.user.CacheRefreshType;
+import org.gluu.service.custom.script.CustomScriptCircuitBreaker.State;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CustomScriptInvocationHandlerTest {
+
+    private static final int FAILURES = CustomScriptInvocationHandler.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+
+    private final AtomicInteger scriptCalls = new AtomicInteger();
+
+    private CustomScriptMetrics metrics;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        scriptCalls.set(0);
+        metrics = new CustomScriptMetrics();
+    }
+
+    @Test
+    public void exceptionOpensCircuitBreakerTest() {
+        CustomScript customScript = createCustomScript("postAuthn", CustomScriptType.POST_AUTHN, 1000);
+        PostAuthnType script = (PostAuthnType) CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, true),
+                metrics);
+
+        for (int i = 0; i < FAILURES; i++) {
+            try {
+                script.forceReAuthentication(null);
+                fail("Script exception expected");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+        assertEquals(metrics.getCircuitBreakerState("postAuthn"), State.OPEN);
+
+        // Default implementation of post authentication script would skip re-authentication
+        try {
+            script.forceReAuthentication(null);
+            fail("Rejection expected");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+        assertEquals(scriptCalls.get(), FAILURES);
+    }
+
+    @Test
+    public void timeoutFallbackTest() {
+        CustomScript customScript = createCustomScript("dynamicScope", CustomScriptType.DYNAMIC_SCOPE, 5);
+        DynamicScopeType script = (DynamicScopeType) CustomScriptInvocationHandler.wrap(customScript,
+                createScript(DynamicScopeType.class, 20, false), metrics);
+
+        for (int i = 0; i < FAILURES; i++) {
+            script.update(null, null);
+        }
+        assertEquals(metrics.getCircuitBreakerState("dynamicScope"), State.OPEN);
+
+        // Served by default implementation
+        assertFalse(script.update(null, null));
+        assertEquals(scriptCalls.get(), FAILURES);
+        assertEquals(metrics.getInvocationStats("dynamicScope", "update").getFallbackCount(), 1);
+        assertEquals(metrics.getInvocationStats("dynamicScope", "update").getTimeoutCount(), FAILURES);
+    }
+
+    @Test
+    public void successKeepsCircuitBreakerClosedTest() {
+        CustomScript customScript = createCustomScript("postAuthn", CustomScriptType.POST_AUTHN, 1000);
+        PostAuthnType script = (PostAuthnType) CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, false),
+                metrics);
+
+        for (int i = 0; i < 2 * FAILURES; i++) {
+            assertEquals(script.forceReAuthentication(null), true);
+        }
+        assertEquals(metrics.getCircuitBreakerState("postAuthn"), State.CLOSED);
+        assertEquals(scriptCalls.get(), 2 * FAILURES);
+    }
+
+    @Test
+    public void sharedBulkheadTest() throws InterruptedException {
+        CustomScript customScript = createCustomScript("postAuthn", CustomScriptType.POST_AUTHN, 0);
+        customScript.setMaxConcurrency(1);
+
+        // Previous version which drains and new version of script
+        PostAuthnType previousScript = (PostAuthnType) CustomScriptInvocationHandler.wrap(customScript,
+                createScript(PostAuthnType.class, 500, false), metrics);
+        PostAuthnType script = (PostAuthnType) CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, false),
+                metrics);
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread invocation = new Thread(() -> {
+            started.countDown();
+            previousScript.forceReAuthentication(null);
+        });
+        invocation.start();
+        started.await();
+        Thread.sleep(100);
+
+        try {
+            script.forceReAuthentication(null);
+            fail("Rejection expected");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+
+        invocation.join();
+        assertEquals(script.forceReAuthentication(null), true);
+        assertEquals(metrics.getBulkhead("postAuthn").getRejectedCount(), 1);
+    }
+
+    @Test
+    public void removedConcurrencyLimitTest() {
+        CustomScript customScript = createCustomScript("postAuthn", CustomScriptType.POST_AUTHN, 0);
+        customScript.setMaxConcurrency(1);
+        CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, false), metrics);
+        CustomScriptBulkhead bulkhead = metrics.getBulkhead("postAuthn");
+
+        // Same limits keep bulkhead
+        CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, false), metrics);
+        assertSame(metrics.getBulkhead("postAuthn"), bulkhead);
+
+        customScript.setMaxConcurrency(0);
+        PostAuthnType script = (PostAuthnType) CustomScriptInvocationHandler.wrap(customScript, createScript(PostAuthnType.class, 0, false),
+                metrics);
+        assertNull(metrics.getBulkhead("postAuthn"));
+        assertEquals(script.forceReAuthentication(null), true);
+    }
+
+    @Test
+    public void batchDeadlineTest() {
+        CustomScript customScript = createCustomScript("cacheRefresh", CustomScriptType.CACHE_REFRESH, 10);
+        CacheRefreshType script = (CacheRefreshType) CustomScriptInvocationHandler.wrap(customScript,
+                createScript(CacheRefreshType.class, 30, false), metrics);
+
+        // Batch deadline is 10 ms per entity
+        List<String> persons = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+        assertEquals(script.updateUsers(persons, null).length, persons.size());
+        assertEquals(metrics.getInvocationStats("cacheRefresh", "updateUsers").getTimeoutCount(), 0);
+
+        script.updateUser("1", null);
+        assertEquals(metrics.getInvocationStats("cacheRefresh", "updateUser").getTimeoutCount(), 1);
+    }
+
+    static CustomScript createCustomScript(String inum, CustomScriptType scriptType, long executionTimeout) {
+        CustomScript customScript = new CustomScript("inum=" + inum, inum, inum);
+        customScript.setScriptType(scriptType);
+        customScript.setExecutionTimeout(executionTimeout);
+
+        return customScript;
+    }
+
+    /*
+     * Script which returns true from every method (for each entity from batch method) after delay or throws exception
+     */
+    private <T extends BaseExternalType> T createScript(Class<T> scriptJavaType, long delayMillis, boolean fail) {
+        return scriptJavaType.cast(Proxy.newProxyInstance(scriptJavaType.getClassLoader(), new Class<?>[] { scriptJavaType },
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0] : System.identityHashCode(proxy);
+                    }
+
+                    scriptCalls.incrementAndGet();
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    if (fail) {
+                        throw new IllegalStateException("Script failed");
+                    }
+
+                    if (method.getReturnType() == boolean[].class) {
+                        boolean[] result = new boolean[((List<?>) args[0]).size()];
+                        Arrays.fill(result, true);
+
+                        return result;
+                    }
+
+                    return method.getReturnType() == int.class ? 1 : Boolean.TRUE;
+                }));
+    }
+
+}
@@ -0,0 +1,283 @@
+package org.gluu.service.custom.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.model.ProgrammingLanguage;
+import org.gluu.model.custom.script.CustomScriptType;
+import org.gluu.model.custom.script.conf.CustomScriptConfiguration;
+import org.gluu.model.custom.script.model.CustomScript;
+import org.gluu.model.custom.script.type.scope.DynamicScopeType;
+import org.gluu.service.PythonService;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CustomScriptManagerTest {
+
+    private static final String INUM = "dynamic-scope";
+
+    private static final String SCRIPT = "import java.util.Collections;\n" +
+            "import java.util.List;\n" +
+            "import java.util.Map;\n" +
+            "\n" +
+            "import org.gluu.model.SimpleCustomProperty;\n" +
+            "import org.gluu.model.custom.script.model.CustomScript;\n" +
+            "import org.gluu.model.custom.script.type.scope.DynamicScopeType;\n" +
+            "\n" +
+            "public class DynamicScope implements DynamicScopeType {\n" +
+            "    public boolean init(Map<String, SimpleCustomProperty> configurationAttributes) { return true; }\n" +
+            "    public boolean init(CustomScript customScript, Map<String, SimpleCustomProperty> configurationAttributes) { return true; }\n" +
+            "    public int getApiVersion() { return 11; }\n" +
+            "    public boolean destroy(Map<String, SimpleCustomProperty> configurationAttributes) {\n" +
+            "        configurationAttributes.put(\"destroyed\", new SimpleCustomProperty(\"destroyed\", \"true\"));\n" +
+            "        return true;\n" +
+            "    }\n" +
+            "    public boolean update(Object context, Map<String, SimpleCustomProperty> configurationAttributes) {\n" +
+            "        try { Thread.sleep(%d); } catch (InterruptedException ex) { }\n" +
+            "        return true;\n" +
+            "    }\n" +
+            "    public List<String> getSupportedClaims(Map<String, SimpleCustomProperty> configurationAttributes) {\n" +
+            "        return Collections.singletonList(\"%s\");\n" +
+            "    }\n" +
+            "    public boolean selfTest(Map<String, SimpleCustomProperty> configurationAttributes) { return %s; }\n" +
+            "}\n";
+
+    private TestCustomScriptService customScriptService;
+    private TestCustomScriptManager customScriptManager;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        customScriptService = new TestCustomScriptService();
+        customScriptService.put(createCustomScript(INUM, 1, String.format(SCRIPT, 0, "claim1", "true")));
+
+        customScriptManager = new TestCustomScriptManager(customScriptService);
+        customScriptManager.configure();
+        customScriptManager.reloadScripts();
+        assertEquals(getSupportedClaim(), "claim1");
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        customScriptManager.destroy(null);
+    }
+
+    @Test
+    public void newRevisionTest() {
+        customScriptService.put(createCustomScript(INUM, 2, String.format(SCRIPT, 0, "claim2", "true")));
+        customScriptManager.reloadScripts();
+
+        assertEquals(getSupportedClaim(), "claim2");
+        assertEquals(customScriptManager.getCustomScriptConfigurationByInum(INUM).getCustomScript().getRevision(), 2);
+    }
+
+    @Test
+    public void failedRevisionKeepsPreviousTest() {
+        customScriptService.put(createCustomScript(INUM, 2, "public class DynamicScope { compile error }"));
+        customScriptManager.reloadScripts();
+
+        // Previous revision still serves requests
+        assertEquals(getSupportedClaim(), "claim1");
+        assertEquals(customScriptManager.getCustomScriptConfigurationByInum(INUM).getCustomScript().getRevision(), 1);
+    }
+
+    @Test
+    public void failedRevisionNotRetriedTest() {
+        customScriptService.put(createCustomScript(INUM, 2, "public class DynamicScope { compile error }"));
+        customScriptManager.reloadScripts();
+        int loadCount = customScriptService.getLoadCount(INUM);
+
+        // Other script change triggers reload, failed revision isn't loaded again
+        customScriptService.put(createCustomScript("other", 1, String.format(SCRIPT, 0, "other", "true")));
+        customScriptManager.reloadScripts();
+        assertNotNull(customScriptManager.getCustomScriptConfigurationByInum("other"));
+        assertEquals(customScriptService.getLoadCount(INUM), loadCount);
+        assertEquals(getSupportedClaim(), "claim1");
+
+        // Next revision is loaded
+        customScriptService.put(createCustomScript(INUM, 3, String.format(SCRIPT, 0, "claim3", "true")));
+        customScriptManager.reloadScripts();
+        assertTrue(customScriptService.getLoadCount(INUM) > loadCount);
+        assertEquals(getSupportedClaim(), "claim3");
+    }
+
+    @Test
+    public void selfTestRejectionTest() {
+        customScriptService.put(createCustomScript(INUM, 2, String.format(SCRIPT, 0, "claim2", "false")));
+        customScriptManager.reloadScripts();
+
+        assertEquals(getSupportedClaim(), "claim1");
+        assertEquals(customScriptManager.getCustomScriptConfigurationByInum(INUM).getCustomScript().getRevision(), 1);
+    }
+
+    @Test
+    public void drainTest() throws InterruptedException {
+        customScriptService.put(createCustomScript(INUM, 2, String.format(SCRIPT, 1500, "claim2", "true")));
+        customScriptManager.reloadScripts();
+
+        // Invocation of previous version is in-flight while new version is published
+        CustomScriptConfiguration previousConfiguration = customScriptManager.getCustomScriptConfigurationByInum(INUM);
+        Thread invocation = new Thread(() -> ((DynamicScopeType) previousConfiguration.getExternalType()).update(null, null));
+        invocation.start();
+        Thread.sleep(100);
+
+        customScriptService.put(createCustomScript(INUM, 3, String.format(SCRIPT, 0, "claim3", "true")));
+        long start = System.currentTimeMillis();
+        customScriptManager.reloadScripts();
+        assertTrue(System.currentTimeMillis() - start < 1000, "reload waited for drain");
+        assertEquals(getSupportedClaim(), "claim3");
+
+        Thread.sleep(CustomScriptManager.DRAIN_GRACE_PERIOD + 200);
+        assertNull(previousConfiguration.getConfigurationAttributes().get("destroyed")); // still in-flight
+
+        invocation.join();
+        Thread.sleep(500);
+        assertNotNull(previousConfiguration.getConfigurationAttributes().get("destroyed"));
+    }
+
+    @Test
+    public void retiredWithoutInvocationsTest() throws InterruptedException {
+        CustomScriptConfiguration previousConfiguration = customScriptManager.getCustomScriptConfigurationByInum(INUM);
+        customScriptService.put(createCustomScript(INUM, 2, String.format(SCRIPT, 0, "claim2", "true")));
+        customScriptManager.reloadScripts();
+
+        // Previous version isn't destroyed before grace period
+        assertFalse(previousConfiguration.getConfigurationAttributes().containsKey("destroyed"));
+        Thread.sleep(CustomScriptManager.DRAIN_GRACE_PERIOD + 500);
+        assertTrue(previousConfiguration.getConfigurationAttributes().containsKey("destroyed"));
+    }
+
+    @Test
+    public void failedLoadRetryTest() {
+        // Persistence error while new script is loaded
+        customScriptService.put(createCustomScript("other", 1, String.format(SCRIPT, 0, "other", "true")));
+        customScriptService.failNextLoad();
+        customScriptManager.reloadScripts();
+        assertNull(customScriptManager.getCustomScriptConfigurationByInum("other"));
+
+        // Next check loads script again without script changes
+        customScriptManager.reloadScripts();
+        assertNotNull(customScriptManager.getCustomScriptConfigurationByInum("other"));
+    }
+
+    @Test
+    public void failedRevisionLoadRetryTest() {
+        customScriptService.put(createCustomScript(INUM, 2, String.format(SCRIPT, 0, "claim2", "true")));
+        customScriptService.failNextLoad();
+        customScriptManager.reloadScripts();
+        assertEquals(getSupportedClaim(), "claim1");
+
+        customScriptManager.reloadScripts();
+        assertEquals(getSupportedClaim(), "claim2");
+    }
+
+    private String getSupportedClaim() {
+        DynamicScopeType externalType = (DynamicScopeType) customScriptManager.getCustomScriptConfigurationByInum(INUM).getExternalType();
+
+        return externalType.getSupportedClaims(null).get(0);
+    }
+
+    private static CustomScript createCustomScript(String inum, long revision, String script) {
+        CustomScript customScript = new CustomScript("inum=" + inum + ",ou=scripts,o=gluu", inum, inum);
+        customScript.setScriptType(CustomScriptType.DYNAMIC_SCOPE);
+        customScript.setProgrammingLanguage(ProgrammingLanguage.JAVA);
+        customScript.setRevision(revision);
+        customScript.setEnabled(true);
+        customScript.setScript(script);
+
+        return customScript;
+    }
+
+    private static class TestCustomScriptManager extends CustomScriptManager {
+
+        private static final long serialVersionUID = 1L;
+
+        TestCustomScriptManager(AbstractCustomScriptService customScriptService) {
+            this.log = LoggerFactory.getLogger(CustomScriptManager.class);
+            this.pythonService = new PythonService();
+            this.customScriptService = customScriptService;
+            this.supportedCustomScriptTypes = Collections.singletonList(CustomScriptType.DYNAMIC_SCOPE);
+        }
+
+        @Override
+        protected void updateScriptServices(boolean syncUpdate) {
+        }
+    }
+
+    private static class TestCustomScriptService extends AbstractCustomScriptService {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, CustomScript> customScripts = new ConcurrentHashMap<String, CustomScript>();
+        private final Map<String, AtomicInteger> loadCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        private final AtomicInteger failingLoads = new AtomicInteger();
+
+        TestCustomScriptService() {
+            this.log = LoggerFactory.getLogger(AbstractCustomScriptService.class);
+        }
+
+        void put(CustomScript customScript) {
+            customScripts.put(customScript.getDn(), customScript);
+        }
+
+        /*
+         * Next load of script entry by DN throws exception
+         */
+        void failNextLoad() {
+            failingLoads.incrementAndGet();
+        }
+
+        /*
+         * Count of script entry loads by DN, error updates load entry too
+         */
+        int getLoadCount(String inum) {
+            AtomicInteger loadCount = loadCounts.get(inum);
+
+            return loadCount == null ? 0 : loadCount.get();
+        }
+
+        @Override
+        public List<CustomScript> findCustomScripts(List<CustomScriptType> customScriptTypes, String... returnAttributes) {
+            List<CustomScript> result = new ArrayList<CustomScript>();
+            for (CustomScript customScript : customScripts.values()) {
+                result.add(new CustomScript(customScript));
+            }
+
+            return result;
+        }
+
+        @Override
+        public CustomScript getCustomScriptByDn(Class<?> customScriptType, String customScriptDn) {
+            if (failingLoads.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                throw new IllegalStateException("Failed to load entry: " + customScriptDn);
+            }
+
+            CustomScript customScript = customScripts.get(customScriptDn);
+            loadCounts.computeIfAbsent(customScript.getInum(), key -> new AtomicInteger()).incrementAndGet();
+
+            return new CustomScript(customScript);
+        }
+
+        @Override
+        public void update(CustomScript customScript) {
+            // Script errors aren't stored
+        }
+
+        @Override
+        public String baseDn() {
+            return "ou=scripts,o=gluu";
+        }
+    }
+
+}
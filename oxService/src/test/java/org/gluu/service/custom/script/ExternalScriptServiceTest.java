@@ -0,0 +1,133 @@
+package org.gluu.service.custom.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.gluu.model.SimpleCustomProperty;
+import org.gluu.model.custom.script.CustomScriptType;
+import org.gluu.model.custom.script.conf.CustomScriptConfiguration;
+import org.gluu.model.custom.script.model.CustomScript;
+import org.gluu.model.custom.script.type.user.CacheRefreshType;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ExternalScriptServiceTest {
+
+    private final List<List<?>> batches = new ArrayList<List<?>>();
+    private final List<Exception> scriptErrors = new ArrayList<Exception>();
+
+    private ExternalScriptService externalScriptService;
+    private CustomScriptConfiguration customScriptConfiguration;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        batches.clear();
+        scriptErrors.clear();
+
+        externalScriptService = new ExternalScriptService(CustomScriptType.CACHE_REFRESH) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void saveScriptError(CustomScript customScript, Exception exception) {
+                scriptErrors.add(exception);
+            }
+        };
+        externalScriptService.log = LoggerFactory.getLogger(ExternalScriptService.class);
+
+        CustomScript customScript = CustomScriptInvocationHandlerTest.createCustomScript("cacheRefresh", CustomScriptType.CACHE_REFRESH, 0);
+        customScriptConfiguration = new CustomScriptConfiguration(customScript, CustomScriptType.CACHE_REFRESH.getDefaultImplementation(),
+                Collections.<String, SimpleCustomProperty>emptyMap());
+    }
+
+    @Test
+    public void chunkingTest() {
+        boolean[] result = externalScriptService.executeExternalBatch(customScriptConfiguration, createEntities(7), 3,
+                this::updateUsers);
+
+        assertEquals(batches.size(), 3);
+        assertEquals(batches.get(0), createEntities(7).subList(0, 3));
+        assertEquals(batches.get(1), createEntities(7).subList(3, 6));
+        assertEquals(batches.get(2), createEntities(7).subList(6, 7));
+        assertEquals(result.length, 7);
+    }
+
+    @Test
+    public void resultAlignmentTest() {
+        boolean[] result = externalScriptService.executeExternalBatch(customScriptConfiguration, createEntities(7), 3,
+                this::updateUsers);
+
+        // Script accepts even entities
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(result[i], i % 2 == 0, "entity " + i);
+        }
+    }
+
+    @Test
+    public void chunkFailureTest() {
+        boolean[] result = externalScriptService.<CacheRefreshType>executeExternalBatch(customScriptConfiguration, createEntities(7), 3,
+                (externalType, batch, configurationAttributes) -> {
+                    if (batch.contains(4)) {
+                        throw new IllegalStateException("Chunk failed");
+                    }
+
+                    return updateUsers(externalType, batch, configurationAttributes);
+                });
+
+        // Only entities of failed chunk get false, next chunk is processed
+        assertTrue(result[0]);
+        assertTrue(result[2]);
+        for (int i = 3; i < 6; i++) {
+            assertFalse(result[i], "entity " + i);
+        }
+        assertTrue(result[6]);
+        assertEquals(scriptErrors.size(), 1);
+    }
+
+    @Test
+    public void wrongResultCountTest() {
+        boolean[] result = externalScriptService.executeExternalBatch(customScriptConfiguration, createEntities(4), 2,
+                (externalType, batch, configurationAttributes) -> batch.contains(0) ? new boolean[] { true } : new boolean[] { true, true });
+
+        assertFalse(result[0]);
+        assertFalse(result[1]);
+        assertTrue(result[2]);
+        assertTrue(result[3]);
+    }
+
+    @Test
+    public void emptyTest() {
+        boolean[] result = externalScriptService.executeExternalBatch(customScriptConfiguration, Collections.emptyList(), 3,
+                this::updateUsers);
+
+        assertEquals(result.length, 0);
+        assertTrue(batches.isEmpty());
+    }
+
+    private boolean[] updateUsers(CacheRefreshType externalType, List<?> batch, Map<String, SimpleCustomProperty> configurationAttributes) {
+        batches.add(new ArrayList<Object>(batch));
+
+        boolean[] result = new boolean[batch.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (Integer) batch.get(i) % 2 == 0;
+        }
+
+        return result;
+    }
+
+    private List<Integer> createEntities(int count) {
+        List<Integer> entities = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            entities.add(i);
+        }
+
+        return entities;
+    }
+
+}